@@ -1091,6 +1091,7 @@ public interface AssessmentMessages {
 	/** Constant for generic SQL Based tests Errors */
 	public static final String ASMT_ERROR_SQL_NO_RECS = "asmt.error.sql.no.recs";
 	public static final String ASMT_ERROR_PRE_TEST_ERROR = "asmt.error.pretest.error";
+	public static final String ASMT_ERROR_SQL_TIMEOUT = "asmt.error.sql.timeout";
 	
 	/** Constant For No Databases To Loop */
 	public static final String ASMT_ERROR_NO_DBS_TO_LOOP= "asmt.error.no.databases.to.loop";
@@ -1113,6 +1114,9 @@ public interface AssessmentMessages {
 	
 	public static final String ASMT_RESULT_FAIL_ADDITIONAL_TEXT = "asmt.result.fail.additional_text";
 	
+	/** Constant for a result carried forward from a previous run */
+	public static final String ASMT_RESULT_CARRIED_FORWARD = "asmt.result.carried.forward";
+	
 	public static final String ASMT_ID_USED="asmt.result.id.is.used";
 	public static final String ASMT_NOT_IN_USER_GROUP_TABLES="asmt.result.missing.user.or.group";
 	public static final String ASMT_ROLE_NOT_FOUND = "asmt.result.role.not.defined";
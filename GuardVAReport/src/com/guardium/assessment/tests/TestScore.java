@@ -53,7 +53,10 @@ public enum TestScore implements Score {
 	UNSUPPORT_CVE_PATCH_DETECTED(-15),
 		
 	/** Unsupported Security PTF patch detected **/
-	UNSUPPORT_PTF_PATCH_DETECTED(-16);
+	UNSUPPORT_PTF_PATCH_DETECTED(-16),
+
+	/** A test statement did not complete within its query timeout and was canceled **/
+	QUERY_TIMEOUT(-17);
 	/** The Test Score Definition ID of this Test Score. */
 	private final int scoreValue;
 
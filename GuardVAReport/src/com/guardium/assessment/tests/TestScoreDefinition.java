@@ -48,6 +48,9 @@ public class TestScoreDefinition
 	
 	/** Unsupported Security PTF patch detected **/
 	public static final int UNSUPPORT_PTF_PATCH_DETECTED = TestScore.UNSUPPORT_PTF_PATCH_DETECTED.getScoreValue();	
+
+	/** A test statement timed out and was canceled **/
+	public static final int QUERY_TIMEOUT = TestScore.QUERY_TIMEOUT.getScoreValue();
 	
 	/*
 	public TestScoreDefinition () {
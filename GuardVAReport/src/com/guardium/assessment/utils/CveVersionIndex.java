@@ -0,0 +1,195 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.assessment.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.guardium.data.CveFix;
+
+/**
+ * The CVE_FIX rows of one CVE test, compiled when the catalog is loaded, see CveFixMap.
+ * Rows keep their catalog order, each distinct reference version is split once and the
+ * reference patch of each row, patch and patch to, is built once.
+ * <p>
+ * The patch evaluation of the info getter is remembered per database version and patch level,
+ * so the CVE tests of datasources at the same level resolve with lookups. At most
+ * <code>guardium.va.cvePatchCacheSize</code> levels are kept per test, least recently used first out.
+ */
+public class CveVersionIndex {
+
+	/** Maximum number of version and patch levels whose patch evaluation is kept per test */
+	public static final int PATCH_CACHE_SIZE = Integer.getInteger("guardium.va.cvePatchCacheSize", 16);
+
+	private static final String OJVM = "OJVM";
+
+	private static final CveVersionIndex EMPTY = new CveVersionIndex(Collections.<CveFix>emptyList());
+
+	private final String[] refVersions;
+	private final String[][] refItems;
+	private final CveFix[] rows;
+	/** index in refVersions of the version of each row */
+	private final int[] rowRefs;
+	/** reference patch of each row, as the info getters compare it */
+	private final String[] rowPatches;
+
+	/** patch evaluations by version and patch level, access ordered */
+	private final Map<String,Integer> patchResults = new LinkedHashMap<String,Integer>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,Integer> eldest) {
+			return this.size() > PATCH_CACHE_SIZE;
+		}
+	};
+
+	private CveVersionIndex(List<CveFix> fixes) {
+		Map<String,Integer> refIndex = new LinkedHashMap<String,Integer>();
+		this.rows = fixes.toArray(new CveFix[fixes.size()]);
+		this.rowRefs = new int[this.rows.length];
+		this.rowPatches = new String[this.rows.length];
+		for (int i = 0; i < this.rows.length; i++) {
+			String ver = this.rows[i].getVersion() == null ? "" : this.rows[i].getVersion();
+			Integer idx = refIndex.get(ver);
+			if (idx == null) {
+				idx = refIndex.size();
+				refIndex.put(ver, idx);
+			}
+			this.rowRefs[i] = idx;
+			this.rowPatches[i] = referencePatch(this.rows[i]);
+		}
+		this.refVersions = refIndex.keySet().toArray(new String[refIndex.size()]);
+		this.refItems = new String[this.refVersions.length][];
+		for (int i = 0; i < this.refVersions.length; i++) {
+			this.refItems[i] = versionItems(this.refVersions[i]);
+		}
+	}
+
+	/**
+	 * @param fixes The CVE_FIX rows of a test, may be null.
+	 * @return The compiled index of the rows.
+	 */
+	public static CveVersionIndex compile(List<CveFix> fixes) {
+		if (fixes == null || fixes.isEmpty()) {
+			return EMPTY;
+		}
+		return new CveVersionIndex(fixes);
+	}
+
+	/**
+	 * @param version
+	 * @return The version split by ".".
+	 */
+	public static String[] versionItems(String version) {
+		return version.split("\\.");
+	}
+
+	/**
+	 * @param fix
+	 * @return The patch of the row, followed by "-" and its patch to if it has one.
+	 */
+	private static String referencePatch(CveFix fix) {
+		String patch = fix.getPatch() == null ? "" : fix.getPatch();
+		String patchTo = fix.getPatchTo();
+		if (patchTo != null && !patchTo.isEmpty()) {
+			patch = patch + "-" + patchTo;
+		}
+		return patch;
+	}
+
+	/**
+	 * Matches the database version against the reference versions of the test, the same
+	 * as DataSourceInfoGeter.evaluateDbVersion with exact_match followed by a per row filter.
+	 * @param version The database version.
+	 * @return The rows that apply to the version, null if the version is not covered by the test.
+	 */
+	public Match resolve(String version) {
+		if (this.refVersions.length == 0 || version == null) {
+			return null;
+		}
+
+		String[] vItems = versionItems(version);
+		int[] cmps = new int[this.refVersions.length];
+		for (int i = 0; i < this.refVersions.length; i++) {
+			cmps[i] = DataSourceInfoGeter.compareVersion(this.refItems[i], vItems, true);
+		}
+
+		// the version is covered when a row matches exactly, or else when the last row matches
+		boolean covered = cmps[this.rowRefs[this.rows.length - 1]] == 0;
+		List<CveFix> matched = new ArrayList<CveFix>();
+		List<String> patches = new ArrayList<String>();
+		boolean ojvm = false;
+		for (int i = 0; i < this.rows.length; i++) {
+			int cmp = cmps[this.rowRefs[i]];
+			if (cmp == DataSourceInfoGeter.EXACT_MATCH) {
+				covered = true;
+			}
+			if (cmp == 0 || cmp == DataSourceInfoGeter.EXACT_MATCH) {
+				matched.add(this.rows[i]);
+				patches.add(this.rowPatches[i]);
+				ojvm |= this.rowPatches[i].indexOf(OJVM) > 0;
+			}
+		}
+		if (!covered) {
+			return null;
+		}
+		return new Match(matched, patches, ojvm);
+	}
+
+	/**
+	 * Evaluates the patch level of the database against the reference patches of the rows that
+	 * apply to its version, see DataSourceInfoGeter.evaluateDbPatch.
+	 * @param dsig The info getter of the datasource type.
+	 * @param match The rows resolved for the version.
+	 * @param version The database version.
+	 * @param patch The database patch level.
+	 * @return The result of evaluateDbPatch, remembered for the version and patch level.
+	 */
+	public int evaluatePatch(DataSourceInfoGeter dsig, Match match, String version, String patch) {
+		String key = version + "\n" + patch;
+		synchronized (this.patchResults) {
+			Integer result = this.patchResults.get(key);
+			if (result != null) {
+				return result;
+			}
+		}
+		int result = dsig.evaluateDbPatch(match.getReferencePatches(), patch, version);
+		synchronized (this.patchResults) {
+			this.patchResults.put(key, result);
+		}
+		return result;
+	}
+
+	/** The rows of a test that apply to one database version */
+	public static class Match {
+		private final List<CveFix> rows;
+		private final List<String> referencePatches;
+		private final boolean ojvm;
+
+		private Match(List<CveFix> rows, List<String> referencePatches, boolean ojvm) {
+			this.rows = rows;
+			this.referencePatches = referencePatches;
+			this.ojvm = ojvm;
+		}
+
+		public List<CveFix> getRows() {
+			return this.rows;
+		}
+
+		/** @return The reference patch of each row, in row order. */
+		public List<String> getReferencePatches() {
+			return this.referencePatches;
+		}
+
+		/** @return Whether a reference patch is an Oracle OJVM patch. */
+		public boolean isOjvm() {
+			return this.ojvm;
+		}
+	}
+}
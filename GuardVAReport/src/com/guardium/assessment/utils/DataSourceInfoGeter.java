@@ -20,6 +20,8 @@ import java.util.regex.Pattern;
 //import org.apache.log4j.Logger;
 
 import com.guardium.runtest.CVETest;
+import com.guardium.runtest.QueryMemo;
+import com.guardium.runtest.QueryWatchdog;
 //import com.guardium.assessment.tests.dbversion.AbstractDatabaseVersionTest;
 //import com.guardium.datamodel.assessment.TestAlternativeTemplatePeer;
 //import com.guardium.datamodel.changeaudit.CasAuditConfig;
@@ -29,10 +31,13 @@ import com.guardium.runtest.CVETest;
 //import com.guardium.datamodel.changeaudit.CasAuditTargetPeer;
 //import com.guardium.datamodel.dbSource.CASRequiredException;
 import com.guardium.data.Datasource;
+import com.guardium.data.DatasourceSession;
 import com.guardium.data.DatasourceType;
 import com.guardium.data.DatasourceVersionHistory;
 //import com.guardium.map.DatasourceVersionHistoryPeer;
 import com.guardium.data.DataSourceConnectException;
+import com.guardium.data.StatementFactory;
+import com.guardium.data.StatementFactory.Shape;
 import com.guardium.utils.Check;
 import com.guardium.utils.Regexer;
 //import com.mongodb.MongoClient;
@@ -44,6 +49,10 @@ public abstract class DataSourceInfoGeter
 	//public String dbVersion = null;
 	public String refVersion = null;
 	//public String dbPatchLevel = null;
+	/**
+	 * Reads the OS from the database, CVE tests read it once per datasource through DatasourceFacts.
+	 * @param ds
+	 */
 	public abstract String getOs(Datasource ds) throws Exception;
 	protected abstract long[] getAllIds();
 	public abstract int  evaluateDbPatch(List<String> referencePatches, String patch, String version); 
@@ -61,14 +70,31 @@ public abstract class DataSourceInfoGeter
             return ojvmFlag;
     }
 	
-	public String getOneTryValue(Connection con, String sql, int resultInd) throws SQLException 
+	// memo of the query results of the datasource run, null to run every query
+	protected QueryMemo queryMemo = null;
+	public void setQueryMemo (QueryMemo memo) {
+		queryMemo = memo;
+	}
+
+	public String getOneTryValue(final Connection con, final String sql, final int resultInd) throws SQLException 
+	{
+		return QueryMemo.get(queryMemo, con, "value " + resultInd, sql, new QueryMemo.Query<String>() {
+			public String run() throws SQLException {
+				return queryOneTryValue(con, sql, resultInd);
+			}
+		});
+	}
+
+	private String queryOneTryValue(Connection con, String sql, int resultInd) throws SQLException 
 	{
 		Statement stmt = null;
 		ResultSet res = null;
+		QueryWatchdog.Watch watch = null;
 		String ret = null;
 		try
 		{
-			stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			stmt = StatementFactory.createStatement(con, Shape.SCALAR);
+			watch = watch(stmt);
 			res = stmt.executeQuery(sql);
 			if ( res.next() ) 
 			{
@@ -78,10 +104,31 @@ public abstract class DataSourceInfoGeter
 		} 
 		finally
 		{
+			end(watch);
 			Check.disposal(res);
 			Check.disposal(stmt);
 		}
 	}
+
+	/**
+	 * Limits the time of a statement of the getter, like the statements of the tests.
+	 * @param stmt
+	 * @return The watch of the statement, to end once the statement is done.
+	 */
+	protected static QueryWatchdog.Watch watch(Statement stmt)
+	{
+		return QueryWatchdog.watch(stmt, QueryWatchdog.getTimeout(null, null));
+	}
+
+	/**
+	 * @param watch The watch of a statement, null if it was not created.
+	 */
+	protected static void end(QueryWatchdog.Watch watch)
+	{
+		if (watch != null) {
+			watch.end();
+		}
+	}
 	
 	public String getDbVersion(Datasource ds) throws Exception 
 	{
@@ -130,89 +177,21 @@ public abstract class DataSourceInfoGeter
 	public int evaluateDbVersion(List<String> referenceVersions, String version, boolean exact_match) 
 	{
 		int ret = -1;
-		String rvitem;
 		//LOG.warn("evaluateDbVersion start with version " + version);
-		String [] vItems = version.split("\\.");
+		String [] vItems = CveVersionIndex.versionItems(version);
 		for (String refVer : referenceVersions) 
 		{
-			// reset for each comparision
-            ret = -1;
 			//LOG.warn("refVersion " + refVer);
-			String [] rvItems = refVer.split("\\.");
-            int rvLen = rvItems.length;
-            int vLen = vItems.length;
-            int minLen = vLen;
-            if (rvLen < vLen) {
-                    minLen = rvLen;
-            }
-            int i = 0;
-			for (i = 0; i < minLen; i++) 
-			{
-				//LOG.warn("i=" + i + " ver=" + vItems[i] + " refV=" + rvItems[i]);
-				rvitem = rvItems[i];
-				if(rvitem.endsWith("*"))
-					rvitem = rvitem.replace("*","");
-				if(rvitem.equalsIgnoreCase(vItems[i])) {
-					ret = 0;
-					//LOG.warn("v equal rv");
-					// keep processing
-				}
-				// if not all numeric like oracle 9.2.0.8DV
-				else if(!Pattern.matches("\\d+", rvitem.trim())||!Pattern.matches("\\d+", vItems[i].trim()))
-				{
-					//LOG.warn("can not compare");
-					ret = -1; // if not numeric and does not match the version -1 will cause a result of "unsupported version"
-					break;
-				}
-				else
-				{
-					int v  = Integer.parseInt(vItems[i]);
-					int rv = Integer.parseInt(rvItems[i]);
-					if(v > rv)
-					{
-						//LOG.warn("v > rv");
-						ret = 1;
-						break;
-					
-						// don't need to keep on processingq!
-					}
-					else if (v == rv) {
-						// if string match not good, will fall here and do integer match
-						// if equal, it is ok, like to compare "0" and "00"
-						ret = 0;
-						break;
-					}
-					else { 
-						//LOG.warn("v < rv");
-						ret = -1;
-						break;
-					}
-				}
-				/*
-				if(i==rvItems.length-1)
-				{	
-					LOG.warn("i = length -1" + i);
-					refVersion = refVer;
-					return ret;	
-				}
-				*/
-			}
+			int cmp = compareVersion(CveVersionIndex.versionItems(refVer), vItems, exact_match);
+			ret = (cmp == EXACT_MATCH) ? 0 : cmp;
 			
 			// need to check return value to see if need to continue
 			if (exact_match) {
-				if (ret == 0) {
-				    // get exact match
-                    //LOG.warn("found match - i =" +i + " rvLen=" + rvLen + " vLen=" + vLen);
+				if (cmp == EXACT_MATCH) {
                     // found match ref
-                    // 15.5 = 15.5, 15.5.0 = 15.5, 15.5 = 15.5.0
-                    if (rvItems.length == i ||
-                        ((rvItems.length == i+1) && (rvItems[i].equals("0"))) ||
-                        ((vItems.length == i+1) && (vItems[i].equals("0")))
-                       ) {
-                            //LOG.warn("found match");
-                            refVersion = refVer;
-                            break;
-                    }
+                    //LOG.warn("found match");
+                    refVersion = refVer;
+                    break;
 				}
 				// else continue
 			}
@@ -229,6 +208,86 @@ public abstract class DataSourceInfoGeter
 		return ret;
 	}
 
+	/** compareVersion result for a reference version that matches the version exactly */
+	public static final int EXACT_MATCH = 2;
+
+	private static final Pattern DIGITS_PATTERN = Pattern.compile("\\d+");
+
+	/**
+	 * Compares one reference version to the version, both already split by ".".
+	 * @param rvItems The reference version items, a trailing "*" on an item is ignored.
+	 * @param vItems The version items.
+	 * @param exact_match Whether to tell an exact match apart, 15.5 = 15.5, 15.5.0 = 15.5, 15.5 = 15.5.0
+	 * @return -1 if the version is below the reference, 1 if above, 0 if it matches,
+	 * EXACT_MATCH if exact_match is set and the version matches exactly.
+	 */
+	public static int compareVersion(String [] rvItems, String [] vItems, boolean exact_match)
+	{
+		int ret = -1;
+		String rvitem;
+        int rvLen = rvItems.length;
+        int vLen = vItems.length;
+        int minLen = vLen;
+        if (rvLen < vLen) {
+                minLen = rvLen;
+        }
+        int i = 0;
+		for (i = 0; i < minLen; i++) 
+		{
+			//LOG.warn("i=" + i + " ver=" + vItems[i] + " refV=" + rvItems[i]);
+			rvitem = rvItems[i];
+			if(rvitem.endsWith("*"))
+				rvitem = rvitem.replace("*","");
+			if(rvitem.equalsIgnoreCase(vItems[i])) {
+				ret = 0;
+				//LOG.warn("v equal rv");
+				// keep processing
+			}
+			// if not all numeric like oracle 9.2.0.8DV
+			else if(!DIGITS_PATTERN.matcher(rvitem.trim()).matches()||!DIGITS_PATTERN.matcher(vItems[i].trim()).matches())
+			{
+				//LOG.warn("can not compare");
+				ret = -1; // if not numeric and does not match the version -1 will cause a result of "unsupported version"
+				break;
+			}
+			else
+			{
+				int v  = Integer.parseInt(vItems[i]);
+				int rv = Integer.parseInt(rvItems[i]);
+				if(v > rv)
+				{
+					//LOG.warn("v > rv");
+					ret = 1;
+					break;
+				
+					// don't need to keep on processingq!
+				}
+				else if (v == rv) {
+					// if string match not good, will fall here and do integer match
+					// if equal, it is ok, like to compare "0" and "00"
+					ret = 0;
+					break;
+				}
+				else { 
+					//LOG.warn("v < rv");
+					ret = -1;
+					break;
+				}
+			}
+		}
+		
+		if (exact_match && ret == 0) {
+            // 15.5 = 15.5, 15.5.0 = 15.5, 15.5 = 15.5.0
+            if (rvItems.length == i ||
+                ((rvItems.length == i+1) && (rvItems[i].equals("0"))) ||
+                ((vItems.length == i+1) && (vItems[i].equals("0")))
+               ) {
+                    return EXACT_MATCH;
+            }
+		}
+		return ret;
+	}
+
 	/**
 	 * @param datasource
 	 * @param con
@@ -290,7 +349,7 @@ public abstract class DataSourceInfoGeter
 			Connection con = null;
 			try
 			{
-				con = datasource.getConnection();	
+				con = DatasourceSession.connect(datasource);	
 				fullInfo = (fullInfo == null) ? datasource.getFullVersionInfo(con) : fullInfo;
 				version = (version == null) ? datasource.getVersionLevel(con) : version;
 				DatasourceVersionHistory history = new DatasourceVersionHistory(
@@ -300,7 +359,7 @@ public abstract class DataSourceInfoGeter
 			}
 			finally
 			{
-				Check.disposal(con);
+				DatasourceSession.release(datasource, con);
 			}
 			
 		} else {
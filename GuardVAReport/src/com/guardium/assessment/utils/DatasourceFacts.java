@@ -0,0 +1,188 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.assessment.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.guardium.data.Datasource;
+
+/**
+ * The facts a CVE test needs about a datasource: OS, version, patch level and, for Oracle,
+ * the OJVM patch level.
+ * Each fact is read from the database once, by the first test that needs it, and then shared
+ * by every CVE test of the datasource. A failure is remembered too, so a datasource that cannot
+ * be reached is not retried by each test.
+ * <p>
+ * The info getters of every type (Db2, Informix, Mongo, Mssql, Mysql, Oracle, PostgreSql, Sybase)
+ * are only asked for these facts from here: CVETest, the Oracle patch level that depends on the
+ * version, and the fingerprint of IncrementalAssessment all read them through this class.
+ * The version and the patch level of most types come from the version history read when the
+ * session of the run opens, see DatasourceSession.open, so only the OS and the Db2, Oracle and
+ * OJVM patch levels run a query.
+ * <p>
+ * Facts are kept per Datasource instance until forget() is called at the end of the assessment.
+ */
+public class DatasourceFacts {
+
+	private static final ConcurrentHashMap<Datasource,DatasourceFacts> factsMap = new ConcurrentHashMap<Datasource,DatasourceFacts>();
+
+	private final Datasource datasource;
+
+	private Fact os = null;
+	private Fact version = null;
+	private Fact patch = null;
+	private Fact ojvmPatch = null;
+
+	private DatasourceFacts(Datasource datasource) {
+		this.datasource = datasource;
+	}
+
+	/**
+	 * @param ds
+	 * @return The facts of the datasource, created empty on first use.
+	 */
+	public static DatasourceFacts get(Datasource ds) {
+		DatasourceFacts facts = factsMap.get(ds);
+		if (facts == null) {
+			DatasourceFacts created = new DatasourceFacts(ds);
+			facts = factsMap.putIfAbsent(ds, created);
+			if (facts == null) {
+				facts = created;
+			}
+		}
+		return facts;
+	}
+
+	/**
+	 * Drops the facts of the datasource, the next assessment reads them again.
+	 * @param ds
+	 */
+	public static void forget(Datasource ds) {
+		if (ds != null) {
+			factsMap.remove(ds);
+		}
+	}
+
+	public Datasource getDatasource() {
+		return this.datasource;
+	}
+
+	/**
+	 * @param dsig
+	 * @return The OS reported by the database.
+	 * @throws Exception
+	 */
+	public String getOs(DataSourceInfoGeter dsig) throws Exception {
+		Fact fact;
+		synchronized (this) {
+			if (this.os == null) {
+				this.os = new Fact();
+			}
+			fact = this.os;
+		}
+		synchronized (fact) {
+			if (!fact.loaded) {
+				try {
+					fact.value = dsig.getOs(this.datasource);
+				} catch (Exception e) {
+					fact.error = e;
+				}
+				fact.loaded = true;
+			}
+			dsig.os = fact.value;
+			return fact.get();
+		}
+	}
+
+	/**
+	 * @param dsig
+	 * @return The database version.
+	 * @throws Exception
+	 */
+	public String getDbVersion(DataSourceInfoGeter dsig) throws Exception {
+		Fact fact;
+		synchronized (this) {
+			if (this.version == null) {
+				this.version = new Fact();
+			}
+			fact = this.version;
+		}
+		synchronized (fact) {
+			if (!fact.loaded) {
+				try {
+					fact.value = dsig.getDbVersion(this.datasource);
+				} catch (Exception e) {
+					fact.error = e;
+				}
+				fact.loaded = true;
+			}
+			return fact.get();
+		}
+	}
+
+	/**
+	 * The patch level depends on the OJVM flag of the info getter, both variants are kept.
+	 * @param dsig
+	 * @return The database patch level.
+	 * @throws Exception
+	 */
+	public String getDbPatch(DataSourceInfoGeter dsig) throws Exception {
+		Fact fact;
+		synchronized (this) {
+			if (dsig.getOjvm()) {
+				if (this.ojvmPatch == null) {
+					this.ojvmPatch = new Fact();
+				}
+				fact = this.ojvmPatch;
+			} else {
+				if (this.patch == null) {
+					this.patch = new Fact();
+				}
+				fact = this.patch;
+			}
+		}
+		synchronized (fact) {
+			if (!fact.loaded) {
+				try {
+					fact.value = dsig.getDbPatch(this.datasource);
+				} catch (Exception e) {
+					fact.error = e;
+				}
+				fact.loaded = true;
+			}
+			return fact.get();
+		}
+	}
+
+	/**
+	 * The OJVM patch level, the same fact as getDbPatch with an info getter set to OJVM.
+	 * @return The Oracle OJVM patch level, null for other types.
+	 * @throws Exception
+	 */
+	public String getOjvmPatch() throws Exception {
+		if (!this.datasource.isOracle()) {
+			return null;
+		}
+		DataSourceInfoGeter dsig = DataSourceInfoGeter.initDatasourceInfoGetter(this.datasource.getDatasourceType());
+		dsig.setOjvm(true);
+		return this.getDbPatch(dsig);
+	}
+
+	/** One lazily read value, or the exception that reading it threw */
+	private static class Fact {
+		private boolean loaded = false;
+		private String value = null;
+		private Exception error = null;
+
+		private String get() throws Exception {
+			if (this.error != null) {
+				throw this.error;
+			}
+			return this.value;
+		}
+	}
+}
@@ -16,6 +16,11 @@ import java.util.List;
 //import com.guardium.datamodel.dbSource.CASRequiredException;
 import com.guardium.data.Datasource;
 import com.guardium.data.DataSourceConnectException;
+import com.guardium.data.DatasourceEnum;
+import com.guardium.data.DatasourceSession;
+import com.guardium.data.StatementFactory;
+import com.guardium.data.StatementFactory.Shape;
+import com.guardium.runtest.QueryWatchdog;
 import com.guardium.utils.Check;
 
 public class Db2InfoGetter extends DataSourceInfoGeter 
@@ -55,7 +60,7 @@ public class Db2InfoGetter extends DataSourceInfoGeter
 		Connection con = null;
 		try
 		{
-			con = ds.getConnection();
+			con = DatasourceSession.connect(ds);
 			String [] sa = getPatchValue(con, PATCH_SQL);
 			ret = "Fix Pack "+ sa[0] + ", " + sa[1];
 		}
@@ -67,7 +72,7 @@ public class Db2InfoGetter extends DataSourceInfoGeter
 		
 		finally
 		{
-			Check.disposal(con);
+			DatasourceSession.release(ds, con);
 		}
 		return ret;
 	}
@@ -78,10 +83,12 @@ public class Db2InfoGetter extends DataSourceInfoGeter
 	{
 			Statement stmt = null;
 			ResultSet res = null;
+			QueryWatchdog.Watch watch = null;
 			String [] ret = new String [2];
 			try
 			{
-				stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+				stmt = StatementFactory.createStatement(con, DatasourceEnum.DB2, Shape.SCALAR);
+				watch = watch(stmt);
 				res = stmt.executeQuery(patchSql);
 				if ( res.next() ) 
 				{
@@ -92,6 +99,7 @@ public class Db2InfoGetter extends DataSourceInfoGeter
 			} 
 			finally
 			{
+				end(watch);
 				Check.disposal(res);
 				Check.disposal(stmt);
 			}
@@ -104,12 +112,12 @@ public class Db2InfoGetter extends DataSourceInfoGeter
 		Connection connection = null;
 		try
 		{
-			connection = ds.getConnection();
+			connection = DatasourceSession.connect(ds);
 			return connection.getMetaData().getDatabaseProductName();//getOneTryValue(connection, OS_SQL, 1);
 		}
 		finally
 		{
-			Check.disposal(connection);
+			DatasourceSession.release(ds, connection);
 		}
 	}
 
@@ -223,7 +231,7 @@ public class Db2InfoGetter extends DataSourceInfoGeter
 		Connection con = null;
 		try
 		{
-			con = ds.getConnection();
+			con = DatasourceSession.connect(ds);
 			String [] sa = getPatchValue(con, PATCH_SQL);
 			ret = sa[0];
 		}
@@ -234,7 +242,7 @@ public class Db2InfoGetter extends DataSourceInfoGeter
 		}
 		finally
 		{
-			Check.disposal(con);
+			DatasourceSession.release(ds, con);
 		}
 		return ret;
 	}
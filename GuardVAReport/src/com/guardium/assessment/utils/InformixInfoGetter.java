@@ -13,6 +13,11 @@ import java.sql.Statement;
 import java.util.List;
 
 import com.guardium.data.Datasource;
+import com.guardium.data.DatasourceEnum;
+import com.guardium.data.DatasourceSession;
+import com.guardium.data.StatementFactory;
+import com.guardium.data.StatementFactory.Shape;
+import com.guardium.runtest.QueryWatchdog;
 import com.guardium.utils.Check;
 
 public class InformixInfoGetter extends DataSourceInfoGeter 
@@ -44,10 +49,12 @@ public class InformixInfoGetter extends DataSourceInfoGeter
 	{
 		Statement stmt = null;
 		ResultSet res = null;
-		Connection connection = ds.getConnection();
+		QueryWatchdog.Watch watch = null;
+		Connection connection = DatasourceSession.connect(ds);
 		try
 		{
-			stmt = connection.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			stmt = StatementFactory.createStatement(connection, DatasourceEnum.INFORMIX, Shape.SCALAR);
+			watch = watch(stmt);
 			try
 			{
 				res = stmt.executeQuery(OS_SQL);
@@ -72,9 +79,10 @@ public class InformixInfoGetter extends DataSourceInfoGeter
 		} 
 		finally
 		{
+			end(watch);
 			Check.disposal(res);
 			Check.disposal(stmt);
-			Check.disposal(connection);
+			DatasourceSession.release(ds, connection);
 		}
 	}
 
@@ -12,6 +12,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import com.guardium.data.Datasource;
+import com.guardium.data.DatasourceSession;
 import com.guardium.utils.Check;
 
 public class MysqlInfoGetter extends DataSourceInfoGeter 
@@ -35,7 +36,7 @@ public class MysqlInfoGetter extends DataSourceInfoGeter
 
 	public String getOs(Datasource ds) throws Exception
 	{
-		Connection connection = ds.getConnection();
+		Connection connection = DatasourceSession.connect(ds);
 		try
 		{
 			return getOneTryValue(connection, OS_SQL, 2);
@@ -43,7 +44,7 @@ public class MysqlInfoGetter extends DataSourceInfoGeter
 		} 
 		finally
 		{
-			Check.disposal(connection);
+			DatasourceSession.release(ds, connection);
 		}
 	}
 
@@ -24,9 +24,14 @@ import com.guardium.assessment.tests.TestScore;
 //import com.guardium.datamodel.dbSource.CASRequiredException;
 import com.guardium.data.DataSourceConnectException;
 import com.guardium.data.Datasource;
+import com.guardium.data.DatasourceEnum;
+import com.guardium.data.DatasourceSession;
 import com.guardium.data.DatasourceType;
+import com.guardium.data.StatementFactory;
+import com.guardium.data.StatementFactory.Shape;
 import com.guardium.data.DatasourceVersionHistory;
 import com.guardium.date.ThreadSafe_SimpleDateFormat;
+import com.guardium.runtest.QueryWatchdog;
 import com.guardium.utils.AdHocLogger;
 import com.guardium.utils.Check;
 //import com.ibm.xtq.ast.parsers.xpath.tempconstructors.ILetClause;
@@ -107,10 +112,12 @@ public class OracleInfoGetter extends DataSourceInfoGeter
 	{
 		Statement stmt = null;
 		ResultSet res = null;
-		Connection connection = ds.getConnection();
+		QueryWatchdog.Watch watch = null;
+		Connection connection = DatasourceSession.connect(ds);
 		try
 		{
-			stmt = connection.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			stmt = StatementFactory.createStatement(connection, DatasourceEnum.ORACLE, Shape.SCALAR);
+			watch = watch(stmt);
 			try
 			{
 				res = stmt.executeQuery(OS_SQL);
@@ -135,9 +142,10 @@ public class OracleInfoGetter extends DataSourceInfoGeter
 		} 
 		finally
 		{
+			end(watch);
 			Check.disposal(res);
 			Check.disposal(stmt);
-			Check.disposal(connection);			
+			DatasourceSession.release(ds, connection);			
 		}
 	}
 
@@ -159,10 +167,12 @@ public class OracleInfoGetter extends DataSourceInfoGeter
             Connection con = null;
             Statement stmt = null;
             ResultSet res = null;
+            QueryWatchdog.Watch watch = null;
             String query = "";
             boolean use_newquery = false;
 
-            String version = ds.getVersionLevel();
+            // the version is a shared fact of the datasource, see DatasourceFacts
+            String version = DatasourceFacts.get(ds).getDbVersion(this);
             boolean flag = getOjvm();
 
             //LOG.warn(msg + " version " + version + " flag " + flag);
@@ -186,13 +196,14 @@ public class OracleInfoGetter extends DataSourceInfoGeter
 
             try
             {
-                    con = ds.getConnection();
+                    con = DatasourceSession.connect(ds);
                     if (! use_newquery) {
                         patch = ret = getOneTryValue(con, query, 1);
                         //LOG.warn(msg + " use old query to get patch " + patch);
                     }
                     else {
-                            stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+                            stmt = StatementFactory.createStatement(con, DatasourceEnum.ORACLE, Shape.SCALAR);
+                            watch = watch(stmt);
                             res = stmt.executeQuery(query);
                             //LOG.warn(msg + " use new query to get patch ");
 
@@ -325,9 +336,10 @@ public class OracleInfoGetter extends DataSourceInfoGeter
         }
         finally
         {
+                end(watch);
                 Check.disposal(res);
                 Check.disposal(stmt);
-                Check.disposal(con);
+                DatasourceSession.release(ds, con);
         }
 
         return ret;
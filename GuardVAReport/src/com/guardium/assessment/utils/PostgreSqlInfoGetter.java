@@ -10,6 +10,7 @@ import java.sql.Connection;
 import java.util.List;
 
 import com.guardium.data.Datasource;
+import com.guardium.data.DatasourceSession;
 import com.guardium.utils.Check;
 
 public class PostgreSqlInfoGetter extends DataSourceInfoGeter 
@@ -25,7 +26,7 @@ public class PostgreSqlInfoGetter extends DataSourceInfoGeter
 
 	public String getOs(Datasource ds) throws Exception
 	{
-		Connection connection = ds.getConnection();
+		Connection connection = DatasourceSession.connect(ds);
 		try
 		{
 			String s = getOneTryValue(connection, OS_SQL, 1);
@@ -44,7 +45,7 @@ public class PostgreSqlInfoGetter extends DataSourceInfoGeter
 		} 
 		finally
 		{
-			Check.disposal(connection);
+			DatasourceSession.release(ds, connection);
 		}
 	}
 
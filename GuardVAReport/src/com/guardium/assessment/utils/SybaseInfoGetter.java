@@ -15,6 +15,7 @@ import org.apache.log4j.Logger;
 
 import com.guardium.runtest.CVETest;
 import com.guardium.data.Datasource;
+import com.guardium.data.DatasourceSession;
 import com.guardium.utils.Check;
 
 public class SybaseInfoGetter extends DataSourceInfoGeter 
@@ -44,7 +45,7 @@ public class SybaseInfoGetter extends DataSourceInfoGeter
 
 	public String getOs(Datasource ds) throws Exception
 	{
-		Connection connection = ds.getConnection();
+		Connection connection = DatasourceSession.connect(ds);
 		try
 		{
 			return getOneTryValue(connection, OS_SQL, 1);
@@ -52,7 +53,7 @@ public class SybaseInfoGetter extends DataSourceInfoGeter
 		} 
 		finally
 		{
-			Check.disposal(connection);
+			DatasourceSession.release(ds, connection);
 		}
 	}
 
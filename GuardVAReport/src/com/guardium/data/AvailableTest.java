@@ -9,9 +9,11 @@ package com.guardium.data;
 //import java.util.Date;
 import java.util.List;
 
+import com.guardium.assessment.utils.CveVersionIndex;
 import com.guardium.data.AvailableTest;
 import com.guardium.data.DatasourceType;
 import com.guardium.map.AvailableTestMap;
+import com.guardium.map.CveFixMap;
 //import com.guardium.utils.AdHocLogger;
 
 public class AvailableTest {
@@ -556,6 +558,13 @@ public class AvailableTest {
     	return;
     }
     
+    /**
+     * @return The CVE_FIX rows of the test compiled for version lookups when the catalog was loaded.
+     */
+    public CveVersionIndex getCveVersionIndex () {
+    	return CveFixMap.getCveFixMapObject().getVersionIndex(test_id);
+    }
+    
     public void dump () {
     	System.out.println("test id   " + test_id);
     	System.out.println("test desc " + test_desc);
@@ -10,34 +10,50 @@ package com.guardium.data;
 import java.sql.Connection;
 //import java.sql.DatabaseMetaData;
 import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Date;
-import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.ddtek.jdbc.extensions.ExtEmbeddedConnection;
 import com.guardium.data.Datasource;
 import com.guardium.data.HangingThreadException;
+import com.guardium.runtest.AssessmentScheduler;
 import com.guardium.utils.i18n.Say;
-//import com.guardium.utils.Check;
+import com.guardium.utils.Check;
 import com.guardium.utils.Informer;
+import com.guardium.utils.VirtualThreads;
 
 /**
+ * Opens connections on a bounded pool of <code>guardium.va.connectThreads</code> threads, so a
+ * connect that hangs in the driver can be timed out. With virtual threads each connect gets its own
+ * virtual thread and the slots below are the only limit.
+ * At most <code>guardium.va.connectsPerHost</code> connects run against the same host and at most
+ * <code>guardium.va.connectQueue</code> wait for a thread. A connect takes its host slot first and
+ * then a pool slot, so connects waiting on a busy host do not hold pool slots that connects to other
+ * hosts could use. Waiting for both may take at most half of the connect timeout, the rest is left
+ * for the driver; a connect that finds no room by then fails with a timeout. A worker that is still
+ * connecting after its caller gave up keeps its slots until the driver returns, and the connection
+ * it gets then is closed.
  *
  * @author dtoland on Jan 26, 2007 at 4:10:55 PM
  */
@@ -45,7 +61,25 @@ public class ConcurrentConnecter {
 	/** Local static logger for class */
 	//static final transient Logger LOG = Logger.getLogger(ConcurrentConnecter.class);
 
-	private static ThreadPoolExecutor executorService = null;
+	/** Most connects running at the same time on platform threads */
+	public static final int MAX_THREADS = Integer.getInteger("guardium.va.connectThreads", 32);
+
+	/** Most connects waiting for a thread */
+	public static final int MAX_QUEUED = Integer.getInteger("guardium.va.connectQueue", 128);
+
+	/** Most connects running or waiting against the same host */
+	public static final int MAX_PER_HOST = Integer.getInteger("guardium.va.connectsPerHost", 4);
+
+	/** A virtual thread per connect when virtual threads are enabled, else a pool of platform threads */
+	private static ExecutorService executorService = null;
+
+	/** Connects with the drivers that must not run on virtual threads, when virtual threads are enabled */
+	private static ThreadPoolExecutor platformExecutorService = null;
+
+	/** Room in the pool and its queue, taken before a connect is submitted and given back when it ends */
+	private static final int SLOTS = Math.max(1, MAX_THREADS) + Math.max(0, MAX_QUEUED);
+	private static final Semaphore slots = new Semaphore(SLOTS);
+	private static final Map<String,Semaphore> hostSlots = new ConcurrentHashMap<String,Semaphore>();
 
 	private static final AtomicLong CONNECT = new AtomicLong();
 	private static final AtomicLong CANCEL = new AtomicLong();
@@ -53,25 +87,116 @@ public class ConcurrentConnecter {
 	private static final AtomicLong INTERUPT = new AtomicLong();
 	private static final AtomicLong TIMEOUT = new AtomicLong();
 	private static final AtomicLong UNKNOWN = new AtomicLong();
+	private static final AtomicLong REJECTED = new AtomicLong();
+	private static final AtomicLong ABANDONED = new AtomicLong();
 
-	private static Map<String,Date> outstandingConns = new Hashtable<String,Date>();
+	private static Map<String,Date> outstandingConns = new ConcurrentHashMap<String,Date>();
 	/**
 	 * Cache the executor service for future uses
 	 * @return Executor Service
 	 */
-	protected static ThreadPoolExecutor getExecutorService() {
+	protected static synchronized ExecutorService getExecutorService() {
 		if (executorService==null || executorService.isShutdown() || executorService.isTerminated() ) {
-			executorService = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+			if (VirtualThreads.isEnabled()) {
+				executorService = VirtualThreads.newExecutor("VA-Connect-", MAX_THREADS);
+			} else {
+				executorService = newExecutorService(VirtualThreads.newPlatformFactory("VA-Connect-"));
+			}
 		}
 		return executorService;
 	}
 
+	/**
+	 * @param datasource
+	 * @return The executor for the connects of the datasource, platform threads for the drivers that pin virtual threads.
+	 */
+	protected static synchronized ExecutorService getExecutorService(Datasource datasource) {
+		if (VirtualThreads.isEnabled() && VirtualThreads.isPlatformDriver(datasource)) {
+			if (platformExecutorService==null || platformExecutorService.isShutdown() || platformExecutorService.isTerminated() ) {
+				platformExecutorService = newExecutorService(VirtualThreads.newPlatformFactory("VA-Connect-P-"));
+			}
+			return platformExecutorService;
+		}
+		return getExecutorService();
+	}
+
+	private static ThreadPoolExecutor newExecutorService(ThreadFactory factory) {
+		int threads = Math.max(1, MAX_THREADS);
+		// the slots keep the queue from overflowing
+		ThreadPoolExecutor exec = new ThreadPoolExecutor(
+				threads, threads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, MAX_QUEUED)),
+				factory);
+		exec.allowCoreThreadTimeOut(true);
+		return exec;
+	}
+
 	/**
 	 * Shuts down the service
 	 */
-	protected static void shutdown() {
-		executorService.shutdownNow();
-		executorService = null;
+	protected static synchronized void shutdown() {
+		if (executorService != null) {
+			executorService.shutdownNow();
+			executorService = null;
+		}
+		if (platformExecutorService != null) {
+			platformExecutorService.shutdownNow();
+			platformExecutorService = null;
+		}
+	}
+
+	/**
+	 * @param datasource
+	 * @return The connect slots of the host of the datasource, the same host as for the assessment limit.
+	 */
+	private static Semaphore getHostSlots(Datasource datasource) {
+		String host = AssessmentScheduler.hostKey(datasource);
+		Semaphore s = hostSlots.get(host);
+		if (s == null) {
+			synchronized (hostSlots) {
+				s = hostSlots.get(host);
+				if (s == null) {
+					s = new Semaphore(Math.max(1, MAX_PER_HOST));
+					hostSlots.put(host, s);
+				}
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * @return The connect counters and the current state of the pools, by name, written to the run log.
+	 */
+	public static Map<String,Long> getMetrics() {
+		Map<String,Long> m = new LinkedHashMap<String,Long>();
+		m.put("connect", CONNECT.get());
+		m.put("cancel", CANCEL.get());
+		m.put("exception", EXCEPTION.get());
+		m.put("interrupt", INTERUPT.get());
+		m.put("timeout", TIMEOUT.get());
+		m.put("unknown", UNKNOWN.get());
+		m.put("rejected", REJECTED.get());
+		m.put("abandoned", ABANDONED.get());
+		m.put("outstanding", (long) outstandingConns.size());
+		m.put("slotsInUse", (long) (SLOTS - slots.availablePermits()));
+		long active = 0, queued = 0, poolSize = 0, largestPool = 0;
+		synchronized (ConcurrentConnecter.class) {
+			for (ExecutorService service : new ExecutorService[] { executorService, platformExecutorService }) {
+				// a virtual thread per task has no pool to report
+				if (service instanceof ThreadPoolExecutor) {
+					ThreadPoolExecutor exec = (ThreadPoolExecutor) service;
+					active += exec.getActiveCount();
+					queued += exec.getQueue().size();
+					poolSize += exec.getPoolSize();
+					largestPool += exec.getLargestPoolSize();
+				}
+			}
+		}
+		m.put("active", active);
+		m.put("queued", queued);
+		m.put("poolSize", poolSize);
+		m.put("largestPool", largestPool);
+		return m;
 	}
 
 	/**
@@ -92,13 +217,17 @@ public class ConcurrentConnecter {
 		//System.out.println("Do we got here 1 ???");
 		
 		Stopwatch watch = new Stopwatch();
-		ThreadPoolExecutor exec = null;
+		ExecutorService exec = null;
 		Future<Connection> future = null;
 		Connection con = null;
 		ConnectWorker worker = null;
 		try {
+			long now = System.currentTimeMillis();
+			long deadline = now + millis;
+			// the slots may not take the time the driver needs to connect
+			long admitBy = now + millis / 2;
 			worker = new ConnectWorker(url, user, pw, other, datasource);
-			exec = getExecutorService();
+			exec = getExecutorService(datasource);
 			
 			//System.out.println("Do we got here 2 ???");
 			
@@ -110,10 +239,36 @@ public class ConcurrentConnecter {
 			*/
 			watch.start();
 			//System.out.println("Do we got here 3???");
-			future = exec.submit(worker);
+			// wait for room, the host first, rather than queue without limit
+			Semaphore host = getHostSlots(datasource);
+			if (!host.tryAcquire(Math.max(0L, admitBy - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+				REJECTED.incrementAndGet();
+				throw new TimeoutException("Too many connects to the host");
+			}
+			boolean admitted = false;
+			try {
+				admitted = slots.tryAcquire(Math.max(0L, admitBy - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			} finally {
+				if (!admitted) {
+					host.release();
+				}
+			}
+			if (!admitted) {
+				REJECTED.incrementAndGet();
+				throw new TimeoutException("No connect thread available");
+			}
+			worker.setSlots(host);
+			ConnectTask task = new ConnectTask(worker, exec);
+			future = task;
+			try {
+				exec.execute(task);
+			} catch (RuntimeException e) {
+				worker.releaseSlots();
+				throw e;
+			}
 			//System.out.println("Do we got here 4 ???");
 			
-			con = future.get(millis, TimeUnit.MILLISECONDS);
+			con = future.get(Math.max(1L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
 			//System.out.println("Do we got here 5 ???");
 			CONNECT.incrementAndGet();
 			
@@ -166,6 +321,12 @@ public class ConcurrentConnecter {
 		// the current thread was interrupted while waiting
 		} catch (InterruptedException e) {
 			INTERUPT.incrementAndGet();
+			if (future != null) {
+				future.cancel(true);
+			}
+			if (worker != null) {
+				worker.abandon();
+			}
 			/*
 			if ( LOG.isInfoEnabled() ) {
 				LOG.info("* Interupted Worker: " + worker
@@ -182,13 +343,20 @@ public class ConcurrentConnecter {
 
 			//System.out.println("Do we got here 11 ???");
 			// Belt and braces, if the thread is still around it would throw a cancellation exceptions
-			future.cancel(true);
+			if (future != null) {
+				future.cancel(true);
+			}
+			// a connection the driver returns after this is closed
+			if (worker != null) {
+				worker.abandon();
+			}
 
 			//datasource.removeDriver(); // Need to remove the drivers when Future throws a timeout (in ConcurrentConnecter method Connect) See Bug 35134
 
 			// purge the thread pool
-			int prePurge = exec.getPoolSize();
-			exec.purge();
+			if (exec instanceof ThreadPoolExecutor) {
+				((ThreadPoolExecutor) exec).purge();
+			}
 			/*
 			if ( LOG.isInfoEnabled() ) {
 				Throwable cause = e.getCause() != null ? e.getCause() : e;
@@ -446,6 +614,11 @@ public class ConcurrentConnecter {
 		private static int testid =0;
 		private int myId =0;
 		private Datasource datasource = null;
+		private Semaphore hostSlots = null;
+		private final AtomicBoolean released = new AtomicBoolean(false);
+		private volatile boolean started = false;
+		private boolean abandoned = false;
+		private Connection connected = null;
 		private synchronized int increaseId()
 		{
 			testid ++;
@@ -472,11 +645,69 @@ public class ConcurrentConnecter {
 			this.myId= increaseId();
 		}
 
+		/**
+		 * @param hostSlots The host slot taken for this connect, given back with the pool slot.
+		 */
+		protected void setSlots(Semaphore hostSlots) {
+			this.hostSlots = hostSlots;
+		}
+
+		/**
+		 * Gives back the pool and host slots of this connect, once.
+		 */
+		protected void releaseSlots() {
+			if (this.released.compareAndSet(false, true)) {
+				if (this.hostSlots != null) {
+					this.hostSlots.release();
+				}
+				slots.release();
+			}
+		}
+
+		protected boolean isStarted() {
+			return this.started;
+		}
+
+		/**
+		 * The caller gave up, the connection is closed if the driver returned it already, or when it does.
+		 */
+		protected void abandon() {
+			Connection con;
+			synchronized (this) {
+				this.abandoned = true;
+				con = this.connected;
+				this.connected = null;
+			}
+			if (con != null) {
+				ABANDONED.incrementAndGet();
+				Check.disposal(con);
+			}
+		}
+
+		/**
+		 * @param con The connection the driver returned.
+		 * @return The connection, null if the caller gave up and it was closed.
+		 */
+		private Connection deliver(Connection con) {
+			synchronized (this) {
+				if (!this.abandoned) {
+					this.connected = con;
+					return con;
+				}
+			}
+			if (con != null) {
+				ABANDONED.incrementAndGet();
+				Check.disposal(con);
+			}
+			return null;
+		}
+
 		/**
 		 * @see java.util.concurrent.Callable#call()
 		 */
 		@SuppressWarnings("synthetic-access")
 		public Connection call() throws Exception {
+			this.started = true;
 			String id = "" + this.myId + "+" + this.datasource.getDatasourceId();
 			
 			//System.out.println("connection call id " + id);
@@ -510,9 +741,8 @@ public class ConcurrentConnecter {
 				
 				DbDriver dd = this.datasource.getDbDriver();
 				String drivername = dd.getDriverClass();
-				Class<Driver> driverClass = (Class<Driver>) Class.forName(drivername);
-				Driver driver = driverClass.newInstance();
-				DriverManager.registerDriver(driver);
+				// one instance per driver class, not registered again with DriverManager on each connect
+				Driver driver = DriverRegistry.getDriver(drivername);
 				//con = DriverManager.getConnection(url, "system", "guardium");
 				//System.out.println("Connected: " + dbms + " " + user + "@" + url);
 				
@@ -534,7 +764,7 @@ public class ConcurrentConnecter {
 					LOG.debug( watch.checkElapsed("Connected!") );
 				}
 				*/
-				return con;
+				return deliver(con);
 
 			} finally {
 				/*
@@ -543,6 +773,34 @@ public class ConcurrentConnecter {
 				}
 				*/
 				outstandingConns.remove(""+this.myId+"+"+this.datasource.getDatasourceId());
+				releaseSlots();
+			}
+		}
+	}
+
+	/**
+	 * A connect on the pool, a task canceled before it starts leaves the queue and gives back the
+	 * slots of its worker.
+	 */
+	protected static class ConnectTask extends FutureTask<Connection> {
+		private final ConnectWorker worker;
+		private final ExecutorService exec;
+
+		protected ConnectTask(ConnectWorker worker, ExecutorService exec) {
+			super(worker);
+			this.worker = worker;
+			this.exec = exec;
+		}
+
+		@Override
+		protected void done() {
+			// a started worker gives them back when the driver returns
+			if (!this.worker.isStarted()) {
+				// the slots are given back only once the queue has room for the next connect
+				if (this.isCancelled() && this.exec instanceof ThreadPoolExecutor) {
+					((ThreadPoolExecutor) this.exec).remove(this);
+				}
+				this.worker.releaseSlots();
 			}
 		}
 	}
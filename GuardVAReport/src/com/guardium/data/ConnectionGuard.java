@@ -0,0 +1,260 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Health of the connections to the datasources under assessment.
+ * <p>
+ * A connection is probed with Connection.isValid, limited to <code>guardium.va.probeTimeout</code>
+ * seconds. A failed connect is retried <code>guardium.va.connectRetries</code> times after a
+ * jittered, doubling pause starting at <code>guardium.va.connectBackoff</code> milliseconds,
+ * except for login failures, which are not retried so the account is not locked.
+ * <p>
+ * After <code>guardium.va.circuitFailures</code> failed connects in a row to a datasource, its
+ * circuit opens. A login failure is not counted, the database answered: for <code>guardium.va.circuitOpenTime</code> milliseconds connects to it fail
+ * at once with the last error. The circuit is then half open, a single connect is let through
+ * to test the datasource while the others keep failing at once: the circuit closes if it
+ * succeeds and opens again if it fails. Each run starts with every circuit closed, see resetAll.
+ */
+public class ConnectionGuard {
+
+	/** Seconds a validity probe may take */
+	public static final int PROBE_TIMEOUT = Integer.getInteger("guardium.va.probeTimeout", 2);
+
+	/** Retries of a failed connect */
+	public static final int RETRIES = Integer.getInteger("guardium.va.connectRetries", 2);
+
+	/** Pause in milliseconds before the first retry, doubled for each next one */
+	public static final int BACKOFF = Integer.getInteger("guardium.va.connectBackoff", 500);
+
+	/** Failed connects in a row that open the circuit of a datasource */
+	public static final int CIRCUIT_FAILURES = Integer.getInteger("guardium.va.circuitFailures", 3);
+
+	/** Milliseconds the circuit of a datasource stays open */
+	public static final int CIRCUIT_OPEN_TIME = Integer.getInteger("guardium.va.circuitOpenTime", 60000);
+
+	private static final ConcurrentHashMap<Datasource,Circuit> circuits = new ConcurrentHashMap<Datasource,Circuit>();
+
+	private ConnectionGuard() {
+	}
+
+	/**
+	 * @param con
+	 * @return Whether the connection is open and answers, a driver without isValid is only
+	 * checked for being open.
+	 */
+	public static boolean isValid(Connection con) {
+		if (con == null) {
+			return false;
+		}
+		try {
+			if (con.isClosed()) {
+				return false;
+			}
+			return con.isValid(Math.max(1, PROBE_TIMEOUT));
+		} catch (SQLException e) {
+			return false;
+		} catch (AbstractMethodError e) {
+			// a JDBC 3 driver
+			return true;
+		} catch (RuntimeException e) {
+			// not supported by the driver
+			return true;
+		}
+	}
+
+	/**
+	 * Connects to the datasource, retrying a failed connect.
+	 * @param ds
+	 * @return A new connection.
+	 * @throws DataSourceConnectException The last failure, or at once if the circuit of the datasource is open.
+	 */
+	public static Connection connect(Datasource ds) throws DataSourceConnectException {
+		return connect(ds, RETRIES);
+	}
+
+	/**
+	 * Connects to the datasource once, for extra connections that are not required.
+	 * @param ds
+	 * @return A new connection.
+	 * @throws DataSourceConnectException The failure, or at once if the circuit of the datasource is open.
+	 */
+	public static Connection connectOnce(Datasource ds) throws DataSourceConnectException {
+		return connect(ds, 0);
+	}
+
+	private static Connection connect(Datasource ds, int retries) throws DataSourceConnectException {
+		Circuit circuit = getCircuit(ds);
+		circuit.check();
+		long pause = Math.max(1, BACKOFF);
+		for (int attempt = 0; ; attempt++) {
+			try {
+				Connection con = ds.getConnection();
+				circuit.success();
+				return con;
+			} catch (DataSourceConnectException e) {
+				if (isLoginFailure(e)) {
+					// the database is up, the credentials are wrong and retrying would lock the account
+					circuit.ignore();
+					throw e;
+				}
+				circuit.failure(e);
+				if (attempt >= retries || circuit.isOpen()) {
+					throw e;
+				}
+			}
+			try {
+				// between half and one and a half of the pause, so retries to one host spread out
+				Thread.sleep(pause / 2 + ThreadLocalRandom.current().nextLong(pause));
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new DataSourceConnectException("Interrupted while reconnecting to: '" + ds + "'.", ie);
+			}
+			pause *= 2;
+		}
+	}
+
+	/**
+	 * @param ds
+	 * @return Whether connects to the datasource currently fail at once.
+	 */
+	public static boolean isOpen(Datasource ds) {
+		Circuit circuit = circuits.get(ds);
+		return circuit != null && circuit.isOpen();
+	}
+
+	/**
+	 * Closes the circuit of the datasource, the next connect goes to the database.
+	 * @param ds
+	 */
+	public static void reset(Datasource ds) {
+		circuits.remove(ds);
+	}
+
+	/**
+	 * Closes every circuit, at the start of a run that tests the datasources again.
+	 */
+	public static void resetAll() {
+		circuits.clear();
+	}
+
+	private static Circuit getCircuit(Datasource ds) {
+		Circuit circuit = circuits.get(ds);
+		if (circuit == null) {
+			Circuit created = new Circuit(CIRCUIT_FAILURES, CIRCUIT_OPEN_TIME);
+			circuit = circuits.putIfAbsent(ds, created);
+			if (circuit == null) {
+				circuit = created;
+			}
+		}
+		return circuit;
+	}
+
+	/**
+	 * @param e
+	 * @return Whether the connect failed on the credentials, SQL state class 28.
+	 */
+	static boolean isLoginFailure(Throwable e) {
+		for (Throwable c = e; c != null; c = c.getCause()) {
+			if (c instanceof SQLException) {
+				String state = ((SQLException) c).getSQLState();
+				if (state != null && state.startsWith("28")) {
+					return true;
+				}
+			}
+			if (c.getCause() == c) {
+				break;
+			}
+		}
+		return false;
+	}
+
+	/** The connect failures in a row to one datasource */
+	static class Circuit {
+		private final int threshold;
+		private final long openTime;
+		private int failures = 0;
+		private long openUntil = 0;
+		/** When the connect testing a half open circuit started, 0 if none is running */
+		private long probeSince = 0;
+		private DataSourceConnectException last = null;
+
+		/**
+		 * @param threshold Failed connects in a row that open the circuit.
+		 * @param openTime Milliseconds the circuit stays open before a connect tests it.
+		 */
+		Circuit(int threshold, long openTime) {
+			this.threshold = Math.max(1, threshold);
+			this.openTime = Math.max(0, openTime);
+		}
+
+		/**
+		 * @return Whether connects fail at once, open or half open with its test connect running.
+		 */
+		synchronized boolean isOpen() {
+			if (this.failures < this.threshold) {
+				return false;
+			}
+			long now = System.currentTimeMillis();
+			return this.openUntil > now || this.isProbing(now);
+		}
+
+		/**
+		 * Lets the connect through if the circuit is closed, or if it is the test connect of a half
+		 * open circuit.
+		 * @throws DataSourceConnectException The last failure, if the connect must fail at once.
+		 */
+		synchronized void check() throws DataSourceConnectException {
+			if (this.failures < this.threshold) {
+				return;
+			}
+			long now = System.currentTimeMillis();
+			if (this.openUntil > now || this.isProbing(now)) {
+				throw new DataSourceConnectException(this.last.getMessage(), this.last);
+			}
+			// half open, this connect tests the datasource
+			this.probeSince = now;
+		}
+
+		synchronized void success() {
+			this.failures = 0;
+			this.openUntil = 0;
+			this.probeSince = 0;
+			this.last = null;
+		}
+
+		/**
+		 * A failure that says nothing about the health of the datasource, like a login failure: it is
+		 * not counted, a test connect of a half open circuit is over.
+		 */
+		synchronized void ignore() {
+			this.probeSince = 0;
+		}
+
+		synchronized void failure(DataSourceConnectException e) {
+			this.last = e;
+			this.failures++;
+			this.probeSince = 0;
+			if (this.failures >= this.threshold) {
+				this.openUntil = System.currentTimeMillis() + this.openTime;
+			}
+		}
+
+		/**
+		 * A test connect that never reported back, its thread died, is given up after the open time
+		 * so the circuit does not stay open.
+		 */
+		private boolean isProbing(long now) {
+			return this.probeSince > 0 && now - this.probeSince < Math.max(this.openTime, 1000L);
+		}
+	}
+}
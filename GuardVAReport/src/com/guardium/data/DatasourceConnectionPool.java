@@ -0,0 +1,299 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.data;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.guardium.utils.AdHocLogger;
+import com.guardium.utils.Check;
+
+/**
+ * A small bounded pool of connections to one datasource, used to run the tests of a
+ * datasource concurrently. Connections are opened up front by open(), a connection
+ * that is found closed when it is released is replaced, or dropped if the datasource
+ * no longer accepts connections.
+ * The first connection is the session connection of the run when it is free, see DatasourceSession.
+ * The catalog of each connection is read when it joins the pool, so a test that switches catalogs
+ * can give its connection back set to it again, see restore.
+ * <p>
+ * The size is taken from the system property <code>guardium.va.connectionPool.&lt;TYPE&gt;</code>,
+ * where TYPE is the DatasourceEnum name (ORACLE, MSSQL, DB2 ...), then from
+ * <code>guardium.va.connectionPool</code>. The default of 1 keeps the serial behavior.
+ */
+public class DatasourceConnectionPool {
+
+	public static final String POOL_SIZE_PROPERTY = "guardium.va.connectionPool";
+
+	private static final String KEY = "DatasourceConnectionPool";
+
+	private static final int DEFAULT_POOL_SIZE = 1;
+
+	private final Datasource datasource;
+	private final int maxSize;
+
+	private final LinkedList<Connection> idle = new LinkedList<Connection>();
+	private final List<Connection> all = new ArrayList<Connection>();
+	/** The catalog of each connection when it joined the pool, missing if it could not be read */
+	private final Map<Connection,String> catalogs = new IdentityHashMap<Connection,String>();
+	private boolean closed = false;
+
+	public DatasourceConnectionPool(Datasource datasource, int maxSize) {
+		this.datasource = datasource;
+		this.maxSize = Math.max(1, maxSize);
+	}
+
+	/**
+	 * @param datasource
+	 * @return The configured pool size for the type of the datasource.
+	 */
+	public static int getPoolSize(Datasource datasource) {
+		int size = Integer.getInteger(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE);
+		DatasourceEnum type = datasource == null ? null : DatasourceEnum.get(datasource);
+		if (type != null) {
+			size = Integer.getInteger(POOL_SIZE_PROPERTY + "." + type.name(), size);
+		}
+		return Math.max(1, size);
+	}
+
+	/**
+	 * Makes the pool available to the tests of the run, see get.
+	 * @param cachedParams The cached parameters of the run.
+	 */
+	@SuppressWarnings("unchecked")
+	public void share(Map cachedParams) {
+		cachedParams.put(KEY, this);
+	}
+
+	/**
+	 * @param cachedParams The cached parameters of the run.
+	 * @return The pool of the run, null if its tests do not run on a pool.
+	 */
+	public static DatasourceConnectionPool get(Map cachedParams) {
+		return cachedParams == null ? null : (DatasourceConnectionPool) cachedParams.get(KEY);
+	}
+
+	/**
+	 * Opens the connections of the pool. Only the first connection is required, if a later
+	 * one fails the pool just stays smaller.
+	 * @return The number of connections opened.
+	 * @throws DataSourceConnectException If not even one connection could be opened.
+	 */
+	public int open() throws DataSourceConnectException {
+		Connection first = DatasourceSession.connect(this.datasource);
+		this.add(first);
+		for (int i = 1; i < this.maxSize; i++) {
+			try {
+				this.add( ConnectionGuard.connectOnce(this.datasource) );
+			} catch (DataSourceConnectException e) {
+				AdHocLogger.logException(e);
+				break;
+			}
+		}
+		return this.size();
+	}
+
+	private void add(Connection con) {
+		this.readCatalog(con);
+		synchronized (this) {
+			if (!this.closed) {
+				this.all.add(con);
+				this.idle.add(con);
+				this.notifyAll();
+				return;
+			}
+		}
+		DatasourceSession.release(this.datasource, con);
+	}
+
+	/**
+	 * @return The number of connections currently held by the pool.
+	 */
+	public synchronized int size() {
+		return this.all.size();
+	}
+
+	/**
+	 * Waits for an idle connection.
+	 * @return A connection for the exclusive use of the caller, null if the pool has no connection left.
+	 * @throws InterruptedException
+	 */
+	public synchronized Connection lease() throws InterruptedException {
+		while (this.idle.isEmpty() && !this.all.isEmpty() && !this.closed) {
+			this.wait();
+		}
+		if (this.idle.isEmpty()) {
+			return null;
+		}
+		return this.idle.removeFirst();
+	}
+
+	/**
+	 * @return An idle connection for the exclusive use of the caller, null if none is idle now.
+	 */
+	public synchronized Connection poll() {
+		if (this.idle.isEmpty() || this.closed) {
+			return null;
+		}
+		return this.idle.removeFirst();
+	}
+
+	/**
+	 * Returns a leased connection. A connection closed by the test is replaced by a new one.
+	 * @param con
+	 */
+	public void release(Connection con) {
+		if (con == null) {
+			return;
+		}
+		boolean usable = false;
+		try {
+			usable = !con.isClosed();
+		} catch (Exception e) {
+			// treat as unusable
+		}
+		if (usable) {
+			synchronized (this) {
+				if (!this.closed) {
+					this.idle.add(con);
+					this.notifyAll();
+					return;
+				}
+			}
+			DatasourceSession.release(this.datasource, con);
+			return;
+		}
+
+		this.retire(con);
+	}
+
+	/**
+	 * Returns a leased connection whose test may have switched catalogs. The connection is kept
+	 * if it is on the catalog it had when it joined the pool, or can be set back to it; otherwise,
+	 * and for Informix which switches databases with a statement, it is replaced by a new one.
+	 * @param con
+	 */
+	public void restore(Connection con) {
+		if (con == null) {
+			return;
+		}
+		String catalog;
+		boolean known;
+		synchronized (this) {
+			known = this.catalogs.containsKey(con);
+			catalog = this.catalogs.get(con);
+		}
+		if (known && !DatasourceEnum.INFORMIX.equals(this.datasource)) {
+			try {
+				if (!con.isClosed()) {
+					String current = con.getCatalog();
+					if (catalog != null && !catalog.equals(current)) {
+						con.setCatalog(catalog);
+						current = con.getCatalog();
+					}
+					if (catalog == null ? current == null : catalog.equals(current)) {
+						this.release(con);
+						return;
+					}
+				}
+			} catch (Exception e) {
+				// replaced below
+			}
+		}
+		this.retire(con);
+	}
+
+	/**
+	 * Closes a leased connection and replaces it with a new one, used for connections whose
+	 * session state may have been changed by the test. Once the pool is closed the connection
+	 * is only closed.
+	 * @param con
+	 */
+	public void retire(Connection con) {
+		if (con == null) {
+			return;
+		}
+		DatasourceSession.discard(this.datasource, con);
+		synchronized (this) {
+			if (this.closed) {
+				this.catalogs.remove(con);
+				this.all.remove(con);
+				return;
+			}
+		}
+		Connection fresh = null;
+		try {
+			fresh = ConnectionGuard.connectOnce(this.datasource);
+			this.readCatalog(fresh);
+		} catch (DataSourceConnectException e) {
+			AdHocLogger.logException(e);
+		}
+
+		// swap in one step so waiting callers never see an empty pool in between
+		synchronized (this) {
+			this.catalogs.remove(con);
+			this.all.remove(con);
+			if (fresh != null && !this.closed) {
+				this.all.add(fresh);
+				this.idle.add(fresh);
+				fresh = null;
+			}
+			this.notifyAll();
+		}
+		if (fresh != null) {
+			Check.disposal(fresh);
+		}
+	}
+
+	/**
+	 * Closes a leased connection and removes it from the pool.
+	 * @param con
+	 */
+	public void discard(Connection con) {
+		if (con == null) {
+			return;
+		}
+		synchronized (this) {
+			this.catalogs.remove(con);
+			this.all.remove(con);
+			this.notifyAll();
+		}
+		DatasourceSession.discard(this.datasource, con);
+	}
+
+	private void readCatalog(Connection con) {
+		try {
+			String catalog = con.getCatalog();
+			synchronized (this) {
+				this.catalogs.put(con, catalog);
+			}
+		} catch (Exception e) {
+			// not known, the connection is replaced after a session changing test
+		}
+	}
+
+	/**
+	 * Closes every connection of the pool, leased connections are closed when released.
+	 */
+	public void close() {
+		List<Connection> toClose;
+		synchronized (this) {
+			this.closed = true;
+			toClose = new ArrayList<Connection>(this.idle);
+			this.all.removeAll(this.idle);
+			this.idle.clear();
+			this.notifyAll();
+		}
+		for (Connection con : toClose) {
+			DatasourceSession.release(this.datasource, con);
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.guardium.utils.Check;
+
+/**
+ * The connection a run opens to a datasource when it plans the assessment, kept open for the
+ * query tests, the CVE tests and the info getters of the datasource instead of each of them
+ * connecting again.
+ * <p>
+ * open() connects, reads the catalog and the version history, and keeps the connection with
+ * these facts until close(). connect() hands out the session connection when no one else is
+ * using it and it is still open, otherwise a new connection; release() takes either back,
+ * switching the session connection back to its catalog.
+ * A caller that changed the session state of the connection gives it back with discard().
+ */
+public class DatasourceSession {
+
+	private static final ConcurrentHashMap<Datasource,DatasourceSession> sessions = new ConcurrentHashMap<Datasource,DatasourceSession>();
+
+	private final Datasource datasource;
+	private final String catalog;
+	private final DatasourceVersionHistory versionHistory;
+
+	private Connection con;
+	private boolean leased = false;
+
+	private DatasourceSession(Datasource datasource, Connection con, String catalog, DatasourceVersionHistory versionHistory) {
+		this.datasource = datasource;
+		this.con = con;
+		this.catalog = catalog;
+		this.versionHistory = versionHistory;
+	}
+
+	/**
+	 * Connects to the datasource and reads its catalog and version, the version and patch
+	 * levels are set on the datasource. A session already open for the datasource is closed.
+	 * @param ds
+	 * @return The session.
+	 * @throws DataSourceConnectException
+	 * @throws SQLException If the catalog cannot be read.
+	 */
+	public static DatasourceSession open(Datasource ds) throws DataSourceConnectException, SQLException {
+		close(ds);
+		Connection con = ConnectionGuard.connect(ds);
+		DatasourceSession session;
+		try {
+			String catalog = con.getCatalog();
+			DatasourceVersionHistory history = ds.findVersionHistory(con);
+			if (history != null) {
+				ds.setVersionLevel(history.getVersionLevel());
+				ds.setPatchLevel(history.getPatchLevel());
+			}
+			session = new DatasourceSession(ds, con, catalog, history);
+		} catch (SQLException | RuntimeException e) {
+			Check.disposal(con);
+			throw e;
+		}
+		DatasourceSession previous = sessions.put(ds, session);
+		if (previous != null) {
+			previous.dispose();
+		}
+		return session;
+	}
+
+	/**
+	 * @param ds
+	 * @return The open session of the datasource, null if none.
+	 */
+	public static DatasourceSession get(Datasource ds) {
+		return ds == null ? null : sessions.get(ds);
+	}
+
+	/**
+	 * @param ds
+	 * @return The session connection when it is free and open, otherwise a new connection.
+	 * Either way the caller gives it back with release() or discard().
+	 * @throws DataSourceConnectException
+	 */
+	public static Connection connect(Datasource ds) throws DataSourceConnectException {
+		DatasourceSession session = get(ds);
+		if (session != null) {
+			Connection con = session.lease();
+			if (con != null) {
+				return con;
+			}
+		}
+		return ConnectionGuard.connect(ds);
+	}
+
+	/**
+	 * Gives back a connection from connect(). The session connection stays open for the next
+	 * caller, unless it was closed; any other connection is closed.
+	 * @param ds
+	 * @param con
+	 * @return null, to clear the caller's reference.
+	 */
+	public static Connection release(Datasource ds, Connection con) {
+		if (con == null) {
+			return null;
+		}
+		DatasourceSession session = get(ds);
+		if (session == null || !session.giveBack(con, false)) {
+			Check.disposal(con);
+		}
+		return null;
+	}
+
+	/**
+	 * Closes a connection from connect(), the session connection included, the next caller
+	 * of connect() gets a new connection.
+	 * @param ds
+	 * @param con
+	 * @return null, to clear the caller's reference.
+	 */
+	public static Connection discard(Datasource ds, Connection con) {
+		if (con == null) {
+			return null;
+		}
+		DatasourceSession session = get(ds);
+		if (session == null || !session.giveBack(con, true)) {
+			Check.disposal(con);
+		}
+		return null;
+	}
+
+	/**
+	 * Ends the session of the datasource, its connection is closed now if free, else when released.
+	 * @param ds
+	 */
+	public static void close(Datasource ds) {
+		if (ds == null) {
+			return;
+		}
+		DatasourceSession session = sessions.remove(ds);
+		if (session != null) {
+			session.dispose();
+		}
+	}
+
+	/**
+	 * Ends every session, at the end of a run.
+	 */
+	public static void closeAll() {
+		List<Datasource> l = new ArrayList<Datasource>(sessions.keySet());
+		for (Datasource ds : l) {
+			close(ds);
+		}
+	}
+
+	public Datasource getDatasource() {
+		return this.datasource;
+	}
+
+	/**
+	 * @return The catalog of the connection when the session was opened.
+	 */
+	public String getCatalog() {
+		return this.catalog;
+	}
+
+	/**
+	 * @return The version history read when the session was opened, null if none was found.
+	 */
+	public DatasourceVersionHistory getVersionHistory() {
+		return this.versionHistory;
+	}
+
+	private synchronized Connection lease() {
+		if (this.leased || this.con == null) {
+			return null;
+		}
+		boolean usable = false;
+		try {
+			usable = !this.con.isClosed();
+		} catch (Exception e) {
+			// treat as unusable
+		}
+		if (!usable) {
+			this.con = Check.disposal(this.con);
+			return null;
+		}
+		this.leased = true;
+		return this.con;
+	}
+
+	/**
+	 * @return false if the connection is not the session connection.
+	 */
+	private boolean giveBack(Connection con, boolean drop) {
+		synchronized (this) {
+			if (con != this.con) {
+				return false;
+			}
+			this.leased = false;
+			if (!drop && sessions.get(this.datasource) == this && this.restore(con)) {
+				return true;
+			}
+			this.con = null;
+		}
+		Check.disposal(con);
+		return true;
+	}
+
+	/**
+	 * Switches the connection back to the catalog of the session, a test looping over the
+	 * databases may have left it on another one.
+	 * @return false if the connection is closed or its catalog cannot be restored.
+	 */
+	private boolean restore(Connection con) {
+		try {
+			if (con.isClosed()) {
+				return false;
+			}
+			if (this.catalog != null && !this.catalog.equals(con.getCatalog())) {
+				con.setCatalog(this.catalog);
+			}
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	private void dispose() {
+		Connection toClose = null;
+		synchronized (this) {
+			if (!this.leased) {
+				toClose = this.con;
+				this.con = null;
+			}
+		}
+		Check.disposal(toClose);
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.data;
+
+import java.sql.Driver;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One instance of each JDBC driver class, by class loader and driver class name.
+ * Connections are opened with Driver.connect on the shared instance, drivers are not added to
+ * DriverManager, whose list is synchronized and scanned on every lookup.
+ */
+public class DriverRegistry {
+
+	private static final ConcurrentHashMap<ClassLoader,ConcurrentHashMap<String,Driver>> drivers =
+		new ConcurrentHashMap<ClassLoader,ConcurrentHashMap<String,Driver>>();
+
+	private DriverRegistry() {
+	}
+
+	/**
+	 * @param driverClass The class name of the driver, see DbDriver.getDriverClass().
+	 * @return The driver loaded by the class loader of the connecter.
+	 * @throws Exception If the driver class cannot be loaded or instantiated.
+	 */
+	public static Driver getDriver(String driverClass) throws Exception {
+		return getDriver(driverClass, DriverRegistry.class.getClassLoader());
+	}
+
+	/**
+	 * @param driverClass The class name of the driver.
+	 * @param loader The class loader of the driver.
+	 * @return The driver, instantiated the first time it is asked for.
+	 * @throws Exception If the driver class cannot be loaded or instantiated.
+	 */
+	public static Driver getDriver(String driverClass, ClassLoader loader) throws Exception {
+		ConcurrentHashMap<String,Driver> byClass = drivers.get(loader);
+		if (byClass == null) {
+			ConcurrentHashMap<String,Driver> created = new ConcurrentHashMap<String,Driver>();
+			byClass = drivers.putIfAbsent(loader, created);
+			if (byClass == null) {
+				byClass = created;
+			}
+		}
+
+		Driver driver = byClass.get(driverClass);
+		if (driver == null) {
+			Class<?> cls = Class.forName(driverClass, true, loader);
+			Driver created = (Driver) cls.getDeclaredConstructor().newInstance();
+			driver = byClass.putIfAbsent(driverClass, created);
+			if (driver == null) {
+				driver = created;
+			}
+		}
+		return driver;
+	}
+
+	/**
+	 * Drops the driver instances, the next connection instantiates its driver again.
+	 */
+	public static void clear() {
+		drivers.clear();
+	}
+}
@@ -29,6 +29,7 @@ import com.guardium.data.Datasource;
 import com.guardium.data.ConcurrentConnecter;
 import com.guardium.data.DataSourceConnectException;
 import com.guardium.map.DatasourceVersionHistoryMap;
+import com.guardium.runtest.QueryWatchdog;
 import com.guardium.utils.AdHocLogger;
 import com.guardium.utils.Check;
 import com.guardium.utils.Dater;
@@ -662,10 +663,12 @@ import com.guardium.utils.i18n.SayAppRes;
 				if(!"8.1".equals(version))
 				{
 					Statement stmt = null;
+					QueryWatchdog.Watch watch = null;
 					ResultSet rs = null;
 					String versql = VER_DB2;
 					try {					
 						stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+						watch = QueryWatchdog.watch(stmt, QueryWatchdog.getTimeout(null, null));
 						rs = stmt.executeQuery(versql);
 						rs.next();
 						version = rs.getString(1);
@@ -703,6 +706,9 @@ import com.guardium.utils.i18n.SayAppRes;
 					}
 					finally {
 						rs = Check.disposal(rs);
+						if (watch != null) {
+							watch.end();
+						}
 						stmt = Check.disposal(stmt);
 					}
 				}
@@ -776,9 +782,11 @@ import com.guardium.utils.i18n.SayAppRes;
 			case INFORMIX:
 				// Informix JDBC driver metadata mis-reports 11.0 as 10.1
 				Statement ifxStmt = null;
+				QueryWatchdog.Watch ifxWatch = null;
 				ResultSet ifxRs = null;
 				try {
 					ifxStmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+					ifxWatch = QueryWatchdog.watch(ifxStmt, QueryWatchdog.getTimeout(null, null));
 					ifxRs = ifxStmt.executeQuery(VER_IFX_MAJ);
 					ifxRs.next();
 					String major = ifxRs.getString(1);
@@ -798,6 +806,9 @@ import com.guardium.utils.i18n.SayAppRes;
 
 				} finally {
 					ifxRs = Check.disposal(ifxRs);
+					if (ifxWatch != null) {
+						ifxWatch.end();
+					}
 					ifxStmt = Check.disposal(ifxStmt);
 				}
 				break;
@@ -812,9 +823,11 @@ import com.guardium.utils.i18n.SayAppRes;
                         // try again to use sql command to get version
                         if ( Check.isEmpty(version) ) {
                                 PreparedStatement oraStmt = null;
+                                QueryWatchdog.Watch oraWatch = null;
                                 ResultSet oraRs = null;
                                 try {
                                         oraStmt = con.prepareStatement(VER_ORA);
+                                        oraWatch = QueryWatchdog.watch(oraStmt, QueryWatchdog.getTimeout(null, null));
                                         String service = datasource.getServiceName();
                                         oraStmt.setString(1, service);
                                         oraRs = oraStmt.executeQuery();
@@ -850,6 +863,9 @@ import com.guardium.utils.i18n.SayAppRes;
 
                             } finally {
                                     oraRs = Check.disposal(oraRs);
+                                    if (oraWatch != null) {
+                                        oraWatch.end();
+                                    }
                                     oraStmt = Check.disposal(oraStmt);
                             }
                     }
@@ -902,6 +918,7 @@ import com.guardium.utils.i18n.SayAppRes;
 				
 			case TERADATA:
 				Statement trdStmt = null;
+				QueryWatchdog.Watch trdWatch = null;
 				ResultSet trdRs = null;
 				String verSQL = VER_TRD_PDE;
 				try {
@@ -909,6 +926,7 @@ import com.guardium.utils.i18n.SayAppRes;
 						verSQL = VER_TRD_TDBMS; // PDE Used as default
 						
 						trdStmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+						trdWatch = QueryWatchdog.watch(trdStmt, QueryWatchdog.getTimeout(null, null));
 						trdRs = trdStmt.executeQuery(verSQL);
 						trdRs.next();
 						String version = trdRs.getString(1);
@@ -927,16 +945,21 @@ import com.guardium.utils.i18n.SayAppRes;
 				}
 				finally {
 					trdRs = Check.disposal(trdRs);
+					if (trdWatch != null) {
+						trdWatch.end();
+					}
 					trdStmt = Check.disposal(trdStmt);
 				}
 				break;
 			case NETEZZA:
 			{
 				Statement stmt = null;
+				QueryWatchdog.Watch watch = null;
 				ResultSet rs = null;
 				String versql = VER_NTZA;
 				try {					
 					stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+					watch = QueryWatchdog.watch(stmt, QueryWatchdog.getTimeout(null, null));
 					rs = stmt.executeQuery(versql);
 					rs.next();
 					String version = rs.getString(1);
@@ -1035,6 +1058,9 @@ import com.guardium.utils.i18n.SayAppRes;
 				}
 				finally {
 					rs = Check.disposal(rs);
+					if (watch != null) {
+						watch.end();
+					}
 					stmt = Check.disposal(stmt);
 				}							
 			}			
@@ -1062,9 +1088,11 @@ import com.guardium.utils.i18n.SayAppRes;
 			case INFORMIX:
 				// Informix JDBC driver metadata mis-reports 11.0 as 10.1
 				Statement stmt = null;
+				QueryWatchdog.Watch watch = null;
 				ResultSet rs = null;
 				try {
 					stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+					watch = QueryWatchdog.watch(stmt, QueryWatchdog.getTimeout(null, null));
 					rs = stmt.executeQuery(VER_IFX_FULL);
 					rs.next();
 					String patch = rs.getString(1);
@@ -1083,6 +1111,9 @@ import com.guardium.utils.i18n.SayAppRes;
 
 				} finally {
 					rs = Check.disposal(rs);
+					if (watch != null) {
+						watch.end();
+					}
 					stmt = Check.disposal(stmt);
 				}
 				break;
@@ -1203,6 +1234,7 @@ import com.guardium.utils.i18n.SayAppRes;
 
 			case TERADATA:
 				Statement trdStmt = null;
+				QueryWatchdog.Watch trdWatch = null;
 				ResultSet trdRs = null;
 				String verSQL = VER_TRD_PDE;
 				try {
@@ -1210,6 +1242,7 @@ import com.guardium.utils.i18n.SayAppRes;
 						verSQL = VER_TRD_TDBMS; // PDE Used as default
 						
 						trdStmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+						trdWatch = QueryWatchdog.watch(trdStmt, QueryWatchdog.getTimeout(null, null));
 						trdRs = trdStmt.executeQuery(verSQL);
 						trdRs.next();
 						String patch = trdRs.getString(1);
@@ -1228,15 +1261,20 @@ import com.guardium.utils.i18n.SayAppRes;
 				}
 				finally {
 					trdRs = Check.disposal(trdRs);
+					if (trdWatch != null) {
+						trdWatch.end();
+					}
 					trdStmt = Check.disposal(trdStmt);
 				}
 
 			case NETEZZA:
 				Statement netstmt = null;
+				QueryWatchdog.Watch netWatch = null;
 				ResultSet netrs = null;
 				String versql = VER_NTZA;
 				try {					
 					netstmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+					netWatch = QueryWatchdog.watch(netstmt, QueryWatchdog.getTimeout(null, null));
 					netrs = netstmt.executeQuery(versql);
 					netrs.next();
 					String patch = netrs.getString(1);
@@ -1370,6 +1408,9 @@ import com.guardium.utils.i18n.SayAppRes;
 				}
 				finally {
 					rs = Check.disposal(netrs);
+					if (netWatch != null) {
+						netWatch.end();
+					}
 					stmt = Check.disposal(netstmt);
 				}				
 							
@@ -1407,9 +1448,11 @@ import com.guardium.utils.i18n.SayAppRes;
 		// MSS requires a query
 		} else if ( datasource.isMsSqlServer() ) {
 			Statement stmt = null;
+			QueryWatchdog.Watch watch = null;
 			ResultSet rs = null;
 			try {
 				stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+				watch = QueryWatchdog.watch(stmt, QueryWatchdog.getTimeout(null, null));
 				rs = stmt.executeQuery(VER_MSS_FULL);
 				if ( rs.next() ) {
 					result = rs.getString(1);
@@ -1423,15 +1466,20 @@ import com.guardium.utils.i18n.SayAppRes;
 
 			} finally {
 				rs = Check.disposal(rs);
+				if (watch != null) {
+					watch.end();
+				}
 				stmt = Check.disposal(stmt);
 			}
 
 		} else if ( datasource.isInformix() ) {
 			// Ifx 11 metadata mis-reports version as 10.01
 			Statement stmt = null;
+			QueryWatchdog.Watch watch = null;
 			ResultSet rs = null;
 			try {
 				stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+				watch = QueryWatchdog.watch(stmt, QueryWatchdog.getTimeout(null, null));
 				rs = stmt.executeQuery(VER_IFX_FULL);
 				if ( rs.next() ) {
 					result = rs.getString(1);
@@ -1444,6 +1492,9 @@ import com.guardium.utils.i18n.SayAppRes;
 
 			} finally {
 				rs = Check.disposal(rs);
+				if (watch != null) {
+					watch.end();
+				}
 				stmt = Check.disposal(stmt);
 			}
 
@@ -1746,9 +1797,11 @@ import com.guardium.utils.i18n.SayAppRes;
 			case INFORMIX:
 				// Informix JDBC driver metadata mis-reports 11.0 as 10.1
 				Statement ifxStmt = null;
+				QueryWatchdog.Watch ifxWatch = null;
 				ResultSet ifxRs = null;
 				try {
 					ifxStmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+					ifxWatch = QueryWatchdog.watch(ifxStmt, QueryWatchdog.getTimeout(null, null));
 					ifxRs = ifxStmt.executeQuery(VER_IFX_MAJ);
 					ifxRs.next();
 					String maj = ifxRs.getString(1);
@@ -1764,12 +1817,16 @@ import com.guardium.utils.i18n.SayAppRes;
 
 				} finally {
 					ifxRs = Check.disposal(ifxRs);
+					if (ifxWatch != null) {
+						ifxWatch.end();
+					}
 					ifxStmt = Check.disposal(ifxStmt);
 				}
 				break;
 
 			case TERADATA:
 				Statement trdStmt = null;
+				QueryWatchdog.Watch trdWatch = null;
 				ResultSet trdRs = null;
 				String verSQL = VER_TRD_PDE;
 				try {
@@ -1777,6 +1834,7 @@ import com.guardium.utils.i18n.SayAppRes;
 						verSQL = VER_TRD_TDBMS; // PDE Used as default
 						
 						trdStmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+						trdWatch = QueryWatchdog.watch(trdStmt, QueryWatchdog.getTimeout(null, null));
 						trdRs = trdStmt.executeQuery(verSQL);
 						trdRs.next();
 						String version = trdRs.getString(1);
@@ -1795,16 +1853,21 @@ import com.guardium.utils.i18n.SayAppRes;
 				}
 				finally {
 					trdRs = Check.disposal(trdRs);
+					if (trdWatch != null) {
+						trdWatch.end();
+					}
 					trdStmt = Check.disposal(trdStmt);
 				}
 				break;
 			case NETEZZA:
 			{
 				Statement stmt = null;
+				QueryWatchdog.Watch watch = null;
 				ResultSet rs = null;
 				String versql = VER_NTZA;
 				try {					
 					stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+					watch = QueryWatchdog.watch(stmt, QueryWatchdog.getTimeout(null, null));
 					rs = stmt.executeQuery(versql);
 					rs.next();
 					String version = rs.getString(1);
@@ -1826,6 +1889,9 @@ import com.guardium.utils.i18n.SayAppRes;
 				}
 				finally {
 					rs = Check.disposal(rs);
+					if (watch != null) {
+						watch.end();
+					}
 					stmt = Check.disposal(stmt);
 				}							
 			}			
@@ -283,6 +283,11 @@ mysql>
      * The value for the loop_databases field
      */
     private String loop_databases;
+
+    /**
+     * The value for the query_timeout field, in seconds, 0 when the test uses the default limit
+     */
+    private int query_timeout = 0;
   
   
     /**
@@ -696,6 +701,30 @@ mysql>
     	}
     }
 
+    /**
+     * Get the QueryTimeout
+     *
+     * @return int
+     */
+    public int getQueryTimeout()
+    {
+        return query_timeout;
+    }
+
+    /**
+     * Set the value of QueryTimeout
+     *
+     * @param v new value
+     */
+    public void setQueryTimeout(int v) 
+    {
+    	if (this.query_timeout != v)
+    	{
+    		this.query_timeout = v;
+    		setModified(true);
+    	}
+    }
+
     private static List fieldNames = null;
 
     /**
@@ -0,0 +1,119 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.data;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Creates the statements of the assessment tests.
+ * <p>
+ * Test queries are read once from the first row to the last, so they run on forward only, read only
+ * cursors, which the drivers stream instead of keeping the result on the server or in memory
+ * for scrolling. The fetch size depends on the shape of the query: a scalar check reads one row,
+ * a detail query reads all of them.
+ * <p>
+ * Fetch sizes can be changed with <code>guardium.va.fetchSize.scalar</code> and
+ * <code>guardium.va.fetchSize.&lt;type&gt;</code>, like <code>guardium.va.fetchSize.oracle</code>,
+ * where 0 leaves the driver default.
+ */
+public class StatementFactory {
+
+	/** The shape of a query result */
+	public enum Shape {
+		/** A single value or a check on the first row */
+		SCALAR,
+		/** All the rows of the result */
+		DETAIL
+	}
+
+	/** Rows fetched at once for a scalar check */
+	public static final int SCALAR_FETCH_SIZE = Integer.getInteger("guardium.va.fetchSize.scalar", 1);
+
+	/** Rows fetched at once for a detail query of a datasource type without its own size */
+	public static final int DETAIL_FETCH_SIZE = Integer.getInteger("guardium.va.fetchSize", 0);
+
+	private static final int[] detailFetchSizes = new int[DatasourceEnum.values().length];
+
+	static {
+		for (DatasourceEnum type : DatasourceEnum.values()) {
+			int size;
+			switch (type) {
+			case ORACLE:
+			case DB2:
+			case DB2_400:
+			case DB2_ZOS:
+				// these drivers fetch only a few rows per round trip by default
+				size = 500;
+				break;
+			default:
+				// the others send the result of a forward only cursor in large blocks already
+				size = DETAIL_FETCH_SIZE;
+				break;
+			}
+			detailFetchSizes[type.ordinal()] = Integer.getInteger("guardium.va.fetchSize." + type.name().toLowerCase(), size);
+		}
+	}
+
+	private StatementFactory() {
+	}
+
+	/**
+	 * @param type The datasource type, null if not known.
+	 * @param shape
+	 * @return The fetch size of the query, 0 for the driver default.
+	 */
+	public static int getFetchSize(DatasourceEnum type, Shape shape) {
+		if (shape == Shape.SCALAR) {
+			return SCALAR_FETCH_SIZE;
+		}
+		return type == null ? DETAIL_FETCH_SIZE : detailFetchSizes[type.ordinal()];
+	}
+
+	/**
+	 * @param con
+	 * @param shape
+	 * @return A forward only, read only statement, for a connection of an unknown datasource type.
+	 * @throws SQLException
+	 */
+	public static Statement createStatement(Connection con, Shape shape) throws SQLException {
+		return createStatement(con, (DatasourceEnum) null, shape);
+	}
+
+	/**
+	 * @param con
+	 * @param ds The datasource of the connection, null if not known.
+	 * @param shape
+	 * @return A forward only, read only statement.
+	 * @throws SQLException
+	 */
+	public static Statement createStatement(Connection con, Datasource ds, Shape shape) throws SQLException {
+		return createStatement(con, ds == null ? null : DatasourceEnum.get(ds), shape);
+	}
+
+	/**
+	 * @param con
+	 * @param type The datasource type, null if not known.
+	 * @param shape
+	 * @return A forward only, read only statement.
+	 * @throws SQLException
+	 */
+	public static Statement createStatement(Connection con, DatasourceEnum type, Shape shape) throws SQLException {
+		Statement stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		int fetchSize = getFetchSize(type, shape);
+		if (fetchSize > 0) {
+			try {
+				stmt.setFetchSize(fetchSize);
+			} catch (SQLException e) {
+				// only a hint, some drivers refuse it
+			}
+		}
+		return stmt;
+	}
+}
@@ -123,6 +123,8 @@ mysql> desc TEST_RESULT;
 	String datasourceVersion;
 	String testStartTime;
 	String testEndTime;
+	/** When the test ran, the original run for a carried forward result */
+	Date executedTime;
 	String stig_ref;
 	String stig_severity; 
 	String stig_iacontrols;
@@ -175,6 +177,14 @@ mysql> desc TEST_RESULT;
 	public void setTestEndTime(String endTime) {
 		this.testEndTime = endTime;
 	}
+
+	public Date getExecutedTime() {
+		return executedTime;
+	}
+
+	public void setExecutedTime(Date executedTime) {
+		this.executedTime = executedTime;
+	}
 	
 	
 	public long getTestResultId() {
@@ -9,6 +9,7 @@ package com.guardium.data;
 import java.util.Date;
 
 import com.guardium.map.AvailableTestMap;
+import com.guardium.map.ResultHistory;
 import com.guardium.map.VaSummaryMap;
 
 public class VaSummary {
@@ -202,6 +203,7 @@ public class VaSummary {
 			
 	public void save() {
 		VaSummaryPeer.add(this);
+		ResultHistory.recordSummary(this);
 		return;
 	}
 	
@@ -28,6 +28,7 @@ import javax.swing.ImageIcon;
 
 import com.guardium.data.Datasource;
 import com.guardium.gui.MainRegistry;
+import com.guardium.map.CatalogLoader;
 
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
@@ -77,6 +78,9 @@ public class AppMain extends JFrame {
     		// should exit
     	}
     	
+    	// load the test catalog in the background
+    	CatalogLoader.start();
+    	
     	// check if we need to load the driver
     	ddt.checkLoadDriver();
     	
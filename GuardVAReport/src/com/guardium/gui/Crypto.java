@@ -34,8 +34,22 @@ public class Crypto {
 
 	static final String key = "@#" + "Guardium" + "1qa!QA";
 	
-	private static Cipher ecipher;
-	private static Cipher dcipher;
+	private static SecretKeySpec skeySpec;
+
+	// a Cipher is not thread safe, each thread uses its own for the string methods
+	// and each stream gets a new one
+	private static final ThreadLocal<Cipher> ecipher = new ThreadLocal<Cipher>() {
+		@Override
+		protected Cipher initialValue() {
+			return newCipher(Cipher.ENCRYPT_MODE);
+		}
+	};
+	private static final ThreadLocal<Cipher> dcipher = new ThreadLocal<Cipher>() {
+		@Override
+		protected Cipher initialValue() {
+			return newCipher(Cipher.DECRYPT_MODE);
+		}
+	};
 	
 	/*
 	SecretKey key = KeyGenerator.getInstance("DES").generateKey();
@@ -51,18 +65,22 @@ public class Crypto {
 		if (raw.length != 16) {
 			throw new IllegalArgumentException("Invalid key size.");
 		}
+		skeySpec = new SecretKeySpec(raw, "AES");
+		// check the key now rather than on first use
+		newCipher(Cipher.ENCRYPT_MODE);
+		newCipher(Cipher.DECRYPT_MODE);
+		return;
+	}
+
+	private static Cipher newCipher(int mode) {
 		try {
-			SecretKeySpec skeySpec = new SecretKeySpec(raw, "AES");
-			ecipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-			ecipher.init(Cipher.ENCRYPT_MODE, skeySpec, new IvParameterSpec(new byte[16]));
-		
-			dcipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-			dcipher.init(Cipher.DECRYPT_MODE, skeySpec, new IvParameterSpec(new byte[16]));
+			Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			cipher.init(mode, skeySpec, new IvParameterSpec(new byte[16]));
+			return cipher;
 		}
 		catch (Exception e) {
 			throw new IllegalArgumentException(e);
 		}
-		return;
 	}
 
 
@@ -119,7 +137,7 @@ public class Crypto {
     public static String encrypt(String value)
             throws GeneralSecurityException {
 
-         byte[] enc = ecipher.doFinal(value.getBytes(Charset.forName("UTF-8")));
+         byte[] enc = ecipher.get().doFinal(value.getBytes(Charset.forName("UTF-8")));
          //return new sun.misc.BASE64Encoder().encode(enc);
          return DatatypeConverter.printBase64Binary(enc);
     }
@@ -132,7 +150,7 @@ public class Crypto {
         try {
             //dec = new sun.misc.BASE64Decoder().decodeBuffer(encrypted);
             dec = DatatypeConverter.parseBase64Binary(encrypted);
-            original = dcipher.doFinal(dec);
+            original = dcipher.get().doFinal(dec);
         }
         catch ( Exception e ) {
             return "Invalid Encoded string";
@@ -145,7 +163,7 @@ public class Crypto {
 		try {
 			byte[] buf = new byte[1024];
 			// bytes at this stream are first encoded
-			os = new CipherOutputStream(os, ecipher);
+			os = new CipherOutputStream(os, newCipher(Cipher.ENCRYPT_MODE));
 			// read in the clear text and write to out to encrypt
 			int numRead = 1024;
 			while ((numRead = is.read(buf)) >= 0) {
@@ -161,11 +179,19 @@ public class Crypto {
 
 	}
 
+	/**
+	 * @param is The encrypted stream.
+	 * @return A stream that decrypts is as it is read.
+	 */
+	public static InputStream decryptStream(InputStream is) {
+		return new CipherInputStream(is, newCipher(Cipher.DECRYPT_MODE));
+	}
+
 	public static void decrypt(InputStream is, OutputStream os) {
 		try {
 			byte[] buf = new byte[1024];
 			// bytes read from stream will be decrypted
-			CipherInputStream cis = new CipherInputStream(is, dcipher);
+			CipherInputStream cis = new CipherInputStream(is, newCipher(Cipher.DECRYPT_MODE));
 			// read in the decrypted bytes and write the clear text to out
 			int numRead = 0;
 			while ((numRead = cis.read(buf)) >= 0) {
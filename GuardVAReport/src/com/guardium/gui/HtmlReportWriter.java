@@ -0,0 +1,149 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.gui;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes an HTML report in UTF-8 as it is printed, through a buffered file channel, so no part
+ * of the report is held in memory beyond the buffer.
+ * <p>
+ * A detail longer than <code>guardium.va.report.inlineDetail</code> characters is not written
+ * in the report: it goes to a page of its own in a directory next to it, &lt;report&gt;_details,
+ * and the report shows an expandable section that loads only that page when opened. The
+ * directory is only created if the report has such a detail.
+ */
+public class HtmlReportWriter extends PrintWriter {
+
+	/** Longest detail written in the report itself */
+	public static final int INLINE_DETAIL = Integer.getInteger("guardium.va.report.inlineDetail", 4000);
+
+	/** Script of the expandable sections, to be included in the head of the report */
+	public static final String DETAIL_SCRIPT =
+			"function loadDetail(e){if(e.open&&!e.loaded){var f=document.createElement('iframe');" +
+			"f.src=e.getAttribute('data-src');f.style.width='100%';f.style.height='300px';f.style.border='0';" +
+			"e.appendChild(f);e.loaded=true}}";
+
+	/** Head of the report and of each detail page, declares the encoding they are written in */
+	public static final String META_CHARSET = "<meta charset='UTF-8'>";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final String DETAIL_PREFIX = "d";
+	private static final String DETAIL_EXTENSION = ".html";
+
+	private final File detailDir;
+	private final String detailUrl;
+	private int detailCount = 0;
+
+	/**
+	 * @param file The report, replaced if it exists.
+	 * @throws IOException
+	 */
+	public HtmlReportWriter(File file) throws IOException {
+		super(open(file));
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		String detailName = (dot > 0 ? name.substring(0, dot) : name) + "_details";
+		this.detailDir = new File(file.getAbsoluteFile().getParentFile(), detailName);
+		this.detailUrl = encode(detailName) + "/";
+		// the details of a previous report of the same name
+		deleteDetails(this.detailDir);
+	}
+
+	private static Writer open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		return new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1), BUFFER_SIZE);
+	}
+
+	private static String encode(String name) {
+		try {
+			return URLEncoder.encode(name, "UTF-8").replace("+", "%20");
+		} catch (UnsupportedEncodingException e) {
+			return name;
+		}
+	}
+
+	/**
+	 * Deletes the detail pages of the directory, and the directory if nothing else is left in it.
+	 * @param dir
+	 */
+	private static void deleteDetails(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File f : files) {
+			String name = f.getName();
+			if (name.startsWith(DETAIL_PREFIX) && name.endsWith(DETAIL_EXTENSION)) {
+				f.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	/**
+	 * @param text A detail of the report, in HTML.
+	 * @return The detail itself if short, else an expandable section that loads it from its own page.
+	 */
+	public String detail(String text) {
+		if (text == null || text.length() <= INLINE_DETAIL) {
+			return text;
+		}
+		String page = DETAIL_PREFIX + (this.detailCount + 1) + DETAIL_EXTENSION;
+		PrintWriter details = null;
+		try {
+			if (!this.detailDir.isDirectory() && !this.detailDir.mkdirs()) {
+				return text;
+			}
+			details = new PrintWriter(open(new File(this.detailDir, page)));
+			details.print("<!DOCTYPE html><html><head>");
+			details.print(META_CHARSET);
+			details.print("<style>body{font:12px Myriad,Helvetica,Tahoma,Arial,clean,sans-serif}</style></head><body>");
+			details.print(text);
+			details.println("</body></html>");
+		} catch (IOException e) {
+			// no detail page, keep the detail in the report
+			return text;
+		} finally {
+			if (details != null) {
+				details.close();
+			}
+		}
+		if (details.checkError()) {
+			return text;
+		}
+		this.detailCount++;
+		return "<details ontoggle='loadDetail(this)' data-src='" + this.detailUrl + page + "'>" +
+				"<summary>Show details (" + text.length() + " characters)</summary></details>";
+	}
+
+	/**
+	 * @return The directory of the detail pages, whether it was created or not.
+	 */
+	public File getDetailDir() {
+		return this.detailDir;
+	}
+
+	/**
+	 * @return The number of details written to pages of their own.
+	 */
+	public int getDetailCount() {
+		return this.detailCount;
+	}
+}
@@ -1,9 +1,9 @@
-/*
- * IBM Confidential
- * OCO Source Materials
- * © Copyright IBM Corp. 2002, 2023
- * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
- */
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
 package com.guardium.gui;
 
 import java.awt.BorderLayout;
@@ -55,6 +55,8 @@ import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import javax.swing.border.MatteBorder;
@@ -66,6 +68,7 @@ import com.guardium.data.AssessmentTest;
 import com.guardium.data.AvailableTest;
 import com.guardium.data.DataSourceConnectException;
 import com.guardium.data.Datasource;
+import com.guardium.data.DatasourceSession;
 import com.guardium.data.DatasourceType;
 import com.guardium.data.DatasourceVersionHistory;
 import com.guardium.data.DbDriver;
@@ -77,17 +80,21 @@ import com.guardium.map.CveFixMap;
 import com.guardium.map.DatasourceMap;
 import com.guardium.map.DatasourceTypeMap;
 import com.guardium.map.DbDriverMap;
+import com.guardium.map.ResultHistory;
 import com.guardium.map.SecurityAssessmentMap;
 import com.guardium.map.SqlbasedAssessmentDefinitionMap;
 import com.guardium.map.TestResultMap;
 import com.guardium.runtest.AssessmentRunner;
 import com.guardium.utils.AdHocLogger;
+import com.guardium.utils.ResultExporter;
 
 
 public class MainPane extends JPanel implements ActionListener{
 	
 	
 	public static final String EMAIL_ADDRESS = "guardva@us.ibm.com";
+	/** Runs shown in the trend of a test that changed since the previous run */
+	public static final int TREND_RUNS = Integer.getInteger("guardium.va.report.trendRuns", 5);
 	
 	public JButton btnNew;
 	public JButton btnEdit;
@@ -479,18 +486,12 @@ public class MainPane extends JPanel implements ActionListener{
 
 		Date startDate = new Date();       
 		
-		Connection con;
 		System.out.println("Establishing Connection for " + ds.getName() );
 		if(this.task.isCancelled()) return; //The user has canceled the task
 		try {
 			progressBar.setString("Connecting...");
-			con = ds.getConnection();
-			String tmp = con.getCatalog();
-			DatasourceVersionHistory dhistory  = ds.findVersionHistory(con);
-			if (dhistory != null) {
-				ds.setVersionLevel(dhistory.getVersionLevel());
-				ds.setPatchLevel(dhistory.getPatchLevel());			
-			}
+			// kept open for the tests, the session sets the version and patch levels
+			DatasourceSession.open(ds);
 		} catch (DataSourceConnectException | SQLException e) {
 			System.out.println("Error getting connection: " + e.getMessage());
 			//AdHocLogger.logException(e);
@@ -509,6 +510,7 @@ public class MainPane extends JPanel implements ActionListener{
 		if ( queryAvailableTestList.size() == 0 && cveAvailableTestList.size() == 0) {
 			// reason - no test found to run
 			// fail end routine			
+			DatasourceSession.close(ds);
 			return;
 		}
 		
@@ -571,6 +573,14 @@ public class MainPane extends JPanel implements ActionListener{
 		
 		// after run, remove the test list
 		SecurityAssessmentPeer.removeAll();
+		DatasourceSession.close(ds);
+		ResultExporter.close();
+		// the changes since the previous run of the datasource, read before the history is closed
+		String dataSourceHash = ResultHistory.getDatasourceHash(ds);
+		List<ResultHistory.Entry> newlyFailed = ResultHistory.getNewlyFailed(dataSourceHash);
+		List<ResultHistory.Entry> newlyPassed = ResultHistory.getNewlyPassed(dataSourceHash);
+		Map<Integer, List<ResultHistory.Entry>> trends = getTrends(dataSourceHash, newlyFailed, newlyPassed);
+		ResultHistory.close();
 		
 		Date endDate = new Date();				
 		long diff = endDate.getTime() - startDate.getTime();
@@ -584,16 +594,17 @@ public class MainPane extends JPanel implements ActionListener{
 		TestResultPeer.dumpSummary();
 		List<TestResult> testResults = TestResultPeer.getTestResultList();		
 		TestResult tmpResult = testResults.get(0);
-		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(fileHtml)));
+		HtmlReportWriter out = new HtmlReportWriter(fileHtml);
 		System.out.println("Printing results to html");
 		if(this.task.isCancelled()) return; //The user has canceled the task
-		out.println("<!DOCTYPE html><html><head><title>IBM Security Guardium Vulnerability Assessment Evaluation Edition</title>");
+		out.println("<!DOCTYPE html><html><head>" + HtmlReportWriter.META_CHARSET + "<title>IBM Security Guardium Vulnerability Assessment Evaluation Edition</title>");
 		out.println("<style>"+getCSSStyle()+"</style>");
 		out.println("<script>"+getJavascript()+"</script>");
 		out.println("</head><body>");
 		out.println("<div class='title'>IBM Security&reg; Guardium&reg; Vulnerability Assessment Evaluation Edition</div>"); //LOGO			
 		
-		String tableTAG = getTableData(testResults);		
+		// the failed tests by severity are in the summary, above the table
+		countFailedTests(testResults);
 		
 		//Summary Section
 		out.println("<div style='margin-top:20px'>");//main section
@@ -744,8 +755,9 @@ public class MainPane extends JPanel implements ActionListener{
 		//Link to full version online
 		out.println("<div class='categoryLabel' style='padding:20px 0px 0px 40px;'><span style='padding:3px;font-size:14px'>For complete information on the full Guardium Vulnerability Assessment product, go to " +
 				"<a href='http://www.ibm.com/software/products/en/infoguarvulnasse' target='_blank'>http://www.ibm.com/software/products/en/infoguarvulnasse</a></span></div>");
+		writeChanges(out, newlyFailed, newlyPassed, trends);
 		//print table
-		out.println(tableTAG);			
+		writeTableData(out, testResults);
 		out.println("<div style='font-weight:bold;margin-top:10px;'>&copy;Copyright IBM Corporation 2016.</div>");
 		out.println("</body></html>");
 		out.close();
@@ -816,11 +828,76 @@ public class MainPane extends JPanel implements ActionListener{
 	
 	private Hashtable<String, Hashtable<String, Integer>> mapAssessmentCount = new Hashtable<String, Hashtable<String, Integer>>();
 	
-	private String getTableData(List<TestResult> testResults){
-		StringBuilder builder = new StringBuilder();		
+	private void countFailedTests(List<TestResult> testResults){
+		for(TestResult result: testResults){
+			if("fail".equalsIgnoreCase(result.getScoreDesc())){
+				String severity = result.getSeverity();
+				String category = result.getCategoryName();
+				severity = (severity != null) ? severity.toLowerCase() : "";
+				category = (category != null) ? category.toLowerCase() : "";
+				computeSeverity(severity, category);
+			}
+		}
+	}
+	
+	/**
+	 * @return The last TREND_RUNS results of each test that changed, by test id.
+	 */
+	private Map<Integer, List<ResultHistory.Entry>> getTrends(String dataSourceHash, List<ResultHistory.Entry> newlyFailed, List<ResultHistory.Entry> newlyPassed){
+		Map<Integer, List<ResultHistory.Entry>> trends = new LinkedHashMap<Integer, List<ResultHistory.Entry>>();
+		List<ResultHistory.Entry> changed = new ArrayList<ResultHistory.Entry>(newlyFailed);
+		changed.addAll(newlyPassed);
+		for(ResultHistory.Entry e: changed){
+			int testId = e.getResult().getTestId();
+			if(!trends.containsKey(testId)){
+				trends.put(testId, ResultHistory.getTrend(dataSourceHash, testId, TREND_RUNS));
+			}
+		}
+		return trends;
+	}
+	
+	/**
+	 * Writes the tests that fail or pass since the previous run of the datasource, with their last
+	 * scores, nothing if the history is off or the datasource did not run before.
+	 */
+	private void writeChanges(HtmlReportWriter out, List<ResultHistory.Entry> newlyFailed, List<ResultHistory.Entry> newlyPassed,
+			Map<Integer, List<ResultHistory.Entry>> trends){
+		if(newlyFailed.isEmpty() && newlyPassed.isEmpty()){
+			return;
+		}
+		out.println("<div class='heading' style='margin-top:20px'>Changes Since the Previous Run</div>");
+		out.print("<table><thead><th>Change</th><th>Test</th><th>Last Runs</th></thead><tbody>");
+		writeChangeRows(out, "Newly failed", "#A91024", newlyFailed, trends);
+		writeChangeRows(out, "Newly passed", "#008A52", newlyPassed, trends);
+		out.println("</tbody></table>");
+	}
+	
+	private void writeChangeRows(HtmlReportWriter out, String change, String color, List<ResultHistory.Entry> entries,
+			Map<Integer, List<ResultHistory.Entry>> trends){
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+		for(ResultHistory.Entry e: entries){
+			TestResult result = e.getResult();
+			StringBuilder trend = new StringBuilder();
+			List<ResultHistory.Entry> runs = trends.get(result.getTestId());
+			// oldest first
+			for(int i = runs.size() - 1; i >= 0; i--){
+				ResultHistory.Entry run = runs.get(i);
+				trend.append("<div>").append(sdf.format(run.getExecutedTime())).append(" ")
+					.append(run.getResult().getScoreDesc()).append("</div>");
+			}
+			out.printf("<tr><td style='width:200px; vertical-align:top; font-weight:bold; color:%s;'>%s</td>" +
+					"<td style='vertical-align:top;'>%s</td><td style='width:300px; vertical-align:top;'>%s</td></tr>",
+					color, change, result.getTestDesc(), trend);
+		}
+	}
+	
+	/**
+	 * Writes the results table row by row, long details are written to the sidecar file of the report.
+	 */
+	private void writeTableData(HtmlReportWriter out, List<TestResult> testResults){
 		Object[] item;
-		builder.append("<table>");
-		builder.append("<thead><th>Result</th><th>Test</th><th>Description</th><th>Recommendation</th></thead><tbody>");
+		out.print("<table>");
+		out.print("<thead><th>Result</th><th>Test</th><th>Description</th><th>Recommendation</th></thead><tbody>");
 		for(TestResult result: testResults){
 			boolean showFullDetails = showFullResults(result);
 			boolean isStatusError = false;
@@ -831,9 +908,6 @@ public class MainPane extends JPanel implements ActionListener{
 			String testName = result.getTestDesc();
 			severity = (severity != null) ? severity.toLowerCase() : "";
 			category = (category != null) ? category.toLowerCase() : "";
-			if("fail".equalsIgnoreCase(status)){
-				computeSeverity(severity, category);
-			}	
 			if(!"pass".equalsIgnoreCase(status) && !"fail".equalsIgnoreCase(status)){
 				isStatusError = true;
 			}
@@ -865,17 +939,15 @@ public class MainPane extends JPanel implements ActionListener{
 			}
 			
 			String statusColor = getStatusScoreColor(status);
-			item = new Object[]{statusColor, status, severity, category, testName, externalReference, shortDesc, recommendation};
+			item = new Object[]{statusColor, status, severity, category, testName, externalReference, out.detail(shortDesc), out.detail(recommendation)};
 			String trRow = "<tr><td style='width:200px; vertical-align:top; font-weight:bold; font-size:14px;'>" + getStatusElement(status) + 					
 					"<span style='padding:5px 10px; text-transform:capitalize;'>%s</span><span style='padding:5px 10px; text-transform:capitalize;'>%s</span>" +
 					"</td>" +
 					"<td style='width:300px; vertical-align:top;'><div class='categoryLabel' style='padding:0px 0px 5px 0px;font-weight:bold; font-size:14px;'>%s</div><div style='padding:5px'>%s</div></td>" +
 					"<td style='vertical-align:top;'>%s</td><td style='vertical-align:top;'>%s</td></tr>";
-			builder.append(String.format(trRow, item));			
+			out.printf(trRow, item);
 		}
-		builder.append("</tbody></table>");
-		
-		return builder.toString();
+		out.println("</tbody></table>");
 	}
 	
 	private String getStatusElement(String status){
@@ -964,7 +1036,8 @@ public class MainPane extends JPanel implements ActionListener{
 	}
 	
 	private String getJavascript(){
-		return "function testsDetails(e){var t=document.getElementById('divDetails');var n=t.style.display=='none';if(n===true){t.style.display='block'}else{t.style.display='none'}}";
+		return "function testsDetails(e){var t=document.getElementById('divDetails');var n=t.style.display=='none';if(n===true){t.style.display='block'}else{t.style.display='none'}}" +
+				HtmlReportWriter.DETAIL_SCRIPT;
 	}
 	
 	class DatasourceRenderer extends JLabel implements ListCellRenderer<Datasource>{
@@ -44,15 +44,23 @@ import java.awt.*;
 import java.awt.event.*;
 import javax.swing.*;
 
+import com.guardium.data.ConcurrentConnecter;
+import com.guardium.data.DatasourceSession;
 import com.guardium.data.SecurityAssessment;
+import com.guardium.data.TestResult;
 import com.guardium.map.AssessmentResultHeaderMap;
+import com.guardium.map.CatalogLoader;
 import com.guardium.map.DatasourceMap;
+import com.guardium.map.ResultHistory;
 import com.guardium.map.SecurityAssessmentMap;
 import com.guardium.map.TestResultMap;
+import com.guardium.map.TestResultStore;
 import com.guardium.runtest.AssessmentRunner;
+import com.guardium.runtest.AssessmentScheduler;
 import com.guardium.runtest.VATestRun;
 import com.guardium.utils.AdHocLogger;
 //import com.guardium.utils.CreatePdfFile;
+import com.guardium.utils.ResultExporter;
 import com.guardium.utils.WriteResult;
 
 import java.beans.*;
@@ -137,13 +145,86 @@ public class TestProgress extends JPanel
     		
     		//OuterClass.InnerClass innerObject = outerObject.new InnerClass()                                                                                                                                                                                               
     		// GUI - list SecurityAssessment name
-    		for (SecurityAssessment sst : SecurityAssessmentList) {  
+    		// each assessment covers a single datasource, run them concurrently within the scheduler limits
+    		final String resultDir = outputDir;
+    		final int step = incr;
+    		AssessmentScheduler scheduler = new AssessmentScheduler();
+    		try {
+    			for (final SecurityAssessment sst : SecurityAssessmentList) {
+    				scheduler.submit(sst.getDatasource(0), new Runnable() {
+    					public void run() {
+    						runAssessment(sst, resultDir, step);
+    					}
+    				});
+    			}
+    			scheduler.awaitCompletion();
+    		} catch (InterruptedException e) {
+    			scheduler.cancel();
+    			Thread.currentThread().interrupt();
+    		} finally {
+    			scheduler.shutdown();
+    			// the connections opened when the datasources were planned
+    			DatasourceSession.closeAll();
+    			ResultExporter.close();
+    			ResultHistory.close();
+    		}
+
+    		setProgress(100);
+    		
+    		WriteResult.writeOutput("SecurityAssessment list size is "
+    				+ SecurityAssessmentList.size());
+    		WriteResult.writeOutput("Connects: " + ConcurrentConnecter.getMetrics());
+    		WriteResult.writeOutput("Catalog load ms: " + CatalogLoader.getMetrics());
+
+    		//AssessmentLogPeer.dumpMap();
+    		//taskOutput.append(String.format("AssessmentLog map size is "
+    		//		+ AssessmentLogPeergetMapSize()));		
+    		
+    		// result header
+    		WriteResult.writeOutput("Assessment Result Header map size is "
+    				+ AssessmentResultHeaderPeer.getMapSize());
+    		//AssessmentResultHeaderPeer.dumpMap();
+    		
+    		
+    		
+    		//WriteResult.writeOutput("DS list size is " + datasourceList.size());
+
+            //CreatePdfFile cf = new CreatePdfFile();
+            //cf.create();
+            
+            
+            
+            
+            //System.out.println("doInBackground before while");
+            //while (progress < 100) {
+                //Sleep for up to one second.
+            //    try {
+            //        Thread.sleep(random.nextInt(1000));
+            //    } catch (InterruptedException ignore) {}
+                //Make random progress.
+            //    progress += random.nextInt(10);
+            //    setProgress(Math.min(progress, 100));
+            //}
+            
+
+            return;
+        }    
+
+        /**
+         * Runs one security assessment and writes its result file, the results are
+         * recorded in a buffer bound to the calling thread.
+         */
+        private void runAssessment(SecurityAssessment sst, String outputDir, int incr) {
+    		TestResultMap TestResultPeer = TestResultMap.getTestResultMapObject();
+
+    		TestResultMap.bindBuffer(new TestResultStore());
+    		try {
     			
     			WriteResult.writeOutput("\n\n");
     			sst.dump();
     			
     			// create output result file for each sst
-    			outputFile = outputDir + sst.getAssessmentDesc();
+    			String outputFile = outputDir + sst.getAssessmentDesc();
                 Writer outputwrite = WriteResult.createLogFile(outputFile);
                 
     			TestResultPeer.cleanMap();
@@ -194,48 +275,16 @@ public class TestProgress extends JPanel
         			WriteResult.closeLogFile(outputwrite);
     			}
     			
-    			progress += incr;
-                setProgress(Math.min(progress, 100));    			
+    			advanceProgress(incr);
+    		} finally {
+    			TestResultMap.unbindBuffer();
     		}
+        }
 
-    		setProgress(100);
-    		
-    		WriteResult.writeOutput("SecurityAssessment list size is "
-    				+ SecurityAssessmentList.size());
-
-    		//AssessmentLogPeer.dumpMap();
-    		//taskOutput.append(String.format("AssessmentLog map size is "
-    		//		+ AssessmentLogPeergetMapSize()));		
-    		
-    		// result header
-    		WriteResult.writeOutput("Assessment Result Header map size is "
-    				+ AssessmentResultHeaderPeer.getMapSize());
-    		//AssessmentResultHeaderPeer.dumpMap();
-    		
-    		
-    		
-    		//WriteResult.writeOutput("DS list size is " + datasourceList.size());
-
-            //CreatePdfFile cf = new CreatePdfFile();
-            //cf.create();
-            
-            
-            
-            
-            //System.out.println("doInBackground before while");
-            //while (progress < 100) {
-                //Sleep for up to one second.
-            //    try {
-            //        Thread.sleep(random.nextInt(1000));
-            //    } catch (InterruptedException ignore) {}
-                //Make random progress.
-            //    progress += random.nextInt(10);
-            //    setProgress(Math.min(progress, 100));
-            //}
-            
-
-            return;
-        }    
+        private synchronized void advanceProgress(int incr) {
+            progress += incr;
+            setProgress(Math.min(progress, 100));
+        }
 
         
         /*
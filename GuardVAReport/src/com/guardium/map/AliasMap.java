@@ -7,15 +7,16 @@
 package com.guardium.map;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import com.guardium.data.Alias;
 import com.guardium.data.AssessmentLog;
-import com.guardium.gui.TestUtils;
 import com.guardium.gui.VATest;
 import com.guardium.utils.ReadDumpFile;
 
@@ -56,6 +57,10 @@ public class AliasMap {
 	// Create a hash map
 	private static HashMap hm = new HashMap();
 
+	// indexes of hm by group type: the alias values, and the dictionary of upper case db value to alias
+	private static Map<Integer,List<String>> aliasValuesByType = Collections.emptyMap();
+	private static Map<Integer,Map<String,String>> dictionaryByType = Collections.emptyMap();
+
 	private static AliasMap AliasMapObject;
 	/** A private Constructor prevents any other class from instantiating. */
 
@@ -85,83 +90,83 @@ public class AliasMap {
 		}
 	}
 	
+	/**
+	 * @param grouptype
+	 * @return The aliases of the group type, by upper case db value.
+	 */
 	public Map getAliases (int grouptype) {
-		return (Map)getGroupTypeList(grouptype);
+		Map<String,String> m = dictionaryByType.get(grouptype);
+		if (m == null) {
+			return Collections.emptyMap();
+		}
+		return m;
 	}
 	
 	public List<String> getGroupTypeList(int gtid) {
+		List<String> ll = aliasValuesByType.get(gtid);
+		if (ll == null) {
+			return new ArrayList<String>();
+		}
+		return new ArrayList<String>(ll);
+	}
 
-		List<String> ll = new ArrayList<String>();
-		String str = "";
-		Iterator it = hm.entrySet().iterator();
-		while (it.hasNext()) {
-			Map.Entry pairs = (Map.Entry)it.next();
-		    Alias t = (Alias)pairs.getValue();
-		    if (t.getGroupTypeId() == gtid) {
-		    	str = t.getAliasValue();
-		    	ll.add(str);
-		    }
+	/**
+	 * Builds the group type indexes, in alias id order. A db value with several aliases
+	 * translates to the one with the lowest id.
+	 */
+	private static void buildIndexes() {
+		Map<Integer,Alias> sorted = new TreeMap<Integer,Alias>(hm);
+		Map<Integer,List<String>> values = new HashMap<Integer,List<String>>();
+		Map<Integer,Map<String,String>> dictionaries = new HashMap<Integer,Map<String,String>>();
+		for (Alias t : sorted.values()) {
+			List<String> ll = values.get(t.getGroupTypeId());
+			Map<String,String> dict = dictionaries.get(t.getGroupTypeId());
+			if (ll == null) {
+				ll = new ArrayList<String>();
+				values.put(t.getGroupTypeId(), ll);
+				dict = new HashMap<String,String>();
+				dictionaries.put(t.getGroupTypeId(), dict);
+			}
+			ll.add(t.getAliasValue());
+			String key = t.getDbValue().toUpperCase();
+			if (!dict.containsKey(key)) {
+				dict.put(key, t.getAliasValue());
+			}
+		}
+		for (Map.Entry<Integer,Map<String,String>> e : dictionaries.entrySet()) {
+			e.setValue(Collections.unmodifiableMap(e.getValue()));
 		}
-		return ll;
+		aliasValuesByType = values;
+		dictionaryByType = dictionaries;
+		CatalogVersion.changed();
 	}
 	
 	private static void initMap() {
 		// Read data from the xml dump
 		String  resourceFile = "alias.dump";
-		TestUtils tutils = new TestUtils();
-		String fileName = tutils.readDataFile(resourceFile);
-		if (fileName.isEmpty()) {
-			return;
-		}
-		
 		ReadDumpFile rdf = new ReadDumpFile();
-		boolean readok = rdf.readFile(fileName);
-		tutils.removeDataFile(fileName);
-		if (!readok) {
-			return;
-		}
-
-		List<List> tbList = rdf.getTableList();
-		String tbName = rdf.getTableName();
+		// each row is added as soon as it is parsed
+		boolean readok = rdf.streamResource(resourceFile, new ReadDumpFile.TableHandler() {
+			private int aliasId, groupTypeId, dbValue, aliasValue;
 
-		for (List rlist : tbList) {
-			//System.out.println("rlist size " + rlist.size());
+			public void columns(String[] columns) {
+				aliasId = ReadDumpFile.column(columns, "alias_id");
+				groupTypeId = ReadDumpFile.column(columns, "group_type_id");
+				dbValue = ReadDumpFile.column(columns, "db_value");
+				aliasValue = ReadDumpFile.column(columns, "alias_value");
+			}
 
-			// init all fields		    
-			int aid = 0;
-			int gtid = 0;
-			String dval = "";
-			String aval = "";
-			
-			int len = rlist.size();
+			public void handleRow(ReadDumpFile.Row row) {
+				int aid = row.getInt(aliasId, 0);
+				Alias t = new Alias(aid, row.getInt(groupTypeId, 0), row.getString(dbValue, ""), row.getString(aliasValue, ""));
 
-			for (int i = 0; i < len; i++) {
-				String str[] = (String[]) rlist.get(i);
-				String name = null;
-				String value = null;
-				name = str[0];
-				value = str[1];
-				
-				if (name.equals("alias_id")) {
-					if (!value.isEmpty())
-						aid = Integer.parseInt(value);
-				} else if (name.equals("group_type_id")) {
-					if (!value.isEmpty())
-						gtid = Integer.parseInt(value);
-				} else if (name.equals("db_value")) {
-					if (!value.isEmpty())
-						dval = value;
-				} else if (name.equals("alias_value")) {
-					if (!value.isEmpty())
-						aval = value;
-				}
+				hm.put(aid, t);
 			}
-								
-			Alias t = new Alias(aid, gtid, dval, aval); 
-			
-			hm.put(aid, t);
-
+		});
+		if (!readok) {
+			return;
 		}
+		buildIndexes();
 
 		/*
 		System.out.println("table size is " + tbList.size());
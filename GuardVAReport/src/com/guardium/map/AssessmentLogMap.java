@@ -67,7 +67,7 @@ public class AssessmentLogMap {
 		this.dtlist = tlist;
 	}
 	*/
-	public static void add (AssessmentLog v) {
+	public static synchronized void add (AssessmentLog v) {
 		v.setAssessmentLogId(currentAssessmentLogId);
 		hm.put(currentAssessmentLogId, v);
 		currentAssessmentLogId++;
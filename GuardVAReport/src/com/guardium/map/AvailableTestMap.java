@@ -17,7 +17,6 @@ import java.util.regex.Matcher;
 
 import com.guardium.data.AvailableTest;
 import com.guardium.data.SecurityAssessment;
-import com.guardium.gui.TestUtils;
 import com.guardium.gui.VATest;
 import com.guardium.runtest.SingletonClass;
 import com.guardium.utils.ReadDumpFile;
@@ -173,175 +172,65 @@ public class AvailableTestMap {
 	   // Read data from the xml dump
 	   
 		String  resourceFile = "avail_test.dump";
-		TestUtils tutils = new TestUtils();
-		String fileName = tutils.readDataFile(resourceFile);
-		if (fileName.isEmpty()) {
-			return;
-		}
-		
 		ReadDumpFile rdf = new ReadDumpFile();
-		boolean readok = rdf.readFile(fileName);
-		tutils.removeDataFile(fileName);
-		if (!readok) {
-			return;
-		}
-
-	   List<List> tbList = rdf.getTableList();
-	   String tbName = rdf.getTableName();
-		
-	   for (List rlist: tbList) {
-			//System.out.println("rlist size " + rlist.size());	
-			
-			// init all fields
-			int id = 0;
-			String desc = "";
-			int rid = -1;
-			String clsname = ""; 
-			byte ttype = 0;
-			int audit_id = -1;
-			int dtypeid = -1; 
-			boolean thold = false;
-			String tprompt = ""; 
-			double dtvalue = 0.0;
-			String sver = "INFO";
-			String cname = ""; 
-			String ts = ""; 
-			String sdesc = "";
-			String extref = "";
-			String os_name = "";
-			boolean excp_flag = false;
-			double app_from_ver = 0.0;
-			double app_to_ver = 0.0;
-			String stig_ref = "";
-			String stig_severity = "";
-			String stig_iacontrols = "";
-			String stig_srg = "";
-			
-			int len = rlist.size();
+		// each row is added as soon as it is parsed
+		boolean readok = rdf.streamResource(resourceFile, new ReadDumpFile.TableHandler() {
+			private int testId, testDesc, reportId, className, testType, auditId, datasourceTypeId;
+			private int thresholdRequired, thresholdPrompt, defaultThreshold, severity, categoryName;
+			private int timestamp, shortDescription, externalReference, os, exceptionsGroup;
+			private int fromVersion, toVersion, stigReference, stigSeverity, stigIacontrols, stigSrg;
 
-			for (int i = 0; i < len; i++) {
-				String str[] = (String [])rlist.get(i);
-				String name  = null;
-				String value = null;				
-                name = str[0];
-                value = str[1];
-                //System.out.println(name + "=" + value);
-                
-                if (name.equals("test_id")) {
-                	if (!value.isEmpty())
-                		id = Integer.parseInt(value);
-                }
-                else if  (name.equals("test_desc")) {
-                	if (!value.isEmpty())
-                		desc = value;
-                }
-                else if  (name.equals("report_id")) {
-                	if (!value.isEmpty())
-                		rid = Integer.parseInt(value);
-                }               
-                else if  (name.equals("class_name")) {
-                	if (!value.isEmpty())
-                		clsname = value;
-                }                
-                else if  (name.equals("test_type")) {
-                	if (!value.isEmpty())
-                		ttype = (byte)Integer.parseInt(value);
-                }     
-                else if  (name.equals("audit_config_template_id")) {
-                	if (!value.isEmpty())
-                		audit_id = Integer.parseInt(value);
-                }                           
-                else if  (name.equals("datasource_type_id")) {
-                	if (!value.isEmpty())
-                	dtypeid = Integer.parseInt(value);
-                }    
-                else if  (name.equals("threshold_required")) {
-                	if (!value.isEmpty()) {
-                		int tmp = Integer.parseInt(value);
-                		if (tmp == 0) 
-                			thold = false;
-                		else 
-                			thold = true;
-                	}
-                }                   
-                else if  (name.equals("threshold_prompt")) {
-                	if (!value.isEmpty())
-                		tprompt = value;
-                }                 		
-                else if  (name.equals("default_threshold_value")) {
-                	if (!value.isEmpty())
-                		dtvalue = Double.parseDouble(value);
-                }
-                else if  (name.equals("severity")) {
-                	if (!value.isEmpty())
-                		sver = value;
-                }                 
-                else if  (name.equals("category_name")) {
-                	if (!value.isEmpty())
-                		cname = value;
-                }                     
-                else if  (name.equals("timestamp")) {
-                	if (!value.isEmpty())
-                		ts = value;
-                }                		
-                else if  (name.equals("short_description")) {
-                	if (!value.isEmpty())
-                		sdesc = value;
-                }		
-                else if  (name.equals("external_reference")) {
-                	if (!value.isEmpty())
-                		extref = value;
-                }
-                else if  (name.equals("os")) {
-                	if (!value.isEmpty())
-                		os_name = value;
-                }
-                else if  (name.equals("can_have_exceptions_group")) {
-                	if (!value.isEmpty()) {
-                		int tmp = Integer.parseInt(value);
-                		if (tmp == 0) 
-                			excp_flag = false;
-                		else 
-                			excp_flag = true;
-                	}
-                }                      
-                else if  (name.equals("applicable_from_version")) {
-                	if (!value.isEmpty())
-                		app_from_ver = Double.parseDouble(value);
-                }
-                else if  (name.equals("applicable_to_version")) {
-                	if (!value.isEmpty())
-                		app_to_ver = Double.parseDouble(value);
-                }
-                else if  (name.equals("stig_reference")) {
-                	if (!value.isEmpty())
-                		stig_ref = value;
-                }
-                else if  (name.equals("stig_severity")) {
-                	if (!value.isEmpty())
-                		stig_severity = value;
-                }
-                else if  (name.equals("stig_iacontrols")) {
-                	if (!value.isEmpty())
-                		stig_iacontrols = value;
-                }
-                else if  (name.equals("stig_srg")) {
-                	if (!value.isEmpty())
-                		stig_srg = value;
-                }
+			public void columns(String[] columns) {
+				testId = ReadDumpFile.column(columns, "test_id");
+				testDesc = ReadDumpFile.column(columns, "test_desc");
+				reportId = ReadDumpFile.column(columns, "report_id");
+				className = ReadDumpFile.column(columns, "class_name");
+				testType = ReadDumpFile.column(columns, "test_type");
+				auditId = ReadDumpFile.column(columns, "audit_config_template_id");
+				datasourceTypeId = ReadDumpFile.column(columns, "datasource_type_id");
+				thresholdRequired = ReadDumpFile.column(columns, "threshold_required");
+				thresholdPrompt = ReadDumpFile.column(columns, "threshold_prompt");
+				defaultThreshold = ReadDumpFile.column(columns, "default_threshold_value");
+				severity = ReadDumpFile.column(columns, "severity");
+				categoryName = ReadDumpFile.column(columns, "category_name");
+				timestamp = ReadDumpFile.column(columns, "timestamp");
+				shortDescription = ReadDumpFile.column(columns, "short_description");
+				externalReference = ReadDumpFile.column(columns, "external_reference");
+				os = ReadDumpFile.column(columns, "os");
+				exceptionsGroup = ReadDumpFile.column(columns, "can_have_exceptions_group");
+				fromVersion = ReadDumpFile.column(columns, "applicable_from_version");
+				toVersion = ReadDumpFile.column(columns, "applicable_to_version");
+				stigReference = ReadDumpFile.column(columns, "stig_reference");
+				stigSeverity = ReadDumpFile.column(columns, "stig_severity");
+				stigIacontrols = ReadDumpFile.column(columns, "stig_iacontrols");
+				stigSrg = ReadDumpFile.column(columns, "stig_srg");
 			}
-			// select only query based and cve tests
-			
-			AvailableTest t = new AvailableTest (id, desc, rid, clsname, ttype,
-				       audit_id, dtypeid, thold, tprompt, dtvalue, sver,
-				       cname, ts, sdesc, extref, os_name, excp_flag,
-				       app_from_ver, app_to_ver, stig_ref, stig_severity, stig_iacontrols, stig_srg);
-			if (ttype == QUERY_TEST_TYPE) {
-				hm_query.put(id, t);
-			}
-			else if (ttype == CVE_TEST_TYPE) {
-				hm_cve.put(id, t);
+
+			public void handleRow(ReadDumpFile.Row row) {
+				int id = row.getInt(testId, 0);
+				byte ttype = (byte) row.getInt(testType, 0);
+
+				// select only query based and cve tests
+				AvailableTest t = new AvailableTest (id, row.getString(testDesc, ""), row.getInt(reportId, -1),
+					       row.getString(className, ""), ttype, row.getInt(auditId, -1), row.getInt(datasourceTypeId, -1),
+					       row.getFlag(thresholdRequired, false), row.getString(thresholdPrompt, ""),
+					       row.getDouble(defaultThreshold, 0.0), row.getString(severity, "INFO"),
+					       row.getString(categoryName, ""), row.getString(timestamp, ""),
+					       row.getString(shortDescription, ""), row.getString(externalReference, ""),
+					       row.getString(os, ""), row.getFlag(exceptionsGroup, false),
+					       row.getDouble(fromVersion, 0.0), row.getDouble(toVersion, 0.0),
+					       row.getString(stigReference, ""), row.getString(stigSeverity, ""),
+					       row.getString(stigIacontrols, ""), row.getString(stigSrg, ""));
+				if (ttype == QUERY_TEST_TYPE) {
+					hm_query.put(id, t);
+				}
+				else if (ttype == CVE_TEST_TYPE) {
+					hm_cve.put(id, t);
+				}
 			}
+		});
+		if (!readok) {
+			return;
 		}
 	    /*
 	    System.out.println("End of initMap");
@@ -0,0 +1,169 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.map;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.guardium.utils.AdHocLogger;
+import com.guardium.utils.Check;
+import com.guardium.utils.ReadDumpFile;
+import com.guardium.utils.Utils;
+
+/**
+ * Loads the catalog maps that are read from the resource dumps in the background, on a small
+ * pool of <code>guardium.va.catalogThreads</code> threads, so the application does not wait for
+ * all of them before it starts.
+ * A map that is needed before its load is done is still safe to get: get*MapObject() is synchronized,
+ * so it waits for a load in progress, and loads the map itself if its load has not started yet. The
+ * background load of that map then finds it loaded.
+ */
+public class CatalogLoader {
+
+	/** Number of catalog maps loaded at the same time */
+	public static final int THREADS = Integer.getInteger("guardium.va.catalogThreads",
+			Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	private static final List<String> names = new ArrayList<String>();
+	private static final Map<String,Long> loadTimes = new ConcurrentHashMap<String,Long>();
+	private static ExecutorService executor = null;
+	private static long started = 0;
+	private static volatile long finished = 0;
+	private static String digest = null;
+
+	private CatalogLoader() {
+	}
+
+	/**
+	 * Starts loading the catalog maps, does nothing if they are already loading.
+	 */
+	public static synchronized void start() {
+		if (executor != null) {
+			return;
+		}
+		final AtomicInteger threadNumber = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(Math.max(1, THREADS), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "VA-Catalog-" + threadNumber.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		started = System.currentTimeMillis();
+
+		// the largest dumps first
+		load("avail_test.dump", new Runnable() {
+			public void run() { AvailableTestMap.getAvailableTestMapObject(); }
+		});
+		load("alias.dump", new Runnable() {
+			public void run() { AliasMap.getAliasMapObject(); }
+		});
+		load("sqlbased.dump", new Runnable() {
+			public void run() { SqlbasedAssessmentDefinitionMap.getSqlbasedAssessmentDefinitionMapObject(); }
+		});
+		load("cve_fix.dump", new Runnable() {
+			public void run() { CveFixMap.getCveFixMapObject(); }
+		});
+		load("cve_reference.dump", new Runnable() {
+			public void run() { CveReferenceMap.getCveReferenceMapObject(); }
+		});
+		load("group_member.dump", new Runnable() {
+			public void run() { GroupMemberMap.getGroupMemberMapObject(); }
+		});
+		load("group_desc.dump", new Runnable() {
+			public void run() { GroupDescMap.getGroupDescMapObject(); }
+		});
+		load("group_type.dump", new Runnable() {
+			public void run() { GroupTypeMap.getGroupTypeMapObject(); }
+		});
+		load("dbdriver.dump", new Runnable() {
+			public void run() { DbDriverMap.getDbDriverMapObject(); }
+		});
+		executor.shutdown();
+	}
+
+	private static void load(final String name, final Runnable init) {
+		names.add(name);
+		executor.execute(new Runnable() {
+			public void run() {
+				long start = System.currentTimeMillis();
+				try {
+					init.run();
+				} catch (RuntimeException e) {
+					// the map is loaded again on first use
+					AdHocLogger.logException(e);
+					return;
+				}
+				finished = System.currentTimeMillis();
+				long elapsed = finished - start;
+				loadTimes.put(name, elapsed);
+				AdHocLogger.logInfo("Catalog " + name + " loaded in " + elapsed + " ms");
+			}
+		});
+	}
+
+	/**
+	 * Starts loading the maps if they are not loading yet.
+	 * @return A digest of the catalog dumps shipped with the application, it changes only when
+	 * a new catalog is installed. Null if a dump cannot be read.
+	 */
+	public static synchronized String getCatalogDigest() {
+		if (digest == null) {
+			start();
+			InputStream ins = null;
+			try {
+				MessageDigest md = MessageDigest.getInstance("SHA1");
+				byte[] buf = new byte[64 * 1024];
+				for (String name : names) {
+					ins = CatalogLoader.class.getResourceAsStream(ReadDumpFile.RESOURCE_PATH + name);
+					if (ins == null) {
+						return null;
+					}
+					md.update(name.getBytes("UTF-8"));
+					for (int n = ins.read(buf); n >= 0; n = ins.read(buf)) {
+						md.update(buf, 0, n);
+					}
+					ins = Check.disposal(ins);
+				}
+				digest = Utils.bytesToHexaString(md.digest());
+			} catch (Exception e) {
+				AdHocLogger.logException(e);
+			} finally {
+				Check.disposal(ins);
+			}
+		}
+		return digest;
+	}
+
+	/**
+	 * @return The load time in milliseconds of each map loaded so far by dump name, in load order,
+	 * and "total", the time from start() to the last map loaded, written to the run log.
+	 * A map already loaded on first use shows the time its background load waited for it.
+	 */
+	public static synchronized Map<String,Long> getMetrics() {
+		Map<String,Long> m = new LinkedHashMap<String,Long>();
+		for (String name : names) {
+			Long elapsed = loadTimes.get(name);
+			if (elapsed != null) {
+				m.put(name, elapsed);
+			}
+		}
+		if (finished > 0) {
+			m.put("total", finished - started);
+		}
+		return m;
+	}
+}
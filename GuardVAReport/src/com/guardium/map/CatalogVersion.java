@@ -0,0 +1,36 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.map;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A number that changes each time the catalog data replaced into the SQL of the tests changes:
+ * the aliases, the alias dictionary, the group types, the group descriptions and the group members.
+ * Whatever is compiled from that data, like QueryTestPlan, keeps the version it was compiled at.
+ */
+public final class CatalogVersion {
+
+	private static final AtomicInteger version = new AtomicInteger();
+
+	private CatalogVersion() {
+	}
+
+	/**
+	 * Called by the maps each time their data is loaded or changes.
+	 */
+	public static void changed() {
+		version.incrementAndGet();
+	}
+
+	/**
+	 * @return The current version.
+	 */
+	public static int get() {
+		return version.get();
+	}
+}
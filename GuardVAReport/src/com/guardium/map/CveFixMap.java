@@ -15,8 +15,8 @@ import java.io.IOException;
 import java.util.*;
 import java.util.regex.Matcher;
 
+import com.guardium.assessment.utils.CveVersionIndex;
 import com.guardium.data.CveFix;
-import com.guardium.gui.TestUtils;
 import com.guardium.gui.VATest;
 import com.guardium.runtest.SingletonClass;
 import com.guardium.utils.ReadDumpFile;
@@ -28,6 +28,12 @@ public class CveFixMap {
    // Create a hash map
    private static HashMap hm = new HashMap();
 
+   // index of hm by available test id, rows in cve_fix_id order
+   private static Map<Integer,List<CveFix>> byTestId = Collections.emptyMap();
+
+   // the rows of each available test compiled for version lookups
+   private static Map<Integer,CveVersionIndex> versionIndexByTestId = Collections.emptyMap();
+
    private static CveFixMap CveFixMapObject;
 	/** A private Constructor prevents any other class from instantiating. */
 
@@ -80,98 +86,70 @@ public class CveFixMap {
  
    // get available test by data source type
    public List<CveFix> getListByTestId(int test_id) {
-	   List <CveFix> alist = new ArrayList<CveFix>();
-	   
-	   Iterator it = null;
-	   it = hm.entrySet().iterator();
-
-	   while (it.hasNext()) {
-	        Map.Entry pairs = (Map.Entry)it.next();
-	        //System.out.println(pairs.getKey() + " = " + pairs.getValue());
-	        CveFix t = (CveFix)pairs.getValue();
-	        if (t.getAvailableTestId() == test_id) {
-	        	alist.add(t);
-	        }
+	   List <CveFix> alist = byTestId.get(test_id);
+	   if (alist == null) {
+		   return new ArrayList<CveFix>();
+	   }
+	   return new ArrayList<CveFix>(alist);
+   }
+
+   /**
+    * @param test_id
+    * @return The CVE_FIX rows of the test compiled when the catalog was loaded, empty if it has none.
+    */
+   public CveVersionIndex getVersionIndex(int test_id) {
+	   CveVersionIndex index = versionIndexByTestId.get(test_id);
+	   return index == null ? CveVersionIndex.compile(null) : index;
+   }
+
+   private static void buildIndexes () {
+	   Map<Integer,CveFix> sorted = new TreeMap<Integer,CveFix>(hm);
+	   Map<Integer,List<CveFix>> m = new HashMap<Integer,List<CveFix>>();
+	   for (CveFix t : sorted.values()) {
+		   List<CveFix> alist = m.get(t.getAvailableTestId());
+		   if (alist == null) {
+			   alist = new ArrayList<CveFix>();
+			   m.put(t.getAvailableTestId(), alist);
+		   }
+		   alist.add(t);
+	   }
+	   Map<Integer,CveVersionIndex> indexes = new HashMap<Integer,CveVersionIndex>();
+	   for (Map.Entry<Integer,List<CveFix>> e : m.entrySet()) {
+		   indexes.put(e.getKey(), CveVersionIndex.compile(e.getValue()));
 	   }
-	   return alist;
+	   byTestId = m;
+	   versionIndexByTestId = indexes;
    }
    
    private static void initMap () {
 	   //System.out.println("initMap in the CveFix class");
 	   // Read data from the xml dump
 		String  resourceFile = "cve_fix.dump";
-		TestUtils tutils = new TestUtils();
-		String fileName = tutils.readDataFile(resourceFile);
-		if (fileName.isEmpty()) {
-			return;
-		}
-		
 		ReadDumpFile rdf = new ReadDumpFile();
-		boolean readok = rdf.readFile(fileName);
-		tutils.removeDataFile(fileName);
-		if (!readok) {
-			return;
-		}
-
-	   List<List> tbList = rdf.getTableList();
-	   String tbName = rdf.getTableName();
-		
-	   for (List rlist: tbList) {
-			//System.out.println("rlist size " + rlist.size());	
-			
-			// init all fields
-			int cid = 0;
-			int testid = 0;
-			String aver = "";
-			String apat = "";
-			
-			int len = rlist.size();
-
-			for (int i = 0; i < len; i++) {
-				String str[] = (String [])rlist.get(i);
-				String name  = null;
-				String value = null;				
-                name = str[0];
-                value = str[1];
-                //System.out.println(name + "=" + value);
-                
-                /*
-                <field name="CVE_FIX_ID">9720</field>
-                <field name="AVAILABLE_TEST_ID">1000</field>
-                <field name="VERSION">8.00</field>
-                <field name="PATCH">384</field>
-                <field name="PATCH_TO"></field>
-                 */
-                
-                
-                if (name.equals("cve_fix_id")) {
-                	if (!value.isEmpty())
-                		cid = Integer.parseInt(value);
-                }
-                else if  (name.equals("available_test_id")) {
-                	if (!value.isEmpty())
-                		testid = Integer.parseInt(value);
-                }              
-                else if  (name.equals("version")) {
-                	if (!value.isEmpty())
-                		aver = value;
-                }                
-                else if  (name.equals("patch")) {
-                	if (!value.isEmpty())
-                		apat = value;
-                }     
-
-                else if  (name.equals("patch_to")) {
-                	if (!value.isEmpty())
-                		apat = value;
-                }                    
+		// each row is added as soon as it is parsed
+		boolean readok = rdf.streamResource(resourceFile, new ReadDumpFile.TableHandler() {
+			private int cveFixId, availableTestId, version, patch, patchTo;
+
+			public void columns(String[] columns) {
+				cveFixId = ReadDumpFile.column(columns, "cve_fix_id");
+				availableTestId = ReadDumpFile.column(columns, "available_test_id");
+				version = ReadDumpFile.column(columns, "version");
+				patch = ReadDumpFile.column(columns, "patch");
+				patchTo = ReadDumpFile.column(columns, "patch_to");
 			}
-			// select only query based and cve tests
-			
-			CveFix t = new CveFix (cid, testid, aver, apat);
-			hm.put(cid, t);
 
+			public void handleRow(ReadDumpFile.Row row) {
+				int cid = row.getInt(cveFixId, 0);
+				// a patch to replaces the patch, as when the fields were read in order
+				CveFix t = new CveFix (cid, row.getInt(availableTestId, 0), row.getString(version, ""),
+						row.getString(patchTo, row.getString(patch, "")));
+				hm.put(cid, t);
+			}
+		});
+		if (!readok) {
+			return;
 		}
+		buildIndexes();
 	    /*
 	    System.out.println("End of initMap");
 		System.out.println("table size is " + tbList.size());
@@ -16,7 +16,6 @@ import java.util.*;
 import java.util.regex.Matcher;
 
 import com.guardium.data.CveReference;
-import com.guardium.gui.TestUtils;
 import com.guardium.gui.VATest;
 import com.guardium.runtest.SingletonClass;
 import com.guardium.utils.ReadDumpFile;
@@ -99,87 +98,32 @@ public class CveReferenceMap {
    private static void initMap () {
 	   // Read data from the xml dump
 		String  resourceFile = "cve_reference.dump";
-		TestUtils tutils = new TestUtils();
-		String fileName = tutils.readDataFile(resourceFile);
-		if (fileName.isEmpty()) {
-			return;
-		}
-		
 		ReadDumpFile rdf = new ReadDumpFile();
-		boolean readok = rdf.readFile(fileName);
-		tutils.removeDataFile(fileName);
-		if (!readok) {
-			return;
-		}
-		
-	   List<List> tbList = rdf.getTableList();
-	   String tbName = rdf.getTableName();
-		
-	   for (List rlist: tbList) {
-			//System.out.println("rlist size " + rlist.size());	
-			
-			// init all fields
-			int cid = 0;
-			Date ts = new Date();
-			int testid = 0;
-			String asource = "";
-			String atype = "";
-			String ahref = "";
-			
-			int len = rlist.size();
+		// each row is added as soon as it is parsed
+		boolean readok = rdf.streamResource(resourceFile, new ReadDumpFile.TableHandler() {
+			private int cveReferenceId, testId, source, type, href;
 
-			for (int i = 0; i < len; i++) {
-				String str[] = (String [])rlist.get(i);
-				String name  = null;
-				String value = null;				
-                name = str[0];
-                value = str[1];
-                //System.out.println(name + "=" + value);
-                
-                /*
-        		<table_data name="CVE_REFERENCE">
-        		<row>
-                <field name="CVE_REFERENCE_ID">14939</field>
-                <field name="TIMESTAMP">2014-05-22 20:24:55</field>
-                <field name="TEST_ID">1000</field>
-                <field name="CVE_REFERENCE_SOURCE">MS</field>
-                <field name="CVE_REFERENCE_TYPE">VENDOR_ADVISORY</field>
-                <field name="CVE_REFERENCE_HREF">http://www.microsoft.com/technet/security/bulletin/MS01-041.asp</field>
-        		</row>
-                 */
-                
-                
-                if (name.equals("cve_reference_id")) {
-                	if (!value.isEmpty())
-                		cid = Integer.parseInt(value);
-                }
-                else if  (name.equals("test_id")) {
-                	if (!value.isEmpty())
-                		testid = Integer.parseInt(value);
-                }              
-                else if  (name.equals("cve_reference_source")) {
-                	if (!value.isEmpty())
-                		asource = value;
-                }                
-                else if  (name.equals("cve_reference_type")) {
-                	if (!value.isEmpty())
-                		atype = value;
-                }
-                else if  (name.equals("cve_reference_href")) {
-                	if (!value.isEmpty())
-                		ahref = value;
-                }                
-         
+			public void columns(String[] columns) {
+				cveReferenceId = ReadDumpFile.column(columns, "cve_reference_id");
+				testId = ReadDumpFile.column(columns, "test_id");
+				source = ReadDumpFile.column(columns, "cve_reference_source");
+				type = ReadDumpFile.column(columns, "cve_reference_type");
+				href = ReadDumpFile.column(columns, "cve_reference_href");
 			}
-			// select only query based and cve tests
-			
-			CveReference t = new CveReference (cid, ts, testid, asource, atype, ahref);
-			hm.put(cid, t);
 
+			public void handleRow(ReadDumpFile.Row row) {
+				int cid = row.getInt(cveReferenceId, 0);
+				CveReference t = new CveReference (cid, new Date(), row.getInt(testId, 0),
+						row.getString(source, ""), row.getString(type, ""), row.getString(href, ""));
+				hm.put(cid, t);
+			}
+		});
+		if (!readok) {
+			return;
 		}
 	    System.out.println("End of initMap");
-		System.out.println("table size is " + tbList.size());
-		System.out.println("table name is " + tbName);
+		System.out.println("table size is " + hm.size());
+		System.out.println("table name is " + rdf.getTableName());
 		System.out.println("hm size is " + hm.size());
    }
    
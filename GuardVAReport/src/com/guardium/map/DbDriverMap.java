@@ -334,17 +334,7 @@ public class DbDriverMap {
 		}
 		else {
 			// read from the source
-			TestUtils tutils = new TestUtils();
-			String fileName = tutils.readDataFile(resourceFile);
-			if (fileName.isEmpty()) {
-				return;
-			}
-		
-			readok = rdf.readFile(fileName);
-			// move .dump_new to .dump
-			// don't know why we move this file here, we delete others. 
-			//tutils.moveDataFile(fileName, dfileName);
-			tutils.removeDataFile(fileName);
+			readok = rdf.readResource(resourceFile);
 			if (!readok) {
 				return;
 			}
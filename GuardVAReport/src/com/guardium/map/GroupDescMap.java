@@ -6,10 +6,10 @@
  */
 package com.guardium.map;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -17,7 +17,6 @@ import com.guardium.data.AvailableTest;
 import com.guardium.data.DbDriver;
 import com.guardium.data.GroupDesc;
 import com.guardium.data.SecurityAssessment;
-import com.guardium.gui.TestUtils;
 import com.guardium.gui.VATest;
 import com.guardium.utils.ReadDumpFile;
 
@@ -73,6 +72,9 @@ public class GroupDescMap {
 	// Create a hash map
 	private static HashMap hm = new HashMap();
 
+	// index of hm by description
+	private static Map<String,GroupDesc> byDesc = Collections.emptyMap();
+
 	private static boolean initFlag = false;
 
 	public int getMapSize() {
@@ -99,105 +101,47 @@ public class GroupDescMap {
 	
 	public GroupDesc getByDesc(String desc) {
 
-		Iterator it = hm.entrySet().iterator();
-		while (it.hasNext()) {
-			Map.Entry pairs = (Map.Entry)it.next();
-		    GroupDesc t = (GroupDesc)pairs.getValue();
-		    if (t.getGroupDescription().equals(desc)) {
-		    	return t;
-		    }
+		if (desc == null) {
+			return null;
 		}
-		return null;
+		return byDesc.get(desc);
 	}
 	
 	private static void initMap() {
 		// Read data from the xml dump
 		String  resourceFile = "group_desc.dump";
-		TestUtils tutils = new TestUtils();
-		String fileName = tutils.readDataFile(resourceFile);
-		if (fileName.isEmpty()) {
-			return;
-		}
-		
 		ReadDumpFile rdf = new ReadDumpFile();
-		boolean readok = rdf.readFile(fileName);
-		tutils.removeDataFile(fileName);
-		if (!readok) {
-			return;
-		}
-		
-		List<List> tbList = rdf.getTableList();
-		String tbName = rdf.getTableName();
-
-		for (List rlist : tbList) {
-			//System.out.println("rlist size " + rlist.size());
-
-			// init all fields		    
-			int gid = 0;
-			int gtid = 0;
-			int appid = 0;
-			String gdesc = "";
-			String gsubtype = "";
-			String catgName = "";
-			String className = "";
-			Date ts = new Date();
-			String gcontype = "";
-			
-			int len = rlist.size();
-
-			for (int i = 0; i < len; i++) {
-				String str[] = (String[]) rlist.get(i);
-				String name = null;
-				String value = null;
-				name = str[0];
-				value = str[1];
-
-				/*
-                <field name="GROUP_ID">1</field>
-                <field name="GROUP_TYPE_ID">1</field>
-                <field name="APPLICATION_ID">0</field>
-                <field name="GROUP_DESCRIPTION">Admin Users</field>
-                <field name="GROUP_SUBTYPE" xsi:nil="true" />
-                <field name="CATEGORY_NAME" xsi:nil="true" />
-                <field name="CLASSIFICATION_NAME" xsi:nil="true" />
-                <field name="TIMESTAMP">2014-06-13 06:37:52</field>
-                <field name="GROUP_CONTENT_TYPE">M</field>
-				*/
-
-				
-				if (name.equals("group_id")) {
-					if (!value.isEmpty())
-						gid = Integer.parseInt(value);
-				} else if (name.equals("group_type_id")) {
-					if (!value.isEmpty())
-						gtid = Integer.parseInt(value);
-				} else if (name.equals("application_id")) {
-					if (!value.isEmpty())
-						appid = Integer.parseInt(value);
-				} else if (name.equals("group_description")) {
-					if (!value.isEmpty())
-						gdesc = value;
-				} else if (name.equals("group_subtype")) {
-					if (!value.isEmpty())
-						gsubtype = value;
-				} else if (name.equals("category_name")) {
-					if (!value.isEmpty())
-						catgName = value;					
-				} else if (name.equals("classification_name")) {
-					if (!value.isEmpty())
-						className = value;
-				} else if (name.equals("group_content_type")) {
-					if (!value.isEmpty())
-						gcontype = value;					
-				} 
+		// each row is added as soon as it is parsed
+		boolean readok = rdf.streamResource(resourceFile, new ReadDumpFile.TableHandler() {
+			private int groupId, groupTypeId, applicationId, groupDescription, groupSubtype;
+			private int categoryName, classificationName, groupContentType;
+
+			public void columns(String[] columns) {
+				groupId = ReadDumpFile.column(columns, "group_id");
+				groupTypeId = ReadDumpFile.column(columns, "group_type_id");
+				applicationId = ReadDumpFile.column(columns, "application_id");
+				groupDescription = ReadDumpFile.column(columns, "group_description");
+				groupSubtype = ReadDumpFile.column(columns, "group_subtype");
+				categoryName = ReadDumpFile.column(columns, "category_name");
+				classificationName = ReadDumpFile.column(columns, "classification_name");
+				groupContentType = ReadDumpFile.column(columns, "group_content_type");
 			}
-								
-			GroupDesc t = new GroupDesc(gid, gtid, appid, gdesc, gsubtype, catgName, className, ts, gcontype);
-			//t.dump();
-			
-			hm.put(gid, t);
 
+			public void handleRow(ReadDumpFile.Row row) {
+				int gid = row.getInt(groupId, 0);
+				GroupDesc t = new GroupDesc(gid, row.getInt(groupTypeId, 0), row.getInt(applicationId, 0),
+						row.getString(groupDescription, ""), row.getString(groupSubtype, ""),
+						row.getString(categoryName, ""), row.getString(classificationName, ""),
+						new Date(), row.getString(groupContentType, ""));
+				//t.dump();
+
+				hm.put(gid, t);
+			}
+		});
+		if (!readok) {
+			return;
 		}
+		buildIndexes();
 
 		/*
 		System.out.println("table size is " + tbList.size());
@@ -206,6 +150,21 @@ public class GroupDescMap {
 		*/
 	}
 	
+	/**
+	 * Builds the description index, a description used twice maps to the group with the lowest id.
+	 */
+	private static void buildIndexes() {
+		Map<Integer,GroupDesc> sorted = new TreeMap<Integer,GroupDesc>(hm);
+		Map<String,GroupDesc> m = new HashMap<String,GroupDesc>();
+		for (GroupDesc t : sorted.values()) {
+			if (t.getGroupDescription() != null && !m.containsKey(t.getGroupDescription())) {
+				m.put(t.getGroupDescription(), t);
+			}
+		}
+		byDesc = Collections.unmodifiableMap(m);
+		CatalogVersion.changed();
+	}
+
 	public void dumpMap() {
 		Map<Integer, GroupDesc> sortedMap = new TreeMap<Integer, GroupDesc >(hm);
 		
@@ -7,6 +7,8 @@
 package com.guardium.map;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -14,13 +16,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 import com.guardium.data.AvailableTest;
 import com.guardium.data.GroupMember;
 
 import com.guardium.data.GroupDesc;
-import com.guardium.gui.TestUtils;
 import com.guardium.gui.VATest;
 import com.guardium.map.GroupDescMap;
 import com.guardium.map.GroupMemberMap;
@@ -77,6 +80,11 @@ public class GroupMemberMap {
 	
 	// Create a hash map
 	private static HashMap hm = new HashMap();
+
+	// indexes of hm by group, rebuilt when hm changes
+	private static Map<Integer,List<GroupMember>> membersByGroup = Collections.emptyMap();
+	private static Map<Integer,Set<String>> lowerMembersByGroup = Collections.emptyMap();
+	private static final AtomicInteger version = new AtomicInteger();
 	
 	private static boolean initFlag = false;
 
@@ -101,66 +109,28 @@ public class GroupMemberMap {
 	private static void initMap() {
 		// Read data from the xml dump
 		String  resourceFile = "group_member.dump";
-		TestUtils tutils = new TestUtils();
-		String fileName = tutils.readDataFile(resourceFile);
-		if (fileName.isEmpty()) {
-			return;
-		}
-		
 		ReadDumpFile rdf = new ReadDumpFile();
-		boolean readok = rdf.readFile(fileName);
-		tutils.removeDataFile(fileName);
-		if (!readok) {
-			return;
-		}
-
-		List<List> tbList = rdf.getTableList();
-		String tbName = rdf.getTableName();
-
-		for (List rlist : tbList) {
-			//System.out.println("rlist size " + rlist.size());
+		// each row is added as soon as it is parsed
+		boolean readok = rdf.streamResource(resourceFile, new ReadDumpFile.TableHandler() {
+			private int memberId, groupId, groupMember;
 
-			// init all fields
-			int mid = 0;
-			int gid = 0;
-			String gmem = "";
-			Date ts = new Date();
-
-			int len = rlist.size();
+			public void columns(String[] columns) {
+				memberId = ReadDumpFile.column(columns, "member_id");
+				groupId = ReadDumpFile.column(columns, "group_id");
+				groupMember = ReadDumpFile.column(columns, "group_member");
+			}
 
-			for (int i = 0; i < len; i++) {
-				String str[] = (String[]) rlist.get(i);
-				String name = null;
-				String value = null;
-				name = str[0];
-				value = str[1];
+			public void handleRow(ReadDumpFile.Row row) {
+				int mid = row.getInt(memberId, 0);
+				GroupMember t = new GroupMember(mid, row.getInt(groupId, 0), row.getString(groupMember, ""), new Date());
 
-				/*
-        		<row>
-                	<field name="MEMBER_ID">6</field>
-                	<field name="GROUP_ID">1</field>
-                	<field name="GROUP_MEMBER">SA</field>
-                	<field name="TIMESTAMP">2014-06-13 06:37:51</field>
-        		</row>
-				*/
-				
-				if (name.equals("member_id")) {
-					if (!value.isEmpty())
-						mid = Integer.parseInt(value);
-				} else if (name.equals("group_id")) {
-					if (!value.isEmpty())
-						gid = Integer.parseInt(value);
-				} else if (name.equals("group_member")) {
-					if (!value.isEmpty())
-						gmem = value;
-				}
+				hm.put(mid, t);
 			}
-								
-			GroupMember t = new GroupMember(mid, gid, gmem, ts);
-			
-			hm.put(mid, t);
-
+		});
+		if (!readok) {
+			return;
 		}
+		buildIndexes();
 
 		/*
 		System.out.println("table size is " + tbList.size());
@@ -169,6 +139,41 @@ public class GroupMemberMap {
 		*/
 	}
 	
+	/**
+	 * Builds the members and the lower case member names of each group, in member id order.
+	 */
+	private static synchronized void buildIndexes() {
+		Map<Integer,GroupMember> sorted = new TreeMap<Integer,GroupMember>(hm);
+		Map<Integer,List<GroupMember>> byGroup = new HashMap<Integer,List<GroupMember>>();
+		Map<Integer,Set<String>> lowerByGroup = new HashMap<Integer,Set<String>>();
+		for (GroupMember gm : sorted.values()) {
+			List<GroupMember> l = byGroup.get(gm.getGroupId());
+			Set<String> names = lowerByGroup.get(gm.getGroupId());
+			if (l == null) {
+				l = new ArrayList<GroupMember>();
+				byGroup.put(gm.getGroupId(), l);
+				names = new HashSet<String>();
+				lowerByGroup.put(gm.getGroupId(), names);
+			}
+			l.add(gm);
+			names.add(gm.getGroupMember().toLowerCase());
+		}
+		for (Map.Entry<Integer,List<GroupMember>> e : byGroup.entrySet()) {
+			e.setValue(Collections.unmodifiableList(e.getValue()));
+		}
+		membersByGroup = byGroup;
+		lowerMembersByGroup = lowerByGroup;
+		version.incrementAndGet();
+		CatalogVersion.changed();
+	}
+
+	/**
+	 * @return A number that changes each time the group members change.
+	 */
+	public static int getVersion() {
+		return version.get();
+	}
+
 	/**
 	 * The value that separates elements in a tuple-based group member value
 	 */
@@ -189,6 +194,7 @@ public class GroupMemberMap {
     public static void doDelete(GroupMember obj)
     {
     	hm.remove(obj.getMemberId());
+    	buildIndexes();
     	return;
     }
 	
@@ -209,18 +215,11 @@ public class GroupMemberMap {
 
 	@SuppressWarnings("unchecked")
 	public static List<GroupMember> doSelectOnGrpId(int groupId) {
-		List <GroupMember> l = new ArrayList<GroupMember>();
-
-		Iterator it = hm.entrySet().iterator();
-		while (it.hasNext()) {
-			Map.Entry pairs = (Map.Entry)it.next();
-		    GroupMember gm = (GroupMember)pairs.getValue();
-			
-			if (gm.getGroupId() == groupId) {
-				l.add(gm);
-			}
+		List <GroupMember> members = membersByGroup.get(groupId);
+		if (members == null) {
+			return new ArrayList<GroupMember>();
 		}
-		return l;
+		return new ArrayList<GroupMember>(members);
 	}
 	
 	public static List<GroupMember> doSelect(List<Integer> groupIDs)  {
@@ -230,17 +229,18 @@ public class GroupMemberMap {
 			return l;
 		}
 
-		Iterator it = hm.entrySet().iterator();
-		while (it.hasNext()) {
-			Map.Entry pairs = (Map.Entry)it.next();
-		    GroupMember gm = (GroupMember)pairs.getValue();
-			
-			for (Integer dd : groupIDs) {
-				if (gm.getGroupId() == dd) {
-					l.add(gm);
-				}
+		for (Integer dd : groupIDs) {
+			List <GroupMember> members = membersByGroup.get(dd);
+			if (members != null) {
+				l.addAll(members);
 			}
 		}
+		// in member order, as when the members were scanned
+		Collections.sort(l, new Comparator<GroupMember>() {
+			public int compare(GroupMember a, GroupMember b) {
+				return Integer.compare(a.getMemberId(), b.getMemberId());
+			}
+		});
 		
 		return l;
 	}
@@ -286,15 +286,8 @@ public class GroupMemberMap {
 	 * @throws TorqueException
 	 */
 	public static boolean memberExistsInGroup(String memberName, int groupId)  {
-		Iterator it = hm.entrySet().iterator();
-		while (it.hasNext()) {
-			GroupMember gm = (GroupMember)(it.next());
-			
-			if ((gm.getGroupId() == groupId) && (gm.getGroupMember().equalsIgnoreCase(memberName))) {
-				return true;
-			}
-		}
-		return false;
+		Set<String> names = lowerMembersByGroup.get(groupId);
+		return names != null && memberName != null && names.contains(memberName.toLowerCase());
 	}
 
 	
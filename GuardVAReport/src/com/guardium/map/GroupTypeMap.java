@@ -18,7 +18,6 @@ import java.util.Map;
 
 import com.guardium.data.Datasource;
 import com.guardium.data.GroupType;
-import com.guardium.gui.TestUtils;
 import com.guardium.gui.VATest;
 //import com.guardium.map.GroupTypeMap;
 import com.guardium.utils.ReadDumpFile;
@@ -190,71 +189,30 @@ public class GroupTypeMap {
 	private static void initMap() {
 		// Read data from the xml dump
 		String  resourceFile = "group_type.dump";
-		TestUtils tutils = new TestUtils();
-		String fileName = tutils.readDataFile(resourceFile);
-		if (fileName.isEmpty()) {
-			return;
-		}
-		
 		ReadDumpFile rdf = new ReadDumpFile();
-		boolean readok = rdf.readFile(fileName);
-		tutils.removeDataFile(fileName);
-		if (!readok) {
-			return;
-		}
-
-		List<List> tbList = rdf.getTableList();
-		String tbName = rdf.getTableName();
-
-		for (List rlist : tbList) {
-			//System.out.println("rlist size " + rlist.size());
+		// each row is added as soon as it is parsed
+		boolean readok = rdf.streamResource(resourceFile, new ReadDumpFile.TableHandler() {
+			private int groupTypeId, typeDescription, tupleFlag, allowRegex;
+
+			public void columns(String[] columns) {
+				groupTypeId = ReadDumpFile.column(columns, "group_type_id");
+				typeDescription = ReadDumpFile.column(columns, "type_description");
+				tupleFlag = ReadDumpFile.column(columns, "tuple_flag");
+				allowRegex = ReadDumpFile.column(columns, "allow_regex");
+			}
 
-			// init all fields		    
-			int gtid = 0;
-			String gtdesc = "";
-			boolean tflag = false;
-			boolean allreg = false;
-			Date ts = new Date();
-			
-			int len = rlist.size();
+			public void handleRow(ReadDumpFile.Row row) {
+				int gtid = row.getInt(groupTypeId, 0);
+				GroupType t = new GroupType(gtid, row.getString(typeDescription, ""), new Date(),
+						row.getFlag(tupleFlag, false), row.getFlag(allowRegex, false));
 
-			for (int i = 0; i < len; i++) {
-				String str[] = (String[]) rlist.get(i);
-				String name = null;
-				String value = null;
-				name = str[0];
-				value = str[1];
-				
-				if (name.equals("group_type_id")) {
-					if (!value.isEmpty())
-						gtid = Integer.parseInt(value);
-				} else if (name.equals("type_description")) {
-					if (!value.isEmpty())
-						gtdesc = value;
-				} else if (name.equals("tuple_flag")) {
-					if (!value.isEmpty()) {
-                		int tmp = Integer.parseInt(value);
-                		if (tmp == 0) 
-                			tflag = false;
-                		else 
-                			tflag = true;
-					}
-				} else if (name.equals("allow_regex")) {
-					if (!value.isEmpty()) {
-                		int tmp = Integer.parseInt(value);
-                		if (tmp == 0) 
-                			allreg = false;
-                		else 
-                			allreg = true;	
-					}
-				}
+				hm.put(gtid, t);
 			}
-								
-			GroupType t = new GroupType(gtid, gtdesc, ts, tflag, allreg); 
-			
-			hm.put(gtid, t);
-
+		});
+		if (!readok) {
+			return;
 		}
+		CatalogVersion.changed();
 
 		/*
 		System.out.println("table size is " + tbList.size());
@@ -0,0 +1,941 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.map;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.guardium.assessment.tests.TestScore;
+import com.guardium.data.AssessmentResultHeader;
+import com.guardium.data.Datasource;
+import com.guardium.data.TestResult;
+import com.guardium.data.VaSummary;
+import com.guardium.gui.TestUtils;
+import com.guardium.utils.AdHocLogger;
+import com.guardium.utils.Check;
+import com.guardium.utils.Utils;
+import com.guardium.utils.VirtualThreads;
+
+/**
+ * Keeps the results of every run, with a header per run and the VA summary records, in a local
+ * H2 database, so a run can be compared with the runs before it without reading old reports.
+ * <p>
+ * The history is off unless <code>guardium.va.history</code> is true, the database is then
+ * va_history in the history directory under the VA directory, or <code>guardium.va.history.url</code>
+ * when it is set. The history is also turned off, and the error logged, when the database cannot be
+ * opened, for example when the H2 driver is not on the class path.
+ * <p>
+ * Results are copied as they are recorded and inserted in batches of
+ * <code>guardium.va.history.batch</code> rows by a single writer thread, the tests that record them
+ * do not wait for the database and may change a result after it is queued. close() writes the rest of the results, the summary records and the
+ * counts of the run header, and ends the run. Results are kept by datasource hash,
+ * the key of the VA summary, see getDatasourceHash.
+ * <p>
+ * Each result also keeps the fingerprints of the datasource facts it was assessed on and the time
+ * the test actually ran, which is older than the run for a result carried forward from a previous
+ * run, see IncrementalAssessment.
+ */
+public class ResultHistory {
+
+	/** Results inserted at once */
+	public static final int BATCH_SIZE = Integer.getInteger("guardium.va.history.batch", 500);
+
+	private static final String[] SCHEMA = {
+		"CREATE TABLE IF NOT EXISTS VA_RUN ("
+			+ "RUN_ID BIGINT AUTO_INCREMENT PRIMARY KEY, RUN_TIME TIMESTAMP NOT NULL, END_TIME TIMESTAMP, "
+			+ "ASSESSMENT_RESULT_ID BIGINT, TASK_ID BIGINT, ASSESSMENT_DESC VARCHAR, "
+			+ "RESULT_COUNT INT, PASS_COUNT INT, FAIL_COUNT INT, ERROR_COUNT INT)",
+		"CREATE INDEX IF NOT EXISTS VA_RUN_TIME ON VA_RUN (RUN_TIME)",
+
+		"CREATE TABLE IF NOT EXISTS VA_RESULT ("
+			+ "RUN_ID BIGINT NOT NULL, RUN_TIME TIMESTAMP NOT NULL, DATA_SOURCE_HASH VARCHAR(40) NOT NULL, "
+			+ "TEST_ID INT NOT NULL, ASSESSMENT_TEST_ID INT NOT NULL, TEST_SCORE INT NOT NULL, SCORE_DESC VARCHAR, "
+			+ "TEST_DESC VARCHAR, CATEGORY_NAME VARCHAR, SEVERITY VARCHAR, "
+			+ "DATASOURCE_DESC VARCHAR, DATASOURCE_TYPE VARCHAR, DATASOURCE_VERSION VARCHAR, "
+			+ "EXTERNAL_REFERENCE VARCHAR, THRESHOLD_STRING VARCHAR, EXCEPTION_GROUP_DESCRIPTION VARCHAR, "
+			+ "STIG_REF VARCHAR, STIG_SEVERITY VARCHAR, STIG_IACONTROLS VARCHAR, STIG_SRG VARCHAR, "
+			+ "RESULT_TEXT CLOB, RECOMMENDATION_TEXT CLOB, DETAIL CLOB, SHORT_DESCRIPTION CLOB, SQL_STMT_SENT CLOB, "
+			+ "PRIMARY KEY (RUN_ID, DATA_SOURCE_HASH, TEST_ID, ASSESSMENT_TEST_ID))",
+		"ALTER TABLE VA_RESULT ADD COLUMN IF NOT EXISTS EXECUTED_TIME TIMESTAMP",
+		"ALTER TABLE VA_RESULT ADD COLUMN IF NOT EXISTS FINGERPRINT VARCHAR(40)",
+		"ALTER TABLE VA_RESULT ADD COLUMN IF NOT EXISTS CONFIG_FINGERPRINT VARCHAR(40)",
+		"CREATE INDEX IF NOT EXISTS VA_RESULT_DS_TEST_TIME ON VA_RESULT (DATA_SOURCE_HASH, TEST_ID, RUN_TIME)",
+		"CREATE INDEX IF NOT EXISTS VA_RESULT_DS_RUN ON VA_RESULT (DATA_SOURCE_HASH, RUN_ID)",
+
+		"CREATE TABLE IF NOT EXISTS VA_SUMMARY ("
+			+ "DATA_SOURCE_HASH VARCHAR(40) NOT NULL, TEST_ID INT NOT NULL, TEST_DESC VARCHAR, DB_TYPE VARCHAR, "
+			+ "SERVICE_NAME VARCHAR, DB_PORT INT, DB_HOST VARCHAR, DATASOURCE_NAME VARCHAR, "
+			+ "FIRST_EXECUTION TIMESTAMP, LAST_EXECUTION TIMESTAMP, FIRST_FAIL TIMESTAMP, LAST_FAIL TIMESTAMP, "
+			+ "FIRST_PASS TIMESTAMP, LAST_PASS TIMESTAMP, CURRENT_SCORE INT, CURRENT_SCORE_SINCE TIMESTAMP, "
+			+ "CUMULATIVE_FAIL_AGE INT, CUMULATIVE_PASS_AGE INT, TIMESTAMP TIMESTAMP, "
+			+ "PRIMARY KEY (DATA_SOURCE_HASH, TEST_ID))"
+	};
+
+	private static final String RESULT_COLUMNS =
+		"RUN_ID, RUN_TIME, DATA_SOURCE_HASH, TEST_ID, ASSESSMENT_TEST_ID, TEST_SCORE, SCORE_DESC, "
+		+ "TEST_DESC, CATEGORY_NAME, SEVERITY, DATASOURCE_DESC, DATASOURCE_TYPE, DATASOURCE_VERSION, "
+		+ "EXTERNAL_REFERENCE, THRESHOLD_STRING, EXCEPTION_GROUP_DESCRIPTION, "
+		+ "STIG_REF, STIG_SEVERITY, STIG_IACONTROLS, STIG_SRG, "
+		+ "RESULT_TEXT, RECOMMENDATION_TEXT, DETAIL, SHORT_DESCRIPTION, SQL_STMT_SENT, "
+		+ "EXECUTED_TIME, FINGERPRINT, CONFIG_FINGERPRINT";
+
+	// a result saved again in the same run, with its SQL for example, replaces the first one
+	private static final String MERGE_RESULT =
+		"MERGE INTO VA_RESULT (" + RESULT_COLUMNS + ") KEY (RUN_ID, DATA_SOURCE_HASH, TEST_ID, ASSESSMENT_TEST_ID) "
+		+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String SUMMARY_COLUMNS =
+		"DATA_SOURCE_HASH, TEST_ID, TEST_DESC, DB_TYPE, SERVICE_NAME, DB_PORT, DB_HOST, DATASOURCE_NAME, "
+		+ "FIRST_EXECUTION, LAST_EXECUTION, FIRST_FAIL, LAST_FAIL, FIRST_PASS, LAST_PASS, "
+		+ "CURRENT_SCORE, CURRENT_SCORE_SINCE, CUMULATIVE_FAIL_AGE, CUMULATIVE_PASS_AGE, TIMESTAMP";
+
+	private static final String MERGE_SUMMARY =
+		"MERGE INTO VA_SUMMARY (" + SUMMARY_COLUMNS + ") KEY (DATA_SOURCE_HASH, TEST_ID) "
+		+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static volatile String url = null;
+	private static volatile boolean failed = false;
+
+	/** Guards the connection, taken after the class lock when both are needed */
+	private static final Object DB = new Object();
+	private static Connection con = null;
+
+	/** Writes the batches of results in the order they are queued */
+	private static ExecutorService writer = null;
+	private static Future<?> lastWrite = null;
+
+	private static long runId = -1;
+	private static Timestamp runTime = null;
+	private static final List<Row> pending = new ArrayList<Row>();
+	private static final Map<String,VaSummary> pendingSummaries = new LinkedHashMap<String,VaSummary>();
+	/** The fingerprint and configuration fingerprint of each datasource hash in the run */
+	private static final Map<String,String[]> fingerprints = new HashMap<String,String[]>();
+	/** The datasource hashes with results recorded in the run before their fingerprints were set */
+	private static final Set<String> unfingerprinted = new HashSet<String>();
+	/** The results carried forward that are not recorded yet, with their text as it was when they ran */
+	private static final Map<TestResult,String> carried = new IdentityHashMap<TestResult,String>();
+
+	private ResultHistory() {
+	}
+
+	/**
+	 * @return The JDBC url of the history database, empty if there is no history.
+	 */
+	public static String getUrl() {
+		if (url == null) {
+			String defaultUrl = !Boolean.getBoolean("guardium.va.history") ? ""
+					: "jdbc:h2:" + TestUtils.getDirectoryPath() + File.separator + "history" + File.separator + "va_history";
+			url = System.getProperty("guardium.va.history.url", defaultUrl);
+		}
+		return url;
+	}
+
+	/**
+	 * Closes the history and keeps results in the database given from now on.
+	 * @param historyUrl The JDBC url, empty for no history.
+	 */
+	static synchronized void setUrl(String historyUrl) {
+		close();
+		url = historyUrl;
+		failed = false;
+	}
+
+	/**
+	 * @return Whether results are kept.
+	 */
+	public static boolean isEnabled() {
+		return !failed && getUrl().length() > 0;
+	}
+
+	/**
+	 * @param ds
+	 * @return The key results of the datasource are kept by: the hash key of the datasource if it
+	 * has one, or else the same hash of its service name, host and port as the VA summary.
+	 */
+	public static String getDatasourceHash(Datasource ds) {
+		if (ds == null) {
+			return null;
+		}
+		if (ds.getHashKey() != null) {
+			return ds.getHashKey();
+		}
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA1");
+			byte[] bytes = md.digest( (ds.getServiceName() + "+" + ds.getHost() + "+" + ds.getPort()).getBytes() );
+			return Utils.bytesToHexaString(bytes);
+		} catch (Exception e) {
+			AdHocLogger.logException(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Queues a result of the current run, the first result starts the run.
+	 * Results without a datasource hash are not kept.
+	 * @param result
+	 */
+	public static synchronized void record(TestResult result) {
+		if (!isEnabled() || result.getDataSourceHash() == null || result.getTestScore() == null) {
+			return;
+		}
+		try {
+			if (runId < 0) {
+				startRun(result.getAssessmentResultHeader());
+			}
+			String[] fp = fingerprints.get(result.getDataSourceHash());
+			if (fp == null) {
+				unfingerprinted.add(result.getDataSourceHash());
+			}
+			pending.add(new Row(result, runTime, fp, carried.get(result)));
+			if (pending.size() >= BATCH_SIZE) {
+				submitResults();
+			}
+		} catch (SQLException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Sets the fingerprints kept with the results of the datasource until the run is closed, the
+	 * results of the datasource already recorded in the run get them too.
+	 * @param dataSourceHash
+	 * @param fingerprint
+	 * @param configFingerprint Null if the configuration of the datasource could not be read.
+	 */
+	public static synchronized void setFingerprints(final String dataSourceHash, final String fingerprint, final String configFingerprint) {
+		fingerprints.put(dataSourceHash, new String[] { fingerprint, configFingerprint });
+		if (!unfingerprinted.remove(dataSourceHash) || failed) {
+			return;
+		}
+		// written after the results queued before it
+		submitResults();
+		final long run = runId;
+		submit(new Runnable() {
+			public void run() {
+				if (failed) {
+					return;
+				}
+				synchronized (DB) {
+					try {
+						writeFingerprints(run, dataSourceHash, fingerprint, configFingerprint);
+					} catch (SQLException e) {
+						fail(e);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Marks a result as carried forward from a previous run, call it before the result is saved.
+	 * The history keeps its text of the time the test ran, the result holds that time.
+	 * @param result
+	 * @param from The result it was carried forward from.
+	 */
+	public static synchronized void markCarried(TestResult result, Entry from) {
+		if (!isEnabled()) {
+			return;
+		}
+		carried.put(result, from.getResult().getResultText());
+	}
+
+	/**
+	 * Queues a VA summary record, written as it is when the run is closed.
+	 * @param summary
+	 */
+	public static synchronized void recordSummary(VaSummary summary) {
+		if (!isEnabled() || summary.getDataSourceHash() == null) {
+			return;
+		}
+		pendingSummaries.put(summary.getDataSourceHash() + "|" + summary.getTestId(), summary);
+	}
+
+	/**
+	 * Writes what is queued, completes the run header and closes the database, the next result
+	 * starts a new run.
+	 */
+	public static synchronized void close() {
+		try {
+			awaitResults();
+			if (!failed && (runId >= 0 || !pendingSummaries.isEmpty())) {
+				synchronized (DB) {
+					flushSummaries();
+					endRun();
+				}
+			}
+		} catch (SQLException e) {
+			AdHocLogger.logException(e);
+		} finally {
+			if (writer != null) {
+				writer.shutdown();
+				writer = null;
+				lastWrite = null;
+			}
+			disconnect();
+		}
+	}
+
+	/**
+	 * @param dataSourceHash
+	 * @return The VA summary records kept for the datasource, empty if there are none.
+	 */
+	public static synchronized List<VaSummary> loadSummaries(String dataSourceHash) {
+		List<VaSummary> list = new ArrayList<VaSummary>();
+		if (!isEnabled() || dataSourceHash == null) {
+			return list;
+		}
+		synchronized (DB) {
+			PreparedStatement ps = null;
+			ResultSet rs = null;
+			try {
+				ps = connection().prepareStatement("SELECT " + SUMMARY_COLUMNS + " FROM VA_SUMMARY WHERE DATA_SOURCE_HASH = ?");
+				ps.setString(1, dataSourceHash);
+				rs = ps.executeQuery();
+				while (rs.next()) {
+					VaSummary s = new VaSummary();
+					s.setDataSourceHash(rs.getString(1));
+					s.setTestId(rs.getInt(2));
+					s.setTestDesc(rs.getString(3));
+					s.setDbType(rs.getString(4));
+					s.setServiceName(rs.getString(5));
+					s.setDbPort(rs.getInt(6));
+					s.setDbHost(rs.getString(7));
+					s.setDatasourceName(rs.getString(8));
+					s.setFirstExecution(rs.getTimestamp(9));
+					s.setLastExecution(rs.getTimestamp(10));
+					s.setFirstFail(rs.getTimestamp(11));
+					s.setLastFail(rs.getTimestamp(12));
+					s.setFirstPass(rs.getTimestamp(13));
+					s.setLastPass(rs.getTimestamp(14));
+					s.setCurrentScore(rs.getInt(15));
+					s.setCurrentScoreSince(rs.getTimestamp(16));
+					s.setCumulativeFailAge(rs.getInt(17));
+					s.setCumulativePassAge(rs.getInt(18));
+					s.setTimestamp(rs.getTimestamp(19));
+					list.add(s);
+				}
+			} catch (SQLException e) {
+				fail(e);
+			} finally {
+				Check.disposal(rs);
+				Check.disposal(ps);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @param dataSourceHash
+	 * @return The tests that fail in the last run of the datasource and did not fail, or did not
+	 * run, in the run of the datasource before it. Empty if the datasource ran only once.
+	 */
+	public static List<Entry> getNewlyFailed(String dataSourceHash) {
+		return getChanges(dataSourceHash, TestScore.FAIL,
+				"(P.TEST_SCORE IS NULL OR P.TEST_SCORE <> " + TestScore.FAIL.getScoreValue() + ")");
+	}
+
+	/**
+	 * @param dataSourceHash
+	 * @return The tests that pass in the last run of the datasource and failed in the run of the
+	 * datasource before it.
+	 */
+	public static List<Entry> getNewlyPassed(String dataSourceHash) {
+		return getChanges(dataSourceHash, TestScore.PASS,
+				"P.TEST_SCORE = " + TestScore.FAIL.getScoreValue());
+	}
+
+	/**
+	 * @param dataSourceHash
+	 * @param testId
+	 * @param limit The number of runs, 0 for all.
+	 * @return The results of the test on the datasource, the last run first.
+	 */
+	public static synchronized List<Entry> getTrend(String dataSourceHash, int testId, int limit) {
+		List<Entry> list = new ArrayList<Entry>();
+		if (!isEnabled() || dataSourceHash == null) {
+			return list;
+		}
+		awaitResults();
+		synchronized (DB) {
+			PreparedStatement ps = null;
+			ResultSet rs = null;
+			try {
+				ps = connection().prepareStatement("SELECT " + RESULT_COLUMNS + " FROM VA_RESULT "
+						+ "WHERE DATA_SOURCE_HASH = ? AND TEST_ID = ? ORDER BY RUN_TIME DESC, RUN_ID DESC"
+						+ (limit > 0 ? " LIMIT " + limit : ""));
+				ps.setString(1, dataSourceHash);
+				ps.setInt(2, testId);
+				rs = ps.executeQuery();
+				while (rs.next()) {
+					list.add(readEntry(rs));
+				}
+			} catch (SQLException e) {
+				fail(e);
+			} finally {
+				Check.disposal(rs);
+				Check.disposal(ps);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @param dataSourceHash
+	 * @param since
+	 * @return The results of the last run of the datasource before the current run that ran since
+	 * the time given and have a fingerprint, by test id.
+	 */
+	public static synchronized Map<Integer,Entry> getReusable(String dataSourceHash, Date since) {
+		Map<Integer,Entry> map = new HashMap<Integer,Entry>();
+		if (!isEnabled() || dataSourceHash == null) {
+			return map;
+		}
+		synchronized (DB) {
+			PreparedStatement ps = null;
+			ResultSet rs = null;
+			try {
+				long last = findRun(dataSourceHash, runId < 0 ? Long.MAX_VALUE : runId);
+				if (last < 0) {
+					return map;
+				}
+				ps = connection().prepareStatement("SELECT " + RESULT_COLUMNS + " FROM VA_RESULT "
+						+ "WHERE RUN_ID = ? AND DATA_SOURCE_HASH = ? AND FINGERPRINT IS NOT NULL AND EXECUTED_TIME >= ?");
+				ps.setLong(1, last);
+				ps.setString(2, dataSourceHash);
+				ps.setTimestamp(3, new Timestamp(since.getTime()));
+				rs = ps.executeQuery();
+				while (rs.next()) {
+					Entry e = readEntry(rs);
+					map.put(e.getResult().getTestId(), e);
+				}
+			} catch (SQLException e) {
+				fail(e);
+			} finally {
+				Check.disposal(rs);
+				Check.disposal(ps);
+			}
+		}
+		return map;
+	}
+
+	private static synchronized List<Entry> getChanges(String dataSourceHash, TestScore score, String previousCondition) {
+		List<Entry> list = new ArrayList<Entry>();
+		if (!isEnabled() || dataSourceHash == null) {
+			return list;
+		}
+		awaitResults();
+		synchronized (DB) {
+			PreparedStatement ps = null;
+			ResultSet rs = null;
+			try {
+				long last = findRun(dataSourceHash, Long.MAX_VALUE);
+				if (last < 0) {
+					return list;
+				}
+				long previous = findRun(dataSourceHash, last);
+				if (previous < 0) {
+					return list;
+				}
+
+				StringBuilder sql = new StringBuilder("SELECT C.");
+				sql.append(RESULT_COLUMNS.replace(", ", ", C."))
+					.append(" FROM VA_RESULT C LEFT JOIN VA_RESULT P ON P.RUN_ID = ? AND P.DATA_SOURCE_HASH = C.DATA_SOURCE_HASH ")
+					.append("AND P.TEST_ID = C.TEST_ID AND P.ASSESSMENT_TEST_ID = C.ASSESSMENT_TEST_ID ")
+					.append("WHERE C.RUN_ID = ? AND C.DATA_SOURCE_HASH = ? AND C.TEST_SCORE = ? AND ")
+					.append(previousCondition)
+					.append(" ORDER BY C.TEST_ID");
+				ps = connection().prepareStatement(sql.toString());
+				ps.setLong(1, previous);
+				ps.setLong(2, last);
+				ps.setString(3, dataSourceHash);
+				ps.setInt(4, score.getScoreValue());
+				rs = ps.executeQuery();
+				while (rs.next()) {
+					list.add(readEntry(rs));
+				}
+			} catch (SQLException e) {
+				fail(e);
+			} finally {
+				Check.disposal(rs);
+				Check.disposal(ps);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @return The last run of the datasource before the run given, -1 if there is none.
+	 */
+	private static long findRun(String dataSourceHash, long before) throws SQLException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			ps = connection().prepareStatement("SELECT MAX(RUN_ID) FROM VA_RESULT WHERE DATA_SOURCE_HASH = ? AND RUN_ID < ?");
+			ps.setString(1, dataSourceHash);
+			ps.setLong(2, before);
+			rs = ps.executeQuery();
+			if (rs.next()) {
+				long id = rs.getLong(1);
+				if (!rs.wasNull()) {
+					return id;
+				}
+			}
+			return -1;
+		} finally {
+			Check.disposal(rs);
+			Check.disposal(ps);
+		}
+	}
+
+	private static Entry readEntry(ResultSet rs) throws SQLException {
+		TestResult r = new TestResult();
+		r.setDataSourceHash(rs.getString(3));
+		r.setTestId(rs.getInt(4));
+		r.setAssessmentTestId(rs.getInt(5));
+		r.setTestScore(TestScore.findTestScore(rs.getInt(6)));
+		r.setScoreDesc(rs.getString(7));
+		r.setTestDesc(rs.getString(8));
+		r.setCategoryName(rs.getString(9));
+		r.setSeverity(rs.getString(10));
+		r.setDatasourceDesc(rs.getString(11));
+		r.setDatasourceType(rs.getString(12));
+		r.setDatasourceVersion(rs.getString(13));
+		r.setExternalReference(rs.getString(14));
+		r.setThresholdString(rs.getString(15));
+		r.setExceptionGroupDescription(rs.getString(16));
+		r.setStig_ref(rs.getString(17));
+		r.setStig_severity(rs.getString(18));
+		r.setStig_iacontrols(rs.getString(19));
+		r.setStig_srg(rs.getString(20));
+		r.setResultText(rs.getString(21));
+		r.setRecommendationText(rs.getString(22));
+		r.setDetail(rs.getString(23));
+		r.setShortDescription(rs.getString(24));
+		r.setSqlStmtSent(rs.getString(25));
+		Timestamp executed = rs.getTimestamp(26);
+		return new Entry(rs.getLong(1), rs.getTimestamp(2), executed == null ? rs.getTimestamp(2) : executed,
+				rs.getString(27), rs.getString(28), r);
+	}
+
+	/**
+	 * @return The connection to the history database, opened on first use, call it holding the DB lock.
+	 */
+	private static Connection connection() throws SQLException {
+		if (con == null) {
+			Connection c = DriverManager.getConnection(getUrl(),
+					System.getProperty("guardium.va.history.user", "sa"),
+					System.getProperty("guardium.va.history.password", ""));
+			Statement st = null;
+			try {
+				st = c.createStatement();
+				for (String ddl : SCHEMA) {
+					st.execute(ddl);
+				}
+				c.setAutoCommit(false);
+				c.commit();
+			} catch (SQLException e) {
+				Check.disposal(c);
+				throw e;
+			} finally {
+				Check.disposal(st);
+			}
+			con = c;
+		}
+		return con;
+	}
+
+	private static void startRun(AssessmentResultHeader header) throws SQLException {
+		Timestamp time = new Timestamp(System.currentTimeMillis());
+		synchronized (DB) {
+			PreparedStatement ps = null;
+			ResultSet rs = null;
+			try {
+				ps = connection().prepareStatement(
+						"INSERT INTO VA_RUN (RUN_TIME, ASSESSMENT_RESULT_ID, TASK_ID, ASSESSMENT_DESC) VALUES (?, ?, ?, ?)",
+						Statement.RETURN_GENERATED_KEYS);
+				ps.setTimestamp(1, time);
+				if (header != null) {
+					ps.setLong(2, header.getAssessmentResultId());
+					ps.setLong(3, header.getTaskId());
+					ps.setString(4, header.getAssessmentDesc());
+				} else {
+					ps.setNull(2, Types.BIGINT);
+					ps.setNull(3, Types.BIGINT);
+					ps.setNull(4, Types.VARCHAR);
+				}
+				ps.executeUpdate();
+				rs = ps.getGeneratedKeys();
+				rs.next();
+				runId = rs.getLong(1);
+				runTime = time;
+				con.commit();
+			} finally {
+				Check.disposal(rs);
+				Check.disposal(ps);
+			}
+		}
+	}
+
+	private static void endRun() throws SQLException {
+		if (runId < 0) {
+			return;
+		}
+		PreparedStatement ps = null;
+		try {
+			ps = connection().prepareStatement("UPDATE VA_RUN SET END_TIME = ?, "
+					+ "RESULT_COUNT = (SELECT COUNT(*) FROM VA_RESULT WHERE RUN_ID = ?), "
+					+ "PASS_COUNT = (SELECT COUNT(*) FROM VA_RESULT WHERE RUN_ID = ? AND TEST_SCORE = " + TestScore.PASS.getScoreValue() + "), "
+					+ "FAIL_COUNT = (SELECT COUNT(*) FROM VA_RESULT WHERE RUN_ID = ? AND TEST_SCORE = " + TestScore.FAIL.getScoreValue() + "), "
+					+ "ERROR_COUNT = (SELECT COUNT(*) FROM VA_RESULT WHERE RUN_ID = ? AND TEST_SCORE = " + TestScore.ERROR.getScoreValue() + ") "
+					+ "WHERE RUN_ID = ?");
+			ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+			for (int i = 2; i <= 6; i++) {
+				ps.setLong(i, runId);
+			}
+			ps.executeUpdate();
+			con.commit();
+		} finally {
+			Check.disposal(ps);
+		}
+	}
+
+	/**
+	 * Hands the queued results to the writer thread, call it holding the class lock.
+	 */
+	private static void submitResults() {
+		if (pending.isEmpty()) {
+			return;
+		}
+		if (failed) {
+			pending.clear();
+			carried.clear();
+			return;
+		}
+		final Batch batch = new Batch(runId, new ArrayList<Row>(pending));
+		pending.clear();
+		submit(new Runnable() {
+			public void run() {
+				if (failed) {
+					return;
+				}
+				synchronized (DB) {
+					try {
+						writeResults(batch);
+					} catch (SQLException e) {
+						fail(e);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Hands a write to the writer thread, call it holding the class lock.
+	 * @param write
+	 */
+	private static void submit(Runnable write) {
+		if (writer == null) {
+			writer = Executors.newSingleThreadExecutor(VirtualThreads.newPlatformFactory("VA-History-"));
+		}
+		lastWrite = writer.submit(write);
+	}
+
+	/**
+	 * Hands the queued results to the writer thread and waits until it has written them, call it
+	 * holding the class lock.
+	 */
+	private static void awaitResults() {
+		submitResults();
+		if (lastWrite == null) {
+			return;
+		}
+		try {
+			lastWrite.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			AdHocLogger.logException(e);
+		}
+	}
+
+	private static void writeResults(Batch batch) throws SQLException {
+		PreparedStatement ps = null;
+		try {
+			ps = connection().prepareStatement(MERGE_RESULT);
+			for (Row r : batch.rows) {
+				ps.setLong(1, batch.runId);
+				ps.setTimestamp(2, r.runTime);
+				ps.setString(3, r.dataSourceHash);
+				ps.setInt(4, r.testId);
+				ps.setInt(5, r.assessmentTestId);
+				ps.setInt(6, r.testScore);
+				ps.setString(7, r.scoreDesc);
+				ps.setString(8, r.testDesc);
+				ps.setString(9, r.categoryName);
+				ps.setString(10, r.severity);
+				ps.setString(11, r.datasourceDesc);
+				ps.setString(12, r.datasourceType);
+				ps.setString(13, r.datasourceVersion);
+				ps.setString(14, r.externalReference);
+				ps.setString(15, r.thresholdString);
+				ps.setString(16, r.exceptionGroupDescription);
+				ps.setString(17, r.stigRef);
+				ps.setString(18, r.stigSeverity);
+				ps.setString(19, r.stigIacontrols);
+				ps.setString(20, r.stigSrg);
+				ps.setString(21, r.resultText);
+				ps.setString(22, r.recommendationText);
+				ps.setString(23, r.detail);
+				ps.setString(24, r.shortDescription);
+				ps.setString(25, r.sqlStmtSent);
+				ps.setTimestamp(26, r.executedTime);
+				ps.setString(27, r.fingerprint);
+				ps.setString(28, r.configFingerprint);
+				ps.addBatch();
+			}
+			ps.executeBatch();
+			con.commit();
+		} finally {
+			Check.disposal(ps);
+		}
+	}
+
+	private static void writeFingerprints(long run, String dataSourceHash, String fingerprint, String configFingerprint) throws SQLException {
+		PreparedStatement ps = null;
+		try {
+			ps = connection().prepareStatement("UPDATE VA_RESULT SET FINGERPRINT = ?, CONFIG_FINGERPRINT = ? "
+					+ "WHERE RUN_ID = ? AND DATA_SOURCE_HASH = ? AND FINGERPRINT IS NULL");
+			ps.setString(1, fingerprint);
+			ps.setString(2, configFingerprint);
+			ps.setLong(3, run);
+			ps.setString(4, dataSourceHash);
+			ps.executeUpdate();
+			con.commit();
+		} finally {
+			Check.disposal(ps);
+		}
+	}
+
+	private static void flushSummaries() throws SQLException {
+		if (pendingSummaries.isEmpty()) {
+			return;
+		}
+		PreparedStatement ps = null;
+		try {
+			ps = connection().prepareStatement(MERGE_SUMMARY);
+			for (VaSummary s : pendingSummaries.values()) {
+				ps.setString(1, s.getDataSourceHash());
+				ps.setInt(2, s.getTestId());
+				ps.setString(3, s.getTestDesc());
+				ps.setString(4, s.getDbType());
+				ps.setString(5, s.getServiceName());
+				ps.setInt(6, s.getDbPort());
+				ps.setString(7, s.getDbHost());
+				ps.setString(8, s.getDatasourceName());
+				ps.setTimestamp(9, timestamp(s.getFirstExecution()));
+				ps.setTimestamp(10, timestamp(s.getLastExecution()));
+				ps.setTimestamp(11, timestamp(s.getFirstFail()));
+				ps.setTimestamp(12, timestamp(s.getLastFail()));
+				ps.setTimestamp(13, timestamp(s.getFirstPass()));
+				ps.setTimestamp(14, timestamp(s.getLastPass()));
+				ps.setInt(15, s.getCurrentScore());
+				ps.setTimestamp(16, timestamp(s.getCurrentScoreSince()));
+				ps.setInt(17, s.getCumulativeFailAge());
+				ps.setInt(18, s.getCumulativePassAge());
+				ps.setTimestamp(19, new Timestamp(System.currentTimeMillis()));
+				ps.addBatch();
+			}
+			ps.executeBatch();
+			con.commit();
+		} finally {
+			Check.disposal(ps);
+		}
+		pendingSummaries.clear();
+	}
+
+	private static Timestamp timestamp(Date d) {
+		return d == null ? null : new Timestamp(d.getTime());
+	}
+
+	/**
+	 * Turns the history off for the rest of the process, what is queued is dropped when the run is
+	 * closed. Takes only the DB lock, the writer thread calls it too.
+	 */
+	private static void fail(SQLException e) {
+		AdHocLogger.logException(e);
+		failed = true;
+		synchronized (DB) {
+			Check.disposal(con);
+			con = null;
+		}
+	}
+
+	private static void disconnect() {
+		synchronized (DB) {
+			Check.disposal(con);
+			con = null;
+		}
+		runId = -1;
+		runTime = null;
+		pending.clear();
+		pendingSummaries.clear();
+		fingerprints.clear();
+		unfingerprinted.clear();
+		carried.clear();
+	}
+
+	/** Results handed to the writer thread, with the run they were recorded in */
+	private static class Batch {
+		private final long runId;
+		private final List<Row> rows;
+
+		private Batch(long runId, List<Row> rows) {
+			this.runId = runId;
+			this.rows = rows;
+		}
+	}
+
+	/** The values of a result as it was recorded, the row written to VA_RESULT */
+	private static final class Row {
+		private final Timestamp runTime;
+		private final String dataSourceHash;
+		private final int testId;
+		private final int assessmentTestId;
+		private final int testScore;
+		private final String scoreDesc;
+		private final String testDesc;
+		private final String categoryName;
+		private final String severity;
+		private final String datasourceDesc;
+		private final String datasourceType;
+		private final String datasourceVersion;
+		private final String externalReference;
+		private final String thresholdString;
+		private final String exceptionGroupDescription;
+		private final String stigRef;
+		private final String stigSeverity;
+		private final String stigIacontrols;
+		private final String stigSrg;
+		private final String resultText;
+		private final String recommendationText;
+		private final String detail;
+		private final String shortDescription;
+		private final String sqlStmtSent;
+		private final Timestamp executedTime;
+		private final String fingerprint;
+		private final String configFingerprint;
+
+		/**
+		 * @param r
+		 * @param runTime
+		 * @param fp The fingerprint and configuration fingerprint of the datasource, null if not set.
+		 * @param carriedText The text of a result carried forward as it was when it ran, null for the others.
+		 */
+		private Row(TestResult r, Timestamp runTime, String[] fp, String carriedText) {
+			this.runTime = runTime;
+			this.dataSourceHash = r.getDataSourceHash();
+			this.testId = r.getTestId();
+			this.assessmentTestId = r.getAssessmentTestId();
+			this.testScore = r.getTestScore().getScoreValue();
+			this.scoreDesc = r.getScoreDesc();
+			this.testDesc = r.getTestDesc();
+			this.categoryName = r.getCategoryName();
+			this.severity = r.getSeverity();
+			this.datasourceDesc = r.getDatasourceDesc();
+			this.datasourceType = r.getDatasourceType();
+			this.datasourceVersion = r.getDatasourceVersion();
+			this.externalReference = r.getExternalReference();
+			this.thresholdString = r.getThresholdString();
+			this.exceptionGroupDescription = r.getExceptionGroupDescription();
+			this.stigRef = r.getStig_ref();
+			this.stigSeverity = r.getStig_severity();
+			this.stigIacontrols = r.getStig_iacontrols();
+			this.stigSrg = r.getStig_srg();
+			this.resultText = carriedText == null ? r.getResultText() : carriedText;
+			this.recommendationText = r.getRecommendationText();
+			this.detail = r.getDetail();
+			this.shortDescription = r.getShortDescription();
+			this.sqlStmtSent = r.getSqlStmtSent();
+			this.executedTime = r.getExecutedTime() == null ? runTime : new Timestamp(r.getExecutedTime().getTime());
+			this.fingerprint = fp == null ? null : fp[0];
+			this.configFingerprint = fp == null ? null : fp[1];
+		}
+	}
+
+	/** A result kept in the history, with the run it belongs to */
+	public static class Entry {
+		private final long runId;
+		private final Date runTime;
+		private final Date executedTime;
+		private final String fingerprint;
+		private final String configFingerprint;
+		private final TestResult result;
+
+		private Entry(long runId, Date runTime, Date executedTime, String fingerprint, String configFingerprint, TestResult result) {
+			this.runId = runId;
+			this.runTime = runTime;
+			this.executedTime = executedTime;
+			this.fingerprint = fingerprint;
+			this.configFingerprint = configFingerprint;
+			this.result = result;
+		}
+
+		public long getRunId() {
+			return this.runId;
+		}
+
+		public Date getRunTime() {
+			return this.runTime;
+		}
+
+		/**
+		 * @return When the test ran, before the run for a result carried forward.
+		 */
+		public Date getExecutedTime() {
+			return this.executedTime;
+		}
+
+		public String getFingerprint() {
+			return this.fingerprint;
+		}
+
+		/**
+		 * @return The configuration fingerprint of the datasource, null if it could not be read.
+		 */
+		public String getConfigFingerprint() {
+			return this.configFingerprint;
+		}
+
+		/**
+		 * @return The result as it was recorded, without its assessment result header.
+		 */
+		public TestResult getResult() {
+			return this.result;
+		}
+	}
+}
@@ -7,12 +7,11 @@
 package com.guardium.map;
 
 import java.util.HashMap;
-import java.util.List;
 
 import com.guardium.data.AvailableTest;
 import com.guardium.data.SqlbasedAssessmentDefinition;
-import com.guardium.gui.TestUtils;
 import com.guardium.gui.VATest;
+import com.guardium.utils.AdHocLogger;
 import com.guardium.utils.ReadDumpFile;
 
 public class SqlbasedAssessmentDefinitionMap {
@@ -61,150 +60,58 @@ public class SqlbasedAssessmentDefinitionMap {
 	private static void initMap() {
 		// Read data from the xml dump
 		String  resourceFile = "sqlbased.dump";
-		TestUtils tutils = new TestUtils();
-		String fileName = tutils.readDataFile(resourceFile);
-		if (fileName.isEmpty()) {
-			return;
-		}
-		
 		ReadDumpFile rdf = new ReadDumpFile();
-		boolean readok = rdf.readFile(fileName);
-		tutils.removeDataFile(fileName);
-		if (!readok) {
-			return;
-		}
-
-		List<List> tbList = rdf.getTableList();
-		String tbName = rdf.getTableName();
-
-		for (List rlist : tbList) {
-			//System.out.println("rlist size " + rlist.size());
+		// each row is added as soon as it is parsed
+		boolean readok = rdf.streamResource(resourceFile, new ReadDumpFile.TableHandler() {
+			private int definitionId, testId, recommendationPass, recommendationFail, resultPass, resultFail;
+			private int sqlStmt, returnType, operatorId, compareToValue, callable, detailText, detailSql;
+			private int preTestSql, preTestMessage, dbLoopFlag, loopDatabases, queryTimeout;
 
-			// init all fields
-			int sid = -1;  
-			int tid = -1;
-			String rcpass = "";
-			String rcfail = "";
-		    String rspass = "";
-		    String rsfail = "";
-		    String sql = "";
-		    String returntype = ""; 
-		    int op_id = 0;
-		    String compval = "";
-		    boolean call_flag = false;
-		    String detail = "";
-		    String dsql = "";
-		    String pre_sql = "";
-		    String pre_msg = "";
-		    boolean loop_flag = false; 
-		    String db = "";
-		
-
-			int len = rlist.size();
-
-			for (int i = 0; i < len; i++) {
-				String str[] = (String[]) rlist.get(i);
-				String name = null;
-				String value = null;
-				name = str[0];
-				value = str[1];
-				// System.out.println(name + "=" + value);
-
-				/*
-						sqlbased_assessment_definition_id=2478
-						test_id=2478
-						recommendation_text_pass=No action required.
-						recommendation_text_fail=We recommend that you revoke view privileges granted with the grant option. We recommend that you restructure your view privilege grants so that they do not include the grant option. If you need to exclude certain grantees or view privileges that require the grant option in your environment, you can create an exception group and populate it with the names of authorized grantees and/or objects, and link your group to this test.  You can revoke grant option via a command similar to this example: REVOKE ALL ON <schema_name>.<view_name> FROM <grantee>.
-						result_text_pass=View privileges have not been granted with the grant option, as recommended.
-						result_text_fail=One or more view privileges have been granted with the grant option.
-						sql_stmt=select count(*)
-						from nc_system.nc_all_view_privs priv 
-						join nc_system.nc_all_views v on priv.tableid = v.viewid 
-						join nc_system.nc_all_schemas s on v.schemaid = s.schemaid
-						where lower(priv.grantor) <> 'db_admin'   
-						and priv.grantee <> 'db_admin'
-						and priv.grantor <> priv.grantee
-						and priv.grantee not in (select u.username from nc_system.nc_all_group_members m join nc_system.nc_all_roles r on m.groupid = r.roleid join nc_system.nc_all_users u on  m.memberid = u.userid where r.rolename = 'db_admin')
-						and priv.isgrantable = 'true'
-						return_type=I
-						operator_id=8
-						compare_to_value=0
-						is_callable_statement=0
-						detail_text=View with grant option privileges found:
-						detail_sql=select 'granto				
-				*/
-
-				
-				if (name.equals("sqlbased_assessment_definition_id")) {
-					if (!value.isEmpty())
-						sid = Integer.parseInt(value);
-				} else if (name.equals("test_id")) {
-					if (!value.isEmpty())
-						tid = Integer.parseInt(value);
-				} else if (name.equals("recommendation_text_pass")) {
-					if (!value.isEmpty())
-						rcpass = value;
-				} else if (name.equals("recommendation_text_fail")) {
-					if (!value.isEmpty())
-						rcfail = value;
-				} else if (name.equals("result_text_pass")) {
-					if (!value.isEmpty())
-						rspass = value;					
-				} else if (name.equals("result_text_fail")) {
-					if (!value.isEmpty())
-						rsfail = value;
-				} else if (name.equals("sql_stmt")) {
-					if (!value.isEmpty())
-						sql = value;					
-				} else if (name.equals("return_type")) {
-					if (!value.isEmpty())
-						returntype = value;					
-				} else if (name.equals("operator_id")) {
-					if (!value.isEmpty())
-						op_id = Integer.parseInt(value);
-				} else if (name.equals("compare_to_value")) {
-					if (!value.isEmpty())
-						compval = value;						
-				} else if (name.equals("is_callable_statement")) {
-					if (!value.isEmpty()) {
-						int tmp = Integer.parseInt(value);
-						if (tmp == 0)
-							call_flag = false;
-						else
-							call_flag = true;
-					}
-				} else if (name.equals("detail_text")) {
-					if (!value.isEmpty())
-						detail = value;
-				} else if (name.equals("detail_sql")) {
-					if (!value.isEmpty())
-						dsql = value;
-				} else if (name.equals("pre_test_check_sql")) {
-					if (!value.isEmpty())
-						pre_sql = value;
-				} else if (name.equals("pre_test_fail_message")) {
-					if (!value.isEmpty())
-						pre_msg = value;
-				} else if (name.equals("db_loop_flag")) {
-					if (!value.isEmpty()) {
-						int tmp = Integer.parseInt(value);
-						if (tmp == 0)
-							loop_flag = false;
-						else
-							loop_flag = true;
-					}					
-				} else if (name.equals("loop_databases")) {
-					if (!value.isEmpty())
-						db = value;
-				} 
+			public void columns(String[] columns) {
+				definitionId = ReadDumpFile.column(columns, "sqlbased_assessment_definition_id");
+				testId = ReadDumpFile.column(columns, "test_id");
+				recommendationPass = ReadDumpFile.column(columns, "recommendation_text_pass");
+				recommendationFail = ReadDumpFile.column(columns, "recommendation_text_fail");
+				resultPass = ReadDumpFile.column(columns, "result_text_pass");
+				resultFail = ReadDumpFile.column(columns, "result_text_fail");
+				sqlStmt = ReadDumpFile.column(columns, "sql_stmt");
+				returnType = ReadDumpFile.column(columns, "return_type");
+				operatorId = ReadDumpFile.column(columns, "operator_id");
+				compareToValue = ReadDumpFile.column(columns, "compare_to_value");
+				callable = ReadDumpFile.column(columns, "is_callable_statement");
+				detailText = ReadDumpFile.column(columns, "detail_text");
+				detailSql = ReadDumpFile.column(columns, "detail_sql");
+				preTestSql = ReadDumpFile.column(columns, "pre_test_check_sql");
+				preTestMessage = ReadDumpFile.column(columns, "pre_test_fail_message");
+				dbLoopFlag = ReadDumpFile.column(columns, "db_loop_flag");
+				loopDatabases = ReadDumpFile.column(columns, "loop_databases");
+				queryTimeout = ReadDumpFile.column(columns, "query_timeout");
 			}
-									
-			SqlbasedAssessmentDefinition t = new SqlbasedAssessmentDefinition(sid, tid, rcpass, rcfail,
-					rspass, rsfail, sql, returntype, op_id, compval, call_flag,
-				    detail, dsql, pre_sql, pre_msg, loop_flag, db);
 
-			hm.put(sid, t);
+			public void handleRow(ReadDumpFile.Row row) {
+				int sid = row.getInt(definitionId, -1);
+				SqlbasedAssessmentDefinition t = new SqlbasedAssessmentDefinition(sid, row.getInt(testId, -1),
+						row.getString(recommendationPass, ""), row.getString(recommendationFail, ""),
+						row.getString(resultPass, ""), row.getString(resultFail, ""),
+						row.getString(sqlStmt, ""), row.getString(returnType, ""), row.getInt(operatorId, 0),
+						row.getString(compareToValue, ""), row.getFlag(callable, false),
+						row.getString(detailText, ""), row.getString(detailSql, ""),
+						row.getString(preTestSql, ""), row.getString(preTestMessage, ""),
+						row.getFlag(dbLoopFlag, false), row.getString(loopDatabases, ""));
+				int qt = 0;
+				try {
+					qt = row.getInt(queryTimeout, 0);
+				} catch (NumberFormatException e) {
+					// the test runs with the default timeout
+					AdHocLogger.logWarning("Invalid query_timeout '" + row.get(queryTimeout) + "' of test " + t.getTestId() + ", using the default");
+				}
+				t.setQueryTimeout(qt);
 
+				hm.put(sid, t);
+			}
+		});
+		if (!readok) {
+			return;
 		}
 
 		/*
@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -43,6 +44,7 @@ import com.guardium.runtest.AssessmentRunner;
 import com.guardium.utils.AdHocLogger;
 import com.guardium.utils.Check;
 import com.guardium.utils.Informer;
+import com.guardium.utils.ResultExporter;
 import com.guardium.utils.Stringer;
 import com.guardium.utils.WriteResult;
 
@@ -80,50 +82,116 @@ public class TestResultMap {
 		throw new CloneNotSupportedException();
 	}
 	
-	private static int currentTestResultId = 20000;
+	private static final AtomicInteger currentTestResultId = new AtomicInteger(20000);
 	
-	// create a list
-	private static List <TestResult> trlist = new ArrayList<TestResult>();
+	// the results of the runs that do not bind a store of their own
+	private static TestResultStore trlist = new TestResultStore();
+	
+	/** 
+	 * Result store bound to the current thread, a datasource assessed concurrently records its
+	 * results here instead of the shared store. See bindBuffer / unbindBuffer.
+	 */
+	private static final ThreadLocal<TestResultStore> boundBuffer = new ThreadLocal<TestResultStore>();
+	
+	/**
+	 * Binds a result store to the current thread, every result saved and every list, dump and
+	 * summary call made on this thread use that store until unbindBuffer is called.
+	 * @param buffer
+	 */
+	public static void bindBuffer(TestResultStore buffer) {
+		boundBuffer.set(buffer);
+	}
+
+	public static void unbindBuffer() {
+		boundBuffer.remove();
+	}
+
+	/**
+	 * @return The store bound to the current thread, or the shared store if none is bound.
+	 */
+	private static TestResultStore currentStore() {
+		TestResultStore buffer = boundBuffer.get();
+		if (buffer != null) {
+			return buffer;
+		}
+		return trlist;
+	}
+
+	/**
+	 * @return A read only view of the results of the current store, in recorded order.
+	 */
+	private static List<TestResult> currentList() {
+		return currentStore().results();
+	}
 	
 	public int getMapSize() {
-		return trlist.size();
+		return currentStore().size();
 	}
 	
 	public void cleanMap () {
-		trlist.clear();
+		currentStore().clear();
 		return;
 	}
 	
+	/**
+	 * @return The store results are recorded to on this thread.
+	 */
+	public TestResultStore getStore() {
+		return currentStore();
+	}
+
+	/**
+	 * @return A read only view of the results, in recorded order.
+	 */
 	public List<TestResult> getList() {
-		return trlist;
+		return currentList();
 	}
 
+	/**
+	 * Replaces the results of the store results are recorded to on this thread.
+	 * @param tlist
+	 */
 	public void setList(List<TestResult> tlist) {
-		this.trlist = tlist;
+		// the list may be a view of this store
+		List<TestResult> results = new ArrayList<TestResult>(tlist);
+		TestResultStore store = currentStore();
+		store.clear();
+		store.addAll(results);
 	}
 
 	public static void add (TestResult t) {
-		t.setTestResultId(currentTestResultId);
-		trlist.add(t);
-		currentTestResultId++;
+		t.setTestResultId(currentTestResultId.getAndIncrement());
+		currentStore().add(t);
+		ResultExporter.export(t);
+		ResultHistory.record(t);
 		return;
 	}
 	
+	/**
+	 * Appends the results collected in a datasource store to a result store, in recorded order.
+	 * @param store
+	 * @param buffer
+	 */
+	public static void addAll (TestResultStore store, TestResultStore buffer) {
+		store.addAll(buffer);
+	}
 	
 	public void add (int id, TestResult v) {
 		v.setTestResultId(id);
-		trlist.add(v);
+		currentStore().add(v);
+		ResultExporter.export(v);
+		ResultHistory.record(v);
 	}
 
 	public TestResult getTestResult (int id) {
-		return (TestResult)trlist.get(id);
+		return currentStore().get(id);
 	}	
 	
 	// get available test by data source type
 	public List getListByTestId(int test_id) {
 	   List <TestResult> alist = new ArrayList<TestResult>();
 
-	   for (TestResult t: trlist) {
+	   for (TestResult t: currentList()) {
 			if (t.getTestId() == test_id) {
 	        	alist.add(t);
 			}
@@ -254,9 +322,11 @@ public class TestResultMap {
 			testResult.setDatasourceDesc(datasource.getDescription());
 			testResult.setDatasourceType(datasource.getTypeName());
 			testResult.setDatasourceVersion(datasource.getVersionLevel());
+			testResult.setDataSourceHash(ResultHistory.getDatasourceHash(datasource));
 			
 			//testResult.setTestStartTime("");
 			//testResult.setTestEndTime("");
+			testResult.setExecutedTime(new Date());
 			
 			// should not save here
 			// will save later
@@ -310,7 +380,7 @@ public class TestResultMap {
 	public List getTestDescList() {
 		List <String> alist = new ArrayList<String>();
 		
-		for (TestResult t: trlist) {
+		for (TestResult t: currentList()) {
 		    String tmp = t.getTestDesc();
 		    alist.add(tmp);			
 		}	 
@@ -327,7 +397,7 @@ public class TestResultMap {
 		//List <TestResult> cpartlist = new ArrayList<TestResult>();
 		
 		// sort by querybase and cve, full and partial
-		for (TestResult tr: trlist) {
+		for (TestResult tr: currentList()) {
 
 			int testid = tr.getTestId();
 		    if (testid >= 2000 && testid <=3000) {
@@ -422,156 +492,16 @@ public class TestResultMap {
 	}
 	
 	
+    /**
+     * @return The results in report order, see TestResultStore.getOrderedResults().
+     */
     public List<TestResult> getTestResultList () {
     	
     	// do modify first, to set result text to recommendation for the ERROR case.
     	modifyResultList ();
     	
-        // resequence the list to have full result at the front
-        ArrayList <TestResult> qfulllist = new ArrayList<TestResult>();
-        ArrayList <TestResult> qpartlist = new ArrayList<TestResult>();
-
-        ArrayList <TestResult> cfulllist = new ArrayList<TestResult>();
-
-        //List <TestResult> cpartlist = new ArrayList<TestResult>();
-
-        // sort by querybase and cve, full and partial
-        for (TestResult tr: trlist) {
-
-                int testid = tr.getTestId();
-            if (testid >= 2000 && testid <=3000) {
-                // querybased tests
-                if( Arrays.asList(2086,2111,2113,2114,2115,2198,2201,2251,2258,2259,
-                  2273,2276,2278,2279,2280,2281,2282,2284,2286,2308,
-                  2013,2011,2009,2004,2194,2289,2296,2298,2301,2313,
-                  2053,2052,2051,2050,2049,
-                  2022,2021,2015,2016,2311,2312,2373,2378,2381,2453,
-                  2062,2063,2067,2068,2069,2070,2072,2075,2079,2081,
-                  2214,2215,2216,2217,2219,2220,2222,2224,2227,2229,
-                  2048,2046,2036,2035,2032,2034,2029,2026,2023,2024
-                ).contains(testid) ) {
-                        qfulllist.add(tr);
-                }
-                else {
-                        qpartlist.add(tr);
-                }
-            }
-            else {
-                // cve tests
-                cfulllist.add(tr);
-            }
-        }
-
-        // we got three list, need to sort by pass, fail. other error
-        // and fail, and other error will sort again by category
-
-        ArrayList<ArrayList<TestResult>> array = new ArrayList<ArrayList<TestResult>>();
-        array.add(qfulllist);
-        array.add(qpartlist);
-        array.add(cfulllist);
-
-        List <TestResult> newlist = new ArrayList<TestResult>();
-
-        for (ArrayList al: array) {
-        	ArrayList <TestResult> ar = (ArrayList <TestResult>)al;
-
-            // sort by fail, pass
-            ArrayList <TestResult> passlist = new ArrayList<TestResult>();
-            ArrayList <TestResult> faillist = new ArrayList<TestResult>();
-            ArrayList <TestResult> otherlist = new ArrayList<TestResult>();
-            //ArrayList <TestResult> newpasslist = new ArrayList<TestResult>();
-            //ArrayList <TestResult> newfaillist = new ArrayList<TestResult>();
-            //ArrayList <TestResult> newotherlist = new ArrayList<TestResult>();
-
-            for (TestResult ts: ar) {
-            	if (ts.getTestScore() == TestScore.PASS) {
-            		passlist.add(ts);
-                }
-                else if (ts.getTestScore() == TestScore.FAIL) {
-                    faillist.add(ts);
-                }
-                else {
-                    otherlist.add(ts);
-                }
-            }
-
-                    /*
-                    asmt.severity.label.critical=Critical
-                    asmt.severity.label.major=Major
-                    asmt.severity.label.minor=Minor
-                    asmt.severity.label.caution=Cautionary
-                    asmt.severity.label.info=Informational
-    
-                    asmt.severity.label.critical.abbrev=Critical
-                    asmt.severity.label.major.abbrev=Major
-                    asmt.severity.label.minor.abbrev=Minor
-                    asmt.severity.label.caution.abbrev=Caution
-                    asmt.severity.label.info.abbrev=Info
-    
-                    asmt.datasource.severity.label.high=High
-                    asmt.datasource.severity.label.medium=Medium
-                    asmt.datasource.severity.label.low=Low
-                    asmt.datasource.severity.label.info=Info
-                    asmt.datasource.severity.label.none=None
-                     */
-
-
-            ArrayList<ArrayList<TestResult>> array2 = new ArrayList<ArrayList<TestResult>>();
-            array2.add(faillist);
-            array2.add(otherlist);
-            array2.add(passlist);
-
-            for (ArrayList al2: array2) {
-            	ArrayList <TestResult> ar2 = (ArrayList <TestResult>)al2;
-
-
-            	if (ar2.size() > 0) {
-            		/*
-                      Test Result Severity: CRITICAL
-                      Test Result Severity: MAJOR
-                      Test Result Severity: CAUTION
-            		 */
-            		ArrayList critlist = new ArrayList<TestResult>();
-            		ArrayList majorlist = new ArrayList<TestResult>();
-            		ArrayList minorlist = new ArrayList<TestResult>();
-            		ArrayList cautionlist = new ArrayList<TestResult>();
-            		ArrayList infolist = new ArrayList<TestResult>();
-
-            		for (TestResult f: ar2) {
-            			// sort by category
-            			if (f.getSeverity().equalsIgnoreCase("CRITICAL")) {
-            				critlist.add(f);
-            			}
-            			else if (f.getSeverity().equalsIgnoreCase("MAJOR")) {
-            				majorlist.add(f);
-            			}
-            			else if (f.getSeverity().equalsIgnoreCase("MINOR")) {
-            				minorlist.add(f);
-            			}
-            			else if (f.getSeverity().equalsIgnoreCase("CAUTION")) {
-            				cautionlist.add(f);
-            			}
-            			else if (f.getSeverity().equalsIgnoreCase("INFO")) {
-            				infolist.add(f);
-            			}
-            		}
-            		
-            		// reformat the faillist
-            		//faillist = new ArrayList<TestResult>();
-            		newlist.addAll(critlist);
-            		newlist.addAll(majorlist);
-            		newlist.addAll(minorlist);
-            		newlist.addAll(cautionlist);
-            		newlist.addAll(infolist);
-            	}
-            } // for
-            	
-        }
-
-        return newlist;
+    	return currentStore().getOrderedResults();
     }
-                        
-
 	
 	
 	public void dumpMap(Writer wr) {
@@ -625,325 +555,27 @@ public class TestResultMap {
 		WriteResult.writeOutput ("tests PRE_TEST_CHECK_FAILED: " + PreTestFailedCount);
 		WriteResult.writeOutput ("tests EXECUTION_TEST_ROUTINE_CHECK_FAILED: " + ExecTestFailedCount);
 
-		WriteResult.writeOutput ("Total tests: " + trlist.size());
+		WriteResult.writeOutput ("Total tests: " + currentStore().size());
 		
 	}
+	/**
+	 * @return The counts of all the results by reason: 0 pass, 1 fail, 2 error, 3 - 15 the other reasons.
+	 */
 	public int [] getSummary () {
-		
-		int[] anArray;
-
-	    // allocates memory for 16 integers
-	    anArray = new int[16];
-	     
-		int passCount = 0;
-		int failCount = 0;
-		int errorCount = 0;
-		int noCasCount = 0;
-		int noReportCount = 0;
-		int unSupportDBCount = 0;
-		int unSupportOSCount = 0;
-		int specialErrorCount = 0;
-		int casCollectErrorCount = 0;
-		int obsParaCount = 0;
-		int depParaCount = 0;
-		int cveNotCount = 0;
-		int noUserDataCount = 0;
-		int moduleNotCount = 0;
-		int PreTestFailedCount = 0;
-		int ExecTestFailedCount = 0;
-
-	/** The Test Passed. */
-	//	PASS(1),
-	/** The Test Failed. */
-	//	FAIL(0),
-	/** Unspecified Error. */
-	//	ERROR(-1),
-	//  NO_CAS_DATA(-2),
-	/** Report data is not available to evaluate this test and needs to be run. */
-	//  NO_REPORT_DATA(-3),
-	/** The database version does not support this test */
-	//  UNSUPPORTED_DB_VERSION(-4),
-	/** The OS version does not support this test */
-	//  UNSUPPORTED_OS_VERSION(-5),
-	/** Unknown */
-	//  SPECIAL_ERROR(-6),
-	/** Error in collecting CAS data **/
-	//  CAS_DATA_COLLECTION_ERROR(-7),
-	/** Obsolete Database Version **/
-	//  OBSOLETE_PARAMETER(-8),
-	/** Deprecated Database Version **/
-	//  DEPRECATED_PARAMETER(-9),
-	/** CVE not reported for the database version **/
-	//  CVE_NOT_REPORTED(-10),
-	/** user data not set in GDMMONITOR.OS_USER and GDMMONITOR.OS_GROUP tables **/
-	//  NO_USER_DATA(-11),
-	/** Modules listed for PTF not present in DB2 MEPL **/
-	//  MODULES_NOT_PRESENT(-12),
-	/** The Pre Test Check Failed Test Not Executed. */ 
-	//  PRE_TEST_CHECK_FAILED(-13),
-	/** The calculateScore routine not defined in the test */
-	//  EXECUTION_TEST_ROUTINE_CHECK_FAILED(-14);
-	/** The Test Score Definition ID of this Test Score. */
-
-
-		for (TestResult t: trlist) {
-			TestScore score = t.getTestScore();			
-		    
-		    
-			switch (score) {
-
-			case PASS:
-				passCount++;
-				break;
-			case FAIL:
-				failCount++;
-				break;
-			case ERROR:
-				errorCount++;
-				break;				
-			case NO_CAS_DATA:				
-				noCasCount ++;
-				break;
-			case NO_REPORT_DATA:
-				noReportCount++;
-				break;
-			case UNSUPPORTED_DB_VERSION:
-				unSupportDBCount++;
-				break;
-			case UNSUPPORTED_OS_VERSION:
-				unSupportOSCount++;
-				break;
-			case SPECIAL_ERROR:
-				specialErrorCount++;
-				break;
-			case CAS_DATA_COLLECTION_ERROR:
-				casCollectErrorCount++;
-				break;
-			case OBSOLETE_PARAMETER:
-				obsParaCount++;
-				break;
-			case DEPRECATED_PARAMETER:
-				depParaCount++;
-				break; 
-			case CVE_NOT_REPORTED:
-				cveNotCount++;
-				break;
-			case NO_USER_DATA:
-				noUserDataCount++;
-				break;
-			case MODULES_NOT_PRESENT:
-				moduleNotCount++;
-				break;
-			case PRE_TEST_CHECK_FAILED:
-				PreTestFailedCount++;
-				break;
-			case EXECUTION_TEST_ROUTINE_CHECK_FAILED:
-				ExecTestFailedCount++;
-				break;
-			}
-		    
-		}		
-		
-		anArray[0] = passCount;
-		anArray[1] = failCount;
-		anArray[2] = errorCount;
-		anArray[3] = noCasCount;
-		anArray[4] = noReportCount;	
-		anArray[5] = unSupportDBCount;
-		anArray[6] = unSupportOSCount;
-		anArray[7] = specialErrorCount;		
-		anArray[8] = casCollectErrorCount;
-		anArray[9] = obsParaCount;
-		anArray[10] = depParaCount;
-		anArray[11] = cveNotCount;
-		anArray[12] = noUserDataCount;
-		anArray[13] = moduleNotCount;
-		anArray[14] = PreTestFailedCount;
-		anArray[15] = ExecTestFailedCount;
-				
-        return anArray;
+		return Arrays.copyOf(currentStore().getSummary(0), TestResultStore.REASON_COUNT);
 	}
 	
+	/**
+	 * @param ttype 4 - query based test, 6 - cve test
+	 * @return The counts of getSummary(), 16 for total other error count and 17 for total count.
+	 */
 	public int [] getSummary (int ttype) {
-		
-		// ttype 4 - query based test
-		// ttype 6 - cve test
-		int[] anArray;
-		
-		
-	    // allocates memory for 18 integers
-		// 0- 15 are for different reason count
-		// 16 for total other error count
-		// 17 for total count
-	    anArray = new int[18];
-	     
-		int passCount = 0;
-		int failCount = 0;
-		int errorCount = 0;
-		int noCasCount = 0;
-		int noReportCount = 0;
-		int unSupportDBCount = 0;
-		int unSupportOSCount = 0;
-		int specialErrorCount = 0;
-		int casCollectErrorCount = 0;
-		int obsParaCount = 0;
-		int depParaCount = 0;
-		int cveNotCount = 0;
-		int noUserDataCount = 0;
-		int moduleNotCount = 0;
-		int PreTestFailedCount = 0;
-		int ExecTestFailedCount = 0;
-
-		int totalCount  = 0;
-		int totalOtherCount = 0;
-		
-	/** The Test Passed. */
-	//	PASS(1),
-	/** The Test Failed. */
-	//	FAIL(0),
-	/** Unspecified Error. */
-	//	ERROR(-1),
-	//  NO_CAS_DATA(-2),
-	/** Report data is not available to evaluate this test and needs to be run. */
-	//  NO_REPORT_DATA(-3),
-	/** The database version does not support this test */
-	//  UNSUPPORTED_DB_VERSION(-4),
-	/** The OS version does not support this test */
-	//  UNSUPPORTED_OS_VERSION(-5),
-	/** Unknown */
-	//  SPECIAL_ERROR(-6),
-	/** Error in collecting CAS data **/
-	//  CAS_DATA_COLLECTION_ERROR(-7),
-	/** Obsolete Database Version **/
-	//  OBSOLETE_PARAMETER(-8),
-	/** Deprecated Database Version **/
-	//  DEPRECATED_PARAMETER(-9),
-	/** CVE not reported for the database version **/
-	//  CVE_NOT_REPORTED(-10),
-	/** user data not set in GDMMONITOR.OS_USER and GDMMONITOR.OS_GROUP tables **/
-	//  NO_USER_DATA(-11),
-	/** Modules listed for PTF not present in DB2 MEPL **/
-	//  MODULES_NOT_PRESENT(-12),
-	/** The Pre Test Check Failed Test Not Executed. */ 
-	//  PRE_TEST_CHECK_FAILED(-13),
-	/** The calculateScore routine not defined in the test */
-	//  EXECUTION_TEST_ROUTINE_CHECK_FAILED(-14);
-	/** The Test Score Definition ID of this Test Score. */
-
-
-		for (TestResult t: trlist) {
-			if (ttype == 4) {
-				if (t.getTestId() < 2000 || t.getTestId() > 3000) {
-					continue;
-				}
-			}
-			else if (ttype == 6) {
-				if (t.getTestId() < 1000 || t.getTestId() > 2000) {
-					continue;
-				}
-			}
-
-			totalCount++;
-			
-			TestScore score = t.getTestScore();			
-		    
-		    
-			switch (score) {
-
-			case PASS:
-				passCount++;
-				break;
-			case FAIL:
-				failCount++;
-				break;
-			case ERROR:
-				errorCount++;
-				totalOtherCount++;
-				break;				
-			case NO_CAS_DATA:				
-				noCasCount ++;
-				totalOtherCount++;
-				break;
-			case NO_REPORT_DATA:
-				noReportCount++;
-				totalOtherCount++;
-				break;
-			case UNSUPPORTED_DB_VERSION:
-				unSupportDBCount++;
-				totalOtherCount++;
-				break;
-			case UNSUPPORTED_OS_VERSION:
-				unSupportOSCount++;
-				totalOtherCount++;
-				break;
-			case SPECIAL_ERROR:
-				specialErrorCount++;
-				totalOtherCount++;
-				break;
-			case CAS_DATA_COLLECTION_ERROR:
-				casCollectErrorCount++;
-				totalOtherCount++;
-				break;
-			case OBSOLETE_PARAMETER:
-				obsParaCount++;
-				totalOtherCount++;
-				break;
-			case DEPRECATED_PARAMETER:
-				depParaCount++;
-				totalOtherCount++;
-				break; 
-			case CVE_NOT_REPORTED:
-				cveNotCount++;
-				totalOtherCount++;
-				break;
-			case NO_USER_DATA:
-				noUserDataCount++;
-				totalOtherCount++;
-				break;
-			case MODULES_NOT_PRESENT:
-				moduleNotCount++;
-				totalOtherCount++;
-				break;
-			case PRE_TEST_CHECK_FAILED:
-				PreTestFailedCount++;
-				totalOtherCount++;
-				break;
-			case EXECUTION_TEST_ROUTINE_CHECK_FAILED:
-				ExecTestFailedCount++;
-				totalOtherCount++;
-				break;
-			}
-		    
-		}		
-		
-		anArray[0] = passCount;
-		anArray[1] = failCount;
-		anArray[2] = errorCount;
-		anArray[3] = noCasCount;
-		anArray[4] = noReportCount;	
-		anArray[5] = unSupportDBCount;
-		anArray[6] = unSupportOSCount;
-		anArray[7] = specialErrorCount;		
-		anArray[8] = casCollectErrorCount;
-		anArray[9] = obsParaCount;
-		anArray[10] = depParaCount;
-		anArray[11] = cveNotCount;
-		anArray[12] = noUserDataCount;
-		anArray[13] = moduleNotCount;
-		anArray[14] = PreTestFailedCount;
-		anArray[15] = ExecTestFailedCount;
-		
-		// total other error count
-		anArray[16] = totalOtherCount;
-		
-		// total count
-		anArray[17] = totalCount;		
-        return anArray;
+		return currentStore().getSummary(ttype);
 	}
 	
 	public void modifyResultList () {
 		
-		for (TestResult t: trlist) {
+		for (TestResult t: currentList()) {
 
 			TestScore score = t.getTestScore();			
 		    
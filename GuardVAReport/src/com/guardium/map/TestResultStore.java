@@ -0,0 +1,373 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.map;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.guardium.assessment.tests.TestScore;
+import com.guardium.data.TestResult;
+
+/**
+ * The results of one assessment run, in the order they were recorded.
+ * <p>
+ * Results are appended without locking. The counts of the summaries are kept per test type,
+ * score and severity in striped counters updated when a result is added, so a summary is read
+ * without going over the results. The report position of each result is computed when it is
+ * added too, ordering the results is then a single stable sort. Results are indexed by their
+ * test result id, and results() reads them in place.
+ */
+public class TestResultStore {
+
+	/** Test types of getSummary(ttype) */
+	public static final int QUERY_TEST_TYPE = 4;
+	public static final int CVE_TEST_TYPE = 6;
+
+	/** Counter sets: every test, query based tests, CVE tests */
+	private static final int ALL = 0;
+	private static final int QUERY = 1;
+	private static final int CVE = 2;
+
+	/** Severities in report order, a result of another severity is not listed by getOrderedResults() */
+	private static final String[] SEVERITIES = { "CRITICAL", "MAJOR", "MINOR", "CAUTION", "INFO" };
+
+	/** Number of reason counts of a summary */
+	public static final int REASON_COUNT = 16;
+
+	/** Index in a summary of each score, -1 for the scores the summaries do not count */
+	private static final int[] SUMMARY_INDEX = new int[TestScore.values().length];
+
+	/** Query based tests with a full result, reported before the other query based tests */
+	private static final Set<Integer> FULL_RESULT_TESTS = new HashSet<Integer>(Arrays.asList(
+			2086,2111,2113,2114,2115,2198,2201,2251,2258,2259,
+			2273,2276,2278,2279,2280,2281,2282,2284,2286,2308,
+			2013,2011,2009,2004,2194,2289,2296,2298,2301,2313,
+			2053,2052,2051,2050,2049,
+			2022,2021,2015,2016,2311,2312,2373,2378,2381,2453,
+			2062,2063,2067,2068,2069,2070,2072,2075,2079,2081,
+			2214,2215,2216,2217,2219,2220,2222,2224,2227,2229,
+			2048,2046,2036,2035,2032,2034,2029,2026,2023,2024
+	));
+
+	static {
+		Arrays.fill(SUMMARY_INDEX, -1);
+		SUMMARY_INDEX[TestScore.PASS.ordinal()] = 0;
+		SUMMARY_INDEX[TestScore.FAIL.ordinal()] = 1;
+		SUMMARY_INDEX[TestScore.ERROR.ordinal()] = 2;
+		SUMMARY_INDEX[TestScore.QUERY_TIMEOUT.ordinal()] = 2;
+		SUMMARY_INDEX[TestScore.NO_CAS_DATA.ordinal()] = 3;
+		SUMMARY_INDEX[TestScore.NO_REPORT_DATA.ordinal()] = 4;
+		SUMMARY_INDEX[TestScore.UNSUPPORTED_DB_VERSION.ordinal()] = 5;
+		SUMMARY_INDEX[TestScore.UNSUPPORTED_OS_VERSION.ordinal()] = 6;
+		SUMMARY_INDEX[TestScore.SPECIAL_ERROR.ordinal()] = 7;
+		SUMMARY_INDEX[TestScore.CAS_DATA_COLLECTION_ERROR.ordinal()] = 8;
+		SUMMARY_INDEX[TestScore.OBSOLETE_PARAMETER.ordinal()] = 9;
+		SUMMARY_INDEX[TestScore.DEPRECATED_PARAMETER.ordinal()] = 10;
+		SUMMARY_INDEX[TestScore.CVE_NOT_REPORTED.ordinal()] = 11;
+		SUMMARY_INDEX[TestScore.NO_USER_DATA.ordinal()] = 12;
+		SUMMARY_INDEX[TestScore.MODULES_NOT_PRESENT.ordinal()] = 13;
+		SUMMARY_INDEX[TestScore.PRE_TEST_CHECK_FAILED.ordinal()] = 14;
+		SUMMARY_INDEX[TestScore.EXECUTION_TEST_ROUTINE_CHECK_FAILED.ordinal()] = 15;
+	}
+
+	private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+		public int compare(Entry a, Entry b) {
+			return Integer.compare(a.orderKey, b.orderKey);
+		}
+	};
+
+	private final ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<Entry>();
+	private final LongAdder size = new LongAdder();
+	/** Results by test result id */
+	private final Map<Long,TestResult> byId = new ConcurrentHashMap<Long,TestResult>();
+	/** Read only view of the results, see results() */
+	private final List<TestResult> view = new ResultView();
+
+	/** Results by counter set */
+	private final LongAdder[] totals = newAdders(3);
+	/** Results by counter set, summary index and severity, the last severity slot is for any other severity */
+	private final LongAdder[][][] counts = new LongAdder[3][REASON_COUNT][];
+
+	public TestResultStore() {
+		for (int t = 0; t < this.counts.length; t++) {
+			for (int r = 0; r < REASON_COUNT; r++) {
+				this.counts[t][r] = newAdders(SEVERITIES.length + 1);
+			}
+		}
+	}
+
+	private static LongAdder[] newAdders(int n) {
+		LongAdder[] adders = new LongAdder[n];
+		for (int i = 0; i < n; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	/**
+	 * Appends a result and counts it.
+	 * @param result
+	 */
+	public void add(TestResult result) {
+		int severity = severityIndex(result.getSeverity());
+		int testId = result.getTestId();
+		this.entries.add(new Entry(result, orderKey(testId, result.getTestScore(), severity)));
+		this.byId.put(result.getTestResultId(), result);
+		this.size.increment();
+
+		int reason = result.getTestScore() == null ? -1 : SUMMARY_INDEX[result.getTestScore().ordinal()];
+		int slot = severity < 0 ? SEVERITIES.length : severity;
+		this.count(ALL, reason, slot);
+		// the ranges overlap at 2000, as they always did in the summaries
+		if (testId >= 2000 && testId <= 3000) {
+			this.count(QUERY, reason, slot);
+		}
+		if (testId >= 1000 && testId <= 2000) {
+			this.count(CVE, reason, slot);
+		}
+	}
+
+	private void count(int set, int reason, int slot) {
+		this.totals[set].increment();
+		if (reason >= 0) {
+			this.counts[set][reason][slot].increment();
+		}
+	}
+
+	/**
+	 * Appends the results of another store, in its order.
+	 * @param other
+	 */
+	public void addAll(TestResultStore other) {
+		for (Entry e : other.entries) {
+			this.add(e.result);
+		}
+	}
+
+	/**
+	 * Appends results, in list order.
+	 * @param results
+	 */
+	public void addAll(List<TestResult> results) {
+		for (TestResult result : results) {
+			this.add(result);
+		}
+	}
+
+	public int size() {
+		return this.size.intValue();
+	}
+
+	/**
+	 * Drops every result, not to be called while results are added.
+	 */
+	public void clear() {
+		this.entries.clear();
+		this.byId.clear();
+		this.size.reset();
+		for (int t = 0; t < this.counts.length; t++) {
+			this.totals[t].reset();
+			for (LongAdder[] bySeverity : this.counts[t]) {
+				for (LongAdder adder : bySeverity) {
+					adder.reset();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param id
+	 * @return The result with this test result id, null if there is none.
+	 */
+	public TestResult get(long id) {
+		return this.byId.get(id);
+	}
+
+	/**
+	 * @return A read only view of the results in the order they were recorded. Results added
+	 * while it is iterated may or may not be seen, get(index) walks the results from the first.
+	 */
+	public List<TestResult> results() {
+		return this.view;
+	}
+
+	/**
+	 * @return A copy of the results in the order they were recorded.
+	 */
+	public List<TestResult> getResults() {
+		List<TestResult> l = new ArrayList<TestResult>(this.size());
+		for (Entry e : this.entries) {
+			l.add(e.result);
+		}
+		return l;
+	}
+
+	/**
+	 * @return The results in report order: the query based tests with a full result, the other
+	 * query based tests, then the CVE tests; each by failed, other and passed, then by severity.
+	 * Results keep their recorded order within that, results of an unknown severity are left out.
+	 */
+	public List<TestResult> getOrderedResults() {
+		List<Entry> l = new ArrayList<Entry>(this.size());
+		for (Entry e : this.entries) {
+			if (e.orderKey >= 0) {
+				l.add(e);
+			}
+		}
+		Collections.sort(l, ORDER);
+		List<TestResult> ordered = new ArrayList<TestResult>(l.size());
+		for (Entry e : l) {
+			ordered.add(e.result);
+		}
+		return ordered;
+	}
+
+	/**
+	 * @param ttype 4 for the query based tests, 6 for the CVE tests, any other for all tests.
+	 * @return The counts of TestResultMap.getSummary(ttype): 0-15 by reason, 16 the total of the
+	 * reasons other than pass and fail, 17 the number of results.
+	 */
+	public int[] getSummary(int ttype) {
+		int set = setOf(ttype);
+		int[] summary = new int[REASON_COUNT + 2];
+		for (int r = 0; r < REASON_COUNT; r++) {
+			summary[r] = this.getCount(set, r);
+			if (r > 1) {
+				summary[REASON_COUNT] += summary[r];
+			}
+		}
+		summary[REASON_COUNT + 1] = this.totals[set].intValue();
+		return summary;
+	}
+
+	/**
+	 * @param ttype 4 for the query based tests, 6 for the CVE tests, any other for all tests.
+	 * @param score
+	 * @param severity CRITICAL, MAJOR, MINOR, CAUTION or INFO.
+	 * @return The number of results of the type with this score and severity.
+	 */
+	public int getCount(int ttype, TestScore score, String severity) {
+		int reason = SUMMARY_INDEX[score.ordinal()];
+		int sev = severityIndex(severity);
+		if (reason < 0) {
+			return 0;
+		}
+		return this.counts[setOf(ttype)][reason][sev < 0 ? SEVERITIES.length : sev].intValue();
+	}
+
+	private int getCount(int set, int reason) {
+		int n = 0;
+		for (LongAdder adder : this.counts[set][reason]) {
+			n += adder.intValue();
+		}
+		return n;
+	}
+
+	private static int setOf(int ttype) {
+		if (ttype == QUERY_TEST_TYPE) {
+			return QUERY;
+		}
+		if (ttype == CVE_TEST_TYPE) {
+			return CVE;
+		}
+		return ALL;
+	}
+
+	private static int severityIndex(String severity) {
+		if (severity != null) {
+			for (int i = 0; i < SEVERITIES.length; i++) {
+				if (SEVERITIES[i].equalsIgnoreCase(severity)) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The report position of a result, -1 if it is not reported.
+	 */
+	private static int orderKey(int testId, TestScore score, int severity) {
+		if (severity < 0) {
+			return -1;
+		}
+		int group;
+		if (testId >= 2000 && testId <= 3000) {
+			group = FULL_RESULT_TESTS.contains(testId) ? 0 : 1;
+		} else {
+			group = 2;
+		}
+		int band;
+		if (score == TestScore.FAIL) {
+			band = 0;
+		} else if (score == TestScore.PASS) {
+			band = 2;
+		} else {
+			band = 1;
+		}
+		return (group * 3 + band) * SEVERITIES.length + severity;
+	}
+
+	private class ResultView extends AbstractList<TestResult> {
+		@Override
+		public TestResult get(int index) {
+			if (index >= 0) {
+				int i = 0;
+				for (Entry e : TestResultStore.this.entries) {
+					if (i++ == index) {
+						return e.result;
+					}
+				}
+			}
+			throw new IndexOutOfBoundsException("Index: " + index);
+		}
+
+		@Override
+		public int size() {
+			return TestResultStore.this.size();
+		}
+
+		@Override
+		public Iterator<TestResult> iterator() {
+			final Iterator<Entry> it = TestResultStore.this.entries.iterator();
+			return new Iterator<TestResult>() {
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+
+				public TestResult next() {
+					if (!it.hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return it.next().result;
+				}
+			};
+		}
+	}
+
+	private static class Entry {
+		private final TestResult result;
+		private final int orderKey;
+
+		private Entry(TestResult result, int orderKey) {
+			this.result = result;
+			this.orderKey = orderKey;
+		}
+	}
+}
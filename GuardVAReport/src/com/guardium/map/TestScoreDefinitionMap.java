@@ -110,6 +110,8 @@ public class TestScoreDefinitionMap {
 		dtlist.add(t);
 		t = new TestScoreDefinition(-14, "CalculateScore routine not defined. Test not executed", date);
 		dtlist.add(t);
+		t = new TestScoreDefinition(-17, "Query timed out. Test canceled", date);
+		dtlist.add(t);
 	}
 	
 	public TestScoreDefinition getTestScoreDefinition (int id) {
@@ -57,13 +57,15 @@ public class VaSummaryMap {
 	}
 
 	private static ConcurrentHashMap hm = new ConcurrentHashMap();
+	// the datasource hashes whose summary records were read from the result history
+	private static final Map<String,Boolean> loadedHashes = new ConcurrentHashMap<String,Boolean>();
 	private static long currentVaSummaryId = 20000;
 
 	public int getMapSize() {
 		return hm.size();
 	}
 
-	public void add(VaSummary v) {
+	public synchronized void add(VaSummary v) {
 		v.setVaSummaryId(currentVaSummaryId);
 		hm.put(currentVaSummaryId, v);
 		currentVaSummaryId++;
@@ -103,6 +105,17 @@ public class VaSummaryMap {
 
 	public VaSummary getSummary(String dataSourceHash, int testId) {
 		
+		if (!loadedHashes.containsKey(dataSourceHash)) {
+			synchronized (loadedHashes) {
+				if (!loadedHashes.containsKey(dataSourceHash)) {
+					for (VaSummary v : ResultHistory.loadSummaries(dataSourceHash)) {
+						this.add(v);
+					}
+					loadedHashes.put(dataSourceHash, Boolean.TRUE);
+				}
+			}
+		}
+
 		Iterator it = null;
 		it = hm.entrySet().iterator();
 
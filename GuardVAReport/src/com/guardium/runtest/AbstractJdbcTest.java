@@ -32,6 +32,8 @@ import com.guardium.assessment.tests.TestScore;
 //import com.guardium.assessment.tests.TestScoreDefinition;
 import com.guardium.data.Datasource;
 import com.guardium.data.DataSourceConnectException;
+import com.guardium.data.StatementFactory;
+import com.guardium.data.StatementFactory.Shape;
 import com.guardium.data.TestResult;
 
 import com.guardium.utils.AdHocLogger;
@@ -39,6 +41,7 @@ import com.guardium.utils.Check;
 import com.guardium.utils.Informer;
 //import com.guardium.utils.JdbcUtils;
 import com.guardium.utils.Stringer;
+import com.guardium.runtest.QueryWatchdog.Watch;
 import com.mongodb.MongoClient;
 
 /**
@@ -76,6 +79,9 @@ public abstract class AbstractJdbcTest extends GenericTest {
 	
 	private String forDetail = null;
 
+	/** the time limits of the statements of the current run, ended when the run is done */
+	private final List<Watch> watches = new ArrayList<Watch>();
+
 	public String getForDetail() {
 		return forDetail;
 	}
@@ -135,6 +141,77 @@ public abstract class AbstractJdbcTest extends GenericTest {
 		return ts;		
 	}
 
+	/**
+	 * @return The time limit in seconds of the statements of this test, 0 for none.
+	 */
+	protected int getQueryTimeout() {
+		return QueryWatchdog.getTimeout(this.getAvailableTest(), null);
+	}
+
+	/**
+	 * @return The memo of the query results of the datasource run, null if the test runs on its own.
+	 */
+	protected QueryMemo getQueryMemo() {
+		return QueryMemo.get(this.getCachedParameterMap());
+	}
+
+	/**
+	 * @param con A connection to use.
+	 * @param shape Whether the query is a scalar check or reads all its rows.
+	 * @return A forward only, read only statement, limited to the query timeout of the test.
+	 * @throws SQLException
+	 */
+	protected Statement createStatement(Connection con, Shape shape) throws SQLException {
+		Statement stmt = StatementFactory.createStatement(con, this.getDatasource(), shape);
+		this.watchStatement(stmt);
+		return stmt;
+	}
+
+	/**
+	 * Limits a statement to the query timeout of the test, until the test is done.
+	 * @param stmt
+	 */
+	protected void watchStatement(Statement stmt) {
+		Watch watch = QueryWatchdog.watch(stmt, this.getQueryTimeout());
+		synchronized (this.watches) {
+			this.watches.add(watch);
+		}
+	}
+
+	/**
+	 * @param t The exception thrown by the test.
+	 * @return Whether the exception comes from a statement that ran out of time.
+	 */
+	protected boolean isQueryTimeout(Throwable t) {
+		if (QueryWatchdog.isTimeout(t)) {
+			return true;
+		}
+		synchronized (this.watches) {
+			for (Watch watch : this.watches) {
+				if (watch.isTimedOut()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The result text of a test canceled by its query timeout.
+	 */
+	protected String getQueryTimeoutText() {
+		return Say.what(Say.ASMT_ERROR_SQL_TIMEOUT, Say.ASMT_SUB_VALUE, String.valueOf(this.getQueryTimeout()));
+	}
+
+	private void endWatches() {
+		synchronized (this.watches) {
+			for (Watch watch : this.watches) {
+				watch.end();
+			}
+			this.watches.clear();
+		}
+	}
+
 	
 	/**
 	 * None of the inherited arguments are used.
@@ -185,16 +262,23 @@ public abstract class AbstractJdbcTest extends GenericTest {
 			
 		} catch (SQLException e) {
 			//AdHocLogger.logException(e);
-			// Can happen if connection user does not have access to parameter tables.  Use i18n.
-			score = TestScore.ERROR;
-			result = Say.what(
-					Say.ASMT_MSG_CAT_ACC_FAIL,
-					Say.ASMT_SUB_DS, String.valueOf( this.getDatasource() )
-			);
-			String dtl = Informer.thrownMessage(e);
-			// LOG.error(result + Say.NL + dtl, e);
-			this.logError(result, dtl);
-			result += Say.NL + e.getLocalizedMessage();
+			if ( this.isQueryTimeout(e) ) {
+				score = TestScore.QUERY_TIMEOUT;
+				result = this.getQueryTimeoutText();
+				this.logError(result, Informer.thrownMessage(e));
+			}
+			else {
+				// Can happen if connection user does not have access to parameter tables.  Use i18n.
+				score = TestScore.ERROR;
+				result = Say.what(
+						Say.ASMT_MSG_CAT_ACC_FAIL,
+						Say.ASMT_SUB_DS, String.valueOf( this.getDatasource() )
+				);
+				String dtl = Informer.thrownMessage(e);
+				// LOG.error(result + Say.NL + dtl, e);
+				this.logError(result, dtl);
+				result += Say.NL + e.getLocalizedMessage();
+			}
 
 		} catch (DataSourceConnectException e) {
 			//AdHocLogger.logException(e);
@@ -232,6 +316,8 @@ public abstract class AbstractJdbcTest extends GenericTest {
 			// LOG.error(result + Say.NL + detail, e);
 			this.logError(result, detail);
 
+		} finally {
+			this.endWatches();
 		}
 		// if there are catalogs involved, get details about access errors, if any
 		String catalogErrors;
@@ -364,14 +450,23 @@ public abstract class AbstractJdbcTest extends GenericTest {
 	 * @return The object value from the first row and numbered column of the query's result
 	 * @throws SQLException
 	 */
-	protected Object executeSqlForSingleVal(Connection con, String query, int columnNumber)
+	protected Object executeSqlForSingleVal(final Connection con, final String query, final int columnNumber)
+	throws SQLException{
+		return QueryMemo.get(this.getQueryMemo(), con, "value " + columnNumber, query, new QueryMemo.Query<Object>() {
+			public Object run() throws SQLException {
+				return querySingleVal(con, query, columnNumber);
+			}
+		});
+	}
+
+	private Object querySingleVal(Connection con, String query, int columnNumber)
 	throws SQLException{
 		Object result = null;
 
 		Statement stmt = null;
 		ResultSet rs = null;
 		try {
-			stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			stmt = this.createStatement(con, Shape.SCALAR);
 
 			rs = stmt.executeQuery(query);
 			if ( rs.next() ) {
@@ -392,14 +487,23 @@ public abstract class AbstractJdbcTest extends GenericTest {
 	 * @return The object int the first row of the named column
 	 * @throws SQLException
 	 */
-	protected Object executeSqlForSingleVal(Connection con, String query, String colName)
+	protected Object executeSqlForSingleVal(final Connection con, final String query, final String colName)
+	throws SQLException{
+		return QueryMemo.get(this.getQueryMemo(), con, "value " + colName, query, new QueryMemo.Query<Object>() {
+			public Object run() throws SQLException {
+				return querySingleVal(con, query, colName);
+			}
+		});
+	}
+
+	private Object querySingleVal(Connection con, String query, String colName)
 	throws SQLException{
 
 		Object value = null;
 		Statement stmt = null;
 		ResultSet rs = null;
 		try {
-			stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			stmt = this.createStatement(con, Shape.SCALAR);
 
 			rs = stmt.executeQuery(query);
 			if ( rs.next() ) {
@@ -419,11 +523,19 @@ public abstract class AbstractJdbcTest extends GenericTest {
 	 * @return Whether at least one row was returned by the query.
 	 * @throws SQLException
 	 */
-	protected boolean executeSqlForPositiveCount(Connection con, String query) throws SQLException{
+	protected boolean executeSqlForPositiveCount(final Connection con, final String query) throws SQLException{
+		return QueryMemo.get(this.getQueryMemo(), con, "positive", query, new QueryMemo.Query<Boolean>() {
+			public Boolean run() throws SQLException {
+				return queryPositiveCount(con, query);
+			}
+		});
+	}
+
+	private boolean queryPositiveCount(Connection con, String query) throws SQLException{
 		Statement stmt = null;
 		ResultSet rs = null;
 		try {
-			stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			stmt = this.createStatement(con, Shape.SCALAR);
 			rs = stmt.executeQuery(query);
 			return rs.next();
 
@@ -461,7 +573,17 @@ public abstract class AbstractJdbcTest extends GenericTest {
 	 * @return A list of values from a column of the result set.
 	 * @throws SQLException
 	 */
-	protected List<String> executeSqlForList(Connection con, String query, int columnNumber)
+	protected List<String> executeSqlForList(final Connection con, final String query, final int columnNumber)
+	throws SQLException {
+		// a copy, callers may change their list
+		return new ArrayList<String>(QueryMemo.get(this.getQueryMemo(), con, "list " + columnNumber, query, new QueryMemo.Query<List<String>>() {
+			public List<String> run() throws SQLException {
+				return queryList(con, query, columnNumber);
+			}
+		}));
+	}
+
+	private List<String> queryList(Connection con, String query, int columnNumber)
 	throws SQLException {
 
 		List<String> result = new ArrayList<String>();
@@ -469,7 +591,7 @@ public abstract class AbstractJdbcTest extends GenericTest {
 		Statement stmt = null;
 		ResultSet rs = null;
 		try {
-			stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			stmt = this.createStatement(con, Shape.DETAIL);
 			rs = stmt.executeQuery(query);
 			while ( rs.next() ) {
 				result.add( rs.getString(columnNumber) );
@@ -494,7 +616,17 @@ public abstract class AbstractJdbcTest extends GenericTest {
 	 * @return A list of values from a column of the result set.
 	 * @throws SQLException
 	 */
-	protected List<String> executeSqlForList(Connection con, String query, String columnName)
+	protected List<String> executeSqlForList(final Connection con, final String query, final String columnName)
+	throws SQLException {
+		// a copy, callers may change their list
+		return new ArrayList<String>(QueryMemo.get(this.getQueryMemo(), con, "list " + columnName, query, new QueryMemo.Query<List<String>>() {
+			public List<String> run() throws SQLException {
+				return queryList(con, query, columnName);
+			}
+		}));
+	}
+
+	private List<String> queryList(Connection con, String query, String columnName)
 	throws SQLException {
 
 		List<String> result = new ArrayList<String>();
@@ -502,7 +634,7 @@ public abstract class AbstractJdbcTest extends GenericTest {
 		Statement stmt = null;
 		ResultSet rs = null;
 		try {
-			stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			stmt = this.createStatement(con, Shape.DETAIL);
 			rs = stmt.executeQuery(query);
 			while ( rs.next() ) {
 				result.add( rs.getString(columnName) );
@@ -907,7 +1039,7 @@ public abstract class AbstractJdbcTest extends GenericTest {
 			StringBuilder values = new StringBuilder();
 			try {
 				// execute the Sql and loop through the result and accumulate the values
-				stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+				stmt = this.createStatement(con, Shape.DETAIL);
 				rs = stmt.executeQuery(sql);
 				while ( rs.next() ) {
 					String value = rs.getString(1);
@@ -1146,7 +1278,7 @@ public abstract class AbstractJdbcTest extends GenericTest {
 		Statement stmt = null;
 		ResultSet rs = null;
 		try {
-			stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			stmt = this.createStatement(con, Shape.DETAIL);
 			rs = stmt.executeQuery(query);
 			
 			int cols = rs.getMetaData().getColumnCount();
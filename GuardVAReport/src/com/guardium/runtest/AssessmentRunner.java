@@ -28,6 +28,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.log4j.Logger;
 //import org.apache.torque.TorqueException;
@@ -35,6 +41,7 @@ import org.apache.log4j.Logger;
 import com.guardium.assessment.i18n.Say;
 import com.guardium.assessment.tests.GuardAssessmentException;
 import com.guardium.assessment.tests.TestScore;
+import com.guardium.assessment.utils.DatasourceFacts;
 //import com.guardium.classifier.InitializationException;
 //import com.guardium.classifier.ProcessLogger;
 //import com.guardium.datamodel.adminconsole.AdminconsoleParameterPeer;
@@ -44,7 +51,11 @@ import com.guardium.map.AssessmentLogMap;
 import com.guardium.data.AssessmentResultDatasource;
 import com.guardium.data.AssessmentLog;
 import com.guardium.data.AssessmentResultHeader;
+import com.guardium.data.ConnectionGuard;
+import com.guardium.data.DatasourceSession;
 import com.guardium.data.AssessmentTest;
+import com.guardium.data.AvailableTest;
+import com.guardium.data.SqlbasedAssessmentDefinition;
 
 import com.guardium.map.AssessmentResultHeaderMap;
 import com.guardium.map.DatasourceMap;
@@ -54,6 +65,7 @@ import com.guardium.data.SecurityAssessment;
 //import com.guardium.map.SecurityAssessmentMap;
 import com.guardium.data.TestResult;
 import com.guardium.map.TestResultMap;
+import com.guardium.map.TestResultStore;
 //import com.guardium.datamodel.classifier.ClsProcessRun;
 //import com.guardium.datamodel.classifier.ClsProcessRunCredential;
 //import com.guardium.datamodel.classifier.ClsProcessRunCredentialPeer;
@@ -62,6 +74,7 @@ import com.guardium.map.TestResultMap;
 import com.guardium.data.Datasource;
 import com.guardium.data.DatasourceType;
 import com.guardium.data.DataSourceConnectException;
+import com.guardium.data.DatasourceConnectionPool;
 
 //import com.guardium.datamodel.logger.GdmAccessPeer;
 import com.guardium.utils.GuardRepGeneralException;
@@ -71,6 +84,7 @@ import com.guardium.utils.RepDateUtils;
 import com.guardium.utils.AdHocLogger;
 import com.guardium.utils.Check;
 import com.guardium.utils.Informer;
+import com.guardium.utils.VirtualThreads;
 //import com.teradata.jdbc.jdbc_4.logging.Log;
 //import com.guardium.utils.SSLUtil;
 //import com.mongodb.MongoClient;
@@ -90,12 +104,21 @@ public class AssessmentRunner {
 	private SecurityAssessment securityAssessment = null;
 	private final int taskId = -1;
 	
-	private boolean isRunCanceled = false;
+	private volatile boolean isRunCanceled = false;
+
+	/** The runner that spawned this one to assess a single datasource, null for the top level runner */
+	private final AssessmentRunner parent;
+
+	/** Scheduler used while the datasources are assessed concurrently */
+	private volatile AssessmentScheduler scheduler = null;
+
+	/** Executors of the tests running for this run and the runners it spawned, stopped by doCancel */
+	private final Set<ExecutorService> testExecutors = ConcurrentHashMap.newKeySet();
 
 	//private final ClsProcessRun clsProcessRun;
 	private List <Datasource> datasources = null;
 	private AssessmentResultHeader assessmentResultHeader = null;
-	private boolean paramRetrievalFailed = false;
+	private volatile boolean paramRetrievalFailed = false;
 	//private final AssessmentStatistics statistics = new AssessmentStatistics();
 	
 	DatasourceMap DatasourcePeer = DatasourceMap.getDatasourceMapObject();
@@ -114,7 +137,17 @@ public class AssessmentRunner {
 	 * @param clsProcessRun
 	 */
 	public AssessmentRunner() {
+		this.parent = null;
+	}
 
+	/**
+	 * Creates a runner for one datasource of the parent's assessment, it shares the
+	 * assessment and the cancel state but keeps its own per datasource state.
+	 * @param parent
+	 */
+	private AssessmentRunner(AssessmentRunner parent) {
+		this.parent = parent;
+		this.securityAssessment = parent.getSecurityAssessment();
 	}
 
 
@@ -327,18 +360,15 @@ public class AssessmentRunner {
 			
 			// get the Datasources and loop through the datasource tests
 			//List<Datasource> datasources = this.getDatasources();
+			if (datasources.size() > 1 && AssessmentScheduler.isConcurrent()) {
+				this.assessConcurrently(resultHeader, tests, datasources);
+				return;
+			}
 			for ( Datasource datasource : datasources ) {
-				if(this.isRunCanceled) return; //run has been canceled by UI
-				// LOG.warn("Assessing Datasource: '" + datasource + "'.");
-
-				// loop through the jdbc tests
-				this.loopJdbcTests(resultHeader, tests, datasource);
-				
-				if(this.isRunCanceled) return; //run has been canceled by UI
-				// loop through the CVE tests
-				this.loopCveTests(resultHeader, tests, datasource);				
+				if(this.isCanceled()) return; //run has been canceled by UI
+				this.assessDatasource(resultHeader, tests, datasource);
 			}
-		
+
 
 		} catch (GuardAssessmentException e) {
 			AssessmentLogPeer.logFatal(assessment, resultHeader, e);
@@ -368,6 +398,138 @@ public class AssessmentRunner {
 	
 	public void doCancel(){
 		this.isRunCanceled = true;
+		AssessmentScheduler sched = this.scheduler;
+		if (sched != null) {
+			sched.cancel();
+		}
+		// interrupt the running tests, the queued ones are dropped
+		for (ExecutorService exec : this.testExecutors) {
+			stopTests(exec);
+		}
+	}
+
+	/**
+	 * Interrupts the running tests of the executor and cancels the ones not started,
+	 * so waiting on their futures does not block.
+	 * @param exec
+	 */
+	private static void stopTests(ExecutorService exec) {
+		for (Runnable r : exec.shutdownNow()) {
+			if (r instanceof Future) {
+				((Future<?>) r).cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * @return The top level runner, it owns the cancel state of the run.
+	 */
+	private AssessmentRunner getRoot() {
+		return this.parent == null ? this : this.parent.getRoot();
+	}
+
+	/**
+	 * @return Whether this run, or the run that spawned it, has been canceled.
+	 */
+	public boolean isCanceled() {
+		return this.isRunCanceled || (this.parent != null && this.parent.isCanceled());
+	}
+
+	/**
+	 * Runs the jdbc and CVE tests for one datasource.
+	 * @param resultHeader
+	 * @param tests
+	 * @param datasource
+	 * @throws GuardAssessmentException
+	 * @throws GuardAssessmentCancelation
+	 */
+	private void assessDatasource(
+			AssessmentResultHeader resultHeader, List<AssessmentTest> tests, Datasource datasource
+	) throws GuardAssessmentException, GuardAssessmentCancelation {
+		// LOG.warn("Assessing Datasource: '" + datasource + "'.");
+
+		try {
+			// the results of the previous run that are still valid are not assessed again
+			IncrementalAssessment incremental = IncrementalAssessment.begin(datasource);
+			if (incremental != null) {
+				tests = incremental.carryForward(resultHeader, tests, datasource);
+			}
+
+			// loop through the jdbc tests
+			this.loopJdbcTests(resultHeader, tests, datasource);
+
+			if(this.isCanceled()) return; //run has been canceled by UI
+			// loop through the CVE tests
+			this.loopCveTests(resultHeader, tests, datasource);
+
+			if (incremental != null && !this.isCanceled()) {
+				// the facts not read before the tests, before they are forgotten
+				incremental.end();
+			}
+		} finally {
+			// the CVE facts are read once per run
+			DatasourceFacts.forget(datasource);
+		}
+	}
+
+	/**
+	 * Assesses the datasources concurrently, within the limits of the AssessmentScheduler.
+	 * Each datasource records into its own result buffer, the buffers are appended to the
+	 * caller's result list in datasource order once every datasource is done, so the
+	 * report order is the same as for a serial run.
+	 * @param resultHeader
+	 * @param tests
+	 * @param datasources
+	 * @throws GuardAssessmentException
+	 */
+	private void assessConcurrently(
+			final AssessmentResultHeader resultHeader, final List<AssessmentTest> tests, List<Datasource> datasources
+	) throws GuardAssessmentException {
+
+		// results go to whatever store the calling thread records into
+		TestResultStore target = TestResultPeer.getStore();
+		List<TestResultStore> buffers = new ArrayList<TestResultStore>();
+
+		AssessmentScheduler sched = new AssessmentScheduler();
+		this.scheduler = sched;
+		try {
+			for ( final Datasource datasource : datasources ) {
+				final TestResultStore buffer = new TestResultStore();
+				buffers.add(buffer);
+				final AssessmentRunner worker = new AssessmentRunner(this);
+
+				sched.submit(datasource, new Runnable() {
+					public void run() {
+						if (worker.isCanceled()) {
+							return;
+						}
+						TestResultMap.bindBuffer(buffer);
+						try {
+							worker.assessDatasource(resultHeader, tests, datasource);
+						} catch (GuardAssessmentException e) {
+							AssessmentLogPeer.logFatal(worker.getSecurityAssessment(), resultHeader, e);
+						} catch (GuardAssessmentCancelation e) {
+							// LOG.warn("Assessment was cancelled: '" + datasource + "'.", e);
+						} finally {
+							TestResultMap.unbindBuffer();
+						}
+					}
+				});
+			}
+			sched.awaitCompletion();
+
+		} catch (InterruptedException e) {
+			sched.cancel();
+			Thread.currentThread().interrupt();
+			throw new GuardAssessmentException("Interrupted while waiting for the datasource assessments.", e);
+
+		} finally {
+			sched.shutdown();
+			this.scheduler = null;
+			for (TestResultStore buffer : buffers) {
+				TestResultMap.addAll(target, buffer);
+			}
+		}
 	}
 
 	
@@ -385,6 +547,11 @@ public class AssessmentRunner {
 			AssessmentResultHeader resultHeader, List<AssessmentTest> tests, Datasource datasource
 	) throws GuardAssessmentException, GuardAssessmentCancelation {
 
+		if (datasource.isSqltype() && DatasourceConnectionPool.getPoolSize(datasource) > 1) {
+			this.loopJdbcTestsConcurrently(resultHeader, tests, datasource);
+			return;
+		}
+
 		// LOG.warn("Looping through JDBC Tests");
 		int concount = 0;
 		int count = 0;
@@ -394,12 +561,13 @@ public class AssessmentRunner {
 		DataSourceConnectException dsce = null;
 		Map cachedParams = null;
 		paramRetrievalFailed = false;
+		TestScore lastScore = null;
 		try {
 
 			// loop through the JDBC tests and pass the connection to each
 			for (AssessmentTest test : tests) {
 				
-				if(this.isRunCanceled) return; //run has been canceled by UI
+				if(this.isCanceled()) return; //run has been canceled by UI
 				
 				
 				// only jdbc tests
@@ -419,7 +587,7 @@ public class AssessmentRunner {
 				if(cachedParams == null)
 					cachedParams = new HashMap();
 				// Check the connection, then run the test
-				TestScore score;
+				TestScore score = null;
 				if(paramRetrievalFailed)
 				{
 					score = TestScore.ERROR;
@@ -433,6 +601,10 @@ public class AssessmentRunner {
 				}
 				else
 				{
+					// a test error may come from a lost connection, probe it before the next test
+					if (lastScore == TestScore.ERROR && con != null && !ConnectionGuard.isValid(con)) {
+						con = DatasourceSession.discard(datasource, con);
+					}
 					if (datasource.isSqltype()) {
 						if ( Check.isEmpty(con) ) 
 						{
@@ -447,8 +619,12 @@ public class AssessmentRunner {
 									if (count > 1) {
 										recordReconnection(resultHeader, test, datasource, count);
 									}
-									con = datasource.getConnection();
+									// the connection the run opened while planning, if still open
+									con = DatasourceSession.connect(datasource);
 									count++;
+									if (count == 1 && ScalarQueryBatch.isSupported(datasource)) {
+										ScalarQueryBatch.run(con, datasource, this.getTypeMatches(tests, datasource), cachedParams);
+									}
 									score = this.executeTest(test, resultHeader, datasource,  con, cachedParams);
 								} catch (DataSourceConnectException e) {
 									// preserve the exception for logging in the individual tests.
@@ -468,6 +644,7 @@ public class AssessmentRunner {
 					}
 					
 				}
+				lastScore = score;
 				testCount++;
 				System.out.println("Harden Test " + testCount + " - ID " + test.getTestId() + " completed");
 				// TODO - later
@@ -482,13 +659,188 @@ public class AssessmentRunner {
 		} finally {
 			// disconnect
 			// LOG.error("jdbc 2 concount="+concount);
-			con = Check.disposal(con);
+			con = DatasourceSession.release(datasource, con);
 		}
 	}
 
 	
 	
 	
+	/**
+	 * Runs the jdbc tests of a datasource concurrently over a pool of connections to it.
+	 * Tests that change the session state, switching database or catalog, run concurrently with
+	 * the others on a connection of their own, which is set back to its catalog after the test,
+	 * or replaced if that cannot be done, before another test can lease it.
+	 * @param resultHeader
+	 * @param tests
+	 * @param datasource
+	 * @throws GuardAssessmentException
+	 * @throws GuardAssessmentCancelation
+	 */
+	private void loopJdbcTestsConcurrently(
+			final AssessmentResultHeader resultHeader, List<AssessmentTest> tests, final Datasource datasource
+	) throws GuardAssessmentException, GuardAssessmentCancelation {
+
+		List<AssessmentTest> matches = this.getTypeMatches(tests, datasource);
+		List<AssessmentTest> shared = new ArrayList<AssessmentTest>();
+		for (AssessmentTest test : matches) {
+			if (!isSessionChanging(test)) {
+				shared.add(test);
+			}
+		}
+		if (matches.isEmpty()) {
+			return;
+		}
+
+		paramRetrievalFailed = false;
+		final Map cachedParams = new ConcurrentHashMap();
+		final DatasourceConnectionPool pool =
+			new DatasourceConnectionPool(datasource, DatasourceConnectionPool.getPoolSize(datasource));
+		try {
+			try {
+				pool.open();
+				// db-loop tests spread their databases over the idle connections
+				pool.share(cachedParams);
+			} catch (DataSourceConnectException dsce) {
+				this.logConnectionException(datasource, dsce, tests);
+				for (AssessmentTest test : matches) {
+					this.recordConnectionFailureResult(test, resultHeader, datasource, dsce);
+				}
+				return;
+			}
+
+			// the scalar checks first, in batches where the datasource allows it
+			if (ScalarQueryBatch.isSupported(datasource)) {
+				Connection con = null;
+				try {
+					con = pool.lease();
+					ScalarQueryBatch.run(con, datasource, shared, cachedParams);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new GuardAssessmentException("Interrupted while running the tests for: '" + datasource + "'.", e);
+				} finally {
+					pool.release(con);
+				}
+			}
+
+			// the tests share the pooled connections, each records into its own buffer and
+			// the buffers are added in test order
+			TestResultStore target = TestResultPeer.getStore();
+			List<TestResultStore> buffers = new ArrayList<TestResultStore>();
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			ExecutorService exec = VirtualThreads.newExecutor("VA-Test-" + datasource.getDatasourceId() + "-", pool.size(),
+					VirtualThreads.isPlatformDriver(datasource));
+			final AssessmentRunner root = this.getRoot();
+			root.testExecutors.add(exec);
+			if (this.isCanceled()) {
+				stopTests(exec);
+			}
+			try {
+				for (final AssessmentTest test : matches) {
+					final boolean pinned = isSessionChanging(test);
+					if (exec.isShutdown()) {
+						break; // canceled
+					}
+					final TestResultStore buffer = new TestResultStore();
+					buffers.add(buffer);
+					Runnable work = new Runnable() {
+						public void run() {
+							if (isCanceled() || paramRetrievalFailed) {
+								return;
+							}
+							TestResultMap.bindBuffer(buffer);
+							Connection con = null;
+							try {
+								con = pool.lease();
+								if (con == null) {
+									DataSourceConnectException dsce = new DataSourceConnectException(
+											Say.what(Say.ASMT_MSG_ERROR_NO_CONNECT) );
+									recordConnectionFailureResult(test, resultHeader, datasource, dsce);
+								} else {
+									TestScore score = executeTest(test, resultHeader, datasource, con, cachedParams);
+									// a test error may come from a lost connection, replace it if it does not answer
+									if (!pinned && score == TestScore.ERROR && !ConnectionGuard.isValid(con)) {
+										pool.retire(con);
+										con = null;
+									}
+								}
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							} finally {
+								if (pinned) {
+									// set back to its catalog, or replaced, before the next test leases it
+									pool.restore(con);
+								} else {
+									pool.release(con);
+								}
+								TestResultMap.unbindBuffer();
+							}
+						}
+					};
+					try {
+						futures.add( exec.submit(work) );
+					} catch (RejectedExecutionException e) {
+						break; // canceled
+					}
+				}
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						AdHocLogger.logException(e);
+					} catch (CancellationException e) {
+						// canceled before it started
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new GuardAssessmentException("Interrupted while running the tests for: '" + datasource + "'.", e);
+			} finally {
+				exec.shutdown();
+				root.testExecutors.remove(exec);
+				for (TestResultStore buffer : buffers) {
+					TestResultMap.addAll(target, buffer);
+				}
+			}
+			System.out.println("Harden Tests " + matches.size() + " completed on " + pool.size() + " connections");
+
+		} finally {
+			pool.close();
+		}
+	}
+
+	/**
+	 * @param tests
+	 * @param datasource
+	 * @return The jdbc tests that apply to the type of the datasource.
+	 */
+	private List<AssessmentTest> getTypeMatches(List<AssessmentTest> tests, Datasource datasource) {
+		List<AssessmentTest> matches = new ArrayList<AssessmentTest>();
+		for (AssessmentTest test : tests) {
+			if ( (test.isJdbcTest() || test.isQueryBasedTest()) && this.isTypeMatch(test, datasource) ) {
+				matches.add(test);
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * @param test
+	 * @return Whether the test may change the state of the session it runs on: looping over
+	 * databases, or a test class other than QueryBasedTest that can switch catalogs.
+	 */
+	static boolean isSessionChanging(AssessmentTest test) {
+		AvailableTest availableTest = test.getAvailableTest();
+		if (availableTest == null || !QueryBasedTest.class.getName().equals(availableTest.getClassName())) {
+			return true;
+		}
+		SqlbasedAssessmentDefinition sqlDefinition = availableTest.getSqlDefinition();
+		if (sqlDefinition == null) {
+			sqlDefinition = test.getSqlbasedAssessmentDefinition();
+		}
+		return sqlDefinition == null || sqlDefinition.getDbLoopFlag();
+	}
+
 	/**
 	 * Loop through the jdbc tests for a datasource.
 	 * @param resultHeader
@@ -503,76 +855,75 @@ public class AssessmentRunner {
 
 		// LOG.info("Looping through CVE Tests");
 		int count = 0;
-		Connection con = null;
+		boolean connected = false;
 		int testCount = 0;
 		DataSourceConnectException dsce = null;
-		try {
+		// the query memo of the tests of the datasource
+		Map cachedParams = new HashMap();
 
-			// loop through the JDBC tests and pass the connection to each
-			for (AssessmentTest test : tests) {
-				if(this.isRunCanceled) return; //run has been canceled by UI
-				
-				// only jdbc tests
-				if ( !test.isCveTest()) {
-					continue;
-				}
+		// loop through the JDBC tests and pass the connection to each
+		for (AssessmentTest test : tests) {
+			if(this.isCanceled()) return; //run has been canceled by UI
+			
+			// only jdbc tests
+			if ( !test.isCveTest()) {
+				continue;
+			}
 
-				// check for a matching datasource type
-				if ( !this.isTypeMatch(test, datasource) ) { continue; }
+			// check for a matching datasource type
+			if ( !this.isTypeMatch(test, datasource) ) { continue; }
 
-				/*
-				if ( LOG.isInfoEnabled() ) {
-					LOG.info("Evaluating Test: " +test);
-				}
-				*/
-				
-				// Check the connection, then run the test
-				TestScore score;
-				if (datasource.isSqltype()) {
-					if ( Check.isEmpty(con) ) {
-						if (dsce != null) {
-							// already got a connect exception, just record an error
-							score = this.recordConnectionFailureResult(test, resultHeader, datasource, dsce);
+			/*
+			if ( LOG.isInfoEnabled() ) {
+				LOG.info("Evaluating Test: " +test);
+			}
+			*/
+			
+			// Check the connection, then run the test
+			TestScore score;
+			if (datasource.isSqltype()) {
+				if ( !connected ) {
+					if (dsce != null) {
+						// already got a connect exception, just record an error
+						score = this.recordConnectionFailureResult(test, resultHeader, datasource, dsce);
 
-						} else {
-							// Get the connection here because a test may close it out from under us.
-							try {
-								if (count > 1) {
-									recordReconnection(resultHeader, test, datasource, count);
-								}
-								con = datasource.getConnection();
-								count++;
-								score = this.executeTest(test, resultHeader, datasource);
-
-							} catch (DataSourceConnectException e) {
-								// preserve the exception for logging in the individual tests.
-								dsce = e;
-								this.logConnectionException(datasource, dsce, tests);
-								score = this.recordConnectionFailureResult(test, resultHeader, datasource, dsce);
+					} else {
+						// Get the connection here because a test may close it out from under us.
+						try {
+							if (count > 1) {
+								recordReconnection(resultHeader, test, datasource, count);
 							}
+							// the tests read through the info getters, which take the session
+							// connection themselves, so it is only checked here and given back
+							DatasourceSession.release(datasource, DatasourceSession.connect(datasource));
+							connected = true;
+							count++;
+							score = this.executeTest(test, resultHeader, datasource, null, cachedParams);
+
+						} catch (DataSourceConnectException e) {
+							// preserve the exception for logging in the individual tests.
+							dsce = e;
+							this.logConnectionException(datasource, dsce, tests);
+							score = this.recordConnectionFailureResult(test, resultHeader, datasource, dsce);
 						}
-
-					} else {
-						// connection is good to go, run the test
-						score = this.executeTest(test, resultHeader, datasource);
 					}
+
+				} else {
+					// connection is good to go, run the test
+					score = this.executeTest(test, resultHeader, datasource, null, cachedParams);
 				}
-				testCount++;
-				System.out.println("CVE Test " + testCount + " - ID " + test.getTestId()+ " completed");
-				
-				// TODO - later
-				/*
-				// clean up for the datasource and get out
-				this.updateResultDatasourceVersion(resultHeader, datasource, con, mcon);
-				this.updateStatistics(resultHeader, score, datasource);
-				resultHeader.updateStatsByType(test, score);
-				*/
-				
 			}
-
-		} finally {
-			// disconnect
-			con = Check.disposal(con);
+			testCount++;
+			System.out.println("CVE Test " + testCount + " - ID " + test.getTestId()+ " completed");
+			
+			// TODO - later
+			/*
+			// clean up for the datasource and get out
+			this.updateResultDatasourceVersion(resultHeader, datasource, con, mcon);
+			this.updateStatistics(resultHeader, score, datasource);
+			resultHeader.updateStatsByType(test, score);
+			*/
+			
 		}
 	}
 	
@@ -0,0 +1,191 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.runtest;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.guardium.data.Datasource;
+import com.guardium.utils.AdHocLogger;
+import com.guardium.utils.Check;
+import com.guardium.utils.Stringer;
+import com.guardium.utils.VirtualThreads;
+import com.guardium.utils.i18n.Say;
+
+/**
+ * Runs datasource assessments concurrently.
+ * At most <code>maxConcurrent</code> jobs run at once and at most <code>maxPerHost</code>
+ * of them against the same database host, jobs that do not fit wait in submission order.
+ * The limits default to the system properties <code>guardium.va.maxConcurrentDatasources</code>
+ * and <code>guardium.va.maxConcurrentPerHost</code>.
+ * Jobs of datasources whose driver must stay on platform threads run on a pool of platform threads.
+ */
+public class AssessmentScheduler {
+
+	/** Maximum number of datasources assessed at the same time */
+	public static final int MAX_CONCURRENT = Integer.getInteger("guardium.va.maxConcurrentDatasources", 8);
+
+	/** Maximum number of datasources on the same host assessed at the same time */
+	public static final int MAX_PER_HOST = Integer.getInteger("guardium.va.maxConcurrentPerHost", 2);
+
+	private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+	private final int maxConcurrent;
+	private final int maxPerHost;
+	private final String prefix;
+	private final ExecutorService executor;
+	private ExecutorService platformExecutor = null;
+
+	private final LinkedList<Job> pending = new LinkedList<Job>();
+	private final Map<String,Integer> runningByHost = new HashMap<String,Integer>();
+	private int running = 0;
+	private boolean canceled = false;
+
+	public AssessmentScheduler() {
+		this(MAX_CONCURRENT, MAX_PER_HOST);
+	}
+
+	public AssessmentScheduler(int maxConcurrent, int maxPerHost) {
+		this.maxConcurrent = Math.max(1, maxConcurrent);
+		this.maxPerHost = Math.max(1, maxPerHost);
+
+		// the limits above are applied by dispatch, the executor only provides the threads
+		this.prefix = "VA-Assess-" + POOL_NUMBER.incrementAndGet() + "-";
+		this.executor = VirtualThreads.newExecutor(this.prefix, this.maxConcurrent);
+	}
+
+	/**
+	 * @return Whether concurrent assessment is enabled at all.
+	 */
+	public static boolean isConcurrent() {
+		return MAX_CONCURRENT > 1;
+	}
+
+	/**
+	 * @param datasource
+	 * @return The key used to apply the per host limit, the resolved ip if known otherwise the host name.
+	 */
+	public static String hostKey(Datasource datasource) {
+		if (datasource == null || Check.isEmpty(datasource.getHost())) {
+			return "";
+		}
+		String ip = null;
+		try {
+			ip = datasource.getHostIp();
+		} catch (Throwable t) {
+			AdHocLogger.logException(t);
+		}
+		if (Check.isEmpty(ip) || Say.UNKNOWN.equals(ip)) {
+			return datasource.getHost().trim().toLowerCase();
+		}
+		return ip;
+	}
+
+	/**
+	 * Queues a job, it is started as soon as the global and host limits allow.
+	 * @param datasource The datasource of the job.
+	 * @param work
+	 */
+	public synchronized void submit(Datasource datasource, Runnable work) {
+		if (this.canceled) {
+			return;
+		}
+		boolean platform = VirtualThreads.isEnabled() && VirtualThreads.isPlatformDriver(datasource);
+		this.pending.add( new Job(hostKey(datasource), platform, work) );
+		this.dispatch();
+	}
+
+	/**
+	 * Waits until every submitted job has completed, or the scheduler is canceled and the running jobs end.
+	 * @throws InterruptedException
+	 */
+	public synchronized void awaitCompletion() throws InterruptedException {
+		while (this.running > 0 || !this.pending.isEmpty()) {
+			this.wait();
+		}
+	}
+
+	/**
+	 * Drops the jobs that have not started yet, running jobs are left to complete.
+	 */
+	public synchronized void cancel() {
+		this.canceled = true;
+		this.pending.clear();
+		this.notifyAll();
+	}
+
+	public synchronized void shutdown() {
+		this.executor.shutdown();
+		if (this.platformExecutor != null) {
+			this.platformExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Starts every pending job that fits within the limits.
+	 */
+	private synchronized void dispatch() {
+		Iterator<Job> it = this.pending.iterator();
+		while (this.running < this.maxConcurrent && it.hasNext()) {
+			Job job = it.next();
+			Integer onHost = this.runningByHost.get(job.hostKey);
+			int count = onHost == null ? 0 : onHost.intValue();
+			if (count >= this.maxPerHost) {
+				continue;
+			}
+			it.remove();
+			this.running++;
+			this.runningByHost.put(job.hostKey, count + 1);
+			if (job.platform) {
+				if (this.platformExecutor == null) {
+					this.platformExecutor = VirtualThreads.newExecutor(this.prefix + "P-", this.maxConcurrent, true);
+				}
+				this.platformExecutor.execute(job);
+			} else {
+				this.executor.execute(job);
+			}
+		}
+	}
+
+	private synchronized void finished(Job job) {
+		this.running--;
+		int count = this.runningByHost.get(job.hostKey) - 1;
+		if (count <= 0) {
+			this.runningByHost.remove(job.hostKey);
+		} else {
+			this.runningByHost.put(job.hostKey, count);
+		}
+		this.dispatch();
+		this.notifyAll();
+	}
+
+	private class Job implements Runnable {
+		private final String hostKey;
+		private final boolean platform;
+		private final Runnable work;
+
+		Job(String hostKey, boolean platform, Runnable work) {
+			this.hostKey = hostKey;
+			this.platform = platform;
+			this.work = work;
+		}
+
+		public void run() {
+			try {
+				this.work.run();
+			} catch (Throwable t) {
+				AdHocLogger.logException(t);
+			} finally {
+				finished(this);
+			}
+		}
+	}
+}
@@ -23,7 +23,9 @@ import org.apache.log4j.Logger;
 import com.guardium.runtest.GenericTest;
 import com.guardium.assessment.i18n.Say;
 import com.guardium.assessment.tests.TestScore;
+import com.guardium.assessment.utils.CveVersionIndex;
 import com.guardium.assessment.utils.DataSourceInfoGeter;
+import com.guardium.assessment.utils.DatasourceFacts;
 import com.guardium.map.AvailableTestMap;
 import com.guardium.map.CveFixMap;
 import com.guardium.data.CveFix;
@@ -89,6 +91,7 @@ public class CVETest extends GenericTest {
 	String resultText = null;
 	String reccommendationText = null;
 	String version = null;
+	CveVersionIndex.Match versionMatch = null;
 	String versionPatchString = "";
         String versionCDH = null;
         String patchCM = null;
@@ -108,6 +111,7 @@ public class CVETest extends GenericTest {
 		{
 			if(dsig == null)
 				dsig = 	DataSourceInfoGeter.initDatasourceInfoGetter(ds.getDatasourceType());
+			dsig.setQueryMemo(QueryMemo.get(this.getCachedParameterMap()));
 			//System.out.println("dbsource="+ds.getName());
 			
 			if(!Check.isEmpty(os))
@@ -131,7 +135,7 @@ public class CVETest extends GenericTest {
 			}
 			
             // get version once
-			version = dsig.getDbVersion(ds);
+			version = DatasourceFacts.get(ds).getDbVersion(dsig);
 			
 			String msg = "";
 			if(score == null)
@@ -240,31 +244,12 @@ public class CVETest extends GenericTest {
 
 	private List<CveFix> filterByVersion(List<CveFix> cveFixRecords) throws Exception 
 	{
-		List <CveFix> l = new ArrayList <CveFix> ();
 		String msg = "";
-		String refversion = "";
-		refversion = dsig.refVersion;
-		msg = "1 filter cvefix size " + cveFixRecords.size() + " refVersion is " + refversion;
+		msg = "1 filter cvefix size " + cveFixRecords.size() + " version is " + version;
 		// LOG.warn(msg);
 		
-		// we already got version at beginning
-		//version = dsig.getDbVersion(ds);
-
-		msg = "2 filter cvefix size " + cveFixRecords.size() + " version is " + version;
-		// LOG.warn(msg);
-		
-		for (Iterator<CveFix> iterator = cveFixRecords.iterator(); iterator.hasNext();) 
-		{
-			CveFix cveFix = (CveFix) iterator.next();
-		
-			// need to handle 15.7.0 and 15.7 as the same version
-			List <String> referenceVersions = new ArrayList<String>();
-			referenceVersions.add(cveFix.getVersion());
-			boolean exact_match = true;
-			if (dsig.evaluateDbVersion(referenceVersions, version, exact_match) == 0) {
-				l.add(cveFix);
-			}
-		}
+		// the rows matching the version were resolved by evaluateDbVersion
+		List <CveFix> l = (versionMatch == null) ? new ArrayList <CveFix> () : versionMatch.getRows();
 		
 		msg = "end of filter cvefix size " + l.size();
 		// LOG.warn(msg);
@@ -273,26 +258,9 @@ public class CVETest extends GenericTest {
 
 	private void evaluateDbPatchLevel(List<CveFix> cveFixRecords) throws  Exception
 	{
-        	boolean found_ojvm = false;
-        	String ojvm = "OJVM";
 		String patch = null;
-		List <String> referencePatches = new ArrayList<String>(cveFixRecords.size());
-		for (CveFix cveFix : cveFixRecords) 
-		{
-			String separator = "-";
-                        String patchTo = cveFix.getPatchTo();
-			String tmpstr = cveFix.getPatch();
-                        if (!patchTo.isEmpty())
-                                tmpstr = tmpstr + separator + patchTo;
-
-			referencePatches.add(tmpstr);
-			if (tmpstr.indexOf(ojvm) > 0) {
-                    		// found OJVM patch
-                    		found_ojvm = true;
-			}
-		}
-		
-        	if (found_ojvm) {
+		// the reference patches of the rows were built when the catalog was loaded
+        	if (versionMatch.isOjvm()) {
             		dsig.setOjvm(true);
         	}
 
@@ -307,7 +275,7 @@ public class CVETest extends GenericTest {
 		
 		try 
 		{
-			patch = dsig.getDbPatch(ds);
+			patch = DatasourceFacts.get(ds).getDbPatch(dsig);
 			//System.out.println("dsig patch is " + patch);
 		}
 		// catch (CASRequiredException cre)
@@ -339,7 +307,7 @@ public class CVETest extends GenericTest {
 		//int tmp =  dsig.evaluateDbPatch(referencePatches, patch);
 		//System.out.println("dsig evaluate DbPatch retrun " + tmp);
 		
-		switch (dsig.evaluateDbPatch(referencePatches, patch, version)) 
+		switch (getAvailableTest().getCveVersionIndex().evaluatePatch(dsig, versionMatch, version, patch)) 
 		{
 		case 1:
 			score = TestScore.PASS;
@@ -347,7 +315,7 @@ public class CVETest extends GenericTest {
 			break;
 		case 0:
 			score = TestScore.CVE_NOT_REPORTED;
-			resultText = Say.what(Say.ASMT_CVE_NOT_REPORTED,"CVE", getAvailableTest().getExternalReference(),"DBTYPE",ds.getDbType(),"DBVERSION", dsig.getDbVersion(ds)+" "+patch);
+			resultText = Say.what(Say.ASMT_CVE_NOT_REPORTED,"CVE", getAvailableTest().getExternalReference(),"DBTYPE",ds.getDbType(),"DBVERSION", version+" "+patch);
 			break;
 		case -1:
 			score = TestScore.FAIL;
@@ -355,34 +323,33 @@ public class CVETest extends GenericTest {
 			break;
         	case -15:
             		score = TestScore.UNSUPPORT_CVE_PATCH_DETECTED;
-            		resultText = Say.what(Say.ASMT_CVE_PATCH_NOT_DETECTED,"CVE", getAvailableTest().getExternalReference(),"DBTYPE",ds.getDbType(),"DBVERSION", dsig.getDbVersion(ds)+" "+patch);
+            		resultText = Say.what(Say.ASMT_CVE_PATCH_NOT_DETECTED,"CVE", getAvailableTest().getExternalReference(),"DBTYPE",ds.getDbType(),"DBVERSION", version+" "+patch);
             		break;
 		}
 	}
 
 	private void evaluateDbVersion(List<CveFix> cveFixRecords) throws Exception 
 	{
-		List <String> referenceVersions = new ArrayList<String>(cveFixRecords.size());
-		version = dsig.getDbVersion(ds);
+		version = DatasourceFacts.get(ds).getDbVersion(dsig);
 		// LOG.warn("evaluateDbVersion version is " + version);
-		
-		for (CveFix cveFix : cveFixRecords) 
+		if (version == null)
 		{
-			referenceVersions.add(cveFix.getVersion());
+			// the version could not be read at all
+			score = TestScore.ERROR;
+			resultText = Say.what(Say.ASMT_GENERIC_ERROR);
+			return;
 		}
-		boolean exact_match = true;
-		switch (dsig.evaluateDbVersion(referenceVersions, version, exact_match)) 
+		
+		// the CVE_FIX rows are indexed by version when the catalog is loaded, an empty or
+		// unknown version is not covered by any row
+		versionMatch = getAvailableTest().getCveVersionIndex().resolve(version);
+		if (versionMatch == null) 
 		{
-		/* if no match */
-		case 1:
-		case -1:
+			/* if no match */
 			score = TestScore.CVE_NOT_REPORTED;
-			resultText = Say.what(Say.ASMT_CVE_NOT_REPORTED,"CVE", getAvailableTest().getExternalReference(),"DBTYPE",ds.getDbType(),"DBVERSION", dsig.getDbVersion(ds));
-			break;
-		case 0: 
-			// continue to evaluate patch level
-			break;
+			resultText = Say.what(Say.ASMT_CVE_NOT_REPORTED,"CVE", getAvailableTest().getExternalReference(),"DBTYPE",ds.getDbType(),"DBVERSION", version);
 		}
+		// else continue to evaluate patch level
 	}
 
 	private boolean matchDbOs(String os) throws Exception 
@@ -390,7 +357,7 @@ public class CVETest extends GenericTest {
 		boolean ret = false;
 		if(ds == null)
 			ds = getDatasource();
-		osName = dsig.getOs(ds);
+		osName = DatasourceFacts.get(ds).getOs(dsig);
 		String [] winOsNames = cveAssessmentResources.getString("windows.os.names").split(",");
 		if(os.equalsIgnoreCase(WINDOWS))
 		{
@@ -0,0 +1,311 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.runtest;
+
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.Set;
+
+import com.guardium.assessment.i18n.Say;
+import com.guardium.assessment.tests.TestScore;
+import com.guardium.assessment.utils.DataSourceInfoGeter;
+import com.guardium.assessment.utils.DatasourceFacts;
+import com.guardium.data.AssessmentResultHeader;
+import com.guardium.data.AssessmentTest;
+import com.guardium.data.AvailableTest;
+import com.guardium.data.Datasource;
+import com.guardium.data.DatasourceSession;
+import com.guardium.data.StatementFactory;
+import com.guardium.data.StatementFactory.Shape;
+import com.guardium.data.TestResult;
+import com.guardium.map.CatalogLoader;
+import com.guardium.map.DatasourceVersionHistoryMap;
+import com.guardium.map.ResultHistory;
+import com.guardium.map.TestResultMap;
+import com.guardium.utils.AdHocLogger;
+import com.guardium.utils.Check;
+import com.guardium.utils.Utils;
+
+/**
+ * Incremental assessment: the results of the previous run of a datasource are carried forward
+ * instead of running the tests again, when nothing they depend on has changed.
+ * <p>
+ * The facts of a datasource are its type, version, patch level, OJVM patch level for Oracle and OS,
+ * and the catalog shipped with the application, their digest is the fingerprint kept with each result
+ * in the ResultHistory. CVE tests depend on these facts only. The tests listed in
+ * <code>guardium.va.incremental.tests</code> also depend on the configuration of the database, read
+ * by the <code>&lt;type&gt;.config-fingerprint</code> query of the datasource type; they are carried
+ * forward only when that query gives the same rows as in the previous run.
+ * <p>
+ * A result is carried forward only if its test ran less than <code>guardium.va.incremental.maxAgeHours</code>
+ * hours ago, and only for scores that do not come from an error. When the previous run has no such
+ * result the facts are not read before the tests, end() reads them once the tests have run, which
+ * for the OS and patch levels is mostly from what the CVE tests read. The mode is off unless
+ * <code>guardium.va.incremental</code> is true and the result history is on.
+ */
+public class IncrementalAssessment {
+
+	public static final boolean ENABLED = Boolean.getBoolean("guardium.va.incremental");
+
+	/** Hours after which a test runs again even if nothing changed */
+	public static final long MAX_AGE_HOURS = Long.getLong("guardium.va.incremental.maxAgeHours", 7 * 24);
+
+	/** Scores that depend only on the state of the datasource */
+	private static final Set<TestScore> REUSABLE_SCORES = EnumSet.of(
+			TestScore.PASS, TestScore.FAIL, TestScore.CVE_NOT_REPORTED,
+			TestScore.UNSUPPORTED_DB_VERSION, TestScore.UNSUPPORTED_OS_VERSION);
+
+	private static final Set<Integer> STABLE_TESTS = parseTestIds(System.getProperty("guardium.va.incremental.tests", ""));
+
+	private final Datasource datasource;
+	private final String dataSourceHash;
+	private final String catalog;
+	/** Null until the facts are read */
+	private String fingerprint = null;
+	private String configFingerprint = null;
+	private Map<Integer,ResultHistory.Entry> reusable = Collections.emptyMap();
+
+	private IncrementalAssessment(Datasource datasource, String dataSourceHash, String catalog) {
+		this.datasource = datasource;
+		this.dataSourceHash = dataSourceHash;
+		this.catalog = catalog;
+	}
+
+	/**
+	 * Finds the results of the previous run of the datasource that may be carried forward. If there
+	 * are some, reads the facts of the datasource, keeps their fingerprints with its results in the
+	 * history and keeps the results assessed on the same facts.
+	 * Call it once the version and patch levels are set on the datasource, see DatasourceSession.open.
+	 * @param ds
+	 * @return The incremental assessment of the datasource, null if the mode is off or the facts
+	 * of the datasource are not known.
+	 */
+	public static IncrementalAssessment begin(Datasource ds) {
+		if (!ENABLED || !ResultHistory.isEnabled()) {
+			return null;
+		}
+		String dataSourceHash = ResultHistory.getDatasourceHash(ds);
+		String catalog = CatalogLoader.getCatalogDigest();
+		if (dataSourceHash == null || catalog == null
+				|| DatasourceVersionHistoryMap.isUnknown(ds.getVersionLevel())
+				|| DatasourceVersionHistoryMap.isUnknown(ds.getPatchLevel())) {
+			return null;
+		}
+		IncrementalAssessment incremental = new IncrementalAssessment(ds, dataSourceHash, catalog);
+		Date since = new Date(System.currentTimeMillis() - MAX_AGE_HOURS * 60 * 60 * 1000);
+		Map<Integer,ResultHistory.Entry> candidates = ResultHistory.getReusable(dataSourceHash, since);
+		if (candidates.isEmpty()) {
+			// nothing to compare the facts with, end() reads them
+			return incremental;
+		}
+		if (!incremental.readFacts()) {
+			return null;
+		}
+		incremental.reusable = matching(candidates, incremental.fingerprint);
+		return incremental;
+	}
+
+	/**
+	 * Reads the facts of the datasource if begin() did not, and keeps their fingerprints with its
+	 * results in the history. Call it once the tests of the datasource have run, while its session
+	 * is still open.
+	 */
+	public void end() {
+		if (this.fingerprint == null) {
+			this.readFacts();
+		}
+	}
+
+	/**
+	 * Reads the facts and the configuration of the datasource and sets their fingerprints in the history.
+	 * @return Whether the facts could be read.
+	 */
+	private boolean readFacts() {
+		Datasource ds = this.datasource;
+		String os;
+		String ojvmPatch;
+		try {
+			// read through DatasourceFacts, the CVE tests of the run use the same values
+			DatasourceFacts facts = DatasourceFacts.get(ds);
+			os = facts.getOs(DataSourceInfoGeter.initDatasourceInfoGetter(ds.getDatasourceType()));
+			ojvmPatch = facts.getOjvmPatch();
+		} catch (Exception e) {
+			AdHocLogger.logException(e);
+			return false;
+		}
+		this.fingerprint = fingerprint(ds.getTypeName(), ds.getVersionLevel(), ds.getPatchLevel(), ojvmPatch, os, this.catalog);
+
+		if (!STABLE_TESTS.isEmpty() && ds.isSqltype()) {
+			String config = readConfiguration(ds);
+			if (config != null) {
+				this.configFingerprint = digest(this.fingerprint + "|" + config);
+			}
+		}
+		ResultHistory.setFingerprints(this.dataSourceHash, this.fingerprint, this.configFingerprint);
+		return true;
+	}
+
+	/**
+	 * @param candidates
+	 * @param fingerprint
+	 * @return The candidates assessed on the facts of this fingerprint.
+	 */
+	static Map<Integer,ResultHistory.Entry> matching(Map<Integer,ResultHistory.Entry> candidates, String fingerprint) {
+		Map<Integer,ResultHistory.Entry> map = new HashMap<Integer,ResultHistory.Entry>();
+		for (Map.Entry<Integer,ResultHistory.Entry> e : candidates.entrySet()) {
+			if (fingerprint.equals(e.getValue().getFingerprint())) {
+				map.put(e.getKey(), e.getValue());
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Records the results carried forward for the tests that do not need to run again.
+	 * @param resultHeader
+	 * @param tests
+	 * @param ds
+	 * @return The tests that still need to run, in their order.
+	 */
+	public List<AssessmentTest> carryForward(AssessmentResultHeader resultHeader, List<AssessmentTest> tests, Datasource ds) {
+		if (this.reusable.isEmpty()) {
+			return tests;
+		}
+		TestResultMap testResultPeer = TestResultMap.getTestResultMapObject();
+		List<AssessmentTest> remaining = new ArrayList<AssessmentTest>(tests.size());
+		SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		int carried = 0;
+		for (AssessmentTest test : tests) {
+			ResultHistory.Entry from = this.reusable.get(test.getTestId());
+			if (from == null || !this.isReusable(test, from)) {
+				remaining.add(test);
+				continue;
+			}
+			TestResult previous = from.getResult();
+			String text = Say.what(Say.ASMT_RESULT_CARRIED_FORWARD, "date", df.format(from.getExecutedTime()))
+					+ " " + (previous.getResultText() == null ? "" : previous.getResultText());
+			TestResult result = testResultPeer.recordResult(test, resultHeader, ds,
+					previous.getTestScore(), text, previous.getRecommendationText(), -1, previous.getDetail());
+			result.setSqlStmtSent(previous.getSqlStmtSent());
+			result.setExecutedTime(from.getExecutedTime());
+			ResultHistory.markCarried(result, from);
+			result.save();
+			carried++;
+		}
+		if (carried > 0) {
+			AdHocLogger.logInfo(carried + " test results carried forward for " + ds.getName());
+		}
+		return remaining;
+	}
+
+	private boolean isReusable(AssessmentTest test, ResultHistory.Entry from) {
+		TestResult previous = from.getResult();
+		if (!REUSABLE_SCORES.contains(previous.getTestScore())) {
+			return false;
+		}
+		if (test.isCveTest()) {
+			return true;
+		}
+		if (!STABLE_TESTS.contains(test.getTestId()) || this.configFingerprint == null
+				|| !this.configFingerprint.equals(from.getConfigFingerprint())) {
+			return false;
+		}
+		// a changed threshold changes the result
+		AvailableTest availableTest = test.getAvailableTest();
+		String prompt = availableTest == null ? null : availableTest.getThresholdPrompt();
+		String threshold = Check.isEmpty(prompt) ? null : prompt + " used in this assessment: " + test.getThresholdValue();
+		return threshold == null ? previous.getThresholdString() == null : threshold.equals(previous.getThresholdString());
+	}
+
+	/**
+	 * @param ds
+	 * @return The rows of the configuration query of the datasource type, null if the type has
+	 * none or it fails.
+	 */
+	private static String readConfiguration(Datasource ds) {
+		String sql;
+		try {
+			String type = ds.getDatasourceType().getName().replaceAll("\\s", "_");
+			sql = CVETest.cveAssessmentResources.getString(type + ".config-fingerprint");
+		} catch (MissingResourceException e) {
+			return null;
+		}
+		Connection con = null;
+		Statement st = null;
+		ResultSet rs = null;
+		QueryWatchdog.Watch watch = null;
+		try {
+			con = DatasourceSession.connect(ds);
+			st = StatementFactory.createStatement(con, ds, Shape.DETAIL);
+			watch = QueryWatchdog.watch(st, QueryWatchdog.getTimeout(null, null));
+			rs = st.executeQuery(sql);
+			int columns = rs.getMetaData().getColumnCount();
+			StringBuilder sb = new StringBuilder();
+			while (rs.next()) {
+				for (int i = 1; i <= columns; i++) {
+					sb.append(rs.getString(i)).append(i < columns ? '\t' : '\n');
+				}
+			}
+			return sb.toString();
+		} catch (Exception e) {
+			AdHocLogger.logException(e);
+			return null;
+		} finally {
+			if (watch != null) {
+				watch.end();
+			}
+			Check.disposal(rs);
+			Check.disposal(st);
+			DatasourceSession.release(ds, con);
+		}
+	}
+
+	/**
+	 * @return The digest of every fact the reusable results depend on, null facts included as such.
+	 */
+	static String fingerprint(String type, String version, String patch, String ojvmPatch, String os, String catalog) {
+		return digest(type + "|" + version + "|" + patch + "|" + ojvmPatch + "|" + os + "|" + catalog);
+	}
+
+	private static String digest(String s) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA1");
+			return Utils.bytesToHexaString(md.digest(s.getBytes("UTF-8")));
+		} catch (Exception e) {
+			// SHA1 and UTF-8 are always there
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Set<Integer> parseTestIds(String list) {
+		Set<Integer> ids = new HashSet<Integer>();
+		for (String id : list.split(",")) {
+			id = id.trim();
+			if (id.length() == 0) {
+				continue;
+			}
+			try {
+				ids.add(Integer.valueOf(id));
+			} catch (NumberFormatException e) {
+				AdHocLogger.logWarning("guardium.va.incremental.tests: not a test id " + id);
+			}
+		}
+		return Collections.unmodifiableSet(ids);
+	}
+}
@@ -15,6 +15,13 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
 
@@ -28,11 +35,13 @@ import com.guardium.assessment.tests.QueryBasedException;
 import com.guardium.assessment.tests.GuardAssessmentException;
 import com.guardium.data.AvailableTest;
 import com.guardium.data.RecommendationText;
+import com.guardium.data.StatementFactory.Shape;
 import com.guardium.data.SqlbasedAssessmentDefinition;
 import com.guardium.map.SqlbasedAssessmentDefinitionMap;
 import com.guardium.data.SqlbasedAssessmentDefinition.DataType;
 import com.guardium.map.RecommendationTextMap;
 import com.guardium.data.Datasource;
+import com.guardium.data.DatasourceConnectionPool;
 import com.guardium.data.DatasourceEnum;
 import com.guardium.data.GroupDesc;
 import com.guardium.map.GroupDescMap;
@@ -44,6 +53,7 @@ import com.guardium.utils.Check;
 //import com.guardium.utils.Dater;
 import com.guardium.utils.JdbcUtils;
 import com.guardium.utils.Regexer;
+import com.guardium.utils.VirtualThreads;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
@@ -78,6 +88,15 @@ public class QueryBasedTest extends AbstractJdbcTest {
 	/** Define whether should loop through the list of databases */
 	boolean loopDB = false;
 	
+	/**
+	 * Connections a database loop runs on at the same time, the test connection and idle
+	 * connections of the assessment pool, 1 to loop on the test connection only
+	 */
+	public static final int DB_LOOP_CONNECTIONS = Integer.getInteger("guardium.va.dbLoopConnections", 4);
+
+	/** The value of a query that returned no row */
+	private static final Object NO_ROWS = new Object();
+
 	/** save the origina DB to use in the calculateDetail **/
 	String originalDB = "";
 	
@@ -92,6 +111,21 @@ public class QueryBasedTest extends AbstractJdbcTest {
 		return this.sqlDefinition;
 	}
 
+	/**
+	 * @return The compiled SQL and compare value of this test.
+	 */
+	protected QueryTestPlan getPlan() {
+		return QueryTestPlan.getPlan(this.getSqlDefinition(), this.getAvailableTest());
+	}
+
+	/**
+	 * @return The query timeout of the SQL definition of this test, or else of its category.
+	 */
+	@Override
+	protected int getQueryTimeout() {
+		return QueryWatchdog.getTimeout(this.getAvailableTest(), this.getSqlDefinition());
+	}
+
 	/**
 	 * @throws SQLException
 	 * @see com.guardium.assessment.AbstractJdbcTest#calculateScore(Connection con)
@@ -146,6 +180,10 @@ public class QueryBasedTest extends AbstractJdbcTest {
 		}
 		catch (Exception ex1) {
 			pretest = false;
+			if (this.isQueryTimeout(ex1)) {
+				this.setResultText(this.getQueryTimeoutText());
+				return TestScore.QUERY_TIMEOUT;
+			}
 			score = TestScore.ERROR;
 			this.setResultText(Say.what(Say.ASMT_ERROR_PRE_TEST_ERROR));
 			return score;
@@ -157,22 +195,9 @@ public class QueryBasedTest extends AbstractJdbcTest {
 		}
 		// End Of Pre Test check
 		
-		String sql = this.getSqlDefinition().getSqlStmt();
-		sql = sql.replaceAll("\r"," ").replaceAll("\n"," ");
-		if (sql.indexOf(ReplaceGroupsAndAliases.Prefix)>=0) {
-			try {
-				sql = ReplaceGroupsAndAliases.replaceGroupsAndAliases(sql);
-			}
-			catch (Exception e) {
-				AdHocLogger.logException(e);
-			}
-		}
-		try {
-			sql = replaceThresholdValue(sql, this.getAvailableTest());
-		}
-		catch (Exception e) {
-			AdHocLogger.logException(e);
-		}
+		// groups, aliases and threshold are replaced once per test, not on every run
+		QueryTestPlan plan = this.getPlan();
+		String sql = plan.getSql();
 		
 		// Check whether should Loop databases and determine the list of databases to loop through.
 		if (	this.getSqlDefinition().getDbLoopFlag() && 
@@ -217,7 +242,7 @@ public class QueryBasedTest extends AbstractJdbcTest {
 		if (loopDB)
 			skipDbOnError = assessmentTest.getSkipErrorDbInLoop() ;
 			
-		QueryOperator operator = this.getSqlDefinition().getOperator();
+		QueryOperator operator = plan.getOperator();
 
 		if (loopDB) 
 			originalDB = con.getCatalog();
@@ -232,50 +257,75 @@ public class QueryBasedTest extends AbstractJdbcTest {
 														// Only the original database. 
 				databasesToLoop.add(originalDB);
 
-			for (String db : databasesToLoop) { // If No DBLooping The Loop only on Original DB
-				boolean dbOK = false;
-				if (loopDB) {
-					try {
-						con = setDataBase(con, db);
-						dbOK = true;
-					}
-					catch (Exception eDbAccess) {
-						if (skipDbOnError) {
-							this.logError( eDbAccess.getLocalizedMessage(), "Unable To Access DB: " + db + " Database Skipped.");
-							databasesSkipped.add(db);
+			if (loopDB && this.canLoopConcurrently(databasesToLoop)) {
+				// the databases are spread over several connections
+				Long total = this.loopConcurrently(con, sql, databasesToLoop, skipDbOnError);
+				if (total == null) {
+					score = TestScore.ERROR;
+					this.setResultText(Say.what(Say.ASMT_ERROR_SQL_NO_RECS));
+					return score;
+				}
+				longResult = total;
+			}
+			else {
+				for (String db : databasesToLoop) { // If No DBLooping The Loop only on Original DB
+					boolean dbOK = false;
+					if (loopDB) {
+						try {
+							con = setDataBase(con, db);
+							dbOK = true;
 						}
-						else {
-							throw eDbAccess;
+						catch (Exception eDbAccess) {
+							if (skipDbOnError) {
+								this.logError( eDbAccess.getLocalizedMessage(), "Unable To Access DB: " + db + " Database Skipped.");
+								databasesSkipped.add(db);
+							}
+							else {
+								throw eDbAccess;
+							}
 						}
 					}
-				}
-				if (loopDB && !dbOK) // Skip If Need To Loop but did not gain access to the specific database
-					continue;
-				else { // Did gain access to the database (Or no need to Loop)
-					databasesAccessed.add(db.trim());
+					if (loopDB && !dbOK) // Skip If Need To Loop but did not gain access to the specific database
+						continue;
+					else { // Did gain access to the database (Or no need to Loop)
+						databasesAccessed.add(db.trim());
 					
 					
-					if (this.getSqlDefinition().getIsCallableStatement()) {
-						CallableStatement cstmt = con.prepareCall(sql);
-						stmt = cstmt; // so that it will be released
-						DataType dataType = this.getSqlDefinition().getDataType();
-						cstmt.registerOutParameter(1,dataType.getSqlType());
-						cstmt.execute();
-						queryResult = cstmt.getObject(1);
-					} else {
-						stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
-						rs = stmt.executeQuery(sql);
-						if ( rs.next() ) {
-							queryResult = rs.getObject(1);
-						}
-						else {
-							score = TestScore.ERROR;
-							this.setResultText(Say.what(Say.ASMT_ERROR_SQL_NO_RECS));
-							return score;
+						ScalarQueryBatch.Result batched = loopDB ? null :
+							ScalarQueryBatch.take(this.getCachedParameterMap(), this.getAvailableTest().getTestId());
+						if (batched != null) {
+							// already run with the other scalar checks of the datasource
+							if (batched.hasRow()) {
+								queryResult = batched.getValue();
+							}
+							else {
+								score = TestScore.ERROR;
+								this.setResultText(Say.what(Say.ASMT_ERROR_SQL_NO_RECS));
+								return score;
+							}
+						} else if (this.getSqlDefinition().getIsCallableStatement()) {
+							CallableStatement cstmt = con.prepareCall(sql);
+							stmt = cstmt; // so that it will be released
+							this.watchStatement(cstmt);
+							DataType dataType = this.getSqlDefinition().getDataType();
+							cstmt.registerOutParameter(1,dataType.getSqlType());
+							cstmt.execute();
+							queryResult = cstmt.getObject(1);
+						} else {
+							stmt = this.createStatement(con, Shape.SCALAR);
+							rs = stmt.executeQuery(sql);
+							if ( rs.next() ) {
+								queryResult = rs.getObject(1);
+							}
+							else {
+								score = TestScore.ERROR;
+								this.setResultText(Say.what(Say.ASMT_ERROR_SQL_NO_RECS));
+								return score;
+							}
 						}
+						if (loopDB) // If looping accumulate the query results into longResult 
+							longResult = longResult + getResultLong(queryResult);
 					}
-					if (loopDB) // If looping accumulate the query results into longResult 
-						longResult = longResult + getResultLong(queryResult);
 				}
 			}
 			// After Loop:  1 - Set database back to the original database (for next test on this connection)
@@ -318,8 +368,13 @@ public class QueryBasedTest extends AbstractJdbcTest {
 
 		} catch (Exception e) {
 			// The evaluation threw an exception
-			score = TestScore.ERROR;
-			this.setResultText( e.getLocalizedMessage() );
+			if (this.isQueryTimeout(e)) {
+				score = TestScore.QUERY_TIMEOUT;
+				this.setResultText( this.getQueryTimeoutText() );
+			} else {
+				score = TestScore.ERROR;
+				this.setResultText( e.getLocalizedMessage() );
+			}
 			this.logError( e.getLocalizedMessage(), sql);
 
 		} finally {
@@ -434,20 +489,21 @@ public class QueryBasedTest extends AbstractJdbcTest {
 	protected TestScore evaluateResult(Object result, QueryOperator operator)
 	throws QueryBasedException {
 		TestScore score;
-		String compareString = this.getSqlDefinition().getCompareToValue();
-		DataType dataType = this.getSqlDefinition().getDataType();
+		QueryTestPlan plan = this.getPlan();
+		String compareString = plan.getCompareString();
+		DataType dataType = plan.getDataType();
 
 		switch (operator) {
 			case EQUAL:
-				score = passFail( equal(result, compareString, dataType) );
+				score = passFail( equal(result, plan) );
 				break;
 
 			case GREATER_THAN:
-				score = passFail( compare(result, compareString, dataType) > 0);
+				score = passFail( compare(result, plan) > 0);
 				break;
 
 			case GREATER_THAN_OR_EQUAL:
-				score = passFail( compare(result, compareString, dataType) >= 0);
+				score = passFail( compare(result, plan) >= 0);
 				break;
 			/* later
 			case IN_GROUP:
@@ -463,19 +519,19 @@ public class QueryBasedTest extends AbstractJdbcTest {
 				break;
 
 			case LESS_THAN:
-				score = passFail( compare(result, compareString, dataType) < 0);
+				score = passFail( compare(result, plan) < 0);
 				break;
 
 			case LESS_THAN_OR_EQUAL:
-				score = passFail( compare(result, compareString, dataType) <= 0);
+				score = passFail( compare(result, plan) <= 0);
 				break;
 
 			case LIKE:
-				score = passFail( like(result, compareString, dataType) );
+				score = passFail( like(result, plan) );
 				break;
 
 			case NOT_EQUAL:
-				score = passFail( !equal(result, compareString, dataType) );
+				score = passFail( !equal(result, plan) );
 				break;
 			/* later
 			case NOT_IN_GROUP:
@@ -483,15 +539,15 @@ public class QueryBasedTest extends AbstractJdbcTest {
 				break;
 			*/
 			case NOT_LIKE:
-				score = passFail( !like(result, compareString, dataType) );
+				score = passFail( !like(result, plan) );
 				break;
 
 			case NOT_REGEXP:
-				score = passFail( !regex(result, compareString, dataType) );
+				score = passFail( !regex(result, plan) );
 				break;
 
 			case REGEXP:
-				score = passFail( regex(result, compareString, dataType) );
+				score = passFail( regex(result, plan) );
 				break;
 
 			default:
@@ -668,6 +724,36 @@ public class QueryBasedTest extends AbstractJdbcTest {
 		return result;
 	}
 
+	/**
+	 * @param resultObject
+	 * @param plan
+	 * @return Whether the result object matches the compiled expression of the plan.
+	 * @throws QueryBasedException
+	 */
+	protected static boolean regex(Object resultObject, QueryTestPlan plan)
+	throws QueryBasedException {
+		if (plan.getPattern() == null) {
+			return regex(resultObject, plan.getCompareString(), plan.getDataType());
+		}
+		String searchValue = normalizeResultObject(resultObject, plan.getDataType());
+		return Regexer.matchRegex(searchValue, plan.getPattern());
+	}
+
+	/**
+	 * @param resultObject
+	 * @param plan
+	 * @return Whether the result object matches the compiled wildcards of the plan.
+	 * @throws QueryBasedException
+	 */
+	protected static boolean like(Object resultObject, QueryTestPlan plan)
+	throws QueryBasedException {
+		if (plan.getPattern() == null) {
+			return like(resultObject, plan.getCompareString(), plan.getDataType());
+		}
+		String searchValue = normalizeResultObject(resultObject, plan.getDataType());
+		return Regexer.matchWildcards(searchValue, plan.getPattern());
+	}
+
 	/**
 	 * @param resultObject
 	 * @param compareString
@@ -747,6 +833,37 @@ public class QueryBasedTest extends AbstractJdbcTest {
 		return result;
 	}
 
+	/**
+	 * @param resultObject
+	 * @param plan
+	 * @return Whether the result and the parsed compare value of the plan are equal
+	 * @throws QueryBasedException
+	 */
+	protected static boolean equal(Object resultObject, QueryTestPlan plan)
+	throws QueryBasedException {
+		if (plan.getDataType() == DataType.INT && plan.getCompareLong() != null) {
+			return getResultLong(resultObject).equals(plan.getCompareLong());
+		}
+		return equal(resultObject, plan.getCompareString(), plan.getDataType());
+	}
+
+	/**
+	 * @param resultObject
+	 * @param plan
+	 * @return the comparison between the result and the parsed compare value of the plan
+	 * @throws QueryBasedException
+	 */
+	protected static int compare(Object resultObject, QueryTestPlan plan)
+	throws QueryBasedException {
+		if (plan.getDataType() == DataType.INT && plan.getCompareLong() != null) {
+			return getResultLong(resultObject).compareTo(plan.getCompareLong());
+		}
+		if (plan.getDataType() == DataType.STRING && plan.getCompareLower() != null) {
+			return String.valueOf(resultObject).toLowerCase().compareTo(plan.getCompareLower());
+		}
+		return compare(resultObject, plan.getCompareString(), plan.getDataType());
+	}
+
 	/**
 	 * Converts the objects and compares them
 	 * @param resultObject
@@ -895,7 +1012,7 @@ public class QueryBasedTest extends AbstractJdbcTest {
         		for (String db : databasesAccessed) {
     				if (loopDB)
     					con = setDataBase(con, db);
-                	stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+                	stmt = this.createStatement(con, Shape.DETAIL);
                 	rs = stmt.executeQuery(detailSQL);
                 	String val = "";
                 	while ( rs.next() ) {
@@ -976,8 +1093,7 @@ public class QueryBasedTest extends AbstractJdbcTest {
 	}
 
 	
-	private boolean performPreTestCheck(String preTestSql, Connection con) throws Exception {
-		boolean ret = false;
+	private boolean performPreTestCheck(String preTestSql, final Connection con) throws Exception {
 		preTestSql = preTestSql.replaceAll("\r"," ").replaceAll("\n"," ");
 		if (preTestSql.indexOf(ReplaceGroupsAndAliases.Prefix)>=0) {
 			try {
@@ -994,10 +1110,21 @@ public class QueryBasedTest extends AbstractJdbcTest {
 			AdHocLogger.logException(e);
 		}
 
+		// many tests share their pre test check
+		final String query = preTestSql;
+		return QueryMemo.get(this.getQueryMemo(), con, "pretest", query, new QueryMemo.Query<Boolean>() {
+			public Boolean run() throws SQLException {
+				return runPreTestCheck(query, con);
+			}
+		});
+	}
+
+	private boolean runPreTestCheck(String preTestSql, Connection con) throws SQLException {
+		boolean ret = false;
 		Statement stmt = null;
 		ResultSet rs = null;
 		try {
-			stmt = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			stmt = this.createStatement(con, Shape.SCALAR);
 			rs = stmt.executeQuery(preTestSql);
 			if ( rs.next() ) {
 				int preTestResult = rs.getInt(1);
@@ -1076,12 +1203,17 @@ public class QueryBasedTest extends AbstractJdbcTest {
 	}
 	*/
 	
-	private List<String> getDataBasesToLoop(String dbs, Connection con) throws Exception{
+	private List<String> getDataBasesToLoop(String dbs, final Connection con) throws Exception{
 		List<String> ret = new ArrayList<String>();
 		dbs= dbs.trim();
 		if (dbs.toLowerCase().startsWith("select")) {
 			// Select Statement will retrieve the list of databases
-			ret = JdbcUtils.executeSqlForList(dbs,con);
+			final String query = dbs;
+			ret = new ArrayList<String>(QueryMemo.get(this.getQueryMemo(), con, "databases", query, new QueryMemo.Query<List<String>>() {
+				public List<String> run() throws SQLException {
+					return JdbcUtils.executeSqlForList(query, con);
+				}
+			}));
 		}
 		else {
 			// List of databases contains in dbs (comma separated).
@@ -1128,7 +1260,7 @@ public class QueryBasedTest extends AbstractJdbcTest {
 					con.rollback();
 				}
 				catch (Exception eTmp) {}
-				st = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
+				st = this.createStatement(con, Shape.SCALAR);
 				st.execute("database "+dataBase);
 			}
 			else if (this.getDatasource().getDatasourceTypeId() == DatasourceEnum.POSTGRESQL.getDatasourceTypeId() ||
@@ -1161,6 +1293,172 @@ public class QueryBasedTest extends AbstractJdbcTest {
 		}	
 		return con;
 	}
+
+	/**
+	 * @param dbs The databases to loop through.
+	 * @return Whether the databases can be evaluated on several connections. Only when the tests
+	 * run on an assessment pool, and not for the datasource types that switch databases by
+	 * reconnecting the shared datasource.
+	 */
+	private boolean canLoopConcurrently(List<String> dbs) {
+		if (DB_LOOP_CONNECTIONS <= 1 || dbs.size() < 2
+				|| DatasourceConnectionPool.get(this.getCachedParameterMap()) == null) {
+			return false;
+		}
+		int typeId = this.getDatasource().getDatasourceTypeId();
+		return typeId != DatasourceEnum.POSTGRESQL.getDatasourceTypeId() &&
+			   typeId != DatasourceEnum.ASTER.getDatasourceTypeId() &&
+			   typeId != DatasourceEnum.GREENPLUM.getDatasourceTypeId();
+	}
+
+	/**
+	 * Evaluates the query on each database over the test connection and up to
+	 * DB_LOOP_CONNECTIONS - 1 idle connections of the assessment pool, each connection switching
+	 * to the next database not yet taken. The results are added as they come, the accessed and
+	 * skipped databases are reported in loop order. The test connection is left on any of the
+	 * databases, the pool connections are given back set to their catalog, see DatasourceConnectionPool.restore.
+	 * @param con The test connection.
+	 * @param sql
+	 * @param dbs The databases to loop through.
+	 * @param skipDbOnError Whether a database that cannot be accessed is skipped, or fails the test.
+	 * @return The sum of the results, null if the query returned no row on a database.
+	 * @throws Exception The first failure, when a database cannot be accessed and is not skipped,
+	 * or when the query fails.
+	 */
+	private Long loopConcurrently(Connection con, final String sql, final List<String> dbs, final boolean skipDbOnError)
+	throws Exception {
+		final int count = dbs.size();
+		final AtomicLong total = new AtomicLong();
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicBoolean noRows = new AtomicBoolean(false);
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		final boolean[] accessed = new boolean[count];
+		final boolean[] skipped = new boolean[count];
+
+		// the extra connections, as many as are idle up to the limit
+		DatasourceConnectionPool pool = DatasourceConnectionPool.get(this.getCachedParameterMap());
+		List<Connection> cons = new ArrayList<Connection>();
+		ExecutorService exec = null;
+		try {
+			for (int i = Math.min(DB_LOOP_CONNECTIONS, count) - 1; i > 0; i--) {
+				Connection c = pool.poll();
+				if (c == null) {
+					break;
+				}
+				cons.add(c);
+			}
+
+			List<Runnable> loops = new ArrayList<Runnable>();
+			cons.add(0, con);
+			for (final Connection c : cons) {
+				loops.add(new Runnable() {
+					public void run() {
+						for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+							if (failure.get() != null || noRows.get()) {
+								return;
+							}
+							String db = dbs.get(i);
+							try {
+								setDataBase(c, db);
+							}
+							catch (Exception eDbAccess) {
+								if (skipDbOnError) {
+									logError( eDbAccess.getLocalizedMessage(), "Unable To Access DB: " + db + " Database Skipped.");
+									skipped[i] = true;
+									continue;
+								}
+								failure.compareAndSet(null, eDbAccess);
+								return;
+							}
+							accessed[i] = true;
+							try {
+								Object value = runQuery(c, sql);
+								if (value == NO_ROWS) {
+									noRows.set(true);
+									return;
+								}
+								total.addAndGet(getResultLong(value));
+							}
+							catch (Exception e) {
+								failure.compareAndSet(null, e);
+								return;
+							}
+						}
+					}
+				});
+			}
+
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			if (loops.size() > 1) {
+				exec = VirtualThreads.newExecutor("VA-DbLoop-", loops.size() - 1, VirtualThreads.isPlatformDriver(this.getDatasource()));
+				for (Runnable loop : loops.subList(1, loops.size())) {
+					futures.add(exec.submit(loop));
+				}
+			}
+			// the test connection loops on this thread
+			loops.get(0).run();
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					failure.compareAndSet(null, new Exception(e.getCause()));
+				}
+			}
+		} finally {
+			if (exec != null) {
+				exec.shutdownNow();
+			}
+			for (Connection c : cons) {
+				if (c != con) {
+					pool.restore(c);
+				}
+			}
+		}
+
+		for (int i = 0; i < count; i++) {
+			if (accessed[i]) {
+				databasesAccessed.add(dbs.get(i).trim());
+			} else if (skipped[i]) {
+				databasesSkipped.add(dbs.get(i));
+			}
+		}
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		if (noRows.get()) {
+			return null;
+		}
+		return total.get();
+	}
+
+	/**
+	 * @param con
+	 * @param sql
+	 * @return The first value returned by the query, NO_ROWS if it returned no row.
+	 * @throws SQLException
+	 */
+	private Object runQuery(Connection con, String sql) throws SQLException {
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			if (this.getSqlDefinition().getIsCallableStatement()) {
+				CallableStatement cstmt = con.prepareCall(sql);
+				stmt = cstmt; // so that it will be released
+				this.watchStatement(cstmt);
+				DataType dataType = this.getSqlDefinition().getDataType();
+				cstmt.registerOutParameter(1,dataType.getSqlType());
+				cstmt.execute();
+				return cstmt.getObject(1);
+			}
+			stmt = this.createStatement(con, Shape.SCALAR);
+			rs = stmt.executeQuery(sql);
+			return rs.next() ? rs.getObject(1) : NO_ROWS;
+		}
+		finally {
+			rs = Check.disposal(rs);
+			stmt = Check.disposal(stmt);
+		}
+	}
 	/*
 	private MongoClient setDataBase(MongoClient mcon, String dataBase) throws Exception {
 
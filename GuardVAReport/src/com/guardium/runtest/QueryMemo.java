@@ -0,0 +1,126 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.runtest;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Results of the queries run by the tests of one datasource, so a query that several tests run,
+ * like a common pre test check or parameter query, reaches the database once per run.
+ * <p>
+ * The memo lives in the cached parameters the runner gives to each test of the datasource and is
+ * dropped with them at the end of the run. Results are keyed by the kind of result, the current
+ * catalog of the connection and the query text with its white space normalized. A query that
+ * fails is not remembered, the next test runs it again.
+ */
+public class QueryMemo {
+
+	private static final String KEY = "QueryMemo";
+
+	/** Switch to run every query, <code>-Dguardium.va.queryMemo=false</code> */
+	public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("guardium.va.queryMemo"));
+
+	private final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<String,Entry>();
+
+	private QueryMemo() {
+	}
+
+	/**
+	 * @param cachedParams The cached parameters of the run.
+	 * @return The memo of the run, created on first use, null without cached parameters.
+	 */
+	@SuppressWarnings("unchecked")
+	public static QueryMemo get(Map cachedParams) {
+		if (cachedParams == null || !ENABLED) {
+			return null;
+		}
+		QueryMemo memo = (QueryMemo) cachedParams.get(KEY);
+		if (memo == null) {
+			QueryMemo created = new QueryMemo();
+			memo = (QueryMemo) cachedParams.putIfAbsent(KEY, created);
+			if (memo == null) {
+				memo = created;
+			}
+		}
+		return memo;
+	}
+
+	/**
+	 * @param memo The memo of the run, null to run the query.
+	 * @param con The connection the query runs on.
+	 * @param kind What the query returns, like "list 1" for the first column of all rows.
+	 * @param sql
+	 * @param query Runs the query, once per run for the same kind, catalog and SQL.
+	 * @return The result of the query.
+	 * @throws SQLException
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T get(QueryMemo memo, Connection con, String kind, String sql, Query<T> query) throws SQLException {
+		if (memo == null || sql == null) {
+			return query.run();
+		}
+		String key = kind + '\u0000' + con.getCatalog() + '\u0000' + normalize(sql);
+		Entry entry = memo.entries.get(key);
+		if (entry == null) {
+			Entry created = new Entry();
+			entry = memo.entries.putIfAbsent(key, created);
+			if (entry == null) {
+				entry = created;
+			}
+		}
+		synchronized (entry) {
+			if (!entry.loaded) {
+				entry.value = query.run();
+				entry.loaded = true;
+			}
+			return (T) entry.value;
+		}
+	}
+
+	/**
+	 * @param sql
+	 * @return The SQL trimmed, with each run of white space outside quotes replaced by one space.
+	 */
+	static String normalize(String sql) {
+		StringBuilder buf = new StringBuilder(sql.length());
+		char quote = 0;
+		boolean space = false;
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (quote == 0 && Character.isWhitespace(c)) {
+				space = true;
+				continue;
+			}
+			if (space && buf.length() > 0) {
+				buf.append(' ');
+			}
+			space = false;
+			if (quote == 0 && (c == '\'' || c == '"')) {
+				quote = c;
+			} else if (c == quote) {
+				quote = 0;
+			}
+			buf.append(c);
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * A query whose result can be remembered.
+	 */
+	public interface Query<T> {
+		T run() throws SQLException;
+	}
+
+	private static class Entry {
+		private boolean loaded = false;
+		private Object value = null;
+	}
+}
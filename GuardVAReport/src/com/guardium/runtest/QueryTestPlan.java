@@ -0,0 +1,165 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.runtest;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import com.guardium.data.AvailableTest;
+import com.guardium.data.QueryConditionOperator.QueryOperator;
+import com.guardium.data.SqlbasedAssessmentDefinition;
+import com.guardium.data.SqlbasedAssessmentDefinition.DataType;
+import com.guardium.map.CatalogVersion;
+import com.guardium.utils.AdHocLogger;
+import com.guardium.utils.Regexer;
+import com.guardium.utils.ReplaceGroupsAndAliases;
+
+/**
+ * The compiled form of a query based test: the SQL with its line breaks, groups, aliases and
+ * threshold already replaced, and the compare value of the operator parsed once.
+ * <p>
+ * Plans are shared by all the runs of a test, on every datasource. A plan is compiled again
+ * when the threshold of the test or the catalog data it replaces change, see CatalogVersion.
+ */
+public class QueryTestPlan {
+
+	private static final ConcurrentHashMap<Integer,QueryTestPlan> plans = new ConcurrentHashMap<Integer,QueryTestPlan>();
+
+	private final double threshold;
+	private final int catalogVersion;
+
+	private final String sql;
+	private final QueryOperator operator;
+	private final DataType dataType;
+	private final String compareString;
+	private final Long compareLong;
+	private final String compareLower;
+	private final Pattern pattern;
+
+	private QueryTestPlan(SqlbasedAssessmentDefinition def, AvailableTest test, double threshold, int catalogVersion) {
+		this.threshold = threshold;
+		this.catalogVersion = catalogVersion;
+
+		String s = def.getSqlStmt();
+		s = s.replace('\r', ' ').replace('\n', ' ');
+		if (s.indexOf(ReplaceGroupsAndAliases.Prefix)>=0) {
+			try {
+				s = ReplaceGroupsAndAliases.replaceGroupsAndAliases(s);
+			}
+			catch (Exception e) {
+				AdHocLogger.logException(e);
+			}
+		}
+		try {
+			s = QueryBasedTest.replaceThresholdValue(s, test);
+		}
+		catch (Exception e) {
+			AdHocLogger.logException(e);
+		}
+		this.sql = s;
+
+		this.operator = def.getOperator();
+		this.dataType = def.getDataType();
+		this.compareString = def.getCompareToValue();
+
+		// the compare values that do not depend on when the test runs, dates like NOW do
+		Long lng = null;
+		String lower = null;
+		Pattern p = null;
+		if (this.compareString != null) {
+			if (this.dataType == DataType.INT) {
+				try {
+					lng = Long.valueOf(this.compareString);
+				} catch (NumberFormatException e) {
+					// reported when the result is compared
+				}
+			} else if (this.dataType == DataType.STRING) {
+				lower = this.compareString.toLowerCase();
+			}
+			try {
+				if (this.operator == QueryOperator.REGEXP || this.operator == QueryOperator.NOT_REGEXP) {
+					p = Regexer.getPattern(this.compareString, Regexer.REGEX_FLAGS);
+				} else if (this.operator == QueryOperator.LIKE || this.operator == QueryOperator.NOT_LIKE) {
+					p = Regexer.getWildcardPattern(this.compareString);
+				}
+			} catch (RuntimeException e) {
+				// reported when the result is compared
+			}
+		}
+		this.compareLong = lng;
+		this.compareLower = lower;
+		this.pattern = p;
+	}
+
+	/**
+	 * @param def The SQL definition of the test.
+	 * @param test The test, for its threshold.
+	 * @return The plan of the test, compiled if there is none for its current threshold and catalog version.
+	 */
+	public static QueryTestPlan getPlan(SqlbasedAssessmentDefinition def, AvailableTest test) {
+		double threshold = test.getThresholdRequired() ? test.getDefaultThresholdValue() : Double.NaN;
+		int catalogVersion = CatalogVersion.get();
+
+		QueryTestPlan plan = plans.get(test.getTestId());
+		if (plan == null || !plan.isFor(threshold, catalogVersion)) {
+			plan = new QueryTestPlan(def, test, threshold, catalogVersion);
+			plans.put(test.getTestId(), plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Drops all the plans, the next run of each test compiles its plan again.
+	 */
+	public static void clear() {
+		plans.clear();
+	}
+
+	private boolean isFor(double threshold, int catalogVersion) {
+		return Double.compare(this.threshold, threshold) == 0 && this.catalogVersion == catalogVersion;
+	}
+
+	/**
+	 * @return The SQL to run.
+	 */
+	public String getSql() {
+		return this.sql;
+	}
+
+	public QueryOperator getOperator() {
+		return this.operator;
+	}
+
+	public DataType getDataType() {
+		return this.dataType;
+	}
+
+	public String getCompareString() {
+		return this.compareString;
+	}
+
+	/**
+	 * @return The compare value of an INT test, null if the test is not INT or the value is not a number.
+	 */
+	public Long getCompareLong() {
+		return this.compareLong;
+	}
+
+	/**
+	 * @return The lower case compare value of a STRING test, null if the test is not STRING.
+	 */
+	public String getCompareLower() {
+		return this.compareLower;
+	}
+
+	/**
+	 * @return The pattern of a REGEXP or LIKE test, null for other operators or an invalid expression.
+	 */
+	public Pattern getPattern() {
+		return this.pattern;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.runtest;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.guardium.data.AvailableTest;
+import com.guardium.data.SqlbasedAssessmentDefinition;
+import com.guardium.utils.Check;
+import com.guardium.utils.VirtualThreads;
+
+/**
+ * Time limits of the test statements.
+ * <p>
+ * The limit of a test is, in order: the query timeout of its SQL definition, the system property
+ * <code>guardium.va.queryTimeout.&lt;category&gt;</code> of its category (lower case, words joined
+ * by '_', like <code>guardium.va.queryTimeout.privilege</code>), then <code>guardium.va.queryTimeout</code>.
+ * It is given to the driver with Statement.setQueryTimeout, and since not all drivers honor it,
+ * the watchdog also cancels the statement <code>guardium.va.queryTimeoutGrace</code> seconds later.
+ * A limit of 0 leaves the statements without a limit.
+ * <p>
+ * The statements that read the version, patch level and OS of a datasource, in the datasource
+ * handler and the info getters of the CVE tests, get the limit of a test without a category.
+ */
+public class QueryWatchdog {
+
+	/** Limit in seconds of the statements of a test without a category or definition limit */
+	public static final int DEFAULT_TIMEOUT = Integer.getInteger("guardium.va.queryTimeout", 300);
+
+	/** Seconds the driver is given to apply the timeout itself before the watchdog cancels the statement */
+	public static final int GRACE = Integer.getInteger("guardium.va.queryTimeoutGrace", 10);
+
+	private static final ScheduledThreadPoolExecutor timer;
+
+	static {
+		timer = new ScheduledThreadPoolExecutor(1, VirtualThreads.newPlatformFactory("VA-Query-Watchdog-"));
+		timer.setRemoveOnCancelPolicy(true);
+	}
+
+	private QueryWatchdog() {
+	}
+
+	/**
+	 * @param test
+	 * @param def The SQL definition of a query based test, null for other tests.
+	 * @return The limit in seconds of the statements of the test, 0 for none.
+	 */
+	public static int getTimeout(AvailableTest test, SqlbasedAssessmentDefinition def) {
+		if (def != null && def.getQueryTimeout() > 0) {
+			return def.getQueryTimeout();
+		}
+		if (test != null && !Check.isEmpty(test.getCategoryName())) {
+			String category = test.getCategoryName().trim().toLowerCase().replaceAll("[^a-z0-9]+", "_");
+			Integer timeout = Integer.getInteger("guardium.va.queryTimeout." + category);
+			if (timeout != null) {
+				return Math.max(0, timeout);
+			}
+		}
+		return Math.max(0, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Limits the time of a statement.
+	 * @param stmt
+	 * @param seconds The limit, 0 for none.
+	 * @return The watch of the statement, to end once the statement is done.
+	 */
+	public static Watch watch(final Statement stmt, int seconds) {
+		final Watch watch = new Watch(seconds);
+		if (seconds <= 0) {
+			return watch;
+		}
+		try {
+			stmt.setQueryTimeout(seconds);
+		} catch (SQLException e) {
+			// not supported by the driver, the watchdog still applies
+		}
+		watch.future = timer.schedule(new Runnable() {
+			public void run() {
+				try {
+					if (stmt.isClosed()) {
+						return;
+					}
+					watch.timedOut = true;
+					stmt.cancel();
+				} catch (Throwable t) {
+					// closed meanwhile or cancel not supported
+				}
+			}
+		}, (long) seconds + Math.max(0, GRACE), TimeUnit.SECONDS);
+		return watch;
+	}
+
+	/**
+	 * @param t
+	 * @return Whether the exception, or one of its causes, is the driver reporting a query timeout.
+	 */
+	public static boolean isTimeout(Throwable t) {
+		for (Throwable c = t; c != null; c = c.getCause()) {
+			if (c instanceof SQLTimeoutException) {
+				return true;
+			}
+			if (c.getCause() == c) {
+				break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The limit of one statement.
+	 */
+	public static class Watch {
+		private final int seconds;
+		private volatile boolean timedOut = false;
+		private ScheduledFuture<?> future = null;
+
+		private Watch(int seconds) {
+			this.seconds = seconds;
+		}
+
+		/**
+		 * @return The limit in seconds.
+		 */
+		public int getSeconds() {
+			return this.seconds;
+		}
+
+		/**
+		 * @return Whether the watchdog canceled the statement.
+		 */
+		public boolean isTimedOut() {
+			return this.timedOut;
+		}
+
+		/**
+		 * Stops watching, the statement is done.
+		 */
+		public void end() {
+			if (this.future != null) {
+				this.future.cancel(false);
+			}
+		}
+	}
+}
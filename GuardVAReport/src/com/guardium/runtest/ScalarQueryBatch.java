@@ -0,0 +1,225 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.runtest;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.guardium.data.AssessmentTest;
+import com.guardium.data.AvailableTest;
+import com.guardium.data.Datasource;
+import com.guardium.data.DatasourceEnum;
+import com.guardium.data.SqlbasedAssessmentDefinition;
+import com.guardium.data.StatementFactory;
+import com.guardium.data.StatementFactory.Shape;
+import com.guardium.utils.AdHocLogger;
+import com.guardium.utils.Check;
+
+/**
+ * Runs the scalar checks of the query based tests of a datasource in batches, one round trip for
+ * up to <code>guardium.va.scalarBatchSize</code> tests, before the tests run.
+ * <p>
+ * A batch is sent as a single statement holding the queries one per line, which SQL Server and
+ * Sybase execute as a batch returning one result set per query. The first value of each result
+ * is kept in the cached parameters of the run, where QueryBasedTest finds it instead of running
+ * its query. A batch that fails or does not return one result per query is dropped, its tests
+ * then run their own query.
+ * <p>
+ * Only plain SELECT queries are batched: no callable statement, pre test check, database loop,
+ * version range, variable or temporary table.
+ * <p>
+ * The limit of a batch is the largest query timeout of its tests, capped by
+ * <code>guardium.va.scalarBatchTimeout</code> seconds when set, the cap alone if none of the tests
+ * has a timeout. A batch that runs out of time is dropped like a failed one, its tests then run
+ * their own query under their own timeout.
+ */
+public class ScalarQueryBatch {
+
+	/** Tests per batch, 0 to run every test on its own */
+	public static final int BATCH_SIZE = Integer.getInteger("guardium.va.scalarBatchSize", 50);
+
+	/** Most seconds a batch may run, 0 for no cap */
+	public static final int BATCH_TIMEOUT = Integer.getInteger("guardium.va.scalarBatchTimeout", 0);
+
+	private static final String KEY_PREFIX = "ScalarQueryBatch.";
+
+	private static final Pattern SELECT = Pattern.compile("^\\s*select\\s", Pattern.CASE_INSENSITIVE);
+	private static final Pattern UNBATCHABLE = Pattern.compile(";|(?<!@)@\\w|#|\\binto\\b|\\bgo\\b", Pattern.CASE_INSENSITIVE);
+
+	private ScalarQueryBatch() {
+	}
+
+	/**
+	 * @param ds
+	 * @return Whether the queries of the datasource can be batched.
+	 */
+	public static boolean isSupported(Datasource ds) {
+		return BATCH_SIZE > 1 && (DatasourceEnum.MSSQL.equals(ds) || DatasourceEnum.SYBASE.equals(ds));
+	}
+
+	/**
+	 * Runs the scalar checks of the tests that can be batched and keeps their values.
+	 * @param con A connection to the datasource.
+	 * @param ds
+	 * @param tests The tests of the datasource, in run order.
+	 * @param cachedParams The cached parameters of the run, given to each test.
+	 */
+	public static void run(Connection con, Datasource ds, List<AssessmentTest> tests, Map cachedParams) {
+		if (con == null || cachedParams == null || !isSupported(ds)) {
+			return;
+		}
+		List<AssessmentTest> chunk = new ArrayList<AssessmentTest>();
+		List<String> sqls = new ArrayList<String>();
+		int timeout = 0;
+		for (AssessmentTest test : tests) {
+			SqlbasedAssessmentDefinition def = getDefinition(test);
+			if (def == null || !isBatchable(test.getAvailableTest(), def)) {
+				continue;
+			}
+			String sql = QueryTestPlan.getPlan(def, test.getAvailableTest()).getSql();
+			if (!SELECT.matcher(sql).find() || UNBATCHABLE.matcher(sql).find()) {
+				continue;
+			}
+			chunk.add(test);
+			sqls.add(sql);
+			timeout = Math.max(timeout, QueryWatchdog.getTimeout(test.getAvailableTest(), def));
+			if (chunk.size() == BATCH_SIZE) {
+				runBatch(con, ds, chunk, sqls, batchTimeout(timeout), cachedParams);
+				chunk.clear();
+				sqls.clear();
+				timeout = 0;
+			}
+		}
+		if (chunk.size() > 1) {
+			runBatch(con, ds, chunk, sqls, batchTimeout(timeout), cachedParams);
+		}
+	}
+
+	/**
+	 * Takes the batched value of a test, each value is used once.
+	 * @param cachedParams The cached parameters of the run.
+	 * @param testId
+	 * @return The value, null if the test was not batched.
+	 */
+	public static Result take(Map cachedParams, int testId) {
+		if (cachedParams == null) {
+			return null;
+		}
+		return (Result) cachedParams.remove(KEY_PREFIX + testId);
+	}
+
+	/**
+	 * @param timeout The largest query timeout of the tests of the batch, 0 if none has one.
+	 * @return The limit of the batch in seconds, 0 for none.
+	 */
+	static int batchTimeout(int timeout) {
+		if (BATCH_TIMEOUT > 0) {
+			return timeout > 0 ? Math.min(timeout, BATCH_TIMEOUT) : BATCH_TIMEOUT;
+		}
+		return Math.max(0, timeout);
+	}
+
+	private static SqlbasedAssessmentDefinition getDefinition(AssessmentTest test) {
+		AvailableTest availableTest = test.getAvailableTest();
+		if (availableTest == null || !QueryBasedTest.class.getName().equals(availableTest.getClassName())) {
+			return null;
+		}
+		SqlbasedAssessmentDefinition def = availableTest.getSqlDefinition();
+		if (def == null) {
+			def = test.getSqlbasedAssessmentDefinition();
+		}
+		return def;
+	}
+
+	private static boolean isBatchable(AvailableTest test, SqlbasedAssessmentDefinition def) {
+		return !def.getIsCallableStatement()
+			&& !def.getDbLoopFlag()
+			&& Check.isEmpty(def.getPreTestCheckSql() == null ? null : def.getPreTestCheckSql().trim())
+			&& test.getApplicableFromVersion() <= 0
+			&& test.getApplicableToVersion() <= 0;
+	}
+
+	private static void runBatch(Connection con, Datasource ds, List<AssessmentTest> chunk, List<String> sqls,
+			int timeout, Map cachedParams) {
+		StringBuilder batch = new StringBuilder();
+		for (String sql : sqls) {
+			batch.append(sql).append('\n');
+		}
+
+		List<Result> results = new ArrayList<Result>(chunk.size());
+		Statement stmt = null;
+		ResultSet rs = null;
+		QueryWatchdog.Watch watch = null;
+		try {
+			stmt = StatementFactory.createStatement(con, ds, Shape.SCALAR);
+			watch = QueryWatchdog.watch(stmt, timeout);
+			boolean isResultSet = stmt.execute(batch.toString());
+			while (true) {
+				if (isResultSet) {
+					rs = stmt.getResultSet();
+					results.add(rs.next() ? new Result(true, rs.getObject(1)) : new Result(false, null));
+					rs = Check.disposal(rs);
+				} else if (stmt.getUpdateCount() == -1) {
+					break;
+				}
+				isResultSet = stmt.getMoreResults();
+			}
+		} catch (SQLException e) {
+			// the tests of the batch run their own query
+			AdHocLogger.logDebug("Scalar batch of " + chunk.size() + " tests failed, they run their own query");
+			AdHocLogger.logException(e);
+			return;
+		} finally {
+			Check.disposal(rs);
+			Check.disposal(stmt);
+			if (watch != null) {
+				watch.end();
+			}
+		}
+
+		if (results.size() != chunk.size()) {
+			AdHocLogger.logDebug("Scalar batch of " + chunk.size() + " tests returned " + results.size() + " results, not used");
+			return;
+		}
+		for (int i = 0; i < chunk.size(); i++) {
+			cachedParams.put(KEY_PREFIX + chunk.get(i).getAvailableTest().getTestId(), results.get(i));
+		}
+	}
+
+	/**
+	 * The first value of the result of a batched query.
+	 */
+	public static class Result {
+		private final boolean hasRow;
+		private final Object value;
+
+		private Result(boolean hasRow, Object value) {
+			this.hasRow = hasRow;
+			this.value = value;
+		}
+
+		/**
+		 * @return Whether the query returned a row.
+		 */
+		public boolean hasRow() {
+			return this.hasRow;
+		}
+
+		/**
+		 * @return The first column of the first row.
+		 */
+		public Object getValue() {
+			return this.value;
+		}
+	}
+}
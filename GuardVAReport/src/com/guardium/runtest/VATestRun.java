@@ -19,16 +19,21 @@ import javax.swing.JTextArea;
 
 import com.guardium.data.AssessmentTest;
 import com.guardium.data.AvailableTest;
+import com.guardium.data.ConcurrentConnecter;
+import com.guardium.data.ConnectionGuard;
 import com.guardium.data.DataSourceConnectException;
 import com.guardium.data.Datasource;
+import com.guardium.data.DatasourceSession;
 import com.guardium.data.DatasourceType;
 import com.guardium.data.DatasourceVersionHistory;
 import com.guardium.data.DbDriver;
 import com.guardium.data.SecurityAssessment;
 import com.guardium.data.SqlbasedAssessmentDefinition;
+import com.guardium.data.TestResult;
 //import com.guardium.map.AssessmentLogMap;
 import com.guardium.map.AssessmentResultHeaderMap;
 import com.guardium.map.AvailableTestMap;
+import com.guardium.map.CatalogLoader;
 //import com.guardium.map.CveFixMap;
 //import com.guardium.map.CveReferenceMap;
 import com.guardium.map.CveFixMap;
@@ -37,12 +42,15 @@ import com.guardium.map.DatasourceMap;
 import com.guardium.map.DbDriverMap;
 import com.guardium.map.DatasourceTypeMap;
 import com.guardium.map.RecommendationTextMap;
+import com.guardium.map.ResultHistory;
 import com.guardium.map.SqlbasedAssessmentDefinitionMap;
 import com.guardium.map.SecurityAssessmentMap;
 import com.guardium.map.TestResultMap;
+import com.guardium.map.TestResultStore;
 //import com.guardium.runtest.AbstractJdbcTest;
 //import com.guardium.utils.AdHocLogger;
 //import com.guardium.utils.AdHocLogger;
+import com.guardium.utils.ResultExporter;
 import com.guardium.utils.WriteResult;
 //import com.itextpdf.text.pdf.PdfDocument;
 //import com.itextpdf.text.pdf.PdfPage;
@@ -163,6 +171,11 @@ public class VATestRun {
 	
 	public void run (int idx) {
 		
+		// load the test catalog in the background, when run without the application that starts it
+		CatalogLoader.start();
+		// the datasources are tested again, whatever failed in an earlier run
+		ConnectionGuard.resetAll();
+		
 		// create Datasource, put in Datasource list
 		DatasourceMap DatasourcePeer = DatasourceMap.getDatasourceMapObject();
         
@@ -181,8 +194,22 @@ public class VATestRun {
 		}
 
 		if (idx == -1) {
-			for (Datasource ds : datasourceList) {
-				run (ds);
+			// connect and plan the datasources concurrently, the connect time dominates this step
+			AssessmentScheduler scheduler = new AssessmentScheduler();
+			try {
+				for (final Datasource ds : datasourceList) {
+					scheduler.submit(ds, new Runnable() {
+						public void run() {
+							VATestRun.this.run (ds);
+						}
+					});
+				}
+				scheduler.awaitCompletion();
+			} catch (InterruptedException e) {
+				scheduler.cancel();
+				Thread.currentThread().interrupt();
+			} finally {
+				scheduler.shutdown();
 			}
 			
 		}
@@ -259,70 +286,63 @@ public class VATestRun {
 			
 
 			
-			// get QUERY TEST for this datasource type
-			QueryAvailableTestList = AvailableTestPeer.getTestListByDsType(AvailableTestMap.QUERY_TEST_TYPE, ds.getDatasourceTypeId());
-			if (QueryAvailableTestList.size() <= 0) {
-				WriteResult.writeOutput("No VA query test defined for this datasource");
-				//continue;
-			} else {
-				// set sql definition
-				for (AvailableTest avt : QueryAvailableTestList) {
-					avt.setClassName("com.guardium.runtest.QueryBasedTest");
-					// set datasource type
-					avt.setDatasourceType(dst);
+			// the available tests are shared by every datasource of the same type
+			synchronized (VATestRun.class) {
+				// get QUERY TEST for this datasource type
+				QueryAvailableTestList = AvailableTestPeer.getTestListByDsType(AvailableTestMap.QUERY_TEST_TYPE, ds.getDatasourceTypeId());
+				if (QueryAvailableTestList.size() <= 0) {
+					WriteResult.writeOutput("No VA query test defined for this datasource");
+					//continue;
+				} else {
+					// set sql definition
+					for (AvailableTest avt : QueryAvailableTestList) {
+						avt.setClassName("com.guardium.runtest.QueryBasedTest");
+						// set datasource type
+						avt.setDatasourceType(dst);
 					
-					// for testing
-					// avt.setApplicableToVersion(11.5);
+						// for testing
+						// avt.setApplicableToVersion(11.5);
 					
-					// System.out.println("test id is " + avt.getTestId());
-					SqlbasedAssessmentDefinition sd = SqlbasedAssessmentDefinitionPeer
-							.getSqlbasedAssessmentDefinitionById(avt
-									.getTestId());
-					if (sd != null) {
-						avt.setSqlDefinition(sd);
-						sd.setAvailableTest(avt);
-					}
+						// System.out.println("test id is " + avt.getTestId());
+						SqlbasedAssessmentDefinition sd = SqlbasedAssessmentDefinitionPeer
+								.getSqlbasedAssessmentDefinitionById(avt
+										.getTestId());
+						if (sd != null) {
+							avt.setSqlDefinition(sd);
+							sd.setAvailableTest(avt);
+						}
 
+					}
 				}
-			}
 			
 
-			// get CVE TEST for this datasource type
-			CveAvailableTestList = AvailableTestPeer.getTestListByDsType(AvailableTestMap.CVE_TEST_TYPE, ds.getDatasourceTypeId());
-			if (CveAvailableTestList.size() <= 0) {
-				System.out.println("No VA CVE test defined for this datasource");
-				// continue;
-			} else {
-				// set cve fix
-				for (AvailableTest avt : CveAvailableTestList) {
-					avt.setClassName("com.guardium.runtest.CVETest");
-					// set datasource type
-					avt.setDatasourceType(dst);
-
-					// set cve fix record
-					avt.setCveFixs(CveFixPeer.getListByTestId(avt.getTestId()));
-				}
-			}		
+				// get CVE TEST for this datasource type
+				CveAvailableTestList = AvailableTestPeer.getTestListByDsType(AvailableTestMap.CVE_TEST_TYPE, ds.getDatasourceTypeId());
+				if (CveAvailableTestList.size() <= 0) {
+					System.out.println("No VA CVE test defined for this datasource");
+					// continue;
+				} else {
+					// set cve fix
+					for (AvailableTest avt : CveAvailableTestList) {
+						avt.setClassName("com.guardium.runtest.CVETest");
+						// set datasource type
+						avt.setDatasourceType(dst);
+
+						// set cve fix record
+						avt.setCveFixs(CveFixPeer.getListByTestId(avt.getTestId()));
+					}
+				}		
 
-			// try to connect
-			Connection con;
+			}
+
+			// try to connect, the connection is kept open for the tests of the run
 			try {
 				System.out.println("before getConnection...");
-				con = ds.getConnection();
-				String tmp = con.getCatalog();
+				// the session sets the version and patch levels found in the version history
+				DatasourceSession session = DatasourceSession.open(ds);
+				String tmp = session.getCatalog();
 				//WriteResult.writeOutput("connection OK get catalog " + tmp);
 				System.out.println("connection OK get catalog " + tmp);
-				
-				// get version
-				// List <DatasourceVersionHistory> vhistory = new ArrayList<DatasourceVersionHistory> ();
-				DatasourceVersionHistory dhistory;
-				dhistory = ds.findVersionHistory(con);
-				if (dhistory != null) {
-					ds.setVersionLevel(dhistory.getVersionLevel());
-					ds.setPatchLevel(dhistory.getPatchLevel());
-					//ds.setMajorVersion(majorVersion);
-					
-				}
 
 			} catch (DataSourceConnectException | SQLException e) {
 				// DataSourceConnectException dsce =
@@ -332,91 +352,95 @@ public class VATestRun {
 				//continue;
 			}
 
-			// define the test
-
-			// create security assessment for each datasource
-			// one for query tests, one for CVE tests
-			// if connect OK, and have available test defined.
-			String secass_desc = "";
-			SecurityAssessment secass = null; 
-			List<AssessmentTest> dTestList = new ArrayList<AssessmentTest>();
-			Iterator itr = null;
-			int testType = 1;  // 1 for quest test, 2 for CVE test
-			// query tests
-			if ( QueryAvailableTestList.size() > 0) {
-				secass_desc = "Test_Query_" + ds.getDbType() + "_" + String.valueOf(AssessmentID);
-				secass = new SecurityAssessment(AssessmentID,
-					secass_desc, testType, "", "", false, "", "");
-				//SecurityAssessmentList.add(secass);
-				//secass.save();
+			// assessment ids come from static counters and datasources may be planned concurrently
+			synchronized (VATestRun.class) {
+				// define the test
+
+				// create security assessment for each datasource
+				// one for query tests, one for CVE tests
+				// if connect OK, and have available test defined.
+				String secass_desc = "";
+				SecurityAssessment secass = null; 
+				List<AssessmentTest> dTestList = new ArrayList<AssessmentTest>();
+				Iterator itr = null;
+				int testType = 1;  // 1 for quest test, 2 for CVE test
+				// query tests
+				if ( QueryAvailableTestList.size() > 0) {
+					secass_desc = "Test_Query_" + ds.getDbType() + "_" + String.valueOf(AssessmentID);
+					secass = new SecurityAssessment(AssessmentID,
+						secass_desc, testType, "", "", false, "", "");
+					//SecurityAssessmentList.add(secass);
+					//secass.save();
 			
-				// create a assessment test
-				dTestList = new ArrayList<AssessmentTest>();
+					// create a assessment test
+					dTestList = new ArrayList<AssessmentTest>();
 
-				// create assessment test for each test
-				itr = QueryAvailableTestList.iterator();
+					// create assessment test for each test
+					itr = QueryAvailableTestList.iterator();
 
-				while (itr.hasNext()) {
-					AvailableTest tv = (AvailableTest) itr.next();
-					// System.out.println("id " + tv.getTestId() +
-					// " datasource type id " + tv.getDatasource_type_id());
+					while (itr.hasNext()) {
+						AvailableTest tv = (AvailableTest) itr.next();
+						// System.out.println("id " + tv.getTestId() +
+						// " datasource type id " + tv.getDatasource_type_id());
 
-					AssessmentTest asstest = new AssessmentTest(AssessmentTestID,
-						AssessmentID, tv.getTestId(), false, 0, "MAJOR", -1,
-						false);
-					//AssessmentTest asstest = new AssessmentTest();
+						AssessmentTest asstest = new AssessmentTest(AssessmentTestID,
+							AssessmentID, tv.getTestId(), false, 0, "MAJOR", -1,
+							false);
+						//AssessmentTest asstest = new AssessmentTest();
 				
 				
-					dTestList.add(asstest);
-					AssessmentTestID++;
-				}
+						dTestList.add(asstest);
+						AssessmentTestID++;
+					}
 			
-				// set datasource
-				// set available test
-				secass.setAssessmentTests(dTestList);
-				secass.addDatasources(ds);
-				secass.save();
-				AssessmentID++;
-			}
+					// set datasource
+					// set available test
+					secass.setAssessmentTests(dTestList);
+					secass.addDatasources(ds);
+					secass.save();
+					AssessmentID++;
+				}
 
-			// CVE tests
+				// CVE tests
 			
-			if ( CveAvailableTestList.size() > 0) {
-				testType = 2;
-				secass_desc = "Test_CVE_"  + ds.getDbType() + "_" + String.valueOf(AssessmentID);
-				secass = new SecurityAssessment(AssessmentID,
-					secass_desc, testType, "", "", false, "", "");
-				//SecurityAssessmentList.add(secass);
-				//secass.save();
+				if ( CveAvailableTestList.size() > 0) {
+					testType = 2;
+					secass_desc = "Test_CVE_"  + ds.getDbType() + "_" + String.valueOf(AssessmentID);
+					secass = new SecurityAssessment(AssessmentID,
+						secass_desc, testType, "", "", false, "", "");
+					//SecurityAssessmentList.add(secass);
+					//secass.save();
 			
-				// create a assessment test
-				dTestList = new ArrayList<AssessmentTest>();
-
-				// create assessment test for each test
-				itr = CveAvailableTestList.iterator();
-
-				while (itr.hasNext()) {
-					AvailableTest tv = (AvailableTest) itr.next();
-					// System.out.println("id " + tv.getTestId() +
-					// " datasource type id " + tv.getDatasource_type_id());
-
-					AssessmentTest asstest = new AssessmentTest(AssessmentTestID,
-						AssessmentID, tv.getTestId(), false, 0, "MAJOR", -1,
-						false);
-					//AssessmentTest asstest = new AssessmentTest();
-					dTestList.add(asstest);
-					AssessmentTestID++;
-				}
+					// create a assessment test
+					dTestList = new ArrayList<AssessmentTest>();
+
+					// create assessment test for each test
+					itr = CveAvailableTestList.iterator();
+
+					while (itr.hasNext()) {
+						AvailableTest tv = (AvailableTest) itr.next();
+						// System.out.println("id " + tv.getTestId() +
+						// " datasource type id " + tv.getDatasource_type_id());
+
+						AssessmentTest asstest = new AssessmentTest(AssessmentTestID,
+							AssessmentID, tv.getTestId(), false, 0, "MAJOR", -1,
+							false);
+						//AssessmentTest asstest = new AssessmentTest();
+						dTestList.add(asstest);
+						AssessmentTestID++;
+					}
 			
-				// set datasource
-				// set available test
-				secass.setAssessmentTests(dTestList);
-				secass.addDatasources(ds);
-				secass.save();
-				AssessmentID++;
+					// set datasource
+					// set available test
+					secass.setAssessmentTests(dTestList);
+					secass.addDatasources(ds);
+					secass.save();
+					AssessmentID++;
+				}
 			}
 
 
+
 			// run the assessment test
 			//real_run();
 			
@@ -519,13 +543,101 @@ public class VATestRun {
  		
  		//OuterClass.InnerClass innerObject = outerObject.new InnerClass()                                                                                                                                                                                               
  		// GUI - list SecurityAssessment name
+ 		// each assessment covers a single datasource, run them concurrently within the scheduler limits
+ 		final String resultDir = outputDir;
+ 		AssessmentScheduler scheduler = new AssessmentScheduler();
+ 		try {
+ 			for (final SecurityAssessment sst : SecurityAssessmentList) {
+ 				scheduler.submit(sst.getDatasource(0), new Runnable() {
+ 					public void run() {
+ 						runAssessment(sst, resultDir);
+ 					}
+ 				});
+ 			}
+ 			scheduler.awaitCompletion();
+ 		} catch (InterruptedException e) {
+ 			scheduler.cancel();
+ 			Thread.currentThread().interrupt();
+ 		} finally {
+ 			scheduler.shutdown();
+ 			// the connections opened when the datasources were planned
+ 			DatasourceSession.closeAll();
+ 			ResultExporter.close();
+ 			ResultHistory.close();
+ 		}
+
+ 		//setProgress(100);
+ 		
+ 		WriteResult.writeOutput("SecurityAssessment list size is "
+ 				+ SecurityAssessmentList.size());
+ 		WriteResult.writeOutput("Connects: " + ConcurrentConnecter.getMetrics());
+ 		WriteResult.writeOutput("Catalog load ms: " + CatalogLoader.getMetrics());
+
+ 		//AssessmentLogPeer.dumpMap();
+ 		//taskOutput.append(String.format("AssessmentLog map size is "
+ 		//		+ AssessmentLogPeergetMapSize()));		
+ 		
+ 		// result header
+ 		WriteResult.writeOutput("Assessment Result Header map size is "
+ 				+ AssessmentResultHeaderPeer.getMapSize());
+ 		//AssessmentResultHeaderPeer.dumpMap();
+ 		
+ 		
+ 		
+ 		//WriteResult.writeOutput("DS list size is " + datasourceList.size());
+
+ 		/*
+ 		// dump result after run
  		for (SecurityAssessment sst : SecurityAssessmentList) {  
  			
+ 			WriteResult.writeOutput("\n\n");
+ 			//sst.dumpResult();
+ 			int [] t = sst.getTestSummary();
+ 			final BarChartResult demo = new BarChartResult("Oracle x64 Query Based Test Result");
+ 		}
+         */
+ 		
+ 		
+         //CreatePdfFile cf = new CreatePdfFile();
+         //cf.create();
+         
+         
+         
+         /*
+         System.out.println("doInBackground before while");
+         while (progress < 100) {
+             //Sleep for up to one second.
+             try {
+                 Thread.sleep(random.nextInt(1000));
+             } catch (InterruptedException ignore) {}
+             //Make random progress.
+             progress += random.nextInt(10);
+             setProgress(Math.min(progress, 100));
+         }
+         */
+
+         return;
+     }    
+     
+
+	/**
+	 * Runs one security assessment and writes its result file.
+	 * The results are recorded in a buffer bound to the calling thread, so several
+	 * assessments can run at the same time.
+	 * @param sst
+	 * @param outputDir
+	 */
+	public void runAssessment(SecurityAssessment sst, String outputDir) {
+ 		TestResultMap TestResultPeer = TestResultMap.getTestResultMapObject();
+
+ 		TestResultMap.bindBuffer(new TestResultStore());
+ 		try {
+ 			
  			WriteResult.writeOutput("\n\n");
  			sst.dump();
  			
  			// create output result file for each sst
- 			outputFile = outputDir + sst.getAssessmentDesc();
+ 			String outputFile = outputDir + sst.getAssessmentDesc();
              Writer outputwrite = WriteResult.createLogFile(outputFile);
              
  			TestResultPeer.cleanMap();
@@ -582,60 +694,11 @@ public class VATestRun {
  			}
  			
  			//progress += incr;
-            // setProgress(Math.min(progress, 100));    			
- 		}
-
- 		//setProgress(100);
- 		
- 		WriteResult.writeOutput("SecurityAssessment list size is "
- 				+ SecurityAssessmentList.size());
-
- 		//AssessmentLogPeer.dumpMap();
- 		//taskOutput.append(String.format("AssessmentLog map size is "
- 		//		+ AssessmentLogPeergetMapSize()));		
- 		
- 		// result header
- 		WriteResult.writeOutput("Assessment Result Header map size is "
- 				+ AssessmentResultHeaderPeer.getMapSize());
- 		//AssessmentResultHeaderPeer.dumpMap();
- 		
- 		
- 		
- 		//WriteResult.writeOutput("DS list size is " + datasourceList.size());
-
- 		/*
- 		// dump result after run
- 		for (SecurityAssessment sst : SecurityAssessmentList) {  
- 			
- 			WriteResult.writeOutput("\n\n");
- 			//sst.dumpResult();
- 			int [] t = sst.getTestSummary();
- 			final BarChartResult demo = new BarChartResult("Oracle x64 Query Based Test Result");
+            // setProgress(Math.min(progress, 100));
+ 		} finally {
+ 			TestResultMap.unbindBuffer();
  		}
-         */
- 		
- 		
-         //CreatePdfFile cf = new CreatePdfFile();
-         //cf.create();
-         
-         
-         
-         /*
-         System.out.println("doInBackground before while");
-         while (progress < 100) {
-             //Sleep for up to one second.
-             try {
-                 Thread.sleep(random.nextInt(1000));
-             } catch (InterruptedException ignore) {}
-             //Make random progress.
-             progress += random.nextInt(10);
-             setProgress(Math.min(progress, 100));
-         }
-         */
-
-         return;
-     }    
-     
+	}
 
 	private static void initData() {
 		// get user defined Datasource list
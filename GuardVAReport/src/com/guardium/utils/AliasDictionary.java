@@ -20,9 +20,11 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.guardium.data.GroupType;
 import com.guardium.map.AliasMap;
+import com.guardium.map.CatalogVersion;
 import com.guardium.map.DatasourceMap;
 import com.guardium.map.GroupTypeMap;
 import com.guardium.utils.AdHocLogger;
@@ -36,7 +38,8 @@ import com.guardium.utils.AdHocLogger;
 public class AliasDictionary {
 	
 	private static AliasDictionary aliasDictionary = null;
-	private static Map translations = new HashMap();
+	// read by the report threads while RefreshAlias fills it
+	private static Map translations = new ConcurrentHashMap();
 	private boolean needSync = false;
 	
 	AliasMap AliasPeer = AliasMap.getAliasMapObject();
@@ -88,7 +91,11 @@ public class AliasDictionary {
 	
 	public void addtoTranslations(int groupType) {
 		Map m = AliasPeer.getAliases(groupType);
-		translations.put(new Integer(groupType),m);	
+		Object old = translations.put(new Integer(groupType),m);	
+		if (old != null && !old.equals(m)) {
+			// SQL already translated with the old aliases is compiled again
+			CatalogVersion.changed();
+		}
 		setNeedSync(true);
 	}
 
@@ -0,0 +1,505 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.guardium.gui.Crypto;
+import com.guardium.gui.TestUtils;
+
+/**
+ * Binary form of a catalog .dump file, built from the dump at build time (see main) and
+ * read at startup instead of decrypting the dump to a temp file and parsing its XML.
+ * <p>
+ * Layout, all integers big endian:
+ * <pre>
+ * int MAGIC, int FORMAT_VERSION
+ * int digest length d, byte[d] SHA-1 digest of the encrypted source dump
+ * int string count n, int[n+1] offsets into the string data, byte[] UTF-8 string data
+ * int table name, int field count f, int[f] field names
+ * int row count r, int[r*f] row values
+ * </pre>
+ * Names and values are indexes in the string table, every distinct string is stored once,
+ * -1 marks a field missing from a row. Rows are fixed width, a value is found by its position.
+ * Strings are decoded on first use and then shared.
+ * <p>
+ * The digest of the source dump tells whether the snapshot is out of date, a snapshot whose dump
+ * was changed after it was built is not used, see isSnapshotOf.
+ * <p>
+ * The snapshot is packaged encrypted with the same key as the dumps. The first load decrypts it,
+ * hashes the packaged dump once to check the digest and keeps the decrypted snapshot in the cache
+ * directory with a .stamp file next to it: the size and time of the packaged .cat and .dump and the
+ * digest that was checked. Later loads whose packaged files still match the stamp map the cached
+ * file read only, with no decryption and no hashing, see load.
+ */
+public class CatalogSnapshot {
+
+	public static final int MAGIC = 0x47564143; // GVAC
+	public static final int FORMAT_VERSION = 2;
+
+	/** Extension of a snapshot, replacing the .dump extension of its source */
+	public static final String EXTENSION = ".cat";
+
+	/** Extension of the stamp kept next to a cached snapshot */
+	public static final String STAMP_EXTENSION = ".stamp";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer buf;
+	private final byte[] sourceDigest;
+	private final int stringCount;
+	private final int offsetsPos;
+	private final int dataPos;
+	private final String[] strings;
+
+	private final String tableName;
+	private final String[] fieldNames;
+	private final int rowCount;
+	private final int rowsPos;
+
+	private CatalogSnapshot(ByteBuffer buf) throws IOException {
+		this.buf = buf;
+		if (this.buf.getInt() != MAGIC) {
+			throw new IOException("Not a catalog snapshot");
+		}
+		int version = this.buf.getInt();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported catalog snapshot version " + version);
+		}
+		this.sourceDigest = new byte[this.buf.getInt()];
+		this.buf.get(this.sourceDigest);
+		this.stringCount = this.buf.getInt();
+		this.offsetsPos = this.buf.position();
+		this.dataPos = this.offsetsPos + 4 * (this.stringCount + 1);
+		this.strings = new String[this.stringCount];
+		this.buf.position(this.dataPos + this.buf.getInt(this.offsetsPos + 4 * this.stringCount));
+
+		this.tableName = this.getString(this.buf.getInt());
+		this.fieldNames = new String[this.buf.getInt()];
+		for (int i = 0; i < this.fieldNames.length; i++) {
+			this.fieldNames[i] = this.getString(this.buf.getInt());
+		}
+		this.rowCount = this.buf.getInt();
+		this.rowsPos = this.buf.position();
+	}
+
+	/**
+	 * @param ins The encrypted snapshot, closed when read.
+	 * @return The snapshot.
+	 * @throws IOException If the stream is not a snapshot of the supported version.
+	 */
+	public static CatalogSnapshot read(InputStream ins) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(256 * 1024);
+		Crypto.decrypt(ins, bos);
+		return read(bos.toByteArray());
+	}
+
+	/**
+	 * @param bytes The snapshot, not encrypted, as compile returns it.
+	 * @return The snapshot.
+	 * @throws IOException If the bytes are not a snapshot of the supported version.
+	 */
+	static CatalogSnapshot read(byte[] bytes) throws IOException {
+		return read(ByteBuffer.wrap(bytes));
+	}
+
+	private static CatalogSnapshot read(ByteBuffer buf) throws IOException {
+		try {
+			return new CatalogSnapshot(buf);
+		} catch (RuntimeException e) {
+			// truncated or not decrypted
+			throw new IOException("Damaged catalog snapshot", e);
+		}
+	}
+
+	/**
+	 * @return Where decrypted snapshots are cached, <code>guardium.va.catalogCache</code>,
+	 * by default the catalog directory of the vatest output directory.
+	 */
+	public static File cacheDir() {
+		String dir = System.getProperty("guardium.va.catalogCache");
+		if (dir == null || dir.isEmpty()) {
+			dir = TestUtils.getDirectoryPath() + File.separator + "catalog";
+		}
+		return new File(dir);
+	}
+
+	/**
+	 * Loads a packaged snapshot through the cache directory. When the stamp of the cached snapshot
+	 * matches the packaged files the cached file is mapped, else the packaged snapshot is decrypted,
+	 * checked against the digest of the dump and cached for the next load.
+	 * @param cat The packaged snapshot, encrypted.
+	 * @param dump The packaged source dump, null if there is none to check against.
+	 * @param cacheDir
+	 * @return The snapshot, null if the dump was changed after the snapshot was built.
+	 * @throws IOException If the packaged snapshot is not a snapshot of the supported version.
+	 */
+	public static CatalogSnapshot load(URL cat, URL dump, File cacheDir) throws IOException {
+		String name = new File(cat.getPath()).getName();
+		File cached = new File(cacheDir, name);
+		File stampFile = new File(cacheDir, name + STAMP_EXTENSION);
+		String sourceStamp = stamp(cat) + " " + (dump == null ? "-" : stamp(dump));
+
+		String[] stamp = readStamp(stampFile);
+		if (stamp != null && stamp[0].equals(sourceStamp) && cached.isFile()) {
+			try {
+				CatalogSnapshot snapshot = map(cached);
+				if (toHex(snapshot.sourceDigest).equals(stamp[1])) {
+					return snapshot;
+				}
+			} catch (IOException e) {
+				// damaged cache, decrypted again below
+			}
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(256 * 1024);
+		Crypto.decrypt(cat.openStream(), bos);
+		byte[] bytes = bos.toByteArray();
+		CatalogSnapshot snapshot = read(bytes);
+		if (dump != null && !snapshot.isSnapshotOf(digest(dump.openStream()))) {
+			return null;
+		}
+		try {
+			writeCache(bytes, cached, stampFile, sourceStamp + "\n" + toHex(snapshot.sourceDigest) + "\n");
+		} catch (IOException e) {
+			AdHocLogger.logWarning("Cannot cache " + name + " in " + cacheDir + ": " + e.getMessage());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @param url
+	 * @return The size and modification time of the resource.
+	 * @throws IOException
+	 */
+	private static String stamp(URL url) throws IOException {
+		URLConnection c = url.openConnection();
+		try {
+			return c.getContentLengthLong() + ":" + c.getLastModified();
+		} finally {
+			Check.disposal(c.getInputStream());
+		}
+	}
+
+	/**
+	 * @param stampFile
+	 * @return The source stamp and the digest, null if there is no valid stamp.
+	 */
+	private static String[] readStamp(File stampFile) {
+		if (!stampFile.isFile()) {
+			return null;
+		}
+		try {
+			String[] lines = new String(Files.readAllBytes(stampFile.toPath()), UTF8).split("\n");
+			return lines.length == 2 ? lines : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the decrypted snapshot and then its stamp, each through a temp file renamed in place,
+	 * readable by the owner only.
+	 */
+	private static void writeCache(byte[] bytes, File cached, File stampFile, String stamp) throws IOException {
+		File dir = cached.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("cannot create the directory");
+		}
+		dir.setReadable(false, false);
+		dir.setReadable(true, true);
+		dir.setExecutable(false, false);
+		dir.setExecutable(true, true);
+		Files.deleteIfExists(stampFile.toPath());
+		replace(bytes, cached);
+		replace(stamp.getBytes(UTF8), stampFile);
+	}
+
+	private static void replace(byte[] bytes, File file) throws IOException {
+		// temp files are created owner only
+		Path tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+		try {
+			Files.write(tmp, bytes);
+			Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * @param file A decrypted snapshot.
+	 * @return The snapshot, mapped read only.
+	 * @throws IOException
+	 */
+	private static CatalogSnapshot map(File file) throws IOException {
+		FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return read(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		} finally {
+			ch.close();
+		}
+	}
+
+	private static String toHex(byte[] b) {
+		StringBuilder sb = new StringBuilder(2 * b.length);
+		for (byte x : b) {
+			sb.append(Character.forDigit((x >> 4) & 0xf, 16)).append(Character.forDigit(x & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param ins The source dump, encrypted as it is packaged, closed when read.
+	 * @return The SHA-1 digest of the dump.
+	 * @throws IOException
+	 */
+	public static byte[] digest(InputStream ins) throws IOException {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA1");
+			byte[] b = new byte[64 * 1024];
+			for (int n = ins.read(b); n >= 0; n = ins.read(b)) {
+				md.update(b, 0, n);
+			}
+			return md.digest();
+		} catch (NoSuchAlgorithmException e) {
+			// SHA1 is always there
+			throw new IllegalStateException(e);
+		} finally {
+			Check.disposal(ins);
+		}
+	}
+
+	/**
+	 * @param dumpDigest The digest of a dump, see digest.
+	 * @return Whether the snapshot was built from that dump.
+	 */
+	public boolean isSnapshotOf(byte[] dumpDigest) {
+		return Arrays.equals(this.sourceDigest, dumpDigest);
+	}
+
+	public String getTableName() {
+		return this.tableName;
+	}
+
+	public int getRowCount() {
+		return this.rowCount;
+	}
+
+	public int getFieldCount() {
+		return this.fieldNames.length;
+	}
+
+	public String getFieldName(int field) {
+		return this.fieldNames[field];
+	}
+
+	/**
+	 * @return The field names, in field order.
+	 */
+	public String[] getFieldNames() {
+		return this.fieldNames.clone();
+	}
+
+	/**
+	 * @param row
+	 * @param field
+	 * @return The value of the field in the row, null if the row has no such field.
+	 */
+	public String getValue(int row, int field) {
+		return this.getString( this.buf.getInt(this.rowsPos + 4 * (row * this.fieldNames.length + field)) );
+	}
+
+	private String getString(int idx) {
+		if (idx < 0) {
+			return null;
+		}
+		String s = this.strings[idx];
+		if (s == null) {
+			int start = this.buf.getInt(this.offsetsPos + 4 * idx);
+			int end = this.buf.getInt(this.offsetsPos + 4 * (idx + 1));
+			byte[] b = new byte[end - start];
+			this.buf.get(this.dataPos + start, b);
+			s = new String(b, UTF8);
+			this.strings[idx] = s;
+		}
+		return s;
+	}
+
+	/**
+	 * @return The rows in the form of ReadDumpFile.getTableList(), a list per row of {name, value}
+	 * pairs, built when a row is read. The catalog maps read the values by field, see ReadDumpFile.TableHandler.
+	 */
+	public List<List> getTableList() {
+		return new AbstractList<List>() {
+			@Override
+			public List get(int row) {
+				List<String[]> fields = new ArrayList<String[]>(fieldNames.length);
+				for (int f = 0; f < fieldNames.length; f++) {
+					String value = getValue(row, f);
+					if (value != null) {
+						fields.add(new String[] { fieldNames[f], value });
+					}
+				}
+				return fields;
+			}
+
+			@Override
+			public int size() {
+				return rowCount;
+			}
+		};
+	}
+
+	/**
+	 * Writes the snapshot of a parsed dump.
+	 * @param tableName
+	 * @param tableList The rows as returned by ReadDumpFile.getTableList().
+	 * @param sourceDigest The digest of the dump, see digest.
+	 * @return The snapshot, not encrypted.
+	 * @throws IOException
+	 */
+	public static byte[] compile(String tableName, List<List> tableList, byte[] sourceDigest) throws IOException {
+		Map<String,Integer> stringIdx = new HashMap<String,Integer>();
+		List<String> stringList = new ArrayList<String>();
+		Map<String,Integer> fieldIdx = new HashMap<String,Integer>();
+		List<Integer> fieldList = new ArrayList<Integer>();
+
+		// the field names first, so the row width is known
+		for (List row : tableList) {
+			for (Object o : row) {
+				String name = ((String[]) o)[0];
+				if (!fieldIdx.containsKey(name)) {
+					fieldIdx.put(name, fieldIdx.size());
+					fieldList.add(intern(name, stringIdx, stringList));
+				}
+			}
+		}
+		int tableIdx = intern(tableName == null ? "" : tableName, stringIdx, stringList);
+
+		int[] rows = new int[tableList.size() * fieldList.size()];
+		Arrays.fill(rows, -1);
+		int r = 0;
+		for (List row : tableList) {
+			for (Object o : row) {
+				String[] field = (String[]) o;
+				rows[r * fieldList.size() + fieldIdx.get(field[0])] = intern(field[1] == null ? "" : field[1], stringIdx, stringList);
+			}
+			r++;
+		}
+
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		int[] offsets = new int[stringList.size() + 1];
+		for (int i = 0; i < stringList.size(); i++) {
+			offsets[i] = data.size();
+			byte[] b = stringList.get(i).getBytes(UTF8);
+			data.write(b, 0, b.length);
+		}
+		offsets[stringList.size()] = data.size();
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(data.size() + 4 * (offsets.length + rows.length) + 64);
+		DataOutputStream out = new DataOutputStream(bos);
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(sourceDigest.length);
+		out.write(sourceDigest);
+		out.writeInt(stringList.size());
+		for (int off : offsets) {
+			out.writeInt(off);
+		}
+		data.writeTo(out);
+		out.writeInt(tableIdx);
+		out.writeInt(fieldList.size());
+		for (int name : fieldList) {
+			out.writeInt(name);
+		}
+		out.writeInt(tableList.size());
+		for (int value : rows) {
+			out.writeInt(value);
+		}
+		out.flush();
+		return bos.toByteArray();
+	}
+
+	private static int intern(String s, Map<String,Integer> stringIdx, List<String> stringList) {
+		Integer idx = stringIdx.get(s);
+		if (idx == null) {
+			idx = stringList.size();
+			stringIdx.put(s, idx);
+			stringList.add(s);
+		}
+		return idx;
+	}
+
+	/**
+	 * Build step, compiles every encrypted .dump file of a directory to an encrypted .cat snapshot.
+	 * @param args source directory, target directory
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("usage: CatalogSnapshot <dump directory> <snapshot directory>");
+			System.exit(1);
+		}
+		File srcDir = new File(args[0]);
+		File destDir = new File(args[1]);
+		destDir.mkdirs();
+		try {
+			Crypto.init();
+			File[] dumps = srcDir.listFiles();
+			if (dumps == null) {
+				System.out.println("no such directory " + srcDir);
+				System.exit(1);
+			}
+			for (File dump : dumps) {
+				String name = dump.getName();
+				if (!name.endsWith(".dump")) {
+					continue;
+				}
+				byte[] sourceDigest = digest(new FileInputStream(dump));
+				ByteArrayOutputStream xml = new ByteArrayOutputStream();
+				Crypto.decrypt(new FileInputStream(dump), xml);
+
+				ReadDumpFile rdf = new ReadDumpFile();
+				if (!rdf.read(new ByteArrayInputStream(xml.toByteArray()))) {
+					System.out.println("cannot parse " + dump);
+					System.exit(1);
+				}
+				byte[] snapshot = compile(rdf.getTableName(), rdf.getTableList(), sourceDigest);
+
+				File cat = new File(destDir, name.substring(0, name.length() - ".dump".length()) + EXTENSION);
+				Crypto.encrypt(new ByteArrayInputStream(snapshot), new FileOutputStream(cat));
+				System.out.println(dump.getName() + " -> " + cat.getName() + " " + rdf.getTableList().size() + " rows");
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
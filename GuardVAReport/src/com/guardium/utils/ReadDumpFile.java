@@ -6,26 +6,146 @@
  */
 package com.guardium.utils;
 
-import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.guardium.gui.Crypto;
 
 public class ReadDumpFile {
 
+	/** Where the catalog dumps and snapshots are packaged */
+	public static final String RESOURCE_PATH = "/com/guardium/resource/";
+
 	String table_name = "";
 	List<List> table_list = new ArrayList<List>();
-	List<String[]> field_list = new ArrayList<String[]>();
-	boolean table_start = false;
-	boolean row_start = false;
-	boolean field_start = false;
+
+	/**
+	 * Receives the rows of a dump as they are parsed.
+	 */
+	public interface RowHandler {
+		/**
+		 * @param row The fields of the row, {name, value} pairs with the name in lower case.
+		 */
+		void handleRow(List<String[]> row);
+	}
+
+	/**
+	 * Receives the rows of a dump as they are read, the catalog maps look up the index of each
+	 * field they need once in columns and then read the values of every row by index.
+	 */
+	public interface TableHandler {
+		/**
+		 * Called once, before the first row.
+		 * @param columns The field names of the table in lower case, in column order.
+		 */
+		void columns(String[] columns);
+
+		/**
+		 * @param row The values of the row, only valid during the call.
+		 */
+		void handleRow(Row row);
+	}
+
+	/**
+	 * The values of one row, by column index, see TableHandler.
+	 */
+	public abstract static class Row {
+		/**
+		 * @param column A column index, -1 for a field the table does not have.
+		 * @return The value, null if the row has no such field.
+		 */
+		public String get(int column) {
+			return column < 0 ? null : this.value(column);
+		}
+
+		protected abstract String value(int column);
+
+		/**
+		 * @return The value, dflt if the row has no such field or it is empty.
+		 */
+		public String getString(int column, String dflt) {
+			String value = this.get(column);
+			return value == null || value.isEmpty() ? dflt : value;
+		}
+
+		/**
+		 * @return The value, dflt if the row has no such field or it is empty.
+		 * @throws NumberFormatException
+		 */
+		public int getInt(int column, int dflt) {
+			String value = this.get(column);
+			return value == null || value.isEmpty() ? dflt : Integer.parseInt(value);
+		}
+
+		/**
+		 * @return The value, dflt if the row has no such field or it is empty.
+		 * @throws NumberFormatException
+		 */
+		public double getDouble(int column, double dflt) {
+			String value = this.get(column);
+			return value == null || value.isEmpty() ? dflt : Double.parseDouble(value);
+		}
+
+		/**
+		 * @return Whether the value is a number other than 0, dflt if the row has no such field or it is empty.
+		 * @throws NumberFormatException
+		 */
+		public boolean getFlag(int column, boolean dflt) {
+			String value = this.get(column);
+			return value == null || value.isEmpty() ? dflt : Integer.parseInt(value) != 0;
+		}
+	}
+
+	/**
+	 * @param columns The columns of a table, see TableHandler.columns.
+	 * @param name A field name in lower case.
+	 * @return The index of the field, -1 if the table has no such field.
+	 */
+	public static int column(String[] columns, String name) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param handler
+	 * @return A table handler passing each row to handler as {name, value} pairs.
+	 */
+	private static TableHandler pairs(final RowHandler handler) {
+		return new TableHandler() {
+			private String[] names;
+
+			public void columns(String[] columns) {
+				this.names = columns;
+			}
+
+			public void handleRow(Row row) {
+				List<String[]> fields = new ArrayList<String[]>(this.names.length);
+				for (int i = 0; i < this.names.length; i++) {
+					String value = row.get(i);
+					if (value != null) {
+						fields.add(new String[] { this.names[i], value });
+					}
+				}
+				handler.handleRow(fields);
+			}
+		};
+	}
 	
 	public List getTableList () {
 		return table_list;
@@ -38,117 +158,236 @@ public class ReadDumpFile {
 	public boolean readFile (String fileName) {
 		boolean readOK = false;
 		try {
-			File file = new File(fileName);
-			
-			DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance()
-                             .newDocumentBuilder();
+			readOK = read(new FileInputStream(fileName));
+		} catch (Exception e) {
+			System.out.println(e.getMessage());
+			return readOK;
+		}
+		return readOK;
+	}
 
-			Document doc = dBuilder.parse(file);
+	/**
+	 * Parses a decrypted dump, the rows are kept in getTableList().
+	 * @param ins closed when read
+	 * @return Whether the dump could be parsed.
+	 */
+	public boolean read (InputStream ins) {
+		return stream(ins, pairs(new RowHandler() {
+			public void handleRow(List<String[]> row) {
+				table_list.add(row);
+			}
+		}));
+	}
 
-			//System.out.println("Root element :" + doc.getDocumentElement().getNodeName());
+	/**
+	 * Reads a catalog resource into getTableList(), see streamResource.
+	 * @param resourceFile The name of the dump, like "alias.dump".
+	 * @return Whether the catalog could be read.
+	 */
+	public boolean readResource (String resourceFile) {
+		return streamResource(resourceFile, pairs(new RowHandler() {
+			public void handleRow(List<String[]> row) {
+				table_list.add(row);
+			}
+		}));
+	}
 
-			if (doc.hasChildNodes()) {
+	/**
+	 * Reads a catalog resource, from its precompiled snapshot (see CatalogSnapshot.load) when the build
+	 * produced one from the dump as it is packaged, else by decrypting and parsing the dump straight
+	 * from the classpath.
+	 * @param resourceFile The name of the dump, like "alias.dump".
+	 * @param handler Receives the columns and then each row.
+	 * @return Whether the catalog could be read.
+	 */
+	public boolean streamResource (String resourceFile, TableHandler handler) {
+		String catName = resourceFile.replaceFirst("\\.dump$", "") + CatalogSnapshot.EXTENSION;
+		URL cat = ReadDumpFile.class.getResource(RESOURCE_PATH + catName);
+		if (cat != null) {
+			CatalogSnapshot snapshot = null;
+			try {
+				snapshot = CatalogSnapshot.load(cat, ReadDumpFile.class.getResource(RESOURCE_PATH + resourceFile),
+						CatalogSnapshot.cacheDir());
+				if (snapshot == null) {
+					// the dump changed after the snapshot was built, use the dump
+					AdHocLogger.logWarning(catName + " is out of date, reading " + resourceFile);
+				}
+			} catch (IOException e) {
+				// damaged snapshot or older format, use the dump
+				AdHocLogger.logWarning("Cannot read " + catName + ": " + e.getMessage());
+				snapshot = null;
+			}
+			if (snapshot != null) {
+				table_name = snapshot.getTableName();
+				stream(snapshot, handler);
+				return true;
+			}
+		}
 
-				printNote(doc.getChildNodes());
+		InputStream ins = ReadDumpFile.class.getResourceAsStream(RESOURCE_PATH + resourceFile);
+		if (ins == null) {
+			System.out.println("get resource null " + RESOURCE_PATH + resourceFile);
+			return false;
+		}
+		return stream(Crypto.decryptStream(ins), handler);
+	}
 
+	/**
+	 * Passes the rows of a snapshot to the handler.
+	 * @param snapshot
+	 * @param handler
+	 */
+	private static void stream (final CatalogSnapshot snapshot, TableHandler handler) {
+		handler.columns(snapshot.getFieldNames());
+		final int[] current = new int[1];
+		Row row = new Row() {
+			protected String value(int column) {
+				return column < snapshot.getFieldCount() ? snapshot.getValue(current[0], column) : null;
 			}
-			readOK = true;
-		} catch (Exception e) {
-			System.out.println(e.getMessage());
-			return readOK;
+		};
+		for (int r = 0; r < snapshot.getRowCount(); r++) {
+			current[0] = r;
+			handler.handleRow(row);
 		}
-		return readOK;
 	}
-	
-	private void printNote(NodeList nodeList) {
-
-		for (int count = 0; count < nodeList.getLength(); count++) {
-			Node tempNode = nodeList.item(count);
-			// make sure it's element node.
-			if (tempNode.getNodeType() == Node.ELEMENT_NODE ) {
-
-			    // if (tempNode.getNodeName().equals("row"))
-				String tmp_property_name = "";
-				String tmp_property_value = "";
-				
-				// get node name and value
-				// System.out.println("\nNode Name =" + tempNode.getNodeName() + " [OPEN]");
-				//System.out.println("Node Value =" + tempNode.getTextContent());
-
-				
-				if (tempNode.getNodeName().equals("table_data")) {
-					//table_name = tempNode.getNodeValue(); // tempNode.getTextContent();
-					table_start = true;
-					if (tempNode.hasAttributes()) {
-						// get attributes names and values
-	                    NamedNodeMap nodeMap2 = tempNode.getAttributes();
-	                    //for (int i = 0; i < nodeMap.getLength(); i++) {
-	                    // only need the first one
-	                    for (int i = 0; i < 1; i++) {
-	                    	Node node = nodeMap2.item(i);
-	                        //System.out.println("attr name : " + node.getNodeName());
-	                        //System.out.println("attr value : " + node.getNodeValue());
-	                        table_name =  node.getNodeValue();
-	                    }
+
+	/**
+	 * Parses a decrypted dump, passing each row of its table_data to the handler as soon as it is read.
+	 * @param ins closed when read
+	 * @param handler
+	 * @return Whether the dump could be parsed.
+	 */
+	public boolean stream (InputStream ins, RowHandler handler) {
+		return stream(ins, pairs(handler));
+	}
+
+	/**
+	 * Parses a decrypted dump, passing each row of its table_data to the handler as soon as it is read.
+	 * The columns are the fields of the table_structure, or of the first row if the dump has none.
+	 * @param ins closed when read
+	 * @param handler
+	 * @return Whether the dump could be parsed.
+	 */
+	public boolean stream (InputStream ins, final TableHandler handler) {
+		boolean readOK = false;
+		try {
+			SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+			parser.parse(ins, new DefaultHandler() {
+				private boolean structure_start = false;
+				private boolean table_start = false;
+				private List<String> structure = new ArrayList<String>();
+				private Map<String,Integer> columnIdx = null;
+				private List<String> first_names = null;
+				private List<String> first_values = null;
+				private String[] values = null;
+				private String field_name = null;
+				private StringBuilder field_value = new StringBuilder();
+				private final Row row = new Row() {
+					protected String value(int column) {
+						return column < values.length ? values[column] : null;
+					}
+				};
+
+				private void columns(List<String> names) {
+					columnIdx = new HashMap<String,Integer>();
+					for (String name : names) {
+						columnIdx.put(name, columnIdx.size());
 					}
-					
+					handler.columns(names.toArray(new String[names.size()]));
 				}
-				else {
-					if (tempNode.getNodeName().equals("row")) {
-						row_start = true;
+
+				@Override
+				public void startElement(String uri, String localName, String qName, Attributes attributes) {
+					if (qName.equals("table_structure")) {
+						structure_start = true;
+					}
+					else if (structure_start && qName.equals("field")) {
+						String name = attributes.getValue("Field");
+						structure.add((name == null ? firstAttribute(attributes) : name).toLowerCase());
 					}
-					else {
-						if (tempNode.getNodeName().equals("field")) {
-							field_start = true;
+					else if (qName.equals("table_data")) {
+						table_start = true;
+						table_name = firstAttribute(attributes);
+						if (columnIdx == null && !structure.isEmpty()) {
+							columns(structure);
 						}
 					}
+					else if (table_start && qName.equals("row")) {
+						if (columnIdx != null) {
+							values = new String[columnIdx.size()];
+						} else {
+							first_names = new ArrayList<String>();
+							first_values = new ArrayList<String>();
+						}
+					}
+					else if ((values != null || first_names != null) && qName.equals("field")) {
+						field_name = firstAttribute(attributes).toLowerCase();
+						field_value.setLength(0);
+					}
 				}
 
-				
-				tmp_property_value = tempNode.getTextContent();
-				
-				if (tempNode.hasAttributes()) {
-					// get attributes names and values
-                    NamedNodeMap nodeMap = tempNode.getAttributes();
-                    //for (int i = 0; i < nodeMap.getLength(); i++) {
-                    // only need the first one
-                    for (int i = 0; i < 1; i++) {
-                    	Node node = nodeMap.item(i);
-                        //System.out.println("attr name : " + node.getNodeName());
-                        //System.out.println("attr value : " + node.getNodeValue());
-                        tmp_property_name =  node.getNodeValue().toLowerCase();
-                    }
-				}
-				if (tempNode.hasChildNodes()) {
-					// loop again if has child nodes
-                    printNote(tempNode.getChildNodes());
+				@Override
+				public void characters(char[] ch, int start, int length) {
+					if (field_name != null) {
+						field_value.append(ch, start, length);
+					}
 				}
-				
-				
-				//System.out.println("Node Name =" + tempNode.getNodeName() + " [CLOSE]");
-				
-				if (table_start) {
-					if (tempNode.getNodeName().equals("table_data")) {
+
+				@Override
+				public void endElement(String uri, String localName, String qName) {
+					if (qName.equals("table_structure")) {
+						structure_start = false;
+					}
+					else if (qName.equals("table_data")) {
 						table_start = false;
 					}
-					else if (tempNode.getNodeName().equals("row")) {
-						table_list.add(field_list);
-						field_list = new ArrayList<String[]>();
-						row_start = false;
+					else if (first_names != null && qName.equals("row")) {
+						// no table_structure, the first row names the columns
+						columns(first_names);
+						values = first_values.toArray(new String[first_values.size()]);
+						first_names = null;
+						first_values = null;
+						handler.handleRow(row);
+						values = null;
+					}
+					else if (values != null && qName.equals("row")) {
+						handler.handleRow(row);
+						values = null;
 					}
-					else if (tempNode.getNodeName().equals("field")) {
-							//System.out.println("property name = " + tmp_property_name);
-							//System.out.println("property valu = " + tmp_property_value);
-							String[] prot_setting=new String[2];
-							prot_setting[0] = tmp_property_name;
-							prot_setting[1] = tmp_property_value;
-							field_list.add(prot_setting);
-							field_start = false;
+					else if (field_name != null && qName.equals("field")) {
+						if (first_names != null) {
+							first_names.add(field_name);
+							first_values.add(field_value.toString());
+						} else {
+							Integer idx = columnIdx.get(field_name);
+							if (idx != null) {
+								values[idx] = field_value.toString();
+							}
+						}
+						field_name = null;
 					}
 				}
-				
-			}
+			});
+			readOK = true;
+		} catch (Exception e) {
+			System.out.println(e.getMessage());
+			return readOK;
+		} finally {
+			Check.disposal(ins);
+		}
+		return readOK;
+	}
+
+	/**
+	 * @param attributes
+	 * @return The "name" attribute, else the first one.
+	 */
+	private static String firstAttribute(Attributes attributes) {
+		String value = attributes.getValue("name");
+		if (value == null) {
+			value = attributes.getLength() > 0 ? attributes.getValue(0) : "";
 		}
+		return value;
 	}
 	
 	public void dumpTable () {
@@ -6,8 +6,11 @@
  */
 package com.guardium.utils;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -86,6 +89,77 @@ public class Regexer {
 	/** Matches "\\_". */
 	public static final Pattern SQL_ESCAPE_BAR_WILDCARD = Pattern.compile("\\\\_|\\\\\\\\_");
 
+	/** Matches white space. */
+	private static final Pattern WHITE_SPACE = Pattern.compile("\\s+");
+
+	/** Flags of the expressions of matchRegex */
+	public static final int REGEX_FLAGS = Pattern.DOTALL | Pattern.CANON_EQ;
+
+	/** Flags of the expressions converted from wildcards */
+	public static final int WILDCARD_FLAGS = Pattern.DOTALL | Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.CANON_EQ;
+
+	/** Most compiled expressions kept by each cache, the least recently used is dropped first */
+	public static final int PATTERN_CACHE_SIZE = Integer.getInteger("guardium.va.patternCacheSize", 1024);
+
+	/** Compiled expressions, by flags and expression */
+	private static final Map<String,Pattern> patternCache = lruCache();
+
+	/** Compiled wildcard expressions, by wildcard expression */
+	private static final Map<String,Pattern> wildcardCache = lruCache();
+
+	/**
+	 * @return A map of at most PATTERN_CACHE_SIZE patterns in access order, the least recently used
+	 * is dropped first. Access order changes on get, so every access is synchronized.
+	 */
+	private static Map<String,Pattern> lruCache() {
+		return Collections.synchronizedMap(new LinkedHashMap<String,Pattern>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,Pattern> eldest) {
+				return this.size() > PATTERN_CACHE_SIZE;
+			}
+		});
+	}
+
+	/**
+	 * Compiles an expression once, the pattern is then shared by all the threads.
+	 * At most PATTERN_CACHE_SIZE expressions are kept, the least recently used is dropped first.
+	 * 
+	 * @param expression
+	 *           The regular expression.
+	 * @param flags
+	 *           The flags of Pattern.compile.
+	 * @return The compiled expression.
+	 * @throws PatternSyntaxException
+	 *            If the expression is not valid, invalid expressions are not cached.
+	 */
+	public static Pattern getPattern(String expression, int flags) {
+		String key = flags + ":" + expression;
+		Pattern pattern = patternCache.get(key);
+		if (pattern == null) {
+			pattern = Pattern.compile(expression, flags);
+			patternCache.put(key, pattern);
+		}
+		return pattern;
+	}
+
+	/**
+	 * Converts and compiles a wildcard expression once, see convertWildcardExpression.
+	 * 
+	 * @param expression
+	 *           The wildcard expression.
+	 * @return The compiled expression.
+	 */
+	public static Pattern getWildcardPattern(String expression) {
+		Pattern pattern = wildcardCache.get(expression);
+		if (pattern == null) {
+			pattern = Pattern.compile(convertWildcardExpression(expression), WILDCARD_FLAGS);
+			wildcardCache.put(expression, pattern);
+		}
+		return pattern;
+	}
+
 	/**
 	 * Escapes all the defined metacharacters.
 	 * 
@@ -130,7 +204,7 @@ public class Regexer {
 	}
 
 	public static String escapeMetacharacterWithoutIgnorePreviousEscape(String input, Metacharacter meta) {
-		Matcher match = Pattern.compile(BACKSLASH + meta.getTypename()).matcher(input);
+		Matcher match = getPattern(BACKSLASH + meta.getTypename(), 0).matcher(input);
 		String repl = meta.getReplacement();
 		return match.replaceAll(repl);
 	}
@@ -148,7 +222,7 @@ public class Regexer {
 	 */
 	public static String replaceUnescaped(String input, char target, String replacement) {
 		String expression = ESCAPED_PATTERN_PFX + target;
-		Pattern pattern = Pattern.compile(expression);
+		Pattern pattern = getPattern(expression, 0);
 		return pattern.matcher(input).replaceAll(replacement);
 	}
 
@@ -251,13 +325,10 @@ public class Regexer {
 	 * 
 	 * @param expression
 	 *           The wildcard expression.
-	 * @return A wildcard expression converted to a regular expression.
+	 * @return A wildcard expression converted to a regular expression, converted once per expression.
 	 */
 	public static Pattern convertWildcards(String expression) {
-		String value = convertWildcardExpression(expression);
-
-		Pattern pattern = Pattern.compile(value, Pattern.DOTALL | Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.CANON_EQ);
-		return pattern;
+		return getWildcardPattern(expression);
 	}
 
 	/**
@@ -420,9 +491,8 @@ public class Regexer {
 	public static boolean matchSpaceInsensitive(String input, String expression) {
 		String value;
 
-		Pattern pattern = Pattern.compile("\\s+");
-		value = pattern.matcher(expression).replaceAll("\\\\s+");
-		pattern = Pattern.compile(value, Pattern.DOTALL | Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.CANON_EQ);
+		value = WHITE_SPACE.matcher(expression).replaceAll("\\\\s+");
+		Pattern pattern = getPattern(value, WILDCARD_FLAGS);
 
 		Matcher matcher = pattern.matcher(input);
 		boolean result = matcher.find();
@@ -601,7 +671,7 @@ public class Regexer {
 	 * @see java.util.regex.Pattern#DOTALL
 	 */
 	public static boolean matchRegex(String input, String expression) {
-		Pattern pattern = Pattern.compile(expression, Pattern.DOTALL | Pattern.CANON_EQ);
+		Pattern pattern = getPattern(expression, REGEX_FLAGS);
 		return matchRegex(input, pattern);
 	}
 
@@ -0,0 +1,256 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+import com.guardium.data.TestResult;
+import com.guardium.gui.TestUtils;
+
+/**
+ * Exports every test result as it is recorded, one JSON line or one CSV row per result, for
+ * loading into other tools. Nothing is kept in memory but the write buffer.
+ * <p>
+ * The export is off unless <code>guardium.va.export</code> is set to <code>jsonl</code> or
+ * <code>csv</code>. The files go to <code>guardium.va.export.dir</code>, by default the export
+ * directory under the VA directory, and are gzip compressed if <code>guardium.va.export.gzip</code>
+ * is true. A file is closed and the next one started once <code>guardium.va.export.maxBytes</code>
+ * bytes have been written to it. The files of a run are named va_results_&lt;start time&gt;_&lt;n&gt;,
+ * close() ends the run.
+ */
+public class ResultExporter {
+
+	public static final String FORMAT = System.getProperty("guardium.va.export", "").toLowerCase();
+
+	public static final boolean GZIP = Boolean.getBoolean("guardium.va.export.gzip");
+
+	/** Bytes of a file after which the next one is started, 0 for no rotation */
+	public static final long MAX_BYTES = Long.getLong("guardium.va.export.maxBytes", 100L * 1024 * 1024);
+
+	private static final String[] CSV_HEADER = {
+		"test_result_id", "test_id", "assessment_test_id", "test_desc", "category", "severity",
+		"score", "score_desc", "datasource", "datasource_type", "datasource_version",
+		"external_reference", "stig_ref", "stig_severity", "stig_iacontrols", "stig_srg",
+		"threshold", "exception_group", "result_text", "recommendation", "detail", "recorded"
+	};
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static String runName = null;
+	private static int fileNumber = 0;
+	private static CountingOutputStream counter = null;
+	private static Writer out = null;
+
+	private ResultExporter() {
+	}
+
+	/**
+	 * @return Whether results are exported.
+	 */
+	public static boolean isEnabled() {
+		return "jsonl".equals(FORMAT) || "csv".equals(FORMAT);
+	}
+
+	/**
+	 * Writes a result to the current export file, a failure is logged and the result skipped.
+	 * @param result
+	 */
+	public static synchronized void export(TestResult result) {
+		if (!isEnabled()) {
+			return;
+		}
+		try {
+			if (out == null || (MAX_BYTES > 0 && counter.getCount() >= MAX_BYTES)) {
+				openNext();
+			}
+			String[] values = values(result);
+			if ("csv".equals(FORMAT)) {
+				writeCsv(out, values);
+			} else {
+				writeJson(out, values);
+			}
+		} catch (IOException e) {
+			AdHocLogger.logException(e);
+			closeFile();
+		}
+	}
+
+	/**
+	 * Closes the export file, the next result starts the files of a new run.
+	 */
+	public static synchronized void close() {
+		closeFile();
+		runName = null;
+		fileNumber = 0;
+	}
+
+	private static void openNext() throws IOException {
+		closeFile();
+		if (runName == null) {
+			runName = "va_results_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+		}
+		File dir = new File(System.getProperty("guardium.va.export.dir",
+				TestUtils.getDirectoryPath() + File.separator + "export"));
+		dir.mkdirs();
+		fileNumber++;
+		String name = runName + "_" + fileNumber + ("csv".equals(FORMAT) ? ".csv" : ".jsonl") + (GZIP ? ".gz" : "");
+
+		counter = new CountingOutputStream(new FileOutputStream(new File(dir, name)));
+		OutputStream os = GZIP ? new GZIPOutputStream(counter, BUFFER_SIZE) : counter;
+		out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), BUFFER_SIZE);
+		if ("csv".equals(FORMAT)) {
+			writeCsv(out, CSV_HEADER);
+		}
+	}
+
+	private static void closeFile() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				AdHocLogger.logException(e);
+			}
+		}
+		out = null;
+		counter = null;
+	}
+
+	/**
+	 * @param r
+	 * @return The values of the result in the order of the CSV header, recorded being the time the test ran.
+	 */
+	static String[] values(TestResult r) {
+		return new String[] {
+			String.valueOf(r.getTestResultId()), String.valueOf(r.getTestId()), String.valueOf(r.getAssessmentTestId()),
+			r.getTestDesc(), r.getCategoryName(), r.getSeverity(),
+			r.getTestScore() == null ? null : r.getTestScore().name(), r.getScoreDesc(),
+			r.getDatasourceDesc(), r.getDatasourceType(), r.getDatasourceVersion(),
+			r.getExternalReference(), r.getStig_ref(), r.getStig_severity(), r.getStig_iacontrols(), r.getStig_srg(),
+			r.getThresholdString(), r.getExceptionGroupDescription(),
+			r.getResultText(), r.getRecommendationText(), r.getDetail(),
+			r.getExecutedTime() == null ? null : String.valueOf(r.getExecutedTime().getTime())
+		};
+	}
+
+	/**
+	 * @param out
+	 * @param values The values of a row, a null value is left empty.
+	 * @throws IOException
+	 */
+	static void writeCsv(Writer out, String[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			String v = values[i];
+			if (v == null) {
+				continue;
+			}
+			if (v.indexOf(',') < 0 && v.indexOf('"') < 0 && v.indexOf('\n') < 0 && v.indexOf('\r') < 0) {
+				out.write(v);
+			} else {
+				out.write('"');
+				out.write(v.replace("\"", "\"\""));
+				out.write('"');
+			}
+		}
+		out.write("\r\n");
+	}
+
+	/**
+	 * @param out
+	 * @param values The values of a result, in the order of the CSV header.
+	 * @throws IOException
+	 */
+	static void writeJson(Writer out, String[] values) throws IOException {
+		out.write('{');
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			out.write('"');
+			out.write(CSV_HEADER[i]);
+			out.write("\":");
+			String v = values[i];
+			if (v == null) {
+				out.write("null");
+			} else if (i == 0 || i == 1 || i == 2 || i == values.length - 1) {
+				// the ids and the time are numbers
+				out.write(v);
+			} else {
+				writeJsonString(out, v);
+			}
+		}
+		out.write("}\n");
+	}
+
+	private static void writeJsonString(Writer out, String s) throws IOException {
+		out.write('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.write(String.format("\\u%04x", (int) c));
+				} else {
+					out.write(c);
+				}
+			}
+		}
+		out.write('"');
+	}
+
+	/** Counts the bytes written to the file, after compression */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+
+		private CountingOutputStream(OutputStream os) {
+			super(os);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count += len;
+		}
+
+		private long getCount() {
+			return this.count;
+		}
+	}
+}
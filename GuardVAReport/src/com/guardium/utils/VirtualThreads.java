@@ -0,0 +1,159 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.utils;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.guardium.data.Datasource;
+
+/**
+ * Threads for the blocking JDBC work of an assessment: connects, datasources and tests.
+ * <p>
+ * With <code>-Dguardium.va.virtualThreads=true</code> on a Java 21 runtime the work runs on
+ * virtual threads, one per task, so thousands of datasources can be waiting on their databases
+ * without sizing platform thread pools. The application is built for Java 17, so the virtual
+ * thread API is looked up by reflection, on an older runtime the option is ignored.
+ * <p>
+ * Drivers that block while holding a monitor pin the carrier thread of a virtual thread, their
+ * class names are listed in <code>guardium.va.platformThreadDrivers</code> (comma separated) and
+ * their connects, assessments and tests stay on platform threads.
+ */
+public class VirtualThreads {
+
+	/** Whether virtual threads were asked for */
+	public static final boolean REQUESTED = Boolean.getBoolean("guardium.va.virtualThreads");
+
+	private static final Set<String> platformDrivers = new HashSet<String>();
+
+	private static final Method ofVirtual;
+	private static final Method builderName;
+	private static final Method builderFactory;
+	private static final Method newThreadPerTaskExecutor;
+
+	static {
+		String drivers = System.getProperty("guardium.va.platformThreadDrivers", "");
+		for (String d : drivers.split(",")) {
+			if (!d.trim().isEmpty()) {
+				platformDrivers.add(d.trim());
+			}
+		}
+
+		Method ov = null;
+		Method bn = null;
+		Method bf = null;
+		Method tpe = null;
+		if (REQUESTED) {
+			try {
+				Class<?> builder = Class.forName("java.lang.Thread$Builder");
+				ov = Thread.class.getMethod("ofVirtual");
+				bn = builder.getMethod("name", String.class, long.class);
+				bf = builder.getMethod("factory");
+				tpe = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			} catch (Exception e) {
+				// not a Java 21 runtime
+				AdHocLogger.logWarning("Virtual threads are not available on Java " + System.getProperty("java.version") + ", using platform threads");
+				ov = null;
+			}
+		}
+		ofVirtual = ov;
+		builderName = bn;
+		builderFactory = bf;
+		newThreadPerTaskExecutor = tpe;
+	}
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return Whether the work runs on virtual threads.
+	 */
+	public static boolean isEnabled() {
+		return ofVirtual != null;
+	}
+
+	/**
+	 * @param driverClass
+	 * @return Whether connects with the driver must stay on platform threads.
+	 */
+	public static boolean isPlatformDriver(String driverClass) {
+		return driverClass != null && platformDrivers.contains(driverClass);
+	}
+
+	/**
+	 * @param ds
+	 * @return Whether the JDBC work of the datasource must stay on platform threads.
+	 */
+	public static boolean isPlatformDriver(Datasource ds) {
+		return ds != null && ds.getDbDriver() != null && isPlatformDriver(ds.getDbDriver().getDriverClass());
+	}
+
+	/**
+	 * @param prefix The name of the threads, followed by their number.
+	 * @return A factory of virtual threads if enabled, of daemon platform threads otherwise.
+	 */
+	public static ThreadFactory newFactory(String prefix) {
+		if (isEnabled()) {
+			try {
+				Object builder = builderName.invoke(ofVirtual.invoke(null), prefix, 1L);
+				return (ThreadFactory) builderFactory.invoke(builder);
+			} catch (Exception e) {
+				AdHocLogger.logException(e);
+			}
+		}
+		return newPlatformFactory(prefix);
+	}
+
+	/**
+	 * @param prefix The name of the threads, followed by their number.
+	 * @return A factory of daemon platform threads.
+	 */
+	public static ThreadFactory newPlatformFactory(final String prefix) {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		return new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, prefix + threadNumber.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/**
+	 * @param prefix The name of the threads.
+	 * @param platformThreads The size of the pool when virtual threads are not enabled.
+	 * @return An executor that starts a virtual thread per task if enabled, a fixed pool of
+	 * platform threads otherwise.
+	 */
+	public static ExecutorService newExecutor(String prefix, int platformThreads) {
+		return newExecutor(prefix, platformThreads, false);
+	}
+
+	/**
+	 * @param prefix The name of the threads.
+	 * @param platformThreads The size of the pool of platform threads.
+	 * @param platformDriver Whether the tasks use a driver that must stay on platform threads,
+	 * see isPlatformDriver.
+	 * @return An executor that starts a virtual thread per task if enabled and the driver allows it,
+	 * a fixed pool of platform threads otherwise.
+	 */
+	public static ExecutorService newExecutor(String prefix, int platformThreads, boolean platformDriver) {
+		if (isEnabled() && !platformDriver) {
+			try {
+				return (ExecutorService) newThreadPerTaskExecutor.invoke(null, newFactory(prefix));
+			} catch (Exception e) {
+				AdHocLogger.logException(e);
+			}
+		}
+		return Executors.newFixedThreadPool(Math.max(1, platformThreads), newPlatformFactory(prefix));
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.assessment.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.guardium.data.CveFix;
+import com.guardium.data.Datasource;
+
+/**
+ * CveVersionIndex.resolve against the per test comparison CVETest did before: the exact version
+ * comparison of DataSourceInfoGeter over all the reference versions, then per row. The patch
+ * evaluation is remembered per version and patch level.
+ */
+public class CveVersionIndexTest {
+
+	private static final String[][] REFERENCES = {
+		{ "12.1.0.2" },
+		{ "11.2.0.4", "12.1.0.2", "12.2.0.1", "19" },
+		{ "15.7", "15.7.0", "16.0" },
+		{ "9.2.0.8DV", "10.2" },
+		{ "10.*", "11.1" },
+		{ "8.1", "8.1", "9.7" },
+	};
+
+	private static final String[] VERSIONS = {
+		"12.1.0.2", "12.1.0.2.0", "12.1", "12.2.0.1", "19", "19.3", "11.2.0.4", "11.2.0.3", "10.2",
+		"15.7", "15.7.0", "15.7.0.1", "16.0", "9.2.0.8DV", "9.2.0.8", "10.5", "11.1", "8.1", "9.7", "7", "abc",
+	};
+
+	@Test
+	public void resolveMatchesThePerTestComparison() {
+		int test = 0;
+		for (String[] references : REFERENCES) {
+			List<CveFix> fixes = fixes(test++, references);
+			CveVersionIndex index = CveVersionIndex.compile(fixes);
+			for (String version : VERSIONS) {
+				CveVersionIndex.Match match = index.resolve(version);
+				assertEquals(Arrays.toString(references) + " " + version,
+						perTest(fixes, version), match == null ? null : match.getRows());
+			}
+		}
+	}
+
+	@Test
+	public void resolveIsTheSameForAnotherTestOfTheType() {
+		// a second test must not see the first one's rows
+		CveVersionIndex first = CveVersionIndex.compile(fixes(1, "12.1.0.2", "12.2"));
+		CveVersionIndex second = CveVersionIndex.compile(fixes(2, "12.2", "18"));
+		first.resolve("12.2");
+		List<CveFix> rows = second.resolve("12.2").getRows();
+
+		assertEquals(1, rows.size());
+		assertEquals(2, rows.get(0).getAvailableTestId());
+		assertEquals("12.2", rows.get(0).getVersion());
+	}
+
+	@Test
+	public void noRowsOrNoVersionIsNotCovered() {
+		assertNull(CveVersionIndex.compile(null).resolve("12.1"));
+		assertNull(CveVersionIndex.compile(Collections.<CveFix>emptyList()).resolve("12.1"));
+		assertNull(CveVersionIndex.compile(fixes(3, "12.1")).resolve(null));
+	}
+
+	@Test
+	public void emptyOrUnknownVersionIsNotCovered() {
+		// CVETest reports CVE_NOT_REPORTED for these, as it did before the index
+		CveVersionIndex index = CveVersionIndex.compile(fixes(4, "12.1", "19"));
+		assertNull(index.resolve(""));
+		assertNull(index.resolve("Unknown"));
+	}
+
+	@Test
+	public void matchHasTheReferencePatchesOfItsRows() {
+		List<CveFix> fixes = new ArrayList<CveFix>();
+		fixes.add(new CveFix(1, 5, "12.1.0.2", "PSU 12.1.0.2.5"));
+		fixes.add(new CveFix(2, 5, "12.1.0.2", "12.1.0.2.1OJVMBP"));
+		fixes.add(new CveFix(3, 5, "19", "19.3"));
+		CveFix range = new CveFix(4, 5, "12.1.0.2", "100");
+		range.setPatchTo("200");
+		fixes.add(range);
+		CveVersionIndex index = CveVersionIndex.compile(fixes);
+
+		CveVersionIndex.Match match = index.resolve("12.1.0.2");
+		assertEquals(Arrays.asList("PSU 12.1.0.2.5", "12.1.0.2.1OJVMBP", "100-200"), match.getReferencePatches());
+		assertTrue(match.isOjvm());
+		assertFalse(index.resolve("19").isOjvm());
+	}
+
+	@Test
+	public void patchEvaluationIsRememberedPerLevel() {
+		CveVersionIndex index = CveVersionIndex.compile(fixes(6, "12.1", "19"));
+		CountingInfoGetter dsig = new CountingInfoGetter();
+		CveVersionIndex.Match match = index.resolve("19");
+
+		assertEquals(1, index.evaluatePatch(dsig, match, "19", "PATCH1"));
+		assertEquals(1, index.evaluatePatch(dsig, match, "19", "PATCH1"));
+		assertEquals(1, dsig.calls);
+		assertEquals(Collections.singletonList("PATCH1"), dsig.lastReferences);
+
+		assertEquals(-1, index.evaluatePatch(dsig, match, "19", "PATCH0"));
+		assertEquals(2, dsig.calls);
+	}
+
+	@Test
+	public void patchEvaluationsAreBounded() {
+		CveVersionIndex index = CveVersionIndex.compile(fixes(7, "19"));
+		CountingInfoGetter dsig = new CountingInfoGetter();
+		CveVersionIndex.Match match = index.resolve("19");
+
+		for (int i = 0; i <= CveVersionIndex.PATCH_CACHE_SIZE; i++) {
+			index.evaluatePatch(dsig, match, "19", "PATCH" + i);
+		}
+		int calls = dsig.calls;
+		// the most recent levels are kept, the least recently used one is evaluated again
+		index.evaluatePatch(dsig, match, "19", "PATCH" + CveVersionIndex.PATCH_CACHE_SIZE);
+		assertEquals(calls, dsig.calls);
+		index.evaluatePatch(dsig, match, "19", "PATCH0");
+		assertEquals(calls + 1, dsig.calls);
+	}
+
+	/** Passes when the patch is at or above the reference patch, counting its calls */
+	private static class CountingInfoGetter extends DataSourceInfoGeter {
+		private int calls = 0;
+		private List<String> lastReferences = null;
+
+		@Override
+		public String getOs(Datasource ds) {
+			return "";
+		}
+
+		@Override
+		protected long[] getAllIds() {
+			return new long[0];
+		}
+
+		@Override
+		public int evaluateDbPatch(List<String> referencePatches, String patch, String version) {
+			this.calls++;
+			this.lastReferences = referencePatches;
+			for (String refPatch : referencePatches) {
+				if (patch.compareTo(refPatch) >= 0) {
+					return 1;
+				}
+			}
+			return -1;
+		}
+	}
+
+	private static List<CveFix> perTest(List<CveFix> fixes, String version) {
+		List<String> referenceVersions = new ArrayList<String>();
+		for (CveFix fix : fixes) {
+			referenceVersions.add(fix.getVersion());
+		}
+		if (evaluateDbVersion(referenceVersions, version) != 0) {
+			return null;
+		}
+		List<CveFix> rows = new ArrayList<CveFix>();
+		for (CveFix fix : fixes) {
+			if (evaluateDbVersion(Collections.singletonList(fix.getVersion()), version) == 0) {
+				rows.add(fix);
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * DataSourceInfoGeter.evaluateDbVersion with exact_match as it was before the version index.
+	 */
+	private static int evaluateDbVersion(List<String> referenceVersions, String version) {
+		int ret = -1;
+		String[] vItems = version.split("\\.");
+		for (String refVer : referenceVersions) {
+			ret = -1;
+			String[] rvItems = refVer.split("\\.");
+			int minLen = Math.min(rvItems.length, vItems.length);
+			int i;
+			for (i = 0; i < minLen; i++) {
+				String rvitem = rvItems[i].endsWith("*") ? rvItems[i].replace("*", "") : rvItems[i];
+				if (rvitem.equalsIgnoreCase(vItems[i])) {
+					ret = 0;
+				} else if (!rvitem.trim().matches("\\d+") || !vItems[i].trim().matches("\\d+")) {
+					ret = -1;
+					break;
+				} else {
+					int v = Integer.parseInt(vItems[i]);
+					int rv = Integer.parseInt(rvItems[i]);
+					ret = v > rv ? 1 : v == rv ? 0 : -1;
+					break;
+				}
+			}
+			if (ret == 0 && (rvItems.length == i
+					|| (rvItems.length == i + 1 && rvItems[i].equals("0"))
+					|| (vItems.length == i + 1 && vItems[i].equals("0")))) {
+				break;
+			}
+		}
+		return ret;
+	}
+
+	private static List<CveFix> fixes(int testId, String... versions) {
+		List<CveFix> fixes = new ArrayList<CveFix>();
+		for (int i = 0; i < versions.length; i++) {
+			fixes.add(new CveFix(i, testId, versions[i], "PATCH" + i));
+		}
+		return fixes;
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+/**
+ * The circuit of a datasource: open after a run of failures, then one test connect at a time.
+ */
+public class ConnectionGuardTest {
+
+	@Test
+	public void failuresBelowTheThresholdKeepTheCircuitClosed() throws DataSourceConnectException {
+		ConnectionGuard.Circuit circuit = new ConnectionGuard.Circuit(3, 60000);
+		circuit.failure(failure("1"));
+		circuit.failure(failure("2"));
+
+		assertFalse(circuit.isOpen());
+		circuit.check();
+		circuit.check();
+	}
+
+	@Test
+	public void openCircuitFailsAtOnceWithTheLastFailure() {
+		ConnectionGuard.Circuit circuit = new ConnectionGuard.Circuit(3, 60000);
+		for (int i = 1; i <= 3; i++) {
+			circuit.failure(failure("failure " + i));
+		}
+
+		assertTrue(circuit.isOpen());
+		assertRejected(circuit, "failure 3");
+	}
+
+	@Test
+	public void successClosesTheCircuit() throws DataSourceConnectException {
+		ConnectionGuard.Circuit circuit = new ConnectionGuard.Circuit(2, 60000);
+		circuit.failure(failure("1"));
+		circuit.success();
+		circuit.failure(failure("2"));
+
+		// the failures must be in a row
+		assertFalse(circuit.isOpen());
+		circuit.check();
+	}
+
+	@Test
+	public void halfOpenCircuitLetsOneTestConnectThrough() throws DataSourceConnectException {
+		ConnectionGuard.Circuit circuit = openCircuit();
+
+		circuit.check();
+		// the others fail at once while the test connect runs
+		assertTrue(circuit.isOpen());
+		assertRejected(circuit, "down");
+
+		circuit.success();
+		assertFalse(circuit.isOpen());
+		circuit.check();
+		circuit.check();
+	}
+
+	@Test
+	public void failedTestConnectOpensTheCircuitAgain() throws DataSourceConnectException {
+		ConnectionGuard.Circuit circuit = openCircuit();
+
+		circuit.check();
+		circuit.failure(failure("still down"));
+
+		// open again for the open time, 0 here, so the next connect is the next test
+		circuit.check();
+		assertRejected(circuit, "still down");
+	}
+
+	@Test
+	public void thresholdIsAtLeastOne() {
+		ConnectionGuard.Circuit circuit = new ConnectionGuard.Circuit(0, 60000);
+		assertFalse(circuit.isOpen());
+		circuit.failure(failure("down"));
+		assertTrue(circuit.isOpen());
+	}
+
+	@Test
+	public void loginFailuresAreRecognizedBySqlState() {
+		assertTrue(ConnectionGuard.isLoginFailure(
+				new DataSourceConnectException("login", new SQLException("Login failed", "28000"))));
+		assertFalse(ConnectionGuard.isLoginFailure(
+				new DataSourceConnectException("network", new SQLException("Connection refused", "08001"))));
+		assertFalse(ConnectionGuard.isLoginFailure(failure("no cause")));
+	}
+
+	@Test
+	public void ignoredFailureEndsTheTestConnectWithoutCounting() throws DataSourceConnectException {
+		ConnectionGuard.Circuit circuit = openCircuit();
+
+		circuit.check();
+		// the test connect failed on the login
+		circuit.ignore();
+
+		// the next connect tests the datasource again, the circuit did not open for longer
+		circuit.check();
+
+		ConnectionGuard.Circuit closed = new ConnectionGuard.Circuit(1, 60000);
+		closed.ignore();
+		assertFalse(closed.isOpen());
+	}
+
+	/**
+	 * @return A circuit that is half open: open after 3 failures, with no open time.
+	 */
+	private static ConnectionGuard.Circuit openCircuit() {
+		ConnectionGuard.Circuit circuit = new ConnectionGuard.Circuit(3, 0);
+		for (int i = 0; i < 3; i++) {
+			circuit.failure(failure("down"));
+		}
+		return circuit;
+	}
+
+	private static void assertRejected(ConnectionGuard.Circuit circuit, String message) {
+		try {
+			circuit.check();
+			fail("the circuit let a connect through");
+		} catch (DataSourceConnectException e) {
+			assertEquals(message, e.getMessage());
+		}
+	}
+
+	private static DataSourceConnectException failure(String message) {
+		return new DataSourceConnectException(message);
+	}
+}
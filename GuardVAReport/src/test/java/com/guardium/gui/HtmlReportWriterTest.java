@@ -0,0 +1,105 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.gui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The report is written in UTF-8 and each long detail goes to a page of its own.
+ */
+public class HtmlReportWriterTest {
+
+	private File dir;
+	private File report;
+
+	@Before
+	public void createDir() throws IOException {
+		this.dir = Files.createTempDirectory("report").toFile();
+		this.report = new File(this.dir, "report.html");
+	}
+
+	@After
+	public void deleteDir() {
+		delete(this.dir);
+	}
+
+	@Test
+	public void reportIsWrittenInUtf8() throws IOException {
+		HtmlReportWriter out = new HtmlReportWriter(this.report);
+		out.print("Gr\u00f6\u00dfe \u65e5\u672c");
+		out.close();
+
+		assertEquals("Gr\u00f6\u00dfe \u65e5\u672c", new String(Files.readAllBytes(this.report.toPath()), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void shortDetailStaysInTheReport() throws IOException {
+		HtmlReportWriter out = new HtmlReportWriter(this.report);
+		assertEquals("short", out.detail("short"));
+		out.close();
+
+		assertEquals(0, out.getDetailCount());
+		assertFalse(out.getDetailDir().exists());
+	}
+
+	@Test
+	public void eachLongDetailLinksToItsOwnPage() throws IOException {
+		HtmlReportWriter out = new HtmlReportWriter(this.report);
+		String first = out.detail(text('a'));
+		String second = out.detail(text('\u00e9'));
+		out.close();
+
+		assertTrue(first, first.contains("data-src='report_details/d1.html'"));
+		assertTrue(second, second.contains("data-src='report_details/d2.html'"));
+		String page = new String(Files.readAllBytes(new File(out.getDetailDir(), "d2.html").toPath()), StandardCharsets.UTF_8);
+		assertTrue(page.contains(text('\u00e9')));
+		assertFalse(page.contains(text('a')));
+	}
+
+	@Test
+	public void detailsOfThePreviousReportAreDeleted() throws IOException {
+		HtmlReportWriter out = new HtmlReportWriter(this.report);
+		out.detail(text('a'));
+		out.detail(text('b'));
+		out.close();
+
+		out = new HtmlReportWriter(this.report);
+		out.detail(text('c'));
+		out.close();
+
+		assertTrue(new File(out.getDetailDir(), "d1.html").exists());
+		assertFalse(new File(out.getDetailDir(), "d2.html").exists());
+	}
+
+	private static String text(char c) {
+		char[] chars = new char[HtmlReportWriter.INLINE_DETAIL + 1];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	private static void delete(File f) {
+		File[] files = f.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		f.delete();
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.security.GeneralSecurityException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.guardium.assessment.tests.TestScore;
+import com.guardium.data.TestResult;
+import com.guardium.gui.Crypto;
+
+/**
+ * The history of the results in an in-memory H2 database: what is written for a result, and the
+ * changes and trends read back across runs.
+ */
+public class ResultHistoryTest {
+
+	private static final String DS = "0123456789abcdef0123456789abcdef01234567";
+
+	private static int databases = 0;
+
+	/** A result reads the catalog, which is encrypted */
+	@Before
+	public void openHistory() throws GeneralSecurityException {
+		Crypto.init();
+		ResultHistory.setUrl("jdbc:h2:mem:va_history_" + (++databases) + ";DB_CLOSE_DELAY=-1");
+	}
+
+	@After
+	public void closeHistory() {
+		ResultHistory.setUrl("");
+	}
+
+	@Test
+	public void resultIsKeptAsItWasRecorded() {
+		TestResult result = result(2001, TestScore.FAIL, "too many grants");
+		ResultHistory.record(result);
+		result.setTestScore(TestScore.PASS);
+		result.setResultText("changed after it was queued");
+		ResultHistory.close();
+
+		List<ResultHistory.Entry> trend = ResultHistory.getTrend(DS, 2001, 0);
+		assertEquals(1, trend.size());
+		assertEquals(TestScore.FAIL, trend.get(0).getResult().getTestScore());
+		assertEquals("too many grants", trend.get(0).getResult().getResultText());
+		assertEquals(new Date(1700000000000L), trend.get(0).getExecutedTime());
+	}
+
+	@Test
+	public void changesCompareTheLastRunWithTheRunBefore() {
+		run(TestScore.PASS, TestScore.FAIL, TestScore.PASS);
+		assertTrue(ResultHistory.getNewlyFailed(DS).isEmpty());
+		assertTrue(ResultHistory.getNewlyPassed(DS).isEmpty());
+
+		run(TestScore.FAIL, TestScore.PASS, TestScore.PASS);
+		List<ResultHistory.Entry> failed = ResultHistory.getNewlyFailed(DS);
+		List<ResultHistory.Entry> passed = ResultHistory.getNewlyPassed(DS);
+		assertEquals(1, failed.size());
+		assertEquals(2001, failed.get(0).getResult().getTestId());
+		assertEquals(1, passed.size());
+		assertEquals(2002, passed.get(0).getResult().getTestId());
+		assertTrue(ResultHistory.getNewlyFailed("another datasource").isEmpty());
+	}
+
+	@Test
+	public void trendListsTheLastRunsFirst() {
+		run(TestScore.PASS, TestScore.PASS, TestScore.PASS);
+		run(TestScore.FAIL, TestScore.PASS, TestScore.PASS);
+		run(TestScore.ERROR, TestScore.PASS, TestScore.PASS);
+
+		List<ResultHistory.Entry> trend = ResultHistory.getTrend(DS, 2001, 2);
+		assertEquals(2, trend.size());
+		assertEquals(TestScore.ERROR, trend.get(0).getResult().getTestScore());
+		assertEquals(TestScore.FAIL, trend.get(1).getResult().getTestScore());
+		assertTrue(trend.get(0).getRunId() > trend.get(1).getRunId());
+		assertEquals(3, ResultHistory.getTrend(DS, 2001, 0).size());
+	}
+
+	@Test
+	public void carriedResultKeepsTheTextAndTimeOfItsRun() {
+		run(TestScore.PASS, TestScore.PASS, TestScore.PASS);
+		ResultHistory.Entry from = ResultHistory.getTrend(DS, 2001, 1).get(0);
+
+		TestResult result = result(2001, TestScore.PASS, "carried forward: text of the run");
+		result.setExecutedTime(new Date(1600000000000L));
+		ResultHistory.markCarried(result, from);
+		ResultHistory.record(result);
+		ResultHistory.close();
+
+		ResultHistory.Entry last = ResultHistory.getTrend(DS, 2001, 1).get(0);
+		assertTrue(last.getRunId() > from.getRunId());
+		assertEquals(from.getResult().getResultText(), last.getResult().getResultText());
+		assertEquals(new Date(1600000000000L), last.getExecutedTime());
+	}
+
+	@Test
+	public void fingerprintsSetAfterTheResultsAreWrittenWithThem() {
+		ResultHistory.record(result(2001, TestScore.PASS, "text"));
+		ResultHistory.record(result(2002, TestScore.FAIL, "text"));
+		ResultHistory.setFingerprints(DS, "facts", "config");
+		ResultHistory.record(result(2003, TestScore.PASS, "text"));
+		ResultHistory.close();
+
+		Map<Integer,ResultHistory.Entry> reusable = ResultHistory.getReusable(DS, new Date(0));
+		assertEquals(3, reusable.size());
+		for (ResultHistory.Entry e : reusable.values()) {
+			assertEquals("facts", e.getFingerprint());
+			assertEquals("config", e.getConfigFingerprint());
+		}
+	}
+
+	@Test
+	public void resultsWithoutFingerprintsAreNotReusable() {
+		run(TestScore.PASS, TestScore.PASS, TestScore.PASS);
+
+		assertTrue(ResultHistory.getReusable(DS, new Date(0)).isEmpty());
+	}
+
+	@Test
+	public void reusableResultsRanSinceTheTimeGiven() {
+		ResultHistory.setFingerprints(DS, "facts", null);
+		run(TestScore.PASS, TestScore.PASS, TestScore.PASS);
+
+		assertEquals(3, ResultHistory.getReusable(DS, new Date(1700000000000L)).size());
+		assertTrue(ResultHistory.getReusable(DS, new Date(1700000000001L)).isEmpty());
+	}
+
+	private static void run(TestScore first, TestScore second, TestScore third) {
+		ResultHistory.record(result(2001, first, "text"));
+		ResultHistory.record(result(2002, second, "text"));
+		ResultHistory.record(result(2003, third, "text"));
+		ResultHistory.close();
+	}
+
+	private static TestResult result(int testId, TestScore score, String text) {
+		TestResult result = new TestResult();
+		result.setDataSourceHash(DS);
+		result.setTestId(testId);
+		result.setAssessmentTestId(testId);
+		result.setTestScore(score);
+		result.setScoreDesc(score.name());
+		result.setResultText(text);
+		result.setExecutedTime(new Date(1700000000000L));
+		return result;
+	}
+}
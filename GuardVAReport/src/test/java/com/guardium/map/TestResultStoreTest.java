@@ -0,0 +1,253 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.guardium.assessment.tests.TestScore;
+import com.guardium.data.TestResult;
+import com.guardium.gui.Crypto;
+
+/**
+ * The summaries and the report order of TestResultStore against the loops over the result list
+ * that TestResultMap used before.
+ */
+public class TestResultStoreTest {
+
+	private static final String[] SEVERITIES = { "CRITICAL", "MAJOR", "MINOR", "CAUTION", "INFO", "Major", null, "OTHER" };
+
+	/** The scores the list based summaries counted by reason, in summary order */
+	private static final TestScore[] REASONS = {
+		TestScore.PASS, TestScore.FAIL, TestScore.ERROR, TestScore.NO_CAS_DATA, TestScore.NO_REPORT_DATA,
+		TestScore.UNSUPPORTED_DB_VERSION, TestScore.UNSUPPORTED_OS_VERSION, TestScore.SPECIAL_ERROR,
+		TestScore.CAS_DATA_COLLECTION_ERROR, TestScore.OBSOLETE_PARAMETER, TestScore.DEPRECATED_PARAMETER,
+		TestScore.CVE_NOT_REPORTED, TestScore.NO_USER_DATA, TestScore.MODULES_NOT_PRESENT,
+		TestScore.PRE_TEST_CHECK_FAILED, TestScore.EXECUTION_TEST_ROUTINE_CHECK_FAILED
+	};
+
+	private static final int[] TEST_IDS = { 1, 999, 1000, 1500, 2000, 2001, 2086, 2024, 2500, 3000, 3001, 5000 };
+
+	/** A result reads the catalog, which is encrypted */
+	@Before
+	public void initCrypto() throws GeneralSecurityException {
+		Crypto.init();
+	}
+
+	@Test
+	public void summariesMatchTheListBasedSummaries() {
+		List<TestResult> results = randomResults(2000, TestScore.QUERY_TIMEOUT);
+		TestResultStore store = new TestResultStore();
+		store.addAll(results);
+
+		assertEquals(results.size(), store.size());
+		for (int ttype : new int[] { 0, TestResultStore.QUERY_TEST_TYPE, TestResultStore.CVE_TEST_TYPE }) {
+			assertArrayEquals("type " + ttype, listSummary(results, ttype), store.getSummary(ttype));
+		}
+	}
+
+	@Test
+	public void queryTimeoutCountsAsError() {
+		TestResultStore store = new TestResultStore();
+		store.add(result(2100, TestScore.QUERY_TIMEOUT, "MAJOR"));
+		store.add(result(2101, TestScore.ERROR, "MAJOR"));
+
+		int[] summary = store.getSummary(TestResultStore.QUERY_TEST_TYPE);
+		assertEquals(2, summary[2]);
+		assertEquals(2, summary[TestResultStore.REASON_COUNT]);
+		assertEquals(2, summary[TestResultStore.REASON_COUNT + 1]);
+		assertEquals(2, store.getCount(TestResultStore.QUERY_TEST_TYPE, TestScore.ERROR, "MAJOR"));
+	}
+
+	@Test
+	public void countsBySeverityIgnoreCase() {
+		TestResultStore store = new TestResultStore();
+		store.add(result(1100, TestScore.FAIL, "critical"));
+		store.add(result(1101, TestScore.FAIL, "CRITICAL"));
+		store.add(result(1102, TestScore.FAIL, "MINOR"));
+
+		assertEquals(2, store.getCount(TestResultStore.CVE_TEST_TYPE, TestScore.FAIL, "Critical"));
+		assertEquals(1, store.getCount(TestResultStore.CVE_TEST_TYPE, TestScore.FAIL, "MINOR"));
+		assertEquals(0, store.getCount(TestResultStore.QUERY_TEST_TYPE, TestScore.FAIL, "CRITICAL"));
+	}
+
+	@Test
+	public void orderedResultsMatchTheListBasedOrder() {
+		List<TestResult> results = randomResults(2000, null);
+		TestResultStore store = new TestResultStore();
+		store.addAll(results);
+
+		assertEquals(listOrder(results), store.getOrderedResults());
+	}
+
+	@Test
+	public void addAllKeepsTheOrderOfTheOtherStore() {
+		TestResultStore buffer = new TestResultStore();
+		List<TestResult> results = randomResults(50, null);
+		buffer.addAll(results);
+		TestResultStore store = new TestResultStore();
+		store.addAll(buffer);
+
+		assertEquals(results, store.getResults());
+		assertArrayEquals(buffer.getSummary(0), store.getSummary(0));
+	}
+
+	@Test
+	public void clearDropsResultsAndCounts() {
+		TestResultStore store = new TestResultStore();
+		store.addAll(randomResults(50, null));
+		store.clear();
+
+		assertEquals(0, store.size());
+		assertEquals(0, store.getResults().size());
+		assertArrayEquals(new int[TestResultStore.REASON_COUNT + 2], store.getSummary(0));
+	}
+
+	@Test
+	public void resultsAreFoundByTestResultId() {
+		TestResultStore store = new TestResultStore();
+		List<TestResult> results = randomResults(50, null);
+		for (int i = 0; i < results.size(); i++) {
+			results.get(i).setTestResultId(20000 + i);
+		}
+		store.addAll(results);
+
+		assertSame(results.get(7), store.get(20007));
+		assertNull(store.get(7));
+		store.clear();
+		assertNull(store.get(20007));
+	}
+
+	@Test
+	public void resultsViewFollowsTheStore() {
+		TestResultStore store = new TestResultStore();
+		List<TestResult> view = store.results();
+		List<TestResult> results = randomResults(20, null);
+		store.addAll(results);
+
+		assertEquals(results, view);
+		assertSame(results.get(19), view.get(19));
+		store.add(result(2100, TestScore.PASS, "MAJOR"));
+		assertEquals(21, view.size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void resultsViewIsReadOnly() {
+		new TestResultStore().results().add(result(2100, TestScore.PASS, "MAJOR"));
+	}
+
+	@Test
+	public void setListReplacesTheBoundStore() {
+		TestResultStore buffer = new TestResultStore();
+		buffer.add(result(2100, TestScore.FAIL, "MAJOR"));
+		List<TestResult> results = randomResults(10, null);
+		TestResultMap.bindBuffer(buffer);
+		try {
+			TestResultMap map = TestResultMap.getTestResultMapObject();
+			map.setList(results);
+			assertEquals(results, buffer.getResults());
+			map.setList(map.getList());
+			assertEquals(results, buffer.getResults());
+		} finally {
+			TestResultMap.unbindBuffer();
+		}
+	}
+
+	private static List<TestResult> randomResults(int n, TestScore extra) {
+		Random random = new Random(42);
+		List<TestScore> scores = new ArrayList<TestScore>();
+		for (TestScore score : TestScore.values()) {
+			if (score != TestScore.QUERY_TIMEOUT || extra != null) {
+				scores.add(score);
+			}
+		}
+		List<TestResult> results = new ArrayList<TestResult>(n);
+		for (int i = 0; i < n; i++) {
+			results.add(result(TEST_IDS[random.nextInt(TEST_IDS.length)],
+					scores.get(random.nextInt(scores.size())),
+					SEVERITIES[random.nextInt(SEVERITIES.length)]));
+		}
+		return results;
+	}
+
+	private static TestResult result(int testId, TestScore score, String severity) {
+		TestResult result = new TestResult();
+		result.setTestId(testId);
+		result.setTestScore(score);
+		result.setSeverity(severity);
+		return result;
+	}
+
+	/**
+	 * The summary as the list based TestResultMap.getSummary(ttype) counted it, a query timeout
+	 * being an error.
+	 */
+	private static int[] listSummary(List<TestResult> results, int ttype) {
+		int[] summary = new int[TestResultStore.REASON_COUNT + 2];
+		for (TestResult t : results) {
+			if (ttype == 4 && (t.getTestId() < 2000 || t.getTestId() > 3000)) {
+				continue;
+			}
+			if (ttype == 6 && (t.getTestId() < 1000 || t.getTestId() > 2000)) {
+				continue;
+			}
+			summary[TestResultStore.REASON_COUNT + 1]++;
+			TestScore score = t.getTestScore() == TestScore.QUERY_TIMEOUT ? TestScore.ERROR : t.getTestScore();
+			for (int r = 0; r < REASONS.length; r++) {
+				if (REASONS[r] == score) {
+					summary[r]++;
+					if (r > 1) {
+						summary[TestResultStore.REASON_COUNT]++;
+					}
+				}
+			}
+		}
+		return summary;
+	}
+
+	/**
+	 * The order of the list based TestResultMap.getTestResultList(): full result query tests,
+	 * other query tests, CVE tests; each by failed, other, passed; then by severity.
+	 */
+	private static List<TestResult> listOrder(List<TestResult> results) {
+		List<TestResult> ordered = new ArrayList<TestResult>();
+		for (int group = 0; group < 3; group++) {
+			for (int band = 0; band < 3; band++) {
+				for (String severity : new String[] { "CRITICAL", "MAJOR", "MINOR", "CAUTION", "INFO" }) {
+					for (TestResult t : results) {
+						if (group(t.getTestId()) == group && band(t.getTestScore()) == band
+								&& severity.equalsIgnoreCase(t.getSeverity())) {
+							ordered.add(t);
+						}
+					}
+				}
+			}
+		}
+		return ordered;
+	}
+
+	private static int group(int testId) {
+		if (testId >= 2000 && testId <= 3000) {
+			return testId == 2086 || testId == 2024 ? 0 : 1;
+		}
+		return 2;
+	}
+
+	private static int band(TestScore score) {
+		return score == TestScore.FAIL ? 0 : score == TestScore.PASS ? 2 : 1;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.runtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.guardium.data.Datasource;
+import com.guardium.gui.Crypto;
+
+/**
+ * The global and per host limits of AssessmentScheduler.
+ */
+public class AssessmentSchedulerTest {
+
+	private AssessmentScheduler scheduler;
+
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+	private final AtomicInteger completed = new AtomicInteger();
+	private final Map<String,Integer> runningByHost = new HashMap<String,Integer>();
+	private final Map<String,Integer> maxByHost = new HashMap<String,Integer>();
+
+	/** A datasource reads the driver catalog, which is encrypted */
+	@Before
+	public void initCrypto() throws GeneralSecurityException {
+		Crypto.init();
+	}
+
+	@After
+	public void shutdown() {
+		if (this.scheduler != null) {
+			this.scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void jobsStayWithinTheGlobalLimit() throws InterruptedException {
+		this.scheduler = new AssessmentScheduler(3, 10);
+		for (int i = 0; i < 12; i++) {
+			this.scheduler.submit(datasource("10.0.0." + i), job("10.0.0." + i, false));
+		}
+		this.scheduler.awaitCompletion();
+
+		assertEquals(12, this.completed.get());
+		assertEquals(3, this.maxRunning.get());
+	}
+
+	@Test
+	public void jobsStayWithinTheHostLimit() throws InterruptedException {
+		this.scheduler = new AssessmentScheduler(4, 1);
+		for (int i = 0; i < 4; i++) {
+			this.scheduler.submit(datasource("10.0.0.1"), job("10.0.0.1", false));
+			this.scheduler.submit(datasource("10.0.0.2"), job("10.0.0.2", false));
+		}
+		this.scheduler.awaitCompletion();
+
+		assertEquals(8, this.completed.get());
+		assertEquals(Integer.valueOf(1), this.maxByHost.get("10.0.0.1"));
+		assertEquals(Integer.valueOf(1), this.maxByHost.get("10.0.0.2"));
+		// the jobs of the other host are not held back by the busy one
+		assertEquals(2, this.maxRunning.get());
+	}
+
+	@Test
+	public void failedJobReleasesItsSlots() throws InterruptedException {
+		this.scheduler = new AssessmentScheduler(1, 1);
+		this.scheduler.submit(datasource("10.0.0.1"), job("10.0.0.1", true));
+		this.scheduler.submit(datasource("10.0.0.1"), job("10.0.0.1", true));
+		this.scheduler.submit(datasource("10.0.0.1"), job("10.0.0.1", false));
+		this.scheduler.awaitCompletion();
+
+		assertEquals(3, this.completed.get());
+		assertEquals(0, this.running.get());
+	}
+
+	@Test
+	public void hostKeyIsTheAddress() {
+		assertEquals("10.0.0.1", AssessmentScheduler.hostKey(datasource("10.0.0.1")));
+		assertEquals("", AssessmentScheduler.hostKey(datasource(null)));
+		assertTrue(AssessmentScheduler.hostKey(null).isEmpty());
+	}
+
+	private static Datasource datasource(String host) {
+		return new Datasource(0, 0, "ds " + host, "", host, 1433, "", "", "", false, "", null,
+				null, 0, false, "", "", "", "", 0, 0, "", false, false);
+	}
+
+	private Runnable job(final String host, final boolean fail) {
+		return new Runnable() {
+			public void run() {
+				started(host);
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				ended(host);
+				if (fail) {
+					throw new IllegalStateException("assessment of " + host + " failed");
+				}
+			}
+		};
+	}
+
+	private synchronized void started(String host) {
+		int now = this.running.incrementAndGet();
+		if (now > this.maxRunning.get()) {
+			this.maxRunning.set(now);
+		}
+		Integer onHost = this.runningByHost.get(host);
+		int count = onHost == null ? 1 : onHost.intValue() + 1;
+		this.runningByHost.put(host, count);
+		Integer max = this.maxByHost.get(host);
+		if (max == null || count > max.intValue()) {
+			this.maxByHost.put(host, count);
+		}
+	}
+
+	private synchronized void ended(String host) {
+		this.running.decrementAndGet();
+		this.runningByHost.put(host, this.runningByHost.get(host) - 1);
+		this.completed.incrementAndGet();
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.runtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+/**
+ * The fingerprint of the facts a carried forward result depends on.
+ */
+public class IncrementalAssessmentTest {
+
+	private static final String BASE = IncrementalAssessment.fingerprint(
+			"ORACLE", "19.0.0.0", "19.21", "19.21.231017", "Linux", "abc123");
+
+	@Test
+	public void sameFactsSameFingerprint() {
+		assertEquals(BASE, IncrementalAssessment.fingerprint(
+				"ORACLE", "19.0.0.0", "19.21", "19.21.231017", "Linux", "abc123"));
+		assertEquals(40, BASE.length());
+	}
+
+	@Test
+	public void everyFactChangesTheFingerprint() {
+		assertNotEquals(BASE, IncrementalAssessment.fingerprint("DB2", "19.0.0.0", "19.21", "19.21.231017", "Linux", "abc123"));
+		assertNotEquals(BASE, IncrementalAssessment.fingerprint("ORACLE", "21.0.0.0", "19.21", "19.21.231017", "Linux", "abc123"));
+		assertNotEquals(BASE, IncrementalAssessment.fingerprint("ORACLE", "19.0.0.0", "19.22", "19.21.231017", "Linux", "abc123"));
+		assertNotEquals(BASE, IncrementalAssessment.fingerprint("ORACLE", "19.0.0.0", "19.21", "19.22.240116", "Linux", "abc123"));
+		assertNotEquals(BASE, IncrementalAssessment.fingerprint("ORACLE", "19.0.0.0", "19.21", "19.21.231017", "Windows", "abc123"));
+		assertNotEquals(BASE, IncrementalAssessment.fingerprint("ORACLE", "19.0.0.0", "19.21", "19.21.231017", "Linux", "abc124"));
+	}
+
+	@Test
+	public void missingFactIsNotAnEmptyFact() {
+		// a datasource without an OJVM patch level is not one whose level reads empty
+		assertNotEquals(
+				IncrementalAssessment.fingerprint("DB2", "11.5", "11.5.8", null, "AIX", "abc123"),
+				IncrementalAssessment.fingerprint("DB2", "11.5", "11.5.8", "", "AIX", "abc123"));
+		assertNotEquals(
+				IncrementalAssessment.fingerprint("DB2", "11.5", "11.5.8", null, null, "abc123"),
+				IncrementalAssessment.fingerprint("DB2", "11.5", "11.5.8", null, "", "abc123"));
+	}
+}
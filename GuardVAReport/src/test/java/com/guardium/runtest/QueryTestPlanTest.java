@@ -0,0 +1,144 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.runtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.guardium.data.AvailableTest;
+import com.guardium.data.QueryConditionOperator.QueryOperator;
+import com.guardium.data.SqlbasedAssessmentDefinition;
+import com.guardium.data.SqlbasedAssessmentDefinition.DataType;
+import com.guardium.map.CatalogVersion;
+
+/**
+ * The compiled plan of a query based test compares results the same as the compare value
+ * parsed on every run did.
+ */
+public class QueryTestPlanTest {
+
+	private static final Object[] INT_RESULTS = { 5L, "10", 12, "-3", "0" };
+	private static final String[] INT_COMPARES = { "10", "0", "-3" };
+	private static final Object[] STRING_RESULTS = { "abc", "ABC", "Abd", "ab", "", "a\nc", "x_c" };
+	private static final String[] STRING_COMPARES = { "abc", "AB", "a%c", "a_c", "^ab.*$", "b", "\\w+" };
+
+	@Before
+	public void clearPlans() {
+		QueryTestPlan.clear();
+	}
+
+	@Test
+	public void sqlIsPreparedOnce() {
+		AvailableTest test = test(1, true, 5);
+		QueryTestPlan plan = QueryTestPlan.getPlan(
+				definition("select count(*)\r\nfrom t\nwhere n > %THRESHOLD%", QueryOperator.EQUAL, DataType.INT, "0"), test);
+
+		assertEquals("select count(*)  from t where n > 5.0", plan.getSql());
+	}
+
+	@Test
+	public void planIsSharedUntilTheThresholdChanges() {
+		AvailableTest test = test(2, true, 5);
+		SqlbasedAssessmentDefinition def = definition("select %THRESHOLD%", QueryOperator.EQUAL, DataType.INT, "0");
+		QueryTestPlan plan = QueryTestPlan.getPlan(def, test);
+
+		assertSame(plan, QueryTestPlan.getPlan(def, test));
+
+		test.setDefaultThresholdValue(7);
+		QueryTestPlan changed = QueryTestPlan.getPlan(def, test);
+		assertNotSame(plan, changed);
+		assertEquals("select 7.0", changed.getSql());
+	}
+
+	@Test
+	public void planIsCompiledAgainWhenTheCatalogChanges() {
+		AvailableTest test = test(4, false, 0);
+		SqlbasedAssessmentDefinition def = definition("select 1", QueryOperator.EQUAL, DataType.INT, "0");
+		QueryTestPlan plan = QueryTestPlan.getPlan(def, test);
+
+		// an alias, dictionary or group refresh
+		CatalogVersion.changed();
+
+		QueryTestPlan changed = QueryTestPlan.getPlan(def, test);
+		assertNotSame(plan, changed);
+		assertSame(changed, QueryTestPlan.getPlan(def, test));
+	}
+
+	@Test
+	public void thresholdIsLeftWhenNotRequired() {
+		QueryTestPlan plan = QueryTestPlan.getPlan(
+				definition("select %THRESHOLD%", QueryOperator.EQUAL, DataType.INT, "0"), test(3, false, 5));
+
+		assertEquals("select %THRESHOLD%", plan.getSql());
+	}
+
+	@Test
+	public void intComparisonsMatchTheParsedOnes() throws Exception {
+		int id = 100;
+		for (String compare : INT_COMPARES) {
+			for (QueryOperator operator : new QueryOperator[] { QueryOperator.EQUAL, QueryOperator.LESS_THAN }) {
+				QueryTestPlan plan = plan(id++, operator, DataType.INT, compare);
+				assertEquals(Long.valueOf(compare), plan.getCompareLong());
+				for (Object result : INT_RESULTS) {
+					String what = result + " " + operator.name() + " " + compare;
+					assertEquals(what, QueryBasedTest.equal(result, compare, DataType.INT), QueryBasedTest.equal(result, plan));
+					assertEquals(what, QueryBasedTest.compare(result, compare, DataType.INT), QueryBasedTest.compare(result, plan));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void stringComparisonsMatchTheParsedOnes() throws Exception {
+		int id = 200;
+		for (String compare : STRING_COMPARES) {
+			QueryTestPlan equal = plan(id++, QueryOperator.EQUAL, DataType.STRING, compare);
+			QueryTestPlan like = plan(id++, QueryOperator.LIKE, DataType.STRING, compare);
+			QueryTestPlan regex = plan(id++, QueryOperator.REGEXP, DataType.STRING, compare);
+			assertEquals(compare.toLowerCase(), equal.getCompareLower());
+			for (Object result : STRING_RESULTS) {
+				String what = "'" + result + "' " + compare;
+				assertEquals(what, QueryBasedTest.equal(result, compare, DataType.STRING), QueryBasedTest.equal(result, equal));
+				assertEquals(what, QueryBasedTest.compare(result, compare, DataType.STRING), QueryBasedTest.compare(result, equal));
+				assertEquals(what, QueryBasedTest.like(result, compare, DataType.STRING), QueryBasedTest.like(result, like));
+				assertEquals(what, QueryBasedTest.regex(result, compare, DataType.STRING), QueryBasedTest.regex(result, regex));
+			}
+		}
+	}
+
+	@Test
+	public void invalidCompareValuesAreLeftToTheComparison() {
+		assertNull(plan(300, QueryOperator.EQUAL, DataType.INT, "ten").getCompareLong());
+		assertNull(plan(301, QueryOperator.REGEXP, DataType.STRING, "a(b").getPattern());
+		assertNull(plan(302, QueryOperator.EQUAL, DataType.STRING, null).getCompareLower());
+	}
+
+	private static QueryTestPlan plan(int testId, QueryOperator operator, DataType dataType, String compare) {
+		return QueryTestPlan.getPlan(definition("select 1", operator, dataType, compare), test(testId, false, 0));
+	}
+
+	private static SqlbasedAssessmentDefinition definition(String sql, QueryOperator operator, DataType dataType, String compare) {
+		SqlbasedAssessmentDefinition def = new SqlbasedAssessmentDefinition(0, 0, "", "", "", "",
+				sql, "", 0, compare, false, "", "", "", "", false, "");
+		def.setOperator(operator);
+		def.setUpReturnType(dataType);
+		return def;
+	}
+
+	private static AvailableTest test(int testId, boolean thresholdRequired, double threshold) {
+		AvailableTest test = new AvailableTest();
+		test.setTestId(testId);
+		test.setThresholdRequired(thresholdRequired);
+		test.setDefaultThresholdValue(threshold);
+		return test;
+	}
+}
@@ -0,0 +1,26 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.runtest;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * A batch is limited by its slowest test, not by the sum of its tests.
+ */
+public class ScalarQueryBatchTest {
+
+	@Test
+	public void batchTimeoutIsTheLargestTestTimeout() {
+		// without guardium.va.scalarBatchTimeout
+		assertEquals(0, ScalarQueryBatch.BATCH_TIMEOUT);
+		assertEquals(30, ScalarQueryBatch.batchTimeout(30));
+		assertEquals(0, ScalarQueryBatch.batchTimeout(0));
+		assertEquals(0, ScalarQueryBatch.batchTimeout(-1));
+	}
+}
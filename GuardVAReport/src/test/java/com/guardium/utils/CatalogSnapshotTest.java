@@ -0,0 +1,227 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.guardium.gui.Crypto;
+
+/**
+ * A snapshot gives back the rows of the dump it was compiled from, in the form of ReadDumpFile.
+ */
+public class CatalogSnapshotTest {
+
+	private static final byte[] DIGEST = CatalogSnapshotTest.digest("dump");
+
+	private File dir;
+
+	@Before
+	public void setUp() throws GeneralSecurityException, IOException {
+		Crypto.init();
+		dir = Files.createTempDirectory("catalog").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		delete(dir);
+	}
+
+	private static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null) {
+			for (File c : children) {
+				delete(c);
+			}
+		}
+		f.delete();
+	}
+
+	@Test
+	public void snapshotGivesBackTheRows() throws IOException {
+		List<List> rows = new ArrayList<List>();
+		rows.add(row("TEST_ID", "2001", "DESC", "Check été settings", "SEVERITY", "MAJOR"));
+		rows.add(row("TEST_ID", "2002", "SEVERITY", "MAJOR"));
+		rows.add(row("DESC", "", "TEST_ID", "2003", "EXTRA", "x"));
+
+		CatalogSnapshot snapshot = CatalogSnapshot.read(CatalogSnapshot.compile("AVAILABLE_TEST", rows, DIGEST));
+
+		assertEquals("AVAILABLE_TEST", snapshot.getTableName());
+		assertEquals(3, snapshot.getRowCount());
+		assertEquals(4, snapshot.getFieldCount());
+		assertEquals("TEST_ID", snapshot.getFieldName(0));
+		assertEquals("Check été settings", snapshot.getValue(0, 1));
+		assertNull(snapshot.getValue(1, 1));
+		assertEquals("", snapshot.getValue(2, 1));
+
+		List<List> read = snapshot.getTableList();
+		assertEquals(rows.size(), read.size());
+		// fields keep the snapshot order, the first row that has them
+		assertEquals(pairs(rows.get(0)), pairs(read.get(0)));
+		assertEquals(pairs(rows.get(1)), pairs(read.get(1)));
+		assertEquals(pairs(row("TEST_ID", "2003", "DESC", "", "EXTRA", "x")), pairs(read.get(2)));
+	}
+
+	@Test
+	public void emptyTable() throws IOException {
+		CatalogSnapshot snapshot = CatalogSnapshot.read(CatalogSnapshot.compile(null, new ArrayList<List>(), DIGEST));
+
+		assertEquals("", snapshot.getTableName());
+		assertEquals(0, snapshot.getRowCount());
+		assertEquals(0, snapshot.getTableList().size());
+	}
+
+	@Test
+	public void snapshotKnowsItsDump() throws IOException {
+		CatalogSnapshot snapshot = CatalogSnapshot.read(CatalogSnapshot.compile("T", new ArrayList<List>(), DIGEST));
+
+		assertTrue(snapshot.isSnapshotOf(digest("dump")));
+		assertFalse(snapshot.isSnapshotOf(digest("changed dump")));
+		assertFalse(snapshot.isSnapshotOf(new byte[0]));
+	}
+
+	@Test(expected = IOException.class)
+	public void olderFormatIsRejected() throws IOException {
+		byte[] bytes = CatalogSnapshot.compile("T", new ArrayList<List>(), DIGEST);
+		ByteBuffer.wrap(bytes).putInt(4, CatalogSnapshot.FORMAT_VERSION - 1);
+		CatalogSnapshot.read(bytes);
+	}
+
+	@Test(expected = IOException.class)
+	public void otherFileIsRejected() throws IOException {
+		CatalogSnapshot.read("<table name=\"T\"/>".getBytes("UTF-8"));
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedSnapshotIsRejected() throws IOException {
+		byte[] bytes = CatalogSnapshot.compile("T", new ArrayList<List>(), DIGEST);
+		CatalogSnapshot.read(Arrays.copyOf(bytes, 12));
+	}
+
+	@Test
+	public void loadCachesTheCheckedSnapshot() throws IOException {
+		URL cat = packaged("t.cat", CatalogSnapshot.compile("T", oneRow(), DIGEST));
+		URL dump = packaged("t.dump", "dump".getBytes("UTF-8"));
+		File cache = new File(dir, "cache");
+
+		CatalogSnapshot snapshot = CatalogSnapshot.load(cat, dump, cache);
+
+		assertEquals("2001", snapshot.getValue(0, 0));
+		assertTrue(new File(cache, "t.cat").isFile());
+		assertTrue(new File(cache, "t.cat" + CatalogSnapshot.STAMP_EXTENSION).isFile());
+		// the cached snapshot is decrypted
+		assertEquals("T", CatalogSnapshot.read(Files.readAllBytes(new File(cache, "t.cat").toPath())).getTableName());
+	}
+
+	@Test
+	public void stampedLoadDoesNotHashTheDump() throws IOException {
+		URL cat = packaged("t.cat", CatalogSnapshot.compile("T", oneRow(), DIGEST));
+		URL dump = packaged("t.dump", "dump".getBytes("UTF-8"));
+		File cache = new File(dir, "cache");
+		CatalogSnapshot.load(cat, dump, cache);
+
+		// same size and time, different content: only the stamp is compared
+		File dumpFile = new File(dir, "t.dump");
+		long modified = dumpFile.lastModified();
+		Files.write(dumpFile.toPath(), "DUMP".getBytes("UTF-8"));
+		dumpFile.setLastModified(modified);
+
+		CatalogSnapshot snapshot = CatalogSnapshot.load(cat, dump, cache);
+		assertEquals("2001", snapshot.getValue(0, 0));
+	}
+
+	@Test
+	public void changedDumpIsDetected() throws IOException {
+		URL cat = packaged("t.cat", CatalogSnapshot.compile("T", oneRow(), DIGEST));
+		URL dump = packaged("t.dump", "dump".getBytes("UTF-8"));
+		File cache = new File(dir, "cache");
+		CatalogSnapshot.load(cat, dump, cache);
+
+		File dumpFile = new File(dir, "t.dump");
+		Files.write(dumpFile.toPath(), "changed dump".getBytes("UTF-8"));
+
+		assertNull(CatalogSnapshot.load(cat, dump, cache));
+	}
+
+	@Test
+	public void mapsReadColumnsOfTheSnapshot() throws IOException {
+		URL cat = packaged("t.cat", CatalogSnapshot.compile("T", oneRow(), DIGEST));
+		CatalogSnapshot snapshot = CatalogSnapshot.load(cat, null, new File(dir, "cache"));
+
+		assertArrayEquals(new String[] { "test_id", "severity" }, snapshot.getFieldNames());
+		assertEquals("MAJOR", snapshot.getValue(0, 1));
+	}
+
+	@Test
+	public void digestReadsTheWholeStream() throws IOException {
+		byte[] big = new byte[200 * 1024];
+		big[big.length - 1] = 1;
+		assertFalse(Arrays.equals(CatalogSnapshot.digest(new ByteArrayInputStream(big)),
+				CatalogSnapshot.digest(new ByteArrayInputStream(new byte[big.length]))));
+		assertArrayEquals(digest("dump"), DIGEST);
+	}
+
+	private URL packaged(String name, byte[] clear) throws IOException {
+		File f = new File(dir, name);
+		if (name.endsWith(CatalogSnapshot.EXTENSION)) {
+			Crypto.encrypt(new ByteArrayInputStream(clear), new FileOutputStream(f));
+		} else {
+			Files.write(f.toPath(), clear);
+		}
+		return f.toURI().toURL();
+	}
+
+	private static List<List> oneRow() {
+		List<List> rows = new ArrayList<List>();
+		rows.add(row("test_id", "2001", "severity", "MAJOR"));
+		return rows;
+	}
+
+	private static byte[] digest(String dump) {
+		try {
+			return CatalogSnapshot.digest(new ByteArrayInputStream(dump.getBytes("UTF-8")));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static List<String[]> row(String... nameValues) {
+		List<String[]> fields = new ArrayList<String[]>();
+		for (int i = 0; i < nameValues.length; i += 2) {
+			fields.add(new String[] { nameValues[i], nameValues[i + 1] });
+		}
+		return fields;
+	}
+
+	private static List<String> pairs(List row) {
+		List<String> pairs = new ArrayList<String>();
+		for (Object o : row) {
+			String[] field = (String[]) o;
+			pairs.add(field[0] + "=" + field[1]);
+		}
+		return pairs;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * The catalog maps read a dump by column index.
+ */
+public class ReadDumpFileTest {
+
+	private static final String STRUCTURE = "<?xml version=\"1.0\"?>\n"
+			+ "<mysqldump><database name=\"TURBINE\">\n"
+			+ "<table_structure name=\"ALIAS\">\n"
+			+ "<field Field=\"ALIAS_ID\" Type=\"int(11)\"/>\n"
+			+ "<field Field=\"DB_VALUE\" Type=\"varchar(150)\"/>\n"
+			+ "<field Field=\"ALIAS_VALUE\" Type=\"varchar(150)\"/>\n"
+			+ "<key Table=\"ALIAS\" Column_name=\"ALIAS_ID\"/>\n"
+			+ "</table_structure>\n";
+
+	private static final String ROWS = "<table_data name=\"ALIAS\">\n"
+			+ "<row><field name=\"ALIAS_ID\">1</field><field name=\"DB_VALUE\">A</field><field name=\"ALIAS_VALUE\">Alias A</field></row>\n"
+			+ "<row><field name=\"ALIAS_VALUE\">Alias B</field><field name=\"ALIAS_ID\">2</field></row>\n"
+			+ "</table_data></database></mysqldump>\n";
+
+	@Test
+	public void columnsComeFromTheTableStructure() throws IOException {
+		Table table = new Table();
+		ReadDumpFile rdf = new ReadDumpFile();
+
+		assertTrue(rdf.stream(new ByteArrayInputStream((STRUCTURE + ROWS).getBytes("UTF-8")), table));
+
+		assertEquals("ALIAS", rdf.getTableName());
+		assertArrayEquals(new String[] { "alias_id", "db_value", "alias_value" }, table.columns);
+		assertEquals("1|A|Alias A|null", table.rows.get(0));
+		// fields in another order and a missing field
+		assertEquals("2|null|Alias B|null", table.rows.get(1));
+	}
+
+	@Test
+	public void firstRowNamesTheColumnsWithoutStructure() throws IOException {
+		Table table = new Table();
+		ReadDumpFile rdf = new ReadDumpFile();
+
+		assertTrue(rdf.stream(new ByteArrayInputStream(("<mysqldump><database>" + ROWS).getBytes("UTF-8")), table));
+
+		assertArrayEquals(new String[] { "alias_id", "db_value", "alias_value" }, table.columns);
+		assertEquals("2|null|Alias B|null", table.rows.get(1));
+	}
+
+	@Test
+	public void rowDefaults() {
+		ReadDumpFile.Row row = new ReadDumpFile.Row() {
+			protected String value(int column) {
+				return new String[] { "", "7", "0", "1.5" }[column];
+			}
+		};
+
+		assertNull(row.get(-1));
+		assertEquals("x", row.getString(0, "x"));
+		assertEquals(-1, row.getInt(0, -1));
+		assertEquals(7, row.getInt(1, -1));
+		assertEquals(false, row.getFlag(2, true));
+		assertEquals(true, row.getFlag(1, false));
+		assertEquals(1.5, row.getDouble(3, 0.0), 0.0);
+		assertEquals(-1, ReadDumpFile.column(new String[] { "a" }, "b"));
+	}
+
+	/** Keeps the columns and the values of each row, with the missing column "other" */
+	private static class Table implements ReadDumpFile.TableHandler {
+		String[] columns;
+		int[] idx;
+		List<String> rows = new ArrayList<String>();
+
+		public void columns(String[] columns) {
+			this.columns = columns;
+			this.idx = new int[] { ReadDumpFile.column(columns, "alias_id"), ReadDumpFile.column(columns, "db_value"),
+					ReadDumpFile.column(columns, "alias_value"), ReadDumpFile.column(columns, "other") };
+		}
+
+		public void handleRow(ReadDumpFile.Row row) {
+			StringBuilder sb = new StringBuilder();
+			for (int i : this.idx) {
+				sb.append(sb.length() == 0 ? "" : "|").append(row.get(i));
+			}
+			this.rows.add(sb.toString());
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * IBM Confidential
+ * OCO Source Materials
+ * © Copyright IBM Corp. 2002, 2023
+ * The source code for this program is not published or otherwise divested of its trade secrets, irrespective of what has been deposited with the U.S. Copyright Office.
+ */
+package com.guardium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.guardium.assessment.tests.TestScore;
+import com.guardium.data.TestResult;
+import com.guardium.gui.Crypto;
+
+/**
+ * The escaping of the CSV rows and JSON lines of the export, and the values exported for a result.
+ */
+public class ResultExporterTest {
+
+	/** A result reads the catalog, which is encrypted */
+	@Before
+	public void initCrypto() throws GeneralSecurityException {
+		Crypto.init();
+	}
+
+	@Test
+	public void csvQuotesOnlyTheValuesThatNeedIt() throws IOException {
+		StringWriter out = new StringWriter();
+		ResultExporter.writeCsv(out, new String[] { "plain", null, "a,b", "say \"hi\"", "two\nlines", "cr\rhere", "" });
+
+		assertEquals("plain,,\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\",\"cr\rhere\",\r\n", out.toString());
+	}
+
+	@Test
+	public void jsonEscapesStringsAndKeepsNumbers() throws IOException {
+		String[] values = new String[22];
+		Arrays.fill(values, "x");
+		values[0] = "17";
+		values[1] = "2001";
+		values[2] = "3";
+		values[3] = "quote \" backslash \\ tab \t";
+		values[4] = "line\r\nbreak \u0001";
+		values[5] = null;
+		values[21] = "1700000000000";
+		StringWriter out = new StringWriter();
+		ResultExporter.writeJson(out, values);
+
+		String json = out.toString();
+		assertEquals('\n', json.charAt(json.length() - 1));
+		assertEquals(true, json.startsWith("{\"test_result_id\":17,\"test_id\":2001,\"assessment_test_id\":3,"
+				+ "\"test_desc\":\"quote \\\" backslash \\\\ tab \\t\","
+				+ "\"category\":\"line\\r\\nbreak \\u0001\",\"severity\":null,\"score\":\"x\","));
+		assertEquals(true, json.endsWith(",\"recorded\":1700000000000}\n"));
+		assertEquals(1, json.split("\n", -1).length - 1);
+	}
+
+	@Test
+	public void recordedIsTheTimeTheTestRan() {
+		TestResult result = new TestResult();
+		result.setTestScore(TestScore.PASS);
+		result.setExecutedTime(new Date(1700000000000L));
+		String[] values = ResultExporter.values(result);
+		assertEquals("1700000000000", values[values.length - 1]);
+
+		result.setExecutedTime(null);
+		assertNull(ResultExporter.values(result)[values.length - 1]);
+	}
+}